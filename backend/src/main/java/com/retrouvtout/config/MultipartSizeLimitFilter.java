@@ -0,0 +1,89 @@
+package com.retrouvtout.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Taille maximale des requêtes multipart, par route
+ *
+ * spring.servlet.multipart.max-request-size est global : il est relevé pour
+ * l'upload de plusieurs images (/api/upload/images), et ce filtre ramène les
+ * autres routes à app.upload.max-request-size avant toute lecture du corps
+ * (413). Sans Content-Length, la taille ne peut pas être contrôlée à l'avance :
+ * 411 hors de /api/upload/images.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class MultipartSizeLimitFilter extends OncePerRequestFilter {
+
+    private static final String BATCH_UPLOAD_PATH = "/api/upload/images";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${app.upload.max-request-size:15MB}")
+    private DataSize maxRequestSize;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+
+        long contentLength = request.getContentLengthLong();
+        if (contentLength < 0) {
+            writeError(request, response, HttpServletResponse.SC_LENGTH_REQUIRED, "Length Required",
+                "En-tête Content-Length requis pour un envoi de fichier");
+            return;
+        }
+        if (contentLength > maxRequestSize.toBytes()) {
+            System.out.println("⛔ Requête multipart trop volumineuse (" + contentLength + " octets) pour "
+                + request.getRequestURI());
+            writeError(request, response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Payload Too Large",
+                "Requête trop volumineuse (max " + maxRequestSize.toMegabytes() + "MB)");
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType == null
+            || !contentType.toLowerCase().startsWith("multipart/")
+            || BATCH_UPLOAD_PATH.equals(request.getRequestURI());
+    }
+
+    // Méthodes privées
+
+    private void writeError(HttpServletRequest request, HttpServletResponse response,
+                            int status, String error, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json;charset=UTF-8");
+        // Le corps n'a pas été lu : la connexion n'est pas réutilisable
+        response.setHeader("Connection", "close");
+
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("success", false);
+        errorResponse.put("message", message);
+        errorResponse.put("error", error);
+        errorResponse.put("status", status);
+        errorResponse.put("timestamp", LocalDateTime.now().toString());
+        errorResponse.put("path", request.getRequestURI());
+
+        response.getWriter().write(objectMapper.writeValueAsString(errorResponse));
+    }
+}
@@ -5,6 +5,11 @@ import com.retrouvtout.security.JwtAuthenticationEntryPoint;
 import com.retrouvtout.security.JwtAuthenticationFilter;
 import com.retrouvtout.security.CustomUserDetailsService;
 import com.retrouvtout.security.JwtTokenProvider;
+import com.retrouvtout.security.PrincipalCache;
+import com.retrouvtout.security.RateLimitFilter;
+import com.retrouvtout.security.RateLimitService;
+import com.retrouvtout.security.TokenRevocationService;
+import com.retrouvtout.security.TokenVersionCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -23,9 +28,14 @@ import org.springframework.security.config.Customizer;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.expression.WebExpressionAuthorizationManager;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.cors.CorsConfigurationSource;
 
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 /**
  * ✅ CONFIGURATION SÉCURITÉ UNIFIÉE - Dev et Prod
  */
@@ -38,29 +48,57 @@ public class SecurityConfig {
     private final JwtAuthenticationEntryPoint unauthorizedHandler;
     private final JwtTokenProvider tokenProvider;
     private final CorsConfigurationSource corsConfigurationSource;
+    private final PrincipalCache principalCache;
+    private final TokenVersionCache tokenVersionCache;
+    private final TokenRevocationService tokenRevocationService;
+    private final RateLimitService rateLimitService;
 
     @Value("${spring.profiles.active:prod}")
     private String activeProfile;
 
+    @Value("${app.rate-limit.trust-forwarded-for:false}")
+    private boolean trustForwardedFor;
+
+    @Value("${app.rate-limit.trusted-proxies:127.0.0.1,::1,0:0:0:0:0:0:0:1}")
+    private String[] trustedProxies;
+
     @Autowired
     public SecurityConfig(CustomUserDetailsService customUserDetailsService,
                          JwtAuthenticationEntryPoint unauthorizedHandler,
                          JwtTokenProvider tokenProvider,
-                         CorsConfigurationSource corsConfigurationSource) {
+                         CorsConfigurationSource corsConfigurationSource,
+                         PrincipalCache principalCache,
+                         TokenVersionCache tokenVersionCache,
+                         TokenRevocationService tokenRevocationService,
+                         RateLimitService rateLimitService) {
         this.customUserDetailsService = customUserDetailsService;
         this.unauthorizedHandler = unauthorizedHandler;
         this.tokenProvider = tokenProvider;
         this.corsConfigurationSource = corsConfigurationSource;
+        this.principalCache = principalCache;
+        this.tokenVersionCache = tokenVersionCache;
+        this.tokenRevocationService = tokenRevocationService;
+        this.rateLimitService = rateLimitService;
     }
 
     @Bean
     public JwtAuthenticationFilter jwtAuthenticationFilter() {
-        return new JwtAuthenticationFilter(tokenProvider, customUserDetailsService);
+        return new JwtAuthenticationFilter(tokenProvider, customUserDetailsService, principalCache,
+            tokenVersionCache, tokenRevocationService);
+    }
+
+    @Bean
+    public RateLimitFilter rateLimitFilter() {
+        Set<String> proxies = Arrays.stream(trustedProxies)
+            .map(String::trim)
+            .filter(proxy -> !proxy.isEmpty())
+            .collect(Collectors.toUnmodifiableSet());
+        return new RateLimitFilter(rateLimitService, trustForwardedFor, proxies);
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(12);
+    public PasswordEncoder passwordEncoder(@Value("${app.security.password.bcrypt-strength:12}") int bcryptStrength) {
+        return new BCryptPasswordEncoder(bcryptStrength);
     }
 
     @Bean
@@ -84,7 +122,10 @@ public class SecurityConfig {
                 .sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(authz -> {
                 // Endpoints publics communs
-                authz.requestMatchers("/", "/health", "/actuator/**").permitAll()
+                authz.requestMatchers("/", "/health", "/actuator/health", "/actuator/health/**", "/actuator/info").permitAll()
+                     // Métriques (profil "metrics") : réservées au collecteur local
+                     .requestMatchers("/actuator/**").access(new WebExpressionAuthorizationManager(
+                         "hasIpAddress('127.0.0.1') or hasIpAddress('::1')"))
                      .requestMatchers("/api/auth/**").permitAll()
                      .requestMatchers("/swagger-ui/**", "/v3/api-docs/**", "/api-docs/**").permitAll()
                      .requestMatchers("/files/**", "/uploads/**", "/static/**").permitAll()
@@ -111,7 +152,7 @@ public class SecurityConfig {
                          .requestMatchers(HttpMethod.POST, "/api/upload/**").authenticated()
                          .requestMatchers("/api/files/**").permitAll()
                          .requestMatchers("/api/notifications/**").authenticated()
-                         .requestMatchers("/ws/**").permitAll()
+                         .requestMatchers("/ws/**", "/ws-binary").permitAll()
                          .anyRequest().authenticated();
                 }
             });
@@ -127,6 +168,8 @@ public class SecurityConfig {
         }
 
         httpSecurity.addFilterBefore(jwtAuthenticationFilter(), UsernamePasswordAuthenticationFilter.class);
+        // Après le filtre JWT : les quotas par utilisateur connaissent l'utilisateur
+        httpSecurity.addFilterAfter(rateLimitFilter(), JwtAuthenticationFilter.class);
 
         return httpSecurity.build();
     }
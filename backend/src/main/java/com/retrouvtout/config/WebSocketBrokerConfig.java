@@ -0,0 +1,35 @@
+package com.retrouvtout.config;
+
+import com.retrouvtout.websocket.MonitoredSubProtocolWebSocketHandler;
+import com.retrouvtout.websocket.WebSocketChannelMonitor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
+
+/**
+ * Infrastructure du broker STOMP (remplace @EnableWebSocketMessageBroker)
+ *
+ * Identique à la configuration par défaut, sauf le gestionnaire de sessions qui
+ * permet au WebSocketChannelMonitor de suivre les tampons d'envoi. Les réglages
+ * applicatifs restent dans WebSocketConfig.
+ */
+@Configuration
+public class WebSocketBrokerConfig extends DelegatingWebSocketMessageBrokerConfiguration {
+
+    private final WebSocketChannelMonitor channelMonitor;
+
+    @Autowired
+    public WebSocketBrokerConfig(WebSocketChannelMonitor channelMonitor) {
+        this.channelMonitor = channelMonitor;
+    }
+
+    @Bean
+    @Override
+    public WebSocketHandler subProtocolWebSocketHandler(AbstractSubscribableChannel clientInboundChannel,
+                                                        AbstractSubscribableChannel clientOutboundChannel) {
+        return new MonitoredSubProtocolWebSocketHandler(clientInboundChannel, clientOutboundChannel, channelMonitor);
+    }
+}
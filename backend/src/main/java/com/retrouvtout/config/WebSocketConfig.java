@@ -1,39 +1,96 @@
 package com.retrouvtout.config;
 
 import com.retrouvtout.security.JwtTokenProvider;
+import com.retrouvtout.security.TokenRevocationService;
 import com.retrouvtout.service.UserService;
+import com.retrouvtout.websocket.ClusterBrokerRelay;
+import com.retrouvtout.websocket.OutboundFrameBatcher;
+import com.retrouvtout.websocket.PayloadEncodingService;
+import com.retrouvtout.websocket.UserEventReplayService;
+import com.retrouvtout.websocket.WebSocketChannelMonitor;
+import io.jsonwebtoken.Claims;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 import java.security.Principal;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Configuration WebSocket pour la messagerie en temps réel
+ * (l'infrastructure du broker est déclarée par WebSocketBrokerConfig)
  */
 @Configuration
-@EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     private final JwtTokenProvider tokenProvider;
     private final UserService userService;
+    private final ClusterBrokerRelay clusterBrokerRelay;
+    private final WebSocketChannelMonitor channelMonitor;
+    private final OutboundFrameBatcher outboundFrameBatcher;
+    private final PayloadEncodingService payloadEncodingService;
+    private final TokenRevocationService tokenRevocationService;
+
+    @Value("${app.websocket.channels.inbound.core-pool-size:8}")
+    private int inboundCorePoolSize;
+
+    @Value("${app.websocket.channels.inbound.max-pool-size:32}")
+    private int inboundMaxPoolSize;
+
+    @Value("${app.websocket.channels.inbound.queue-capacity:1000}")
+    private int inboundQueueCapacity;
+
+    @Value("${app.websocket.channels.outbound.core-pool-size:8}")
+    private int outboundCorePoolSize;
+
+    @Value("${app.websocket.channels.outbound.max-pool-size:32}")
+    private int outboundMaxPoolSize;
+
+    @Value("${app.websocket.channels.outbound.queue-capacity:1000}")
+    private int outboundQueueCapacity;
+
+    @Value("${app.websocket.channels.virtual-threads:false}")
+    private boolean virtualThreads;
+
+    @Value("${app.websocket.transport.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${app.websocket.transport.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${app.websocket.transport.message-size-limit:65536}")
+    private int messageSizeLimit;
 
     @Autowired
-    public WebSocketConfig(JwtTokenProvider tokenProvider, UserService userService) {
+    public WebSocketConfig(JwtTokenProvider tokenProvider, UserService userService,
+                           ClusterBrokerRelay clusterBrokerRelay,
+                           WebSocketChannelMonitor channelMonitor,
+                           OutboundFrameBatcher outboundFrameBatcher,
+                           PayloadEncodingService payloadEncodingService,
+                           TokenRevocationService tokenRevocationService) {
         this.tokenProvider = tokenProvider;
         this.userService = userService;
+        this.clusterBrokerRelay = clusterBrokerRelay;
+        this.channelMonitor = channelMonitor;
+        this.outboundFrameBatcher = outboundFrameBatcher;
+        this.payloadEncodingService = payloadEncodingService;
+        this.tokenRevocationService = tokenRevocationService;
     }
 
     @Override
@@ -42,6 +99,13 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         config.enableSimpleBroker("/topic", "/queue");
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
+        // Les messages d'une session partent dans l'ordre de publication (séquences de rejeu)
+        config.setPreservePublishOrder(true);
+
+        // Mode multi-nœuds : la livraison reste locale, la diffusion passe par Redis
+        if (clusterBrokerRelay.isEnabled()) {
+            config.configureBrokerChannel().interceptors(clusterBrokerRelay);
+        }
     }
 
     @Override
@@ -53,10 +117,50 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*");
+
+        // WebSocket brut, seul endpoint où CBOR/Smile peuvent être négociés (trames binaires)
+        registry.addEndpoint(PayloadEncodingService.BINARY_ENDPOINT)
+                .setAllowedOriginPatterns("*")
+                .addInterceptors(payloadEncodingService.binaryEndpointInterceptor());
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // CBOR / Smile en plus des convertisseurs par défaut (JSON reste le défaut)
+        messageConverters.addAll(payloadEncodingService.inboundConverters());
+        return true;
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Un client lent qui dépasse ces limites est déconnecté
+        registration.setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setSendTimeLimit(sendTimeLimitMs)
+                .setMessageSizeLimit(messageSizeLimit);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        ThreadPoolTaskExecutor executor = createChannelExecutor("ws-outbound-");
+        registration.taskExecutor(executor)
+                .corePoolSize(outboundCorePoolSize)
+                .maxPoolSize(outboundMaxPoolSize)
+                .queueCapacity(outboundQueueCapacity);
+        // Le moniteur écarte les trames jetables avant leur éventuel regroupement,
+        // le transcodage binaire s'applique à la trame finale
+        registration.interceptors(channelMonitor, outboundFrameBatcher, payloadEncodingService);
+        channelMonitor.registerExecutor("outbound", executor);
     }
 
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
+        ThreadPoolTaskExecutor executor = createChannelExecutor("ws-inbound-");
+        registration.taskExecutor(executor)
+                .corePoolSize(inboundCorePoolSize)
+                .maxPoolSize(inboundMaxPoolSize)
+                .queueCapacity(inboundQueueCapacity);
+        channelMonitor.registerExecutor("inbound", executor);
+
         registration.interceptors(new ChannelInterceptor() {
             @Override
             public Message<?> preSend(Message<?> message, MessageChannel channel) {
@@ -69,8 +173,13 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                         String token = authToken.substring(7);
                         
                         try {
-                            if (tokenProvider.validateToken(token)) {
-                                String userId = tokenProvider.getUserIdFromToken(token);
+                            Claims claims = tokenProvider.parseClaims(token);
+                            if (claims != null
+                                    && !JwtTokenProvider.TYPE_REFRESH.equals(claims.get(JwtTokenProvider.CLAIM_TYPE))
+                                    && !tokenRevocationService.isRevoked(claims.getId())
+                                    && !tokenRevocationService.isRevoked(
+                                        claims.get(JwtTokenProvider.CLAIM_FAMILY, String.class))) {
+                                String userId = claims.getSubject();
                                 
                                 // Créer un principal pour l'utilisateur
                                 Principal principal = new UsernamePasswordAuthenticationToken(
@@ -85,10 +194,52 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                             System.err.println("Erreur d'authentification WebSocket: " + e.getMessage());
                         }
                     }
+
+                    // Reprise après reconnexion : dernière séquence reçue par le client
+                    String lastSeq = accessor.getFirstNativeHeader(UserEventReplayService.LAST_SEQ_HEADER);
+                    if (lastSeq != null && accessor.getSessionAttributes() != null) {
+                        try {
+                            accessor.getSessionAttributes().put(
+                                UserEventReplayService.LAST_SEQ_ATTRIBUTE, Long.parseLong(lastSeq.trim()));
+                        } catch (NumberFormatException e) {
+                            System.err.println("En-tête last-seq invalide: " + lastSeq);
+                        }
+                    }
                 }
                 
                 return message;
             }
         });
     }
-}
\ No newline at end of file
+
+    /**
+     * Exécuteur de canal borné, avec threads virtuels si demandé et disponibles (Java 21+)
+     */
+    private ThreadPoolTaskExecutor createChannelExecutor(String threadNamePrefix) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setAllowCoreThreadTimeOut(true);
+
+        if (virtualThreads) {
+            ThreadFactory factory = virtualThreadFactory(threadNamePrefix);
+            if (factory != null) {
+                executor.setThreadFactory(factory);
+            } else {
+                System.err.println("⚠️ Threads virtuels indisponibles sur ce JDK, exécuteur classique utilisé");
+            }
+        }
+        return executor;
+    }
+
+    private static ThreadFactory virtualThreadFactory(String threadNamePrefix) {
+        try {
+            // Thread.ofVirtual().name(prefix, 0).factory(), par réflexion pour rester compilable en Java 17
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
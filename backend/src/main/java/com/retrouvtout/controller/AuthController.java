@@ -5,12 +5,14 @@ import com.retrouvtout.dto.request.RegisterRequest;
 import com.retrouvtout.dto.request.RefreshTokenRequest;
 import com.retrouvtout.dto.response.AuthResponse;
 import com.retrouvtout.dto.response.ApiResponse;
+import com.retrouvtout.exception.ServiceUnavailableException;
 import com.retrouvtout.service.AuthService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
@@ -76,6 +78,12 @@ public class AuthController {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                 .body(new ApiResponse<>(false, "Email ou mot de passe incorrect", null));
                 
+        } catch (ServiceUnavailableException e) {
+            System.out.println("⛔ Connexion refusée (hachage saturé) pour: " + loginRequest.getEmail());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ApiResponse<>(false, e.getMessage(), null));
+                
         } catch (IllegalStateException e) {
             System.out.println("❌ Compte désactivé pour: " + loginRequest.getEmail());
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
@@ -131,6 +139,12 @@ public class AuthController {
             return ResponseEntity.badRequest()
                 .body(new ApiResponse<>(false, e.getMessage(), null));
                 
+        } catch (ServiceUnavailableException e) {
+            System.out.println("⛔ Inscription refusée (hachage saturé) pour: " + registerRequest.getEmail());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ApiResponse<>(false, e.getMessage(), null));
+                
         } catch (Exception e) {
             System.err.println("❌ Erreur inattendue lors de l'inscription: " + e.getMessage());
             e.printStackTrace();
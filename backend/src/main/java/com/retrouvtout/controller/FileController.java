@@ -1,98 +1,116 @@
 package com.retrouvtout.controller;
 
+import com.retrouvtout.service.FileServingService;
+import com.retrouvtout.service.ImageDerivativeService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.net.MalformedURLException;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.regex.Pattern;
 
 /**
  * Contrôleur pour servir les fichiers statiques uploadés
+ * L'envoi (sendfile, Range, ETag, 304) est délégué à FileServingService
  */
 @RestController
 @RequestMapping("/api/files")
 @CrossOrigin(origins = {"${app.cors.allowed-origins}"})
 public class FileController {
 
+    private static final Pattern SHARD_PATTERN = Pattern.compile("[0-9a-f]{2}");
+    private static final Pattern OBJECT_FILENAME_PATTERN = Pattern.compile("[0-9a-f]{64}\\.[a-z0-9]+");
+
+    private final ImageDerivativeService imageDerivativeService;
+    private final FileServingService fileServingService;
+
     @Value("${app.upload.dir:./uploads}")
     private String uploadDir;
 
+    @Autowired
+    public FileController(ImageDerivativeService imageDerivativeService,
+                          FileServingService fileServingService) {
+        this.imageDerivativeService = imageDerivativeService;
+        this.fileServingService = fileServingService;
+    }
+
     /**
      * Servir les images des annonces
+     * ?size=thumb|card|full sert la déclinaison correspondante, l'original sinon
+     * (ou si la déclinaison n'existe pas, pour les images antérieures au pipeline)
      */
     @GetMapping("/images/{userId}/{filename}")
-    public ResponseEntity<Resource> serveImage(
+    public void serveImage(
             @PathVariable String userId,
-            @PathVariable String filename) {
-        
-        try {
-            Path filePath = Paths.get(uploadDir).resolve("images").resolve(userId).resolve(filename);
-            Resource resource = new UrlResource(filePath.toUri());
-            
-            if (resource.exists() && resource.isReadable()) {
-                String contentType = getContentType(filename);
-                
-                return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CACHE_CONTROL, "max-age=31536000") // Cache 1 an
-                    .body(resource);
-            } else {
-                return ResponseEntity.notFound().build();
-            }
-        } catch (MalformedURLException e) {
-            return ResponseEntity.badRequest().build();
+            @PathVariable String filename,
+            @RequestParam(value = "size", required = false) String size,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+
+        Path imagesDir = Paths.get(uploadDir).resolve("images");
+        Path userDir = imagesDir.resolve(userId);
+        Path filePath = resolveSize(userDir, filename, size);
+
+        fileServingService.serve(imagesDir, filePath, "max-age=31536000", request, response); // Cache 1 an
+    }
+
+    /**
+     * Servir les images stockées par contenu (objects/ab/cd/{sha256}.{ext})
+     * L'URL est dérivée du contenu et ne change jamais : cache public immuable.
+     * ?size=thumb|card|full comme pour les images des annonces.
+     */
+    @GetMapping("/objects/{shard1}/{shard2}/{filename}")
+    public void serveObject(
+            @PathVariable String shard1,
+            @PathVariable String shard2,
+            @PathVariable String filename,
+            @RequestParam(value = "size", required = false) String size,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+
+        if (!SHARD_PATTERN.matcher(shard1).matches() || !SHARD_PATTERN.matcher(shard2).matches()
+                || !OBJECT_FILENAME_PATTERN.matcher(filename).matches()
+                || !filename.startsWith(shard1 + shard2)) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
+
+        Path objectsDir = Paths.get(uploadDir).resolve("objects");
+        Path filePath = resolveSize(objectsDir.resolve(shard1).resolve(shard2), filename, size);
+
+        fileServingService.serve(objectsDir, filePath, "public, max-age=31536000, immutable", request, response);
     }
 
     /**
      * Servir les images temporaires
      */
     @GetMapping("/temp/{filename}")
-    public ResponseEntity<Resource> serveTempImage(@PathVariable String filename) {
-        
-        try {
-            Path filePath = Paths.get(uploadDir).resolve("temp").resolve(filename);
-            Resource resource = new UrlResource(filePath.toUri());
-            
-            if (resource.exists() && resource.isReadable()) {
-                String contentType = getContentType(filename);
-                
-                return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CACHE_CONTROL, "no-cache") // Pas de cache pour les fichiers temporaires
-                    .body(resource);
-            } else {
-                return ResponseEntity.notFound().build();
-            }
-        } catch (MalformedURLException e) {
-            return ResponseEntity.badRequest().build();
-        }
+    public void serveTempImage(
+            @PathVariable String filename,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+
+        Path tempDir = Paths.get(uploadDir).resolve("temp");
+
+        // Pas de cache pour les fichiers temporaires
+        fileServingService.serve(tempDir, tempDir.resolve(filename), "no-cache", request, response);
     }
 
     /**
-     * Déterminer le type de contenu basé sur l'extension du fichier
+     * Déclinaison demandée si elle existe, l'original sinon
      */
-    private String getContentType(String filename) {
-        String extension = filename.substring(filename.lastIndexOf('.') + 1).toLowerCase();
-        
-        switch (extension) {
-            case "jpg":
-            case "jpeg":
-                return "image/jpeg";
-            case "png":
-                return "image/png";
-            case "gif":
-                return "image/gif";
-            case "webp":
-                return "image/webp";
-            default:
-                return "application/octet-stream";
+    private Path resolveSize(Path dir, String filename, String size) {
+        if (size != null && imageDerivativeService.sizeNames().contains(size)) {
+            Path derivative = dir.resolve(imageDerivativeService.derivativeFilename(filename, size));
+            if (Files.isReadable(derivative)) {
+                return derivative;
+            }
         }
+        return dir.resolve(filename);
     }
-}
\ No newline at end of file
+}
@@ -5,6 +5,7 @@ import com.retrouvtout.dto.request.UpdateListingRequest;
 import com.retrouvtout.dto.response.ApiResponse;
 import com.retrouvtout.dto.response.ListingResponse;
 import com.retrouvtout.dto.response.PagedResponse;
+import com.retrouvtout.exception.BadRequestException;
 import com.retrouvtout.security.UserPrincipal;
 import com.retrouvtout.service.ListingService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -268,6 +269,12 @@ public class ListingController {
                 "Annonce mise à jour avec succès",
                 listing
             ));
+        } catch (BadRequestException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(new ApiResponse<>(false, e.getMessage(), null));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(new ApiResponse<>(false, e.getMessage(), null));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                 .body(new ApiResponse<>(
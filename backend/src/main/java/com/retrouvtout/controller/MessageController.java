@@ -3,9 +3,15 @@ package com.retrouvtout.controller;
 import com.retrouvtout.dto.request.CreateMessageRequest;
 import com.retrouvtout.dto.response.ApiResponse;
 import com.retrouvtout.dto.response.MessageResponse;
+import com.retrouvtout.dto.response.MessageSearchResult;
 import com.retrouvtout.dto.response.PagedResponse;
+import com.retrouvtout.exception.MessagePendingException;
+import com.retrouvtout.exception.ResourceNotFoundException;
+import com.retrouvtout.exception.ServiceUnavailableException;
 import com.retrouvtout.security.UserPrincipal;
+import com.retrouvtout.service.MessageArchiveService;
 import com.retrouvtout.service.MessageService;
+import com.retrouvtout.service.MessageWritePipeline;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -14,11 +20,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -32,10 +40,16 @@ import java.util.Map;
 public class MessageController {
 
     private final MessageService messageService;
+    private final MessageWritePipeline messageWritePipeline;
+    private final MessageArchiveService messageArchiveService;
 
     @Autowired
-    public MessageController(MessageService messageService) {
+    public MessageController(MessageService messageService,
+                             MessageWritePipeline messageWritePipeline,
+                             MessageArchiveService messageArchiveService) {
         this.messageService = messageService;
+        this.messageWritePipeline = messageWritePipeline;
+        this.messageArchiveService = messageArchiveService;
     }
 
     /**
@@ -174,7 +188,8 @@ public class MessageController {
                     .body(new ApiResponse<>(false, "Utilisateur non authentifié", null));
             }
 
-            MessageResponse message = messageService.createMessage(request, userPrincipal.getId());
+            // Écriture groupée : la réponse n'est renvoyée qu'après le commit du lot
+            MessageResponse message = messageWritePipeline.submitAndAwait(request, userPrincipal.getId());
             
             System.out.println("✅ createMessage: Message créé avec ID: " + message.getId());
             
@@ -192,6 +207,20 @@ public class MessageController {
             System.err.println("❌ createMessage - Sécurité: " + e.getMessage());
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                 .body(new ApiResponse<>(false, "Vous n'êtes pas autorisé à envoyer ce message", null));
+        } catch (ResourceNotFoundException e) {
+            System.err.println("❌ createMessage - Introuvable: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(new ApiResponse<>(false, e.getMessage(), null));
+        } catch (MessagePendingException e) {
+            // Accepté mais pas encore confirmé : réessayer avec le même clientMessageId
+            System.out.println("⏳ createMessage: message " + e.getPendingMessage().getId() + " en attente d'écriture");
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(new ApiResponse<>(true, e.getMessage(), e.getPendingMessage()));
+        } catch (ServiceUnavailableException e) {
+            System.err.println("⛔ createMessage refusé: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ApiResponse<>(false, e.getMessage(), null));
         } catch (Exception e) {
             System.err.println("❌ Erreur dans createMessage: " + e.getMessage());
             e.printStackTrace();
@@ -201,6 +230,49 @@ public class MessageController {
         }
     }
 
+    /**
+     * Rechercher dans les messages de mes conversations
+     */
+    @GetMapping("/search")
+    @Operation(summary = "Rechercher dans les messages de mes conversations")
+    @SecurityRequirement(name = "bearerAuth")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<ApiResponse<List<MessageSearchResult>>> searchMessages(
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "20") int pageSize,
+            @AuthenticationPrincipal UserPrincipal userPrincipal) {
+
+        try {
+            // ✅ VALIDATION : Vérifier l'authentification
+            if (userPrincipal == null || userPrincipal.getId() == null) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ApiResponse<>(false, "Utilisateur non authentifié", null));
+            }
+
+            if (page < 1) page = 1;
+            if (pageSize < 1 || pageSize > 50) pageSize = 20;
+
+            List<MessageSearchResult> results = messageService.searchMessages(
+                userPrincipal.getId(), query, page, pageSize);
+
+            return ResponseEntity.ok(new ApiResponse<>(
+                true,
+                "Résultats de recherche récupérés",
+                results
+            ));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .body(new ApiResponse<>(false, e.getMessage(), null));
+        } catch (Exception e) {
+            System.err.println("❌ Erreur dans searchMessages: " + e.getMessage());
+            e.printStackTrace();
+            
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(new ApiResponse<>(false, "Erreur lors de la recherche", null));
+        }
+    }
+
     /**
      * Obtenir les messages d'une conversation avec validation robuste
      */
@@ -230,15 +302,25 @@ public class MessageController {
             Pageable pageable = PageRequest.of(page - 1, pageSize, 
                 Sort.by(Sort.Direction.ASC, "createdAt"));
 
-            PagedResponse<MessageResponse> messages = messageService.getThreadMessages(
-                threadId, userPrincipal.getId(), pageable);
+            PagedResponse<MessageResponse> messages;
+            try {
+                messages = messageService.getThreadMessages(threadId, userPrincipal.getId(), pageable);
+            } catch (ResourceNotFoundException notFound) {
+                // Thread peut-être archivé : restauration à la demande puis nouvel essai
+                // (sous l'ID de la conversation active s'il y a été fusionné)
+                String restoredId = messageArchiveService.restoreArchivedThread(threadId, userPrincipal.getId());
+                if (restoredId == null) {
+                    throw notFound;
+                }
+                messages = messageService.getThreadMessages(restoredId, userPrincipal.getId(), pageable);
+            }
 
             return ResponseEntity.ok(new ApiResponse<>(
                 true,
                 "Messages récupérés avec succès",
                 messages
             ));
-        } catch (IllegalArgumentException e) {
+        } catch (ResourceNotFoundException | IllegalArgumentException e) {
             System.err.println("❌ getThreadMessages - Thread non trouvé: " + e.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                 .body(new ApiResponse<>(false, "Conversation non trouvée", null));
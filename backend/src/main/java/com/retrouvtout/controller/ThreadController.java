@@ -1,15 +1,20 @@
 package com.retrouvtout.controller;
 
+import com.retrouvtout.dto.request.ContactFinderRequest;
 import com.retrouvtout.dto.response.ApiResponse;
+import com.retrouvtout.dto.response.ContactResponse;
 import com.retrouvtout.dto.response.PagedResponse;
 import com.retrouvtout.dto.response.ThreadResponse;
+import com.retrouvtout.exception.ResourceNotFoundException;
 import com.retrouvtout.security.UserPrincipal;
+import com.retrouvtout.service.MessageArchiveService;
 import com.retrouvtout.service.ThreadService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -34,10 +39,13 @@ import org.springframework.web.bind.annotation.*;
 public class ThreadController {
 
     private final ThreadService threadService;
+    private final MessageArchiveService messageArchiveService;
 
     @Autowired
-    public ThreadController(ThreadService threadService) {
+    public ThreadController(ThreadService threadService,
+                            MessageArchiveService messageArchiveService) {
         this.threadService = threadService;
+        this.messageArchiveService = messageArchiveService;
     }
 
     /**
@@ -100,6 +108,51 @@ public class ThreadController {
         }
     }
 
+    /**
+     * Contacter un retrouveur en un seul aller-retour - Section 3.5
+     * Obtient ou crée la conversation et enregistre le premier message
+     */
+    @PostMapping("/contact")
+    @Operation(summary = "Contacter le retrouveur (conversation + premier message)")
+    @SecurityRequirement(name = "bearerAuth")
+    @ApiResponses(value = {
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "201", description = "Conversation créée et message envoyé"),
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Conversation existante, message envoyé"),
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "Données invalides"),
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "401", description = "Non authentifié")
+    })
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<ApiResponse<ContactResponse>> contactFinder(
+            @Valid @RequestBody ContactFinderRequest request,
+            @AuthenticationPrincipal UserPrincipal userPrincipal) {
+
+        try {
+            // ✅ VALIDATION : Vérifier l'authentification
+            if (userPrincipal == null || userPrincipal.getId() == null) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ApiResponse<>(false, "Utilisateur non authentifié", null));
+            }
+
+            ContactResponse contact = threadService.contactFinder(request, userPrincipal.getId());
+
+            return ResponseEntity.status(contact.isThreadCreated() ? HttpStatus.CREATED : HttpStatus.OK)
+                .body(new ApiResponse<>(
+                    true,
+                    "Message envoyé avec succès",
+                    contact
+                ));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .body(new ApiResponse<>(false, e.getMessage(), null));
+        } catch (Exception e) {
+            System.err.println("❌ Erreur dans contactFinder: " + e.getMessage());
+            e.printStackTrace();
+            
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(new ApiResponse<>(false, "Erreur lors de la prise de contact", null));
+        }
+    }
+
     /**
      * Obtenir les conversations de l'utilisateur
      * Masquage des informations personnelles - Section 3.4
@@ -177,14 +230,25 @@ public class ThreadController {
                     .body(new ApiResponse<>(false, "Utilisateur non authentifié", null));
             }
 
-            ThreadResponse thread = threadService.getThreadById(id, userPrincipal.getId());
+            ThreadResponse thread;
+            try {
+                thread = threadService.getThreadById(id, userPrincipal.getId());
+            } catch (ResourceNotFoundException notFound) {
+                // Conversation peut-être archivée : restauration à la demande puis nouvel essai
+                // (sous l'ID de la conversation active si elle y a été fusionnée)
+                String restoredId = messageArchiveService.restoreArchivedThread(id, userPrincipal.getId());
+                if (restoredId == null) {
+                    throw notFound;
+                }
+                thread = threadService.getThreadById(restoredId, userPrincipal.getId());
+            }
             
             return ResponseEntity.ok(new ApiResponse<>(
                 true,
                 "Conversation trouvée",
                 thread
             ));
-        } catch (IllegalArgumentException e) {
+        } catch (ResourceNotFoundException | IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                 .body(new ApiResponse<>(false, "Conversation non trouvée", null));
         } catch (SecurityException e) {
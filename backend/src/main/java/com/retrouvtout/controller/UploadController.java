@@ -1,13 +1,20 @@
 package com.retrouvtout.controller;
 
+import com.retrouvtout.dto.request.InitiateUploadRequest;
 import com.retrouvtout.dto.response.ApiResponse;
+import com.retrouvtout.dto.response.UploadSessionResponse;
+import com.retrouvtout.exception.ServiceUnavailableException;
 import com.retrouvtout.security.UserPrincipal;
+import com.retrouvtout.service.ChunkedUploadService;
 import com.retrouvtout.service.FileUploadService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -15,6 +22,9 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.util.List;
+
 /**
  * ✅ CONTRÔLEUR UPLOAD CORRIGÉ - VERSION COMPLÈTE
  * Correction du mapping : /api/upload au lieu de /upload
@@ -29,10 +39,13 @@ import org.springframework.web.multipart.MultipartFile;
 public class UploadController {
 
     private final FileUploadService fileUploadService;
+    private final ChunkedUploadService chunkedUploadService;
 
     @Autowired
-    public UploadController(FileUploadService fileUploadService) {
+    public UploadController(FileUploadService fileUploadService,
+                            ChunkedUploadService chunkedUploadService) {
         this.fileUploadService = fileUploadService;
+        this.chunkedUploadService = chunkedUploadService;
     }
 
     /**
@@ -88,6 +101,11 @@ public class UploadController {
                     e.getMessage(),
                     null
                 ));
+        } catch (ServiceUnavailableException e) {
+            System.err.println("⛔ uploadImage refusé: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ApiResponse<>(false, e.getMessage(), null));
         } catch (Exception e) {
             System.err.println("❌ Erreur dans uploadImage: " + e.getMessage());
             e.printStackTrace();
@@ -101,6 +119,61 @@ public class UploadController {
         }
     }
 
+    /**
+     * Upload de plusieurs images en une requête
+     * Les fichiers sont stockés en parallèle ; réponse : [{ url: string }] dans l'ordre d'envoi
+     */
+    @PostMapping("/images")
+    @Operation(summary = "Upload de plusieurs photos pour annonce")
+    @SecurityRequirement(name = "bearerAuth")
+    @ApiResponses(value = {
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Photos uploadées avec succès"),
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "Fichier invalide ou trop de fichiers"),
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "401", description = "Non authentifié"),
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "503", description = "Uploads saturés")
+    })
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<ApiResponse<List<UploadResponse>>> uploadImages(
+            @RequestParam("files") List<MultipartFile> files,
+            @AuthenticationPrincipal UserPrincipal userPrincipal) {
+
+        try {
+            if (userPrincipal == null || userPrincipal.getId() == null) {
+                System.err.println("❌ uploadImages: userPrincipal est null ou invalide");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ApiResponse<>(false, "Utilisateur non authentifié", null));
+            }
+
+            System.out.println("✅ uploadImages: Upload pour userId = " + userPrincipal.getId() +
+                             ", fichiers = " + (files == null ? 0 : files.size()));
+
+            List<UploadResponse> response = fileUploadService.uploadImages(files, userPrincipal.getId()).stream()
+                .map(UploadResponse::new)
+                .toList();
+
+            return ResponseEntity.ok(new ApiResponse<>(
+                true,
+                "Photos uploadées avec succès",
+                response
+            ));
+        } catch (IllegalArgumentException e) {
+            System.err.println("❌ Validation error dans uploadImages: " + e.getMessage());
+            return ResponseEntity.badRequest()
+                .body(new ApiResponse<>(false, e.getMessage(), null));
+        } catch (ServiceUnavailableException e) {
+            System.err.println("⛔ uploadImages refusé: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ApiResponse<>(false, e.getMessage(), null));
+        } catch (Exception e) {
+            System.err.println("❌ Erreur dans uploadImages: " + e.getMessage());
+            e.printStackTrace();
+
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(new ApiResponse<>(false, "Erreur lors de l'upload", null));
+        }
+    }
+
     /**
      * Upload temporaire d'une image (pour prévisualisation)
      */
@@ -143,6 +216,11 @@ public class UploadController {
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest()
                 .body(new ApiResponse<>(false, e.getMessage(), null));
+        } catch (ServiceUnavailableException e) {
+            System.err.println("⛔ uploadTempImage refusé: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ApiResponse<>(false, e.getMessage(), null));
         } catch (Exception e) {
             System.err.println("❌ Erreur dans uploadTempImage: " + e.getMessage());
             e.printStackTrace();
@@ -152,6 +230,88 @@ public class UploadController {
         }
     }
 
+    /**
+     * Upload reprenable : ouverture d'une session
+     * Les morceaux sont ensuite envoyés par PUT /sessions/{id}?offset=N (corps brut)
+     */
+    @PostMapping("/sessions")
+    @Operation(summary = "Ouvrir une session d'upload par morceaux")
+    @SecurityRequirement(name = "bearerAuth")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<ApiResponse<UploadSessionResponse>> initiateUpload(
+            @Valid @RequestBody InitiateUploadRequest request,
+            @AuthenticationPrincipal UserPrincipal userPrincipal) throws IOException {
+
+        UploadSessionResponse session = chunkedUploadService.initiate(
+            userPrincipal.getId(), request.getFilename(), request.getSize());
+        return ResponseEntity.status(HttpStatus.CREATED)
+            .body(new ApiResponse<>(true, "Session d'upload ouverte", session));
+    }
+
+    /**
+     * Upload reprenable : envoi d'un morceau à la position donnée
+     * 409 si la position ne correspond pas à ce qui a été reçu (relire l'état de la session)
+     */
+    @PutMapping(value = "/sessions/{sessionId}", consumes = "application/octet-stream")
+    @Operation(summary = "Envoyer un morceau d'upload")
+    @SecurityRequirement(name = "bearerAuth")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<ApiResponse<UploadSessionResponse>> uploadChunk(
+            @PathVariable String sessionId,
+            @RequestParam("offset") long offset,
+            HttpServletRequest request,
+            @AuthenticationPrincipal UserPrincipal userPrincipal) throws IOException {
+
+        UploadSessionResponse session = chunkedUploadService.writeChunk(
+            sessionId, userPrincipal.getId(), offset, request.getContentLengthLong(), request.getInputStream());
+        return ResponseEntity.ok(new ApiResponse<>(true, "Morceau reçu", session));
+    }
+
+    /**
+     * Upload reprenable : état de la session (position à partir de laquelle reprendre)
+     */
+    @GetMapping("/sessions/{sessionId}")
+    @Operation(summary = "État d'une session d'upload")
+    @SecurityRequirement(name = "bearerAuth")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<ApiResponse<UploadSessionResponse>> getUploadSession(
+            @PathVariable String sessionId,
+            @AuthenticationPrincipal UserPrincipal userPrincipal) {
+
+        UploadSessionResponse session = chunkedUploadService.status(sessionId, userPrincipal.getId());
+        return ResponseEntity.ok(new ApiResponse<>(true, "Session d'upload", session));
+    }
+
+    /**
+     * Upload reprenable : finalisation, renvoie l'URL de l'image comme /image
+     */
+    @PostMapping("/sessions/{sessionId}/complete")
+    @Operation(summary = "Finaliser une session d'upload")
+    @SecurityRequirement(name = "bearerAuth")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<ApiResponse<UploadSessionResponse>> completeUpload(
+            @PathVariable String sessionId,
+            @AuthenticationPrincipal UserPrincipal userPrincipal) throws IOException {
+
+        UploadSessionResponse session = chunkedUploadService.complete(sessionId, userPrincipal.getId());
+        return ResponseEntity.ok(new ApiResponse<>(true, "Photo uploadée avec succès", session));
+    }
+
+    /**
+     * Upload reprenable : annulation
+     */
+    @DeleteMapping("/sessions/{sessionId}")
+    @Operation(summary = "Annuler une session d'upload")
+    @SecurityRequirement(name = "bearerAuth")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<ApiResponse<Void>> abortUpload(
+            @PathVariable String sessionId,
+            @AuthenticationPrincipal UserPrincipal userPrincipal) {
+
+        chunkedUploadService.abort(sessionId, userPrincipal.getId());
+        return ResponseEntity.ok(new ApiResponse<>(true, "Session d'upload annulée", null));
+    }
+
     /**
      * ✅ Classe de réponse EXACTEMENT conforme au frontend
      * services/listings.ts attend : { url: string }
@@ -0,0 +1,35 @@
+package com.retrouvtout.dto.request;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+
+/**
+ * Requête de prise de contact avec un retrouveur :
+ * obtention ou création de la conversation et premier message en un seul appel
+ */
+public class ContactFinderRequest {
+    
+    @NotBlank(message = "L'ID de l'annonce est obligatoire")
+    private String listingId;
+    
+    @NotBlank(message = "Le contenu du message est obligatoire")
+    @Size(max = 2000, message = "Le message ne peut pas dépasser 2000 caractères")
+    private String body;
+    
+    // Clé d'idempotence fournie par le client : un renvoi avec la même clé ne duplique pas le message
+    @Size(max = 64, message = "L'identifiant client ne peut pas dépasser 64 caractères")
+    private String clientMessageId;
+    
+    // Constructeurs
+    public ContactFinderRequest() {}
+    
+    // Getters et setters
+    public String getListingId() { return listingId; }
+    public void setListingId(String listingId) { this.listingId = listingId; }
+    
+    public String getBody() { return body; }
+    public void setBody(String body) { this.body = body; }
+    
+    public String getClientMessageId() { return clientMessageId; }
+    public void setClientMessageId(String clientMessageId) { this.clientMessageId = clientMessageId; }
+}
@@ -2,11 +2,13 @@
 
 package com.retrouvtout.dto.request;
 
+import com.retrouvtout.util.AppConstants;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 public class CreateListingRequest {
     
@@ -34,6 +36,10 @@ public class CreateListingRequest {
     
     private String imageUrl;
     
+    // Images multiples (URLs renvoyées par /api/upload/images), la première est la principale
+    @Size(max = AppConstants.MAX_IMAGES_PER_LISTING, message = "Trop d'images pour une annonce")
+    private List<String> images;
+    
     // Constructeurs
     public CreateListingRequest() {}
     
@@ -62,6 +68,9 @@ public class CreateListingRequest {
     
     public String getImageUrl() { return imageUrl; }
     public void setImageUrl(String imageUrl) { this.imageUrl = imageUrl; }
+    
+    public List<String> getImages() { return images; }
+    public void setImages(List<String> images) { this.images = images; }
 
     @Override
     public String toString() {
@@ -76,4 +85,4 @@ public class CreateListingRequest {
                 ", imageUrl='" + imageUrl + '\'' +
                 '}';
     }
-}
\ No newline at end of file
+}
@@ -14,6 +14,10 @@ public class CreateMessageRequest {
     
     private String messageType = "text";
     
+    // Identifiant fourni par le client pour corréler l'accusé de réception WebSocket
+    @Size(max = 64, message = "L'identifiant client ne peut pas dépasser 64 caractères")
+    private String clientMessageId;
+    
     // Constructeurs
     public CreateMessageRequest() {}
     
@@ -26,4 +30,7 @@ public class CreateMessageRequest {
     
     public String getMessageType() { return messageType; }
     public void setMessageType(String messageType) { this.messageType = messageType; }
+    
+    public String getClientMessageId() { return clientMessageId; }
+    public void setClientMessageId(String clientMessageId) { this.clientMessageId = clientMessageId; }
 }
\ No newline at end of file
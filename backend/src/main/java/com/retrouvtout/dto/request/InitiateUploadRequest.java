@@ -0,0 +1,31 @@
+// InitiateUploadRequest.java
+package com.retrouvtout.dto.request;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+
+public class InitiateUploadRequest {
+    
+    @NotBlank(message = "Le nom du fichier est obligatoire")
+    private String filename;
+    
+    @NotNull(message = "La taille du fichier est obligatoire")
+    @Positive(message = "La taille du fichier doit être positive")
+    private Long size;
+    
+    // Constructeurs
+    public InitiateUploadRequest() {}
+    
+    public InitiateUploadRequest(String filename, Long size) {
+        this.filename = filename;
+        this.size = size;
+    }
+    
+    // Getters et Setters
+    public String getFilename() { return filename; }
+    public void setFilename(String filename) { this.filename = filename; }
+    
+    public Long getSize() { return size; }
+    public void setSize(Long size) { this.size = size; }
+}
@@ -0,0 +1,35 @@
+package com.retrouvtout.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * DTO de réponse pour la prise de contact : conversation et premier message
+ */
+public class ContactResponse {
+    
+    private ThreadResponse thread;
+    
+    private MessageResponse message;
+    
+    @JsonProperty("thread_created")
+    private boolean threadCreated;
+    
+    // Constructeurs
+    public ContactResponse() {}
+    
+    public ContactResponse(ThreadResponse thread, MessageResponse message, boolean threadCreated) {
+        this.thread = thread;
+        this.message = message;
+        this.threadCreated = threadCreated;
+    }
+    
+    // Getters et Setters
+    public ThreadResponse getThread() { return thread; }
+    public void setThread(ThreadResponse thread) { this.thread = thread; }
+    
+    public MessageResponse getMessage() { return message; }
+    public void setMessage(MessageResponse message) { this.message = message; }
+    
+    public boolean isThreadCreated() { return threadCreated; }
+    public void setThreadCreated(boolean threadCreated) { this.threadCreated = threadCreated; }
+}
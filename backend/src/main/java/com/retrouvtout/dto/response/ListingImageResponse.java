@@ -0,0 +1,46 @@
+package com.retrouvtout.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+/**
+ * DTO de réponse pour une image d'annonce (images multiples)
+ */
+public class ListingImageResponse {
+    
+    private String url;
+    
+    private Map<String, String> urls; // déclinaisons par taille : thumb, card, full
+    
+    private Integer width;
+    
+    private Integer height;
+    
+    private String placeholder; // micro-vignette en data URI
+    
+    @JsonProperty("isPrimary")
+    private boolean primary;
+    
+    // Constructeurs
+    public ListingImageResponse() {}
+    
+    // Getters et Setters
+    public String getUrl() { return url; }
+    public void setUrl(String url) { this.url = url; }
+    
+    public Map<String, String> getUrls() { return urls; }
+    public void setUrls(Map<String, String> urls) { this.urls = urls; }
+    
+    public Integer getWidth() { return width; }
+    public void setWidth(Integer width) { this.width = width; }
+    
+    public Integer getHeight() { return height; }
+    public void setHeight(Integer height) { this.height = height; }
+    
+    public String getPlaceholder() { return placeholder; }
+    public void setPlaceholder(String placeholder) { this.placeholder = placeholder; }
+    
+    public boolean isPrimary() { return primary; }
+    public void setPrimary(boolean primary) { this.primary = primary; }
+}
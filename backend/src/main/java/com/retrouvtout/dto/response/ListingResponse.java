@@ -2,6 +2,8 @@ package com.retrouvtout.dto.response;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
 
 /**
  * DTO de réponse pour les annonces
@@ -27,6 +29,21 @@ public class ListingResponse {
     @JsonProperty("imageUrl")
     private String imageUrl;
 
+    @JsonProperty("imageUrls")
+    private Map<String, String> imageUrls; // déclinaisons par taille : thumb, card, full
+
+    @JsonProperty("imageWidth")
+    private Integer imageWidth;
+
+    @JsonProperty("imageHeight")
+    private Integer imageHeight;
+
+    @JsonProperty("imagePlaceholder")
+    private String imagePlaceholder; // micro-vignette en data URI, à afficher floutée
+
+    @JsonProperty("images")
+    private List<ListingImageResponse> images; // images multiples, la principale en premier
+
     private String status; // "active" ou "resolved" pour correspondre au frontend
 
     @JsonProperty("finderUserId")
@@ -69,6 +86,21 @@ public class ListingResponse {
     public String getImageUrl() { return imageUrl; }
     public void setImageUrl(String imageUrl) { this.imageUrl = imageUrl; }
 
+    public Map<String, String> getImageUrls() { return imageUrls; }
+    public void setImageUrls(Map<String, String> imageUrls) { this.imageUrls = imageUrls; }
+
+    public Integer getImageWidth() { return imageWidth; }
+    public void setImageWidth(Integer imageWidth) { this.imageWidth = imageWidth; }
+
+    public Integer getImageHeight() { return imageHeight; }
+    public void setImageHeight(Integer imageHeight) { this.imageHeight = imageHeight; }
+
+    public String getImagePlaceholder() { return imagePlaceholder; }
+    public void setImagePlaceholder(String imagePlaceholder) { this.imagePlaceholder = imagePlaceholder; }
+
+    public List<ListingImageResponse> getImages() { return images; }
+    public void setImages(List<ListingImageResponse> images) { this.images = images; }
+
     public String getStatus() { return status; }
     public void setStatus(String status) { this.status = status; }
 
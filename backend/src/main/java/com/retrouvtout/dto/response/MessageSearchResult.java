@@ -0,0 +1,53 @@
+package com.retrouvtout.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO de réponse pour un résultat de recherche dans les messages
+ */
+public class MessageSearchResult {
+    
+    @JsonProperty("message_id")
+    private String messageId;
+    
+    @JsonProperty("thread_id")
+    private String threadId;
+    
+    @JsonProperty("sender_user_id")
+    private String senderUserId;
+    
+    private String snippet;
+    
+    @JsonProperty("created_at")
+    private LocalDateTime createdAt;
+    
+    // Constructeurs
+    public MessageSearchResult() {}
+    
+    public MessageSearchResult(String messageId, String threadId, String senderUserId,
+                               String snippet, LocalDateTime createdAt) {
+        this.messageId = messageId;
+        this.threadId = threadId;
+        this.senderUserId = senderUserId;
+        this.snippet = snippet;
+        this.createdAt = createdAt;
+    }
+    
+    // Getters et Setters
+    public String getMessageId() { return messageId; }
+    public void setMessageId(String messageId) { this.messageId = messageId; }
+    
+    public String getThreadId() { return threadId; }
+    public void setThreadId(String threadId) { this.threadId = threadId; }
+    
+    public String getSenderUserId() { return senderUserId; }
+    public void setSenderUserId(String senderUserId) { this.senderUserId = senderUserId; }
+    
+    public String getSnippet() { return snippet; }
+    public void setSnippet(String snippet) { this.snippet = snippet; }
+    
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
@@ -0,0 +1,45 @@
+package com.retrouvtout.dto.response;
+
+/**
+ * DTO de réponse pour une session d'upload par morceaux
+ * url n'est renseignée qu'à la finalisation
+ */
+public class UploadSessionResponse {
+    
+    private String sessionId;
+    
+    private long offset;
+    
+    private long size;
+    
+    private int chunkSize;
+    
+    private String url;
+    
+    // Constructeurs
+    public UploadSessionResponse() {}
+    
+    public UploadSessionResponse(String sessionId, long offset, long size, int chunkSize, String url) {
+        this.sessionId = sessionId;
+        this.offset = offset;
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.url = url;
+    }
+    
+    // Getters et Setters
+    public String getSessionId() { return sessionId; }
+    public void setSessionId(String sessionId) { this.sessionId = sessionId; }
+    
+    public long getOffset() { return offset; }
+    public void setOffset(long offset) { this.offset = offset; }
+    
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+    
+    public int getChunkSize() { return chunkSize; }
+    public void setChunkSize(int chunkSize) { this.chunkSize = chunkSize; }
+    
+    public String getUrl() { return url; }
+    public void setUrl(String url) { this.url = url; }
+}
@@ -4,6 +4,7 @@ package com.retrouvtout.entity;
 
 import com.retrouvtout.converter.ListingCategoryConverter;
 import com.retrouvtout.converter.ListingStatusConverter;
+import com.retrouvtout.util.ImageUrlUtils;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
@@ -25,7 +26,9 @@ import java.util.List;
     @Index(name = "idx_listings_status", columnList = "status"),
     @Index(name = "idx_listings_found_at", columnList = "found_at"),
     @Index(name = "idx_listings_location", columnList = "latitude, longitude"),
-    @Index(name = "idx_listings_moderated", columnList = "is_moderated")
+    @Index(name = "idx_listings_moderated", columnList = "is_moderated"),
+    @Index(name = "idx_listings_image_url", columnList = "image_url"),
+    @Index(name = "idx_listings_image_path", columnList = "image_path")
 })
 @EntityListeners(AuditingEntityListener.class)
 public class Listing {
@@ -77,6 +80,21 @@ public class Listing {
     @Column(name = "image_url", length = 512)
     private String imageUrl;
 
+    // Chemin relatif de l'image uploadée (après /files/), dérivé de image_url :
+    // comparaison indexée pour le ramasse-miettes du stockage
+    @Column(name = "image_path", length = 512)
+    private String imagePath;
+
+    // Dimensions de l'image et micro-vignette (data URI), calculées à l'upload
+    @Column(name = "image_width")
+    private Integer imageWidth;
+
+    @Column(name = "image_height")
+    private Integer imageHeight;
+
+    @Column(name = "image_placeholder", length = 1024)
+    private String imagePlaceholder;
+
     // ✅ Status aussi avec converter (optionnel)
     @Convert(converter = ListingStatusConverter.class)
     @Column(name = "status", nullable = false)
@@ -222,6 +240,17 @@ public class Listing {
     public String getImageUrl() { return imageUrl; }
     public void setImageUrl(String imageUrl) { this.imageUrl = imageUrl; }
 
+    public String getImagePath() { return imagePath; }
+
+    public Integer getImageWidth() { return imageWidth; }
+    public void setImageWidth(Integer imageWidth) { this.imageWidth = imageWidth; }
+
+    public Integer getImageHeight() { return imageHeight; }
+    public void setImageHeight(Integer imageHeight) { this.imageHeight = imageHeight; }
+
+    public String getImagePlaceholder() { return imagePlaceholder; }
+    public void setImagePlaceholder(String imagePlaceholder) { this.imagePlaceholder = imagePlaceholder; }
+
     public ListingStatus getStatus() { return status; }
     public void setStatus(ListingStatus status) { this.status = status; }
 
@@ -265,10 +294,12 @@ public class Listing {
         if (viewsCount == null) {
             viewsCount = 0L;
         }
+        imagePath = ImageUrlUtils.storagePathOf(imageUrl);
     }
 
     @PreUpdate
     protected void onUpdate() {
         updatedAt = LocalDateTime.now();
+        imagePath = ImageUrlUtils.storagePathOf(imageUrl);
     }
 }
\ No newline at end of file
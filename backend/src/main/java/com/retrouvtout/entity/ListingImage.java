@@ -1,6 +1,7 @@
 // ListingImage.java
 package com.retrouvtout.entity;
 
+import com.retrouvtout.util.ImageUrlUtils;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
@@ -12,7 +13,9 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "listing_images", indexes = {
     @Index(name = "idx_images_listing", columnList = "listing_id"),
-    @Index(name = "idx_images_primary", columnList = "is_primary")
+    @Index(name = "idx_images_primary", columnList = "is_primary"),
+    @Index(name = "idx_images_url", columnList = "url"),
+    @Index(name = "idx_images_path", columnList = "path")
 })
 @EntityListeners(AuditingEntityListener.class)
 public class ListingImage {
@@ -31,6 +34,10 @@ public class ListingImage {
     @Column(name = "url", nullable = false, length = 512)
     private String url;
 
+    // Chemin relatif de l'image uploadée (après /files/), dérivé de url
+    @Column(name = "path", length = 512)
+    private String path;
+
     @Size(max = 255)
     @Column(name = "alt_text", length = 255)
     private String altText;
@@ -42,6 +49,16 @@ public class ListingImage {
     @Column(name = "mime_type", length = 50)
     private String mimeType;
 
+    // Dimensions et micro-vignette (data URI), calculées à l'upload
+    @Column(name = "width")
+    private Integer width;
+
+    @Column(name = "height")
+    private Integer height;
+
+    @Column(name = "placeholder", length = 1024)
+    private String placeholder;
+
     @Column(name = "is_primary", nullable = false)
     private Boolean isPrimary = false;
 
@@ -61,6 +78,8 @@ public class ListingImage {
     public String getUrl() { return url; }
     public void setUrl(String url) { this.url = url; }
 
+    public String getPath() { return path; }
+
     public String getAltText() { return altText; }
     public void setAltText(String altText) { this.altText = altText; }
 
@@ -70,9 +89,24 @@ public class ListingImage {
     public String getMimeType() { return mimeType; }
     public void setMimeType(String mimeType) { this.mimeType = mimeType; }
 
+    public Integer getWidth() { return width; }
+    public void setWidth(Integer width) { this.width = width; }
+
+    public Integer getHeight() { return height; }
+    public void setHeight(Integer height) { this.height = height; }
+
+    public String getPlaceholder() { return placeholder; }
+    public void setPlaceholder(String placeholder) { this.placeholder = placeholder; }
+
     public Boolean getIsPrimary() { return isPrimary; }
     public void setIsPrimary(Boolean isPrimary) { this.isPrimary = isPrimary; }
 
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        path = ImageUrlUtils.storagePathOf(url);
+    }
 }
@@ -0,0 +1,23 @@
+// MessagePendingException.java
+package com.retrouvtout.exception;
+
+import com.retrouvtout.dto.response.MessageResponse;
+
+/**
+ * Message accepté mais pas encore confirmé dans le délai d'attente
+ * Le message sera probablement écrit : le client réessaie avec le même
+ * clientMessageId, sans risque de doublon.
+ */
+public class MessagePendingException extends RuntimeException {
+
+    private final MessageResponse pendingMessage;
+
+    public MessagePendingException(String message, MessageResponse pendingMessage) {
+        super(message);
+        this.pendingMessage = pendingMessage;
+    }
+
+    public MessageResponse getPendingMessage() {
+        return pendingMessage;
+    }
+}
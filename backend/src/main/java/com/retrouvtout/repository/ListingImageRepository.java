@@ -0,0 +1,42 @@
+package com.retrouvtout.repository;
+
+import com.retrouvtout.entity.Listing;
+import com.retrouvtout.entity.ListingImage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository pour les images multiples des annonces
+ */
+@Repository
+public interface ListingImageRepository extends JpaRepository<ListingImage, Long> {
+
+    /**
+     * Images de plusieurs annonces en une seule requête (évite le chargement paresseux par annonce)
+     * La principale en premier, puis dans l'ordre d'ajout
+     */
+    @Query("SELECT i FROM ListingImage i WHERE i.listing.id IN :listingIds ORDER BY i.isPrimary DESC, i.id ASC")
+    List<ListingImage> findByListingIds(@Param("listingIds") Collection<String> listingIds);
+
+    /**
+     * Nombre d'images pointant vers une URL (comptage de références)
+     * Les images des annonces supprimées (statut SUPPRIME) ne comptent pas
+     */
+    long countByUrlAndListingStatusNot(String url, Listing.ListingStatus status);
+
+    /**
+     * Parmi des chemins relatifs au répertoire d'upload, ceux encore référencés
+     * par une image d'annonce (ramasse-miettes du stockage, par lots), sur la colonne
+     * indexée path
+     */
+    @Query("SELECT DISTINCT i.path FROM ListingImage i "
+         + "WHERE i.path IN :paths "
+         + "AND i.listing.status <> :excluded")
+    List<String> findReferencedPaths(@Param("paths") Collection<String> paths,
+                                     @Param("excluded") Listing.ListingStatus excluded);
+}
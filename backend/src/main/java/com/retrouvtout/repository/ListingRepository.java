@@ -12,6 +12,7 @@ import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -114,6 +115,24 @@ public interface ListingRepository extends JpaRepository<Listing, String>, JpaSp
      */
     long countByCreatedAtBetween(LocalDateTime startDate, LocalDateTime endDate);
 
+    /**
+     * Nombre d'annonces pointant vers une image (comptage de références)
+     * Les annonces supprimées (statut SUPPRIME) ne comptent pas
+     */
+    long countByImageUrlAndStatusNot(String imageUrl, Listing.ListingStatus status);
+
+    /**
+     * Parmi des chemins relatifs au répertoire d'upload (images/..., objects/...),
+     * ceux encore référencés par une annonce (ramasse-miettes du stockage, par lots)
+     * La comparaison porte sur image_path (partie de l'URL après /files/, indexée) :
+     * elle ne dépend ni de l'hôte ni du port avec lesquels l'URL a été enregistrée.
+     */
+    @Query("SELECT DISTINCT l.imagePath FROM Listing l "
+         + "WHERE l.imagePath IN :paths "
+         + "AND l.status <> :excluded")
+    List<String> findReferencedImagePaths(@Param("paths") Collection<String> paths,
+                                          @Param("excluded") Listing.ListingStatus excluded);
+
     /**
      * Trouver les annonces récentes pour les alertes
      */
@@ -6,13 +6,16 @@ import com.retrouvtout.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import jakarta.persistence.LockModeType;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * ✅ REPOSITORY MESSAGES CORRIGÉ - VERSION COMPLÈTE
@@ -21,6 +24,14 @@ import java.util.List;
 @Repository
 public interface MessageRepository extends JpaRepository<Message, String> {
 
+    /**
+     * Lire un message avec un verrou partagé (lecture courante, hors instantané
+     * de la transaction) : voit un message commité par une transaction concurrente
+     */
+    @Lock(LockModeType.PESSIMISTIC_READ)
+    @Query("SELECT m FROM Message m WHERE m.id = :id")
+    Optional<Message> findByIdForShare(@Param("id") String id);
+
     /**
      * ✅ MÉTHODE CRITIQUE MANQUANTE - Compter les messages non lus pour un utilisateur
      * Cette méthode était appelée par le service mais n'existait pas !
@@ -196,4 +207,22 @@ public interface MessageRepository extends JpaRepository<Message, String> {
            "AND m.senderUser.id != :userId " +
            "AND m.isRead = false")
     long countUnreadMessagesForUserById(@Param("userId") String userId);
-}
\ No newline at end of file
+
+    /**
+     * ✅ RECHERCHE PLEIN TEXTE dans les conversations d'un utilisateur
+     * Utilise l'index FULLTEXT ftx_messages_body (mode booléen) et restreint
+     * aux threads dont l'utilisateur est propriétaire ou retrouveur
+     */
+    @Query(value = "SELECT m.* FROM messages m " +
+                   "WHERE m.thread_id IN (" +
+                   "  SELECT t.id FROM threads t WHERE t.owner_user_id = :userId " +
+                   "  UNION SELECT t.id FROM threads t WHERE t.finder_user_id = :userId) " +
+                   "AND MATCH(m.body) AGAINST (:query IN BOOLEAN MODE) " +
+                   "ORDER BY MATCH(m.body) AGAINST (:query IN BOOLEAN MODE) DESC, m.created_at DESC " +
+                   "LIMIT :limit OFFSET :offset",
+           nativeQuery = true)
+    List<Message> searchMessagesForUser(@Param("userId") String userId,
+                                        @Param("query") String query,
+                                        @Param("limit") int limit,
+                                        @Param("offset") int offset);
+}
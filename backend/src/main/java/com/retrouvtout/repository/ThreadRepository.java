@@ -7,10 +7,15 @@ import com.retrouvtout.entity.Listing;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.LockModeType;
+
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -22,6 +27,15 @@ public interface ThreadRepository extends JpaRepository<Thread, String> {
      */
     Optional<Thread> findByListingAndOwnerUser(Listing listing, User ownerUser);
 
+    /**
+     * Trouver et verrouiller (FOR UPDATE) le thread d'une annonce et d'un propriétaire.
+     * Lecture courante : voit aussi un thread commité par une transaction concurrente.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT t FROM Thread t WHERE t.listing = :listing AND t.ownerUser = :ownerUser")
+    Optional<Thread> findByListingAndOwnerUserForUpdate(@Param("listing") Listing listing,
+                                                         @Param("ownerUser") User ownerUser);
+
     /**
      * Trouver les threads d'un utilisateur (en tant que propriétaire ou retrouveur)
      */
@@ -45,4 +59,38 @@ public interface ThreadRepository extends JpaRepository<Thread, String> {
            "(t.ownerUser = :user OR t.finderUser = :user) AND " +
            "m.senderUser != :user AND m.isRead = false")
     long countUnreadThreadsForUser(@Param("user") User user);
+
+    /**
+     * Charger un thread avec ses participants et son annonce en une seule requête
+     */
+    @Query("SELECT t FROM Thread t " +
+           "JOIN FETCH t.ownerUser " +
+           "JOIN FETCH t.finderUser " +
+           "JOIN FETCH t.listing " +
+           "WHERE t.id = :id")
+    Optional<Thread> findWithParticipantsById(@Param("id") String id);
+
+    /**
+     * Mettre à jour la date du dernier message sans recharger l'entité
+     * (la date n'est jamais reculée si un lot plus récent a déjà été écrit)
+     */
+    @Modifying
+    @Query("UPDATE Thread t SET t.lastMessageAt = :lastMessageAt " +
+           "WHERE t.id = :id AND (t.lastMessageAt IS NULL OR t.lastMessageAt < :lastMessageAt)")
+    int touchLastMessageAt(@Param("id") String id, @Param("lastMessageAt") LocalDateTime lastMessageAt);
+
+    /**
+     * Créer le thread s'il n'existe pas encore (upsert sur ux_threads_listing_owner).
+     * Aucune erreur en cas de doublon : l'appelant relit le thread existant.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO threads (id, listing_id, owner_user_id, finder_user_id, status, created_at, updated_at) " +
+                   "VALUES (:id, :listingId, :ownerUserId, :finderUserId, :status, NOW(3), NOW(3)) " +
+                   "ON DUPLICATE KEY UPDATE id = id",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("id") String id,
+                       @Param("listingId") String listingId,
+                       @Param("ownerUserId") String ownerUserId,
+                       @Param("finderUserId") String finderUserId,
+                       @Param("status") String status);
 }
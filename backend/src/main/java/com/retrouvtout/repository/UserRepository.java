@@ -4,6 +4,7 @@ import com.retrouvtout.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -28,6 +29,29 @@ public interface UserRepository extends JpaRepository<User, String> {
      */
     Optional<User> findByIdAndActiveTrue(String id);
 
+    /**
+     * Version de token d'un utilisateur actif (vide si inactif ou inexistant)
+     */
+    @Query("SELECT u.tokenVersion FROM User u WHERE u.id = :id AND u.active = true")
+    Optional<Integer> findActiveTokenVersion(@Param("id") String id);
+
+    /**
+     * Enregistrer la date de dernière connexion
+     */
+    @Modifying
+    @Query("UPDATE User u SET u.lastLoginAt = :lastLoginAt WHERE u.id = :id")
+    int updateLastLoginAt(@Param("id") String id, @Param("lastLoginAt") LocalDateTime lastLoginAt);
+
+    /**
+     * Remplacer le hachage du mot de passe s'il n'a pas changé depuis sa lecture
+     */
+    @Modifying
+    @Query("UPDATE User u SET u.passwordHash = :newHash, u.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE u.id = :id AND u.passwordHash = :previousHash")
+    int replacePasswordHash(@Param("id") String id,
+                            @Param("previousHash") String previousHash,
+                            @Param("newHash") String newHash);
+
     /**
      * Vérifier si un email existe (actif uniquement)
      */
@@ -1,5 +1,7 @@
 package com.retrouvtout.security;
 
+import com.retrouvtout.entity.User;
+import io.jsonwebtoken.Claims;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.filter.OncePerRequestFilter;
 import jakarta.servlet.FilterChain;
@@ -19,11 +21,20 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtTokenProvider tokenProvider;
     private final CustomUserDetailsService customUserDetailsService;
+    private final PrincipalCache principalCache;
+    private final TokenVersionCache tokenVersionCache;
+    private final TokenRevocationService tokenRevocationService;
 
     public JwtAuthenticationFilter(JwtTokenProvider tokenProvider,
-                                   CustomUserDetailsService customUserDetailsService) {
+                                   CustomUserDetailsService customUserDetailsService,
+                                   PrincipalCache principalCache,
+                                   TokenVersionCache tokenVersionCache,
+                                   TokenRevocationService tokenRevocationService) {
         this.tokenProvider = tokenProvider;
         this.customUserDetailsService = customUserDetailsService;
+        this.principalCache = principalCache;
+        this.tokenVersionCache = tokenVersionCache;
+        this.tokenRevocationService = tokenRevocationService;
     }
 
     @Override
@@ -43,15 +54,26 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             if (StringUtils.hasText(jwt)) {
                 System.out.println("✅ Token trouvé dans la requête");
                 
-                // ✅ VALIDATION: Vérifier si le token est valide
-                if (tokenProvider.validateToken(jwt)) {
+                // ✅ VALIDATION: Une seule analyse du token (signature, expiration, subject)
+                Claims claims = tokenProvider.parseClaims(jwt);
+                if (claims != null && !isUsableAccessToken(claims)) {
+                    System.err.println("❌ Token révoqué ou de rafraîchissement pour " + requestPath);
+                    claims = null;
+                }
+                if (claims != null) {
                     System.out.println("✅ Token valide");
                     
                     try {
-                        String userId = tokenProvider.getUserIdFromToken(jwt);
+                        String userId = claims.getSubject();
                         System.out.println("✅ UserID extrait: " + userId);
 
-                        UserDetails userDetails = customUserDetailsService.loadUserById(userId);
+                        UserDetails userDetails = resolvePrincipal(userId, claims);
+                        if (userDetails == null) {
+                            System.err.println("❌ Token révoqué pour userId: " + userId);
+                            SecurityContextHolder.clearContext();
+                            filterChain.doFilter(request, response);
+                            return;
+                        }
                         System.out.println("✅ UserDetails chargé pour: " + userDetails.getUsername());
 
                         UsernamePasswordAuthenticationToken authentication =
@@ -85,6 +107,47 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    /**
+     * Refuser les refresh tokens et les tokens révoqués (jti ou famille)
+     * Cas courant : deux tests de filtre de Bloom négatifs, sans allocation
+     */
+    private boolean isUsableAccessToken(Claims claims) {
+        if (JwtTokenProvider.TYPE_REFRESH.equals(claims.get(JwtTokenProvider.CLAIM_TYPE))) {
+            return false;
+        }
+        return !tokenRevocationService.isRevoked(claims.getId())
+            && !tokenRevocationService.isRevoked(claims.get(JwtTokenProvider.CLAIM_FAMILY, String.class));
+    }
+
+    /**
+     * Construire le principal du token
+     *
+     * Token autoporté (claim de version) : principal reconstruit depuis les claims,
+     * après contrôle de la version en cache. Token classique : principal chargé
+     * via le cache des principaux. Les deux formats coexistent pendant la migration.
+     *
+     * @return le principal, ou null si le token autoporté est révoqué
+     */
+    private UserDetails resolvePrincipal(String userId, Claims claims) {
+        Object version = claims.get(JwtTokenProvider.CLAIM_TOKEN_VERSION);
+        if (!(version instanceof Number)) {
+            // Principal mis en cache : pas de requête en base à chaque appel
+            return principalCache.get(userId, customUserDetailsService::loadUserById);
+        }
+
+        if (!tokenVersionCache.isCurrent(userId, ((Number) version).intValue())) {
+            return null;
+        }
+
+        return UserPrincipal.fromTokenClaims(
+            userId,
+            claims.get(JwtTokenProvider.CLAIM_NAME, String.class),
+            claims.get(JwtTokenProvider.CLAIM_EMAIL, String.class),
+            User.UserRole.fromValue(claims.get(JwtTokenProvider.CLAIM_ROLE, String.class)),
+            Boolean.TRUE.equals(claims.get(JwtTokenProvider.CLAIM_EMAIL_VERIFIED, Boolean.class))
+        );
+    }
+
     /**
      * ✅ MÉTHODE AMÉLIORÉE pour extraire le JWT de la requête
      */
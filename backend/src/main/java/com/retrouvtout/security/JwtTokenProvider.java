@@ -1,12 +1,15 @@
 package com.retrouvtout.security;
 
+import com.retrouvtout.entity.User;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.util.Date;
+import java.util.UUID;
 
 /**
  * ✅ FOURNISSEUR JWT avec logs modérés pour la production
@@ -14,6 +17,18 @@ import java.util.Date;
 @Component
 public class JwtTokenProvider {
 
+    // Claims des tokens autoportés
+    public static final String CLAIM_TOKEN_VERSION = "ver";
+    public static final String CLAIM_ROLE = "role";
+    public static final String CLAIM_EMAIL = "email";
+    public static final String CLAIM_NAME = "name";
+    public static final String CLAIM_EMAIL_VERIFIED = "email_verified";
+
+    // Famille de refresh tokens (rotation), portée aussi par les tokens d'accès associés
+    public static final String CLAIM_FAMILY = "fam";
+    public static final String CLAIM_TYPE = "type";
+    public static final String TYPE_REFRESH = "refresh";
+
     @Value("${app.jwt.secret}")
     private String jwtSecret;
 
@@ -23,10 +38,57 @@ public class JwtTokenProvider {
     @Value("${app.jwt.refresh-expiration}")
     private long refreshTokenExpirationInMs;
 
+    @Value("${app.jwt.self-contained.enabled:false}")
+    private boolean selfContainedEnabled;
+
+    // Clé et parseur construits une seule fois (thread-safe)
+    private SecretKey signingKey;
+    private JwtParser jwtParser;
+
+    @PostConstruct
+    public void init() {
+        this.signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        this.jwtParser = Jwts.parserBuilder()
+            .setSigningKey(signingKey)
+            .build();
+    }
+
+    /**
+     * ✅ Analyser et valider le token en une seule passe
+     *
+     * @return les claims du token, ou null si le token est invalide ou expiré
+     */
+    public Claims parseClaims(String token) {
+        if (token == null || token.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            Claims claims = jwtParser.parseClaimsJws(token).getBody();
+            String userId = claims.getSubject();
+            return userId == null || userId.trim().isEmpty() ? null : claims;
+        } catch (ExpiredJwtException e) {
+            System.err.println("❌ Token expiré");
+            return null;
+        } catch (UnsupportedJwtException | MalformedJwtException | SecurityException | IllegalArgumentException e) {
+            System.err.println("❌ Token invalide: " + e.getClass().getSimpleName());
+            return null;
+        } catch (Exception e) {
+            System.err.println("❌ Erreur validation token: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * ✅ Générer un token d'accès JWT
      */
     public String generateToken(String userId) {
+        return generateToken(userId, null);
+    }
+
+    /**
+     * ✅ Générer un token d'accès JWT rattaché à une famille de refresh tokens
+     */
+    public String generateToken(String userId, String familyId) {
         try {
             if (userId == null || userId.trim().isEmpty()) {
                 throw new IllegalArgumentException("UserID ne peut pas être null ou vide");
@@ -34,13 +96,16 @@ public class JwtTokenProvider {
             
             Date now = new Date();
             Date expiryDate = new Date(now.getTime() + jwtExpirationInMs);
-            SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
-
-            String token = Jwts.builder()
+            JwtBuilder builder = Jwts.builder()
+                .setId(UUID.randomUUID().toString())
                 .setSubject(userId)
                 .setIssuedAt(now)
-                .setExpiration(expiryDate)
-                .signWith(key, SignatureAlgorithm.HS512)
+                .setExpiration(expiryDate);
+            if (familyId != null) {
+                builder.claim(CLAIM_FAMILY, familyId);
+            }
+            String token = builder
+                .signWith(signingKey, SignatureAlgorithm.HS512)
                 .compact();
 
             System.out.println("✅ Token JWT généré pour userId: " + userId);
@@ -52,18 +117,60 @@ public class JwtTokenProvider {
         }
     }
 
+    /**
+     * ✅ Générer un token d'accès pour un utilisateur
+     *
+     * Si les tokens autoportés sont activés, le token porte aussi le rôle, l'identité,
+     * la vérification de l'email et la version de token : le filtre JWT reconstruit
+     * alors le principal sans accès base. Sinon, token classique (subject seul).
+     */
+    public String generateToken(User user) {
+        return generateToken(user, null);
+    }
+
+    /**
+     * ✅ Générer un token d'accès pour un utilisateur, rattaché à une famille de refresh tokens
+     */
+    public String generateToken(User user, String familyId) {
+        if (!selfContainedEnabled) {
+            return generateToken(user.getId(), familyId);
+        }
+
+        try {
+            Date now = new Date();
+            Date expiryDate = new Date(now.getTime() + jwtExpirationInMs);
+            JwtBuilder builder = Jwts.builder()
+                .setId(UUID.randomUUID().toString())
+                .setSubject(user.getId())
+                .setIssuedAt(now)
+                .setExpiration(expiryDate);
+            if (familyId != null) {
+                builder.claim(CLAIM_FAMILY, familyId);
+            }
+            String token = builder
+                .claim(CLAIM_TOKEN_VERSION, user.getTokenVersion() != null ? user.getTokenVersion() : 0)
+                .claim(CLAIM_ROLE, user.getRole().getValue())
+                .claim(CLAIM_EMAIL, user.getEmail())
+                .claim(CLAIM_NAME, user.getName())
+                .claim(CLAIM_EMAIL_VERIFIED, Boolean.TRUE.equals(user.getEmailVerified()))
+                .signWith(signingKey, SignatureAlgorithm.HS512)
+                .compact();
+
+            System.out.println("✅ Token JWT autoporté généré pour userId: " + user.getId());
+            return token;
+
+        } catch (Exception e) {
+            System.err.println("❌ Erreur génération token: " + e.getMessage());
+            throw new RuntimeException("Impossible de générer le token JWT", e);
+        }
+    }
+
     /**
      * ✅ Extraire l'ID utilisateur depuis le token JWT
      */
     public String getUserIdFromToken(String token) {
         try {
-            SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
-            
-            Claims claims = Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+            Claims claims = jwtParser.parseClaimsJws(token).getBody();
 
             String userId = claims.getSubject();
             
@@ -97,12 +204,7 @@ public class JwtTokenProvider {
                 return false;
             }
             
-            SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
-            
-            Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(authToken);
+            jwtParser.parseClaimsJws(authToken);
             
             return true;
             
@@ -120,22 +222,28 @@ public class JwtTokenProvider {
 
     /**
      * ✅ Générer un refresh token JWT
+     *
+     * Chaque refresh token a son propre jti et appartient à une famille : à chaque
+     * rafraîchissement, l'ancien est révoqué et un nouveau est émis dans la même famille.
+     * Il porte la version de token de l'utilisateur : un changement de mot de passe,
+     * de rôle ou une désactivation l'invalide.
      */
-    public String generateRefreshToken(String userId) {
+    public String generateRefreshToken(User user, String familyId) {
         try {
             Date now = new Date();
             Date expiryDate = new Date(now.getTime() + refreshTokenExpirationInMs);
-            SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
-
             String token = Jwts.builder()
-                .setSubject(userId)
+                .setId(UUID.randomUUID().toString())
+                .setSubject(user.getId())
                 .setIssuedAt(now)
                 .setExpiration(expiryDate)
-                .claim("type", "refresh")
-                .signWith(key, SignatureAlgorithm.HS512)
+                .claim(CLAIM_TYPE, TYPE_REFRESH)
+                .claim(CLAIM_FAMILY, familyId)
+                .claim(CLAIM_TOKEN_VERSION, user.getTokenVersion() != null ? user.getTokenVersion() : 0)
+                .signWith(signingKey, SignatureAlgorithm.HS512)
                 .compact();
 
-            System.out.println("✅ Refresh token généré pour userId: " + userId);
+            System.out.println("✅ Refresh token généré pour userId: " + user.getId());
             return token;
             
         } catch (Exception e) {
@@ -149,13 +257,7 @@ public class JwtTokenProvider {
      */
     public Date getExpirationDateFromToken(String token) {
         try {
-            SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
-            
-            Claims claims = Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+            Claims claims = jwtParser.parseClaimsJws(token).getBody();
 
             return claims.getExpiration();
             
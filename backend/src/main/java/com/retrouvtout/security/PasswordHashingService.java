@@ -0,0 +1,156 @@
+package com.retrouvtout.security;
+
+import com.retrouvtout.exception.AppException;
+import com.retrouvtout.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hachage des mots de passe sur un exécuteur dédié et borné
+ *
+ * BCrypt est volontairement coûteux en CPU : exécuté sur les threads Tomcat,
+ * une rafale de tentatives de connexion occupe tous les cœurs et ralentit
+ * toute l'API. Ici, le hachage est limité à quelques threads avec une file
+ * bornée ; au-delà, la requête est refusée immédiatement (503 + Retry-After).
+ */
+@Component
+public class PasswordHashingService {
+
+    private static final long RETRY_AFTER_SECONDS = 2;
+
+    private final PasswordEncoder passwordEncoder;
+    private final MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor executor;
+    private Counter rejected;
+
+    @Value("${app.security.password.bcrypt-strength:12}")
+    private int bcryptStrength;
+
+    @Value("${app.security.password.hashing-threads:0}")
+    private int hashingThreads;
+
+    @Value("${app.security.password.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${app.security.password.timeout-ms:5000}")
+    private long timeoutMs;
+
+    @Autowired
+    public PasswordHashingService(PasswordEncoder passwordEncoder, MeterRegistry meterRegistry) {
+        this.passwordEncoder = passwordEncoder;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        // Par défaut, la moitié des cœurs : l'autre moitié reste disponible pour l'API
+        int threads = hashingThreads > 0
+            ? hashingThreads
+            : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                java.lang.Thread thread = new java.lang.Thread(runnable, "password-hashing-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+
+        this.rejected = Counter.builder("security.password.hashing.rejected")
+            .description("Hachages de mot de passe refusés (file pleine)")
+            .register(meterRegistry);
+        Gauge.builder("security.password.hashing.queue.depth", executor, e -> e.getQueue().size())
+            .description("Hachages de mot de passe en attente")
+            .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Hacher un mot de passe avec le coût configuré
+     */
+    public String encode(CharSequence rawPassword) {
+        return submit(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    /**
+     * Vérifier un mot de passe contre son hash
+     */
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return submit(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Le hash a-t-il été calculé avec un autre coût que celui configuré ?
+     * Sert au re-hachage transparent à la connexion après un changement de coût.
+     */
+    public boolean needsRehash(String encodedPassword) {
+        // Format BCrypt : $2a$NN$...
+        if (encodedPassword == null || encodedPassword.length() < 7 || encodedPassword.charAt(0) != '$') {
+            return false;
+        }
+        try {
+            int cost = Integer.parseInt(encodedPassword.substring(4, 6));
+            return cost != bcryptStrength;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // Méthodes privées
+
+    private <T> T submit(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            System.err.println("⛔ File de hachage des mots de passe pleine, requête refusée");
+            throw new ServiceUnavailableException(
+                "Service d'authentification saturé, veuillez réessayer", RETRY_AFTER_SECONDS);
+        }
+
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejected.increment();
+            throw new ServiceUnavailableException(
+                "Service d'authentification saturé, veuillez réessayer", RETRY_AFTER_SECONDS);
+        } catch (InterruptedException e) {
+            java.lang.Thread.currentThread().interrupt();
+            throw new AppException("Hachage du mot de passe interrompu", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new AppException("Erreur lors du hachage du mot de passe", cause);
+        }
+    }
+}
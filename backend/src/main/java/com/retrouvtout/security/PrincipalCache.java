@@ -0,0 +1,98 @@
+package com.retrouvtout.security;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Cache borné des principaux authentifiés, par ID utilisateur
+ *
+ * Évite de recharger l'utilisateur en base à chaque requête authentifiée.
+ * Les entrées expirent après un TTL court ; les changements qui affectent
+ * l'authentification (désactivation, rôle, mot de passe, vérification d'email)
+ * invalident explicitement l'entrée.
+ */
+@Component
+public class PrincipalCache {
+
+    @Value("${app.security.principal-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.security.principal-cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Value("${app.security.principal-cache.max-size:10000}")
+    private int maxSize;
+
+    private Map<String, CachedPrincipal> cache;
+
+    @PostConstruct
+    public void init() {
+        final int size = maxSize;
+        this.cache = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedPrincipal>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedPrincipal> eldest) {
+                    return size() > size;
+                }
+            });
+    }
+
+    /**
+     * Obtenir le principal d'un utilisateur, en le chargeant si absent ou expiré
+     */
+    public UserDetails get(String userId, Function<String, UserDetails> loader) {
+        if (!enabled) {
+            return loader.apply(userId);
+        }
+
+        long now = System.currentTimeMillis();
+        CachedPrincipal cached = cache.get(userId);
+        if (cached != null && cached.expiresAt > now) {
+            return cached.principal;
+        }
+
+        UserDetails loaded = loader.apply(userId);
+        cache.put(userId, new CachedPrincipal(loaded, now + ttlSeconds * 1000));
+        return loaded;
+    }
+
+    /**
+     * Invalider l'entrée d'un utilisateur, immédiatement et après le commit en cours
+     * (pour qu'une requête concurrente ne remette pas en cache l'état d'avant)
+     */
+    public void invalidate(String userId) {
+        cache.remove(userId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.remove(userId);
+                }
+            });
+        }
+    }
+
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    private static final class CachedPrincipal {
+        private final UserDetails principal;
+        private final long expiresAt;
+
+        private CachedPrincipal(UserDetails principal, long expiresAt) {
+            this.principal = principal;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
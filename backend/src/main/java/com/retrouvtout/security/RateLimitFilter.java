@@ -0,0 +1,171 @@
+package com.retrouvtout.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Filtre de limitation de débit de l'API
+ *
+ * Placé après le filtre JWT : un seau global par IP, puis un seau propre à la
+ * route (recherche, connexion, création d'annonce, envoi de message, upload),
+ * par utilisateur authentifié ou par IP. Au-delà : 429 avec Retry-After.
+ * Les fichiers servis (GET/HEAD /api/files/**) ont leur propre seau par IP, bien
+ * plus large, et ne consomment pas le seau global : une page d'annonces charge
+ * des dizaines d'images, et les lecteurs envoient plusieurs requêtes Range.
+ * X-Forwarded-For n'est lu que si la connexion vient d'un proxy de confiance.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final RateLimitService rateLimitService;
+    private final boolean trustForwardedFor;
+    private final Set<String> trustedProxies;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public RateLimitFilter(RateLimitService rateLimitService, boolean trustForwardedFor,
+                           Set<String> trustedProxies) {
+        this.rateLimitService = rateLimitService;
+        this.trustForwardedFor = trustForwardedFor;
+        this.trustedProxies = trustedProxies;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+
+        String clientIp = getClientIp(request);
+
+        long retryAfter;
+        RateLimitPolicy policy;
+        if (isFileRequest(request)) {
+            policy = RateLimitPolicy.FILES;
+            retryAfter = rateLimitService.tryConsume(policy, clientIp);
+        } else {
+            policy = RateLimitPolicy.GLOBAL;
+            retryAfter = rateLimitService.tryConsume(policy, clientIp);
+
+            RateLimitPolicy routePolicy = resolvePolicy(request);
+            if (retryAfter == 0 && routePolicy != null) {
+                String key = routePolicy.isPerUser() ? currentUserKey(clientIp) : clientIp;
+                retryAfter = rateLimitService.tryConsume(routePolicy, key);
+                policy = routePolicy;
+            }
+        }
+
+        if (retryAfter > 0) {
+            System.out.println("⛔ Limite de débit atteinte (" + policy.getKey() + ") pour "
+                + request.getMethod() + " " + request.getRequestURI());
+            writeTooManyRequests(request, response, retryAfter);
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !rateLimitService.isEnabled()
+            || !request.getRequestURI().startsWith("/api/")
+            || "OPTIONS".equals(request.getMethod());
+    }
+
+    // Méthodes privées
+
+    private boolean isFileRequest(HttpServletRequest request) {
+        String method = request.getMethod();
+        return ("GET".equals(method) || "HEAD".equals(method))
+            && request.getRequestURI().startsWith("/api/files/");
+    }
+
+    private RateLimitPolicy resolvePolicy(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        String method = request.getMethod();
+
+        if ("POST".equals(method)) {
+            if (path.equals("/api/auth/login") || path.equals("/api/auth/register")
+                    || path.equals("/api/auth/refresh")) {
+                return RateLimitPolicy.LOGIN;
+            }
+            if (path.equals("/api/listings")) {
+                return RateLimitPolicy.CREATE_LISTING;
+            }
+            if (path.equals("/api/messages")) {
+                return RateLimitPolicy.CREATE_MESSAGE;
+            }
+            // La finalisation d'un upload par morceaux a déjà été comptée à l'ouverture
+            if (path.startsWith("/api/upload/") && !path.endsWith("/complete")) {
+                return RateLimitPolicy.UPLOAD;
+            }
+        } else if ("PUT".equals(method)) {
+            if (path.startsWith("/api/upload/sessions/")) {
+                return RateLimitPolicy.UPLOAD_CHUNK;
+            }
+        } else if ("GET".equals(method)) {
+            if (path.equals("/api/listings") || path.equals("/api/messages/search")) {
+                return RateLimitPolicy.SEARCH;
+            }
+        }
+        return null;
+    }
+
+    private String currentUserKey(String clientIp) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof UserPrincipal) {
+            return "user:" + ((UserPrincipal) authentication.getPrincipal()).getId();
+        }
+        return clientIp;
+    }
+
+    private String getClientIp(HttpServletRequest request) {
+        String remoteAddr = request.getRemoteAddr();
+        if (!trustForwardedFor || !trustedProxies.contains(remoteAddr)) {
+            return "ip:" + remoteAddr;
+        }
+
+        String xForwardedFor = request.getHeader("X-Forwarded-For");
+        if (xForwardedFor == null || xForwardedFor.isEmpty()) {
+            return "ip:" + remoteAddr;
+        }
+
+        // Les entrées de gauche sont fournies par le client : on remonte depuis la droite
+        // jusqu'à la première adresse qui n'est pas un de nos proxies
+        String[] hops = xForwardedFor.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (!hop.isEmpty() && !trustedProxies.contains(hop)) {
+                return "ip:" + hop;
+            }
+        }
+        return "ip:" + remoteAddr;
+    }
+
+    private void writeTooManyRequests(HttpServletRequest request,
+                                      HttpServletResponse response,
+                                      long retryAfterSeconds) throws IOException {
+        response.setStatus(429);
+        response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        response.setContentType("application/json;charset=UTF-8");
+
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("success", false);
+        errorResponse.put("message", "Trop de requêtes, veuillez réessayer dans " + retryAfterSeconds + " s");
+        errorResponse.put("error", "Too Many Requests");
+        errorResponse.put("status", 429);
+        errorResponse.put("timestamp", LocalDateTime.now().toString());
+        errorResponse.put("path", request.getRequestURI());
+
+        response.getWriter().write(objectMapper.writeValueAsString(errorResponse));
+    }
+}
@@ -0,0 +1,44 @@
+package com.retrouvtout.security;
+
+import com.retrouvtout.util.AppConstants;
+
+/**
+ * Politiques de limitation de débit par route
+ *
+ * Les valeurs par défaut peuvent être surchargées par
+ * app.rate-limit.policies.{clé}.capacity et .period-seconds.
+ */
+public enum RateLimitPolicy {
+
+    GLOBAL("global", 300, 60, false),                 // toute l'API, par IP
+    FILES("files", 3000, 60, false),                  // images servies (GET /api/files/**), par IP, hors global
+    SEARCH("search", 60, 60, false),                  // recherche d'annonces et de messages, par IP
+    LOGIN("login", 10, 60, false),                    // connexion, inscription, refresh, par IP
+    CREATE_LISTING("create-listing", AppConstants.MAX_LISTINGS_PER_DAY, 86400, true),
+    CREATE_MESSAGE("create-message", AppConstants.MAX_MESSAGES_PER_HOUR, 3600, true),
+    UPLOAD("upload", 30, 3600, true),
+    UPLOAD_CHUNK("upload-chunk", 600, 3600, true);    // morceaux d'un upload par sessions (PUT)
+
+    private final String key;
+    private final long defaultCapacity;
+    private final long defaultPeriodSeconds;
+    private final boolean perUser;
+
+    RateLimitPolicy(String key, long defaultCapacity, long defaultPeriodSeconds, boolean perUser) {
+        this.key = key;
+        this.defaultCapacity = defaultCapacity;
+        this.defaultPeriodSeconds = defaultPeriodSeconds;
+        this.perUser = perUser;
+    }
+
+    public String getKey() { return key; }
+
+    public long getDefaultCapacity() { return defaultCapacity; }
+
+    public long getDefaultPeriodSeconds() { return defaultPeriodSeconds; }
+
+    /**
+     * Compté par utilisateur authentifié (par IP pour un appel anonyme)
+     */
+    public boolean isPerUser() { return perUser; }
+}
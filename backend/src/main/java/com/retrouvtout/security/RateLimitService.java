@@ -0,0 +1,175 @@
+package com.retrouvtout.security;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.Refill;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limitation de débit par seaux à jetons (bucket4j)
+ *
+ * Mode "local" (par défaut) : un seau bucket4j sans verrou par (politique, clé),
+ * les seaux inactifs depuis une période complète sont oubliés (un seau plein
+ * équivaut à un seau neuf). Mode "redis" : compteur par fenêtre fixe partagé
+ * entre les nœuds (INCR + EXPIRE), avec repli sur le seau local si Redis échoue.
+ */
+@Component
+public class RateLimitService {
+
+    public static final String MODE_REDIS = "redis";
+
+    private static final String REDIS_KEY_PREFIX = "rl:";
+
+    private final ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+
+    // "politique:clé" -> seau local
+    private final ConcurrentHashMap<String, LocalBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<RateLimitPolicy, Limit> limits = new EnumMap<>(RateLimitPolicy.class);
+    private final Map<RateLimitPolicy, Counter> rejections = new EnumMap<>(RateLimitPolicy.class);
+
+    @Value("${app.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.rate-limit.mode:local}")
+    private String mode;
+
+    @Autowired
+    public RateLimitService(ObjectProvider<StringRedisTemplate> redisTemplateProvider,
+                            MeterRegistry meterRegistry,
+                            Environment environment) {
+        this.redisTemplateProvider = redisTemplateProvider;
+        this.meterRegistry = meterRegistry;
+        this.environment = environment;
+    }
+
+    @PostConstruct
+    public void init() {
+        for (RateLimitPolicy policy : RateLimitPolicy.values()) {
+            String prefix = "app.rate-limit.policies." + policy.getKey() + ".";
+            long capacity = environment.getProperty(prefix + "capacity", Long.class, policy.getDefaultCapacity());
+            long periodSeconds = environment.getProperty(prefix + "period-seconds", Long.class,
+                policy.getDefaultPeriodSeconds());
+            limits.put(policy, new Limit(capacity, periodSeconds));
+
+            rejections.put(policy, Counter.builder("ratelimit.rejected")
+                .description("Requêtes refusées par la limitation de débit")
+                .tag("policy", policy.getKey())
+                .register(meterRegistry));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Consommer un jeton
+     *
+     * @return 0 si la requête est acceptée, sinon le délai d'attente en secondes (au moins 1)
+     */
+    public long tryConsume(RateLimitPolicy policy, String key) {
+        if (!enabled || key == null) {
+            return 0;
+        }
+
+        long retryAfterSeconds = MODE_REDIS.equalsIgnoreCase(mode)
+            ? tryConsumeDistributed(policy, key)
+            : tryConsumeLocal(policy, key);
+
+        if (retryAfterSeconds > 0) {
+            rejections.get(policy).increment();
+        }
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Oublier les seaux inactifs depuis au moins une période de recharge
+     */
+    @Scheduled(fixedDelayString = "${app.rate-limit.cleanup-interval-ms:60000}")
+    public void evictIdleBuckets() {
+        long now = System.currentTimeMillis();
+        buckets.entrySet().removeIf(entry -> now - entry.getValue().lastAccess > entry.getValue().idleAfterMs);
+    }
+
+    // Méthodes privées
+
+    private long tryConsumeLocal(RateLimitPolicy policy, String key) {
+        Limit limit = limits.get(policy);
+        LocalBucket bucket = buckets.computeIfAbsent(policy.getKey() + ':' + key, k -> new LocalBucket(limit));
+        bucket.lastAccess = System.currentTimeMillis();
+
+        ConsumptionProbe probe = bucket.bucket.tryConsumeAndReturnRemaining(1);
+        if (probe.isConsumed()) {
+            return 0;
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(probe.getNanosToWaitForRefill() + 999_999_999L));
+    }
+
+    private long tryConsumeDistributed(RateLimitPolicy policy, String key) {
+        StringRedisTemplate redis = redisTemplateProvider.getIfAvailable();
+        if (redis == null) {
+            return tryConsumeLocal(policy, key);
+        }
+
+        Limit limit = limits.get(policy);
+        long nowSeconds = System.currentTimeMillis() / 1000;
+        long window = nowSeconds / limit.periodSeconds;
+        String redisKey = REDIS_KEY_PREFIX + policy.getKey() + ':' + key + ':' + window;
+
+        try {
+            Long count = redis.opsForValue().increment(redisKey);
+            if (count != null && count == 1) {
+                redis.expire(redisKey, Duration.ofSeconds(limit.periodSeconds));
+            }
+            if (count == null || count <= limit.capacity) {
+                return 0;
+            }
+            return Math.max(1, (window + 1) * limit.periodSeconds - nowSeconds);
+        } catch (Exception e) {
+            System.err.println("⚠️ Limitation de débit Redis indisponible, repli local: " + e.getMessage());
+            return tryConsumeLocal(policy, key);
+        }
+    }
+
+    private static final class Limit {
+        private final long capacity;
+        private final long periodSeconds;
+
+        private Limit(long capacity, long periodSeconds) {
+            this.capacity = capacity;
+            this.periodSeconds = Math.max(1, periodSeconds);
+        }
+    }
+
+    private static final class LocalBucket {
+        private final Bucket bucket;
+        private final long idleAfterMs;
+        private volatile long lastAccess;
+
+        private LocalBucket(Limit limit) {
+            Duration period = Duration.ofSeconds(limit.periodSeconds);
+            this.bucket = Bucket.builder()
+                .addLimit(Bandwidth.classic(limit.capacity, Refill.greedy(limit.capacity, period)))
+                .build();
+            this.idleAfterMs = period.toMillis();
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.retrouvtout.security;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Révocation des tokens (jti) et des familles de refresh tokens
+ *
+ * Le contrôle courant passe par un filtre de Bloom en mémoire : un identifiant
+ * absent du filtre n'est pas révoqué, sans autre accès. Les positifs sont
+ * confirmés par l'ensemble exact local (identifiant -> expiration), puis par
+ * Redis si activé (zset partagé, score = expiration). Les révocations sont
+ * diffusées aux autres nœuds par pub/sub. Sans Redis, elles sont persistées dans
+ * la table revoked_tokens (rechargée au démarrage) : une déconnexion ou un refresh
+ * token consommé reste révoqué après un redémarrage, et la clé primaire détecte
+ * la réutilisation d'un refresh token. Les entrées expirées sont compactées
+ * périodiquement et le filtre est reconstruit.
+ */
+@Component
+public class TokenRevocationService {
+
+    private static final String REDIS_KEY = "auth:revoked";
+    private static final String REDIS_CHANNEL = "auth:revocations";
+    private static final char SEPARATOR = '|';
+    private static final int DELETE_BATCH_SIZE = 10_000;
+
+    private final ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+    private final ObjectProvider<RedisConnectionFactory> connectionFactoryProvider;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    // identifiant révoqué (jti ou famille) -> expiration en millisecondes
+    private final ConcurrentHashMap<String, Long> revoked = new ConcurrentHashMap<>();
+
+    private volatile RevocationBloomFilter bloomFilter;
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Value("${app.security.revocation.expected-entries:100000}")
+    private int expectedEntries;
+
+    @Value("${app.security.revocation.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${app.security.revocation.redis-enabled:false}")
+    private boolean redisEnabled;
+
+    @Value("${app.security.revocation.db-enabled:true}")
+    private boolean dbEnabled;
+
+    // Persistance en base, utilisée seulement quand Redis n'est pas activé
+    private boolean databaseEnabled;
+
+    @Value("${app.jwt.refresh-expiration}")
+    private long refreshTokenExpirationInMs;
+
+    @Autowired
+    public TokenRevocationService(ObjectProvider<StringRedisTemplate> redisTemplateProvider,
+                                  ObjectProvider<RedisConnectionFactory> connectionFactoryProvider,
+                                  JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager) {
+        this.redisTemplateProvider = redisTemplateProvider;
+        this.connectionFactoryProvider = connectionFactoryProvider;
+        this.jdbcTemplate = jdbcTemplate;
+        // Transaction propre : une révocation reste écrite même si l'appelant annule la sienne
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PostConstruct
+    public void init() {
+        this.bloomFilter = new RevocationBloomFilter(expectedEntries, falsePositiveRate);
+        this.databaseEnabled = !redisEnabled && dbEnabled;
+        if (redisEnabled) {
+            loadFromRedis();
+            subscribe();
+        } else if (databaseEnabled) {
+            loadFromDatabase();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        if (listenerContainer != null) {
+            listenerContainer.stop();
+            listenerContainer.destroy();
+        }
+    }
+
+    /**
+     * Vérifier si un identifiant (jti ou famille) est révoqué
+     * Cas courant : un seul passage dans le filtre de Bloom, sans allocation
+     */
+    public boolean isRevoked(String id) {
+        if (id == null || !bloomFilter.mightContain(id)) {
+            return false;
+        }
+
+        Long expiresAt = revoked.get(id);
+        if (expiresAt != null) {
+            return expiresAt > System.currentTimeMillis();
+        }
+        return redisEnabled && isRevokedInRedis(id);
+    }
+
+    /**
+     * Révoquer un identifiant jusqu'à son expiration
+     */
+    public void revoke(String id, long expiresAtMillis) {
+        revokeIfAbsent(id, expiresAtMillis);
+    }
+
+    /**
+     * Révoquer une famille de refresh tokens (et les tokens d'accès qui la portent)
+     */
+    public void revokeFamily(String familyId) {
+        revoke(familyId, System.currentTimeMillis() + refreshTokenExpirationInMs);
+    }
+
+    /**
+     * Révoquer un identifiant s'il ne l'est pas déjà
+     *
+     * @return true si l'identifiant vient d'être révoqué, false s'il l'était déjà
+     *         (utilisé pour détecter la réutilisation d'un refresh token)
+     */
+    public boolean revokeIfAbsent(String id, long expiresAtMillis) {
+        if (id == null || expiresAtMillis <= System.currentTimeMillis()) {
+            return true;
+        }
+
+        boolean added = revoked.putIfAbsent(id, expiresAtMillis) == null;
+        bloomFilter.put(id);
+
+        if (redisEnabled) {
+            StringRedisTemplate redis = redisTemplateProvider.getIfAvailable();
+            if (redis != null) {
+                try {
+                    Boolean addedInRedis = redis.opsForZSet().addIfAbsent(REDIS_KEY, id, expiresAtMillis);
+                    if (added) {
+                        redis.convertAndSend(REDIS_CHANNEL, id + SEPARATOR + expiresAtMillis);
+                    }
+                    added = added && !Boolean.FALSE.equals(addedInRedis);
+                } catch (Exception e) {
+                    System.err.println("⚠️ Erreur d'écriture Redis de la révocation: " + e.getMessage());
+                }
+            }
+        } else if (databaseEnabled) {
+            // Déjà en base : révoqué avant un redémarrage, ou par un autre nœud
+            added = insertInDatabase(id, expiresAtMillis) && added;
+        }
+        return added;
+    }
+
+    /**
+     * Compaction : retirer les révocations expirées et reconstruire le filtre
+     */
+    @Scheduled(fixedDelayString = "${app.security.revocation.compaction-interval-ms:300000}")
+    public void compact() {
+        long now = System.currentTimeMillis();
+        revoked.entrySet().removeIf(entry -> entry.getValue() <= now);
+
+        RevocationBloomFilter rebuilt = new RevocationBloomFilter(
+            Math.max(expectedEntries, revoked.size() * 2), falsePositiveRate);
+        for (String id : revoked.keySet()) {
+            rebuilt.put(id);
+        }
+        bloomFilter = rebuilt;
+
+        // Une révocation arrivée pendant la reconstruction est rejouée dans le nouveau filtre
+        for (String id : revoked.keySet()) {
+            rebuilt.put(id);
+        }
+
+        if (redisEnabled) {
+            StringRedisTemplate redis = redisTemplateProvider.getIfAvailable();
+            if (redis != null) {
+                try {
+                    redis.opsForZSet().removeRangeByScore(REDIS_KEY, 0, now);
+                } catch (Exception e) {
+                    System.err.println("⚠️ Erreur de compaction Redis des révocations: " + e.getMessage());
+                }
+            }
+        } else if (databaseEnabled) {
+            deleteExpiredFromDatabase(now);
+        }
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+
+    // Méthodes privées
+
+    private boolean isRevokedInRedis(String id) {
+        StringRedisTemplate redis = redisTemplateProvider.getIfAvailable();
+        if (redis == null) {
+            return false;
+        }
+        try {
+            Double expiresAt = redis.opsForZSet().score(REDIS_KEY, id);
+            if (expiresAt == null) {
+                return false;
+            }
+            revoked.put(id, expiresAt.longValue());
+            return expiresAt.longValue() > System.currentTimeMillis();
+        } catch (Exception e) {
+            System.err.println("⚠️ Erreur de lecture Redis de la révocation: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Enregistrer la révocation en base
+     *
+     * @return false si l'identifiant y était déjà
+     */
+    private boolean insertInDatabase(String id, long expiresAtMillis) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(
+                "INSERT INTO revoked_tokens (id, expires_at) VALUES (?, ?)", id, expiresAtMillis));
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        } catch (Exception e) {
+            // La révocation reste active en mémoire jusqu'au prochain redémarrage
+            System.err.println("⚠️ Erreur d'écriture en base de la révocation: " + e.getMessage());
+            return true;
+        }
+    }
+
+    private void loadFromDatabase() {
+        try {
+            jdbcTemplate.query("SELECT id, expires_at FROM revoked_tokens WHERE expires_at > ?", rs -> {
+                String id = rs.getString(1);
+                revoked.put(id, rs.getLong(2));
+                bloomFilter.put(id);
+            }, System.currentTimeMillis());
+            System.out.println("🔒 Révocations chargées depuis la base: " + revoked.size());
+        } catch (Exception e) {
+            System.err.println("⚠️ Erreur de chargement en base des révocations: " + e.getMessage());
+        }
+    }
+
+    private void deleteExpiredFromDatabase(long now) {
+        try {
+            // Par lots : pas de long verrou sur l'index d'expiration
+            int deleted;
+            do {
+                deleted = jdbcTemplate.update(
+                    "DELETE FROM revoked_tokens WHERE expires_at <= ? LIMIT " + DELETE_BATCH_SIZE, now);
+            } while (deleted == DELETE_BATCH_SIZE);
+        } catch (Exception e) {
+            System.err.println("⚠️ Erreur de compaction en base des révocations: " + e.getMessage());
+        }
+    }
+
+    private void loadFromRedis() {
+        StringRedisTemplate redis = redisTemplateProvider.getIfAvailable();
+        if (redis == null) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            Set<ZSetOperations.TypedTuple<String>> entries =
+                redis.opsForZSet().rangeByScoreWithScores(REDIS_KEY, now, Double.MAX_VALUE);
+            if (entries != null) {
+                for (ZSetOperations.TypedTuple<String> entry : entries) {
+                    if (entry.getValue() != null && entry.getScore() != null) {
+                        revoked.put(entry.getValue(), entry.getScore().longValue());
+                        bloomFilter.put(entry.getValue());
+                    }
+                }
+            }
+            System.out.println("🔒 Révocations chargées depuis Redis: " + revoked.size());
+        } catch (Exception e) {
+            System.err.println("⚠️ Erreur de chargement Redis des révocations: " + e.getMessage());
+        }
+    }
+
+    private void subscribe() {
+        RedisConnectionFactory connectionFactory = connectionFactoryProvider.getIfAvailable();
+        if (connectionFactory == null) {
+            return;
+        }
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.addMessageListener((message, pattern) -> onRemoteRevocation(
+            new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(REDIS_CHANNEL));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    private void onRemoteRevocation(String payload) {
+        int separator = payload.lastIndexOf(SEPARATOR);
+        if (separator <= 0) {
+            return;
+        }
+        try {
+            String id = payload.substring(0, separator);
+            long expiresAt = Long.parseLong(payload.substring(separator + 1));
+            revoked.merge(id, expiresAt, Math::max);
+            bloomFilter.put(id);
+        } catch (NumberFormatException e) {
+            System.err.println("⚠️ Révocation distante invalide: " + payload);
+        }
+    }
+}
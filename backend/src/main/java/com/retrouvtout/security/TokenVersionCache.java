@@ -0,0 +1,93 @@
+package com.retrouvtout.security;
+
+import com.retrouvtout.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Table en cache des versions de token par utilisateur
+ *
+ * Sert de contrôle de révocation pour les tokens autoportés : un token dont la
+ * version ne correspond plus (rôle changé, compte désactivé) est refusé. Les
+ * utilisateurs inactifs sont aussi mis en cache, avec une version impossible.
+ */
+@Component
+public class TokenVersionCache {
+
+    private static final int INACTIVE = -1;
+
+    private final UserRepository userRepository;
+
+    @Value("${app.jwt.self-contained.version-cache-ttl-seconds:30}")
+    private long ttlSeconds;
+
+    @Value("${app.jwt.self-contained.version-cache-max-size:50000}")
+    private int maxSize;
+
+    private Map<String, CachedVersion> cache;
+
+    @Autowired
+    public TokenVersionCache(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    @PostConstruct
+    public void init() {
+        final int size = maxSize;
+        this.cache = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedVersion>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedVersion> eldest) {
+                    return size() > size;
+                }
+            });
+    }
+
+    /**
+     * Vérifier qu'un token porte la version courante d'un utilisateur actif
+     */
+    public boolean isCurrent(String userId, int tokenVersion) {
+        long now = System.currentTimeMillis();
+        CachedVersion cached = cache.get(userId);
+        if (cached == null || cached.expiresAt <= now) {
+            int version = userRepository.findActiveTokenVersion(userId).orElse(INACTIVE);
+            cached = new CachedVersion(version, now + ttlSeconds * 1000);
+            cache.put(userId, cached);
+        }
+        return cached.version != INACTIVE && cached.version == tokenVersion;
+    }
+
+    /**
+     * Oublier la version d'un utilisateur, immédiatement et après le commit en cours
+     */
+    public void invalidate(String userId) {
+        cache.remove(userId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.remove(userId);
+                }
+            });
+        }
+    }
+
+    private static final class CachedVersion {
+        private final int version;
+        private final long expiresAt;
+
+        private CachedVersion(int version, long expiresAt) {
+            this.version = version;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
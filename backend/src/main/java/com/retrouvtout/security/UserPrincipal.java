@@ -48,6 +48,30 @@ public class UserPrincipal implements UserDetails {
      * Rôles STRICTEMENT conformes au cahier des charges - Section 3.1
      */
     public static UserPrincipal create(User user) {
+        return new UserPrincipal(
+                user.getId(),
+                user.getName(),
+                user.getEmail(),
+                user.getPasswordHash(),
+                authoritiesFor(user.getRole()),
+                user.getActive(),
+                user.getEmailVerified()
+        );
+    }
+
+    /**
+     * Créer un UserPrincipal à partir des claims d'un token autoporté (sans accès base)
+     * Le compte est actif par construction : la version du token a déjà été vérifiée
+     */
+    public static UserPrincipal fromTokenClaims(String id, String name, String email,
+                                                User.UserRole role, boolean emailVerified) {
+        return new UserPrincipal(id, name, email, null, authoritiesFor(role), true, emailVerified);
+    }
+
+    /**
+     * Autorités associées à un rôle
+     */
+    public static List<GrantedAuthority> authoritiesFor(User.UserRole role) {
         List<GrantedAuthority> authorities = new ArrayList<>();
         
         // Ajouter le rôle de base pour tous les utilisateurs authentifiés
@@ -55,7 +79,7 @@ public class UserPrincipal implements UserDetails {
         
         // Ajouter des rôles spécifiques selon le type d'utilisateur
         // UNIQUEMENT les deux rôles définis dans le cahier des charges
-        switch (user.getRole()) {
+        switch (role) {
             case RETROUVEUR:
                 authorities.add(new SimpleGrantedAuthority("ROLE_FINDER"));
                 break;
@@ -64,15 +88,7 @@ public class UserPrincipal implements UserDetails {
                 break;
         }
 
-        return new UserPrincipal(
-                user.getId(),
-                user.getName(),
-                user.getEmail(),
-                user.getPasswordHash(),
-                authorities,
-                user.getActive(),
-                user.getEmailVerified()
-        );
+        return authorities;
     }
 
     public String getId() {
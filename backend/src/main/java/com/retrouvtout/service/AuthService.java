@@ -6,30 +6,45 @@ import com.retrouvtout.dto.response.AuthResponse;
 import com.retrouvtout.dto.response.UserResponse;
 import com.retrouvtout.entity.User;
 import com.retrouvtout.repository.UserRepository;
+import com.retrouvtout.exception.ServiceUnavailableException;
 import com.retrouvtout.security.JwtTokenProvider;
+import com.retrouvtout.security.PasswordHashingService;
+import com.retrouvtout.security.TokenRevocationService;
 import com.retrouvtout.util.ModelMapper;
+import io.jsonwebtoken.Claims;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.authentication.BadCredentialsException;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.UUID;
 
 /**
  * ✅ SERVICE D'AUTHENTIFICATION CORRIGÉ
  * Suppression des validations causant l'erreur 500
+ *
+ * Pas de transaction englobante : BCrypt peut attendre l'exécuteur de hachage
+ * jusqu'à son délai, sans garder de connexion du pool. La lecture de
+ * l'utilisateur et les écritures se font chacune dans une courte transaction.
  */
 @Service
-@Transactional
 public class AuthService {
 
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
     private final JwtTokenProvider tokenProvider;
     private final ModelMapper modelMapper;
+    private final TokenRevocationService tokenRevocationService;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
 
     @Value("${app.jwt.expiration:86400000}")
     private long jwtExpirationInMs;
@@ -39,13 +54,19 @@ public class AuthService {
 
     @Autowired
     public AuthService(UserRepository userRepository,
-                      PasswordEncoder passwordEncoder,
+                      PasswordHashingService passwordHashingService,
                       JwtTokenProvider tokenProvider,
-                      ModelMapper modelMapper) {
+                      ModelMapper modelMapper,
+                      TokenRevocationService tokenRevocationService,
+                      PlatformTransactionManager transactionManager) {
         this.userRepository = userRepository;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHashingService = passwordHashingService;
         this.tokenProvider = tokenProvider;
         this.modelMapper = modelMapper;
+        this.tokenRevocationService = tokenRevocationService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
     }
 
     /**
@@ -59,9 +80,12 @@ public class AuthService {
             String email = request.getEmail().trim().toLowerCase();
             System.out.println("✅ Email normalisé: " + email);
 
-            // Recherche de l'utilisateur
-            User user = userRepository.findByEmailAndActiveTrue(email)
-                .orElseThrow(() -> new BadCredentialsException("Email ou mot de passe incorrect"));
+            // Recherche de l'utilisateur (transaction courte, connexion rendue avant le hachage)
+            User user = readOnlyTransactionTemplate.execute(status ->
+                    userRepository.findByEmailAndActiveTrue(email).orElse(null));
+            if (user == null) {
+                throw new BadCredentialsException("Email ou mot de passe incorrect");
+            }
             
             System.out.println("✅ Utilisateur trouvé: " + user.getId());
 
@@ -75,17 +99,38 @@ public class AuthService {
                 throw new BadCredentialsException("Ce compte n'a pas de mot de passe défini");
             }
 
-            if (!passwordEncoder.matches(request.getPassword(), user.getPasswordHash())) {
+            // Hachage sur l'exécuteur dédié : une rafale de tentatives ne sature pas Tomcat
+            if (!passwordHashingService.matches(request.getPassword(), user.getPasswordHash())) {
                 System.out.println("❌ Mot de passe incorrect pour: " + email);
                 throw new BadCredentialsException("Email ou mot de passe incorrect");
             }
             
             System.out.println("✅ Mot de passe vérifié");
 
-            // Mise à jour de la dernière connexion
+            // Re-hachage transparent si le coût BCrypt configuré a changé (hors transaction)
+            String previousHash = user.getPasswordHash();
+            String rehashed = null;
+            if (passwordHashingService.needsRehash(previousHash)) {
+                try {
+                    rehashed = passwordHashingService.encode(request.getPassword());
+                } catch (ServiceUnavailableException e) {
+                    // Sera refait à la prochaine connexion
+                    System.out.println("ℹ️ Re-hachage reporté: " + e.getMessage());
+                }
+            }
+
+            // Mise à jour de la dernière connexion et du hachage, dans une transaction séparée
+            LocalDateTime loginAt = LocalDateTime.now();
+            String newHash = rehashed;
             try {
-                user.setLastLoginAt(LocalDateTime.now());
-                userRepository.save(user);
+                transactionTemplate.executeWithoutResult(status -> {
+                    userRepository.updateLastLoginAt(user.getId(), loginAt);
+                    // Seulement si le mot de passe n'a pas changé pendant la vérification
+                    if (newHash != null && userRepository.replacePasswordHash(user.getId(), previousHash, newHash) > 0) {
+                        System.out.println("✅ Mot de passe re-haché avec le coût actuel");
+                    }
+                });
+                user.setLastLoginAt(loginAt);
                 System.out.println("✅ Dernière connexion mise à jour");
             } catch (Exception e) {
                 System.err.println("⚠️ Erreur lors de la mise à jour de la dernière connexion: " + e.getMessage());
@@ -98,7 +143,7 @@ public class AuthService {
 
             return authResponse;
 
-        } catch (BadCredentialsException | IllegalStateException e) {
+        } catch (BadCredentialsException | IllegalStateException | ServiceUnavailableException e) {
             System.out.println("❌ Erreur d'authentification: " + e.getMessage());
             throw e;
         } catch (Exception e) {
@@ -123,8 +168,9 @@ public class AuthService {
             
             System.out.println("✅ Données normalisées - Email: " + email);
 
-            // Vérification de l'unicité de l'email
-            if (userRepository.existsByEmailAndActiveTrue(email)) {
+            // Vérification de l'unicité de l'email (transaction courte)
+            if (Boolean.TRUE.equals(readOnlyTransactionTemplate.execute(status ->
+                    userRepository.existsByEmailAndActiveTrue(email)))) {
                 throw new IllegalArgumentException("Un utilisateur avec cet email existe déjà");
             }
             System.out.println("✅ Email unique vérifié");
@@ -133,12 +179,12 @@ public class AuthService {
             User.UserRole role = determineUserRole(request.getRole());
             System.out.println("✅ Rôle déterminé: " + role.getValue());
 
-            // Création de l'utilisateur
+            // Création de l'utilisateur : hachage hors transaction
             User user = new User();
             user.setId(java.util.UUID.randomUUID().toString());
             user.setName(name);
             user.setEmail(email);
-            user.setPasswordHash(passwordEncoder.encode(request.getPassword()));
+            user.setPasswordHash(passwordHashingService.encode(request.getPassword()));
             user.setPhone(phone);
             user.setRole(role);
             user.setEmailVerified(false);
@@ -146,7 +192,7 @@ public class AuthService {
             
             System.out.println("✅ Entité utilisateur créée");
 
-            // Sauvegarde
+            // Sauvegarde (transaction propre au repository)
             User savedUser = userRepository.save(user);
             System.out.println("✅ Utilisateur sauvegardé avec ID: " + savedUser.getId());
 
@@ -156,7 +202,7 @@ public class AuthService {
 
             return authResponse;
 
-        } catch (IllegalArgumentException e) {
+        } catch (IllegalArgumentException | ServiceUnavailableException e) {
             System.out.println("❌ Erreur de validation: " + e.getMessage());
             throw e;
         } catch (DataIntegrityViolationException e) {
@@ -180,22 +226,53 @@ public class AuthService {
                 throw new IllegalArgumentException("Token de rafraîchissement manquant");
             }
 
-            if (!tokenProvider.validateToken(refreshToken)) {
+            Claims claims = tokenProvider.parseClaims(refreshToken);
+            if (claims == null || !JwtTokenProvider.TYPE_REFRESH.equals(claims.get(JwtTokenProvider.CLAIM_TYPE))) {
+                throw new IllegalArgumentException("Token de rafraîchissement invalide ou expiré");
+            }
+
+            String userId = claims.getSubject();
+            String familyId = claims.get(JwtTokenProvider.CLAIM_FAMILY, String.class);
+            if (tokenRevocationService.isRevoked(familyId)) {
+                throw new IllegalArgumentException("Token de rafraîchissement révoqué");
+            }
+
+            // Rotation : le refresh token présenté est consommé ; s'il l'était déjà,
+            // il a été volé ou rejoué et toute la famille est révoquée.
+            // Les anciens refresh tokens sans jti sont consommés sous l'empreinte du token.
+            String tokenId = claims.getId() != null ? claims.getId() : legacyTokenId(refreshToken);
+            if (!tokenRevocationService.revokeIfAbsent(tokenId, claims.getExpiration().getTime())) {
+                System.err.println("🚨 Réutilisation d'un refresh token détectée pour userId: " + userId);
+                tokenRevocationService.revokeFamily(familyId);
                 throw new IllegalArgumentException("Token de rafraîchissement invalide ou expiré");
             }
 
-            String userId = tokenProvider.getUserIdFromToken(refreshToken);
             User user = userRepository.findByIdAndActiveTrue(userId)
                 .orElseThrow(() -> new IllegalArgumentException("Utilisateur non trouvé ou inactif"));
 
-            String newAccessToken = tokenProvider.generateToken(userId);
+            // Version dépassée (mot de passe, rôle, désactivation) : toute la famille est révoquée
+            Object version = claims.get(JwtTokenProvider.CLAIM_TOKEN_VERSION);
+            int currentVersion = user.getTokenVersion() != null ? user.getTokenVersion() : 0;
+            if (version instanceof Number && ((Number) version).intValue() != currentVersion) {
+                if (familyId != null) {
+                    tokenRevocationService.revokeFamily(familyId);
+                }
+                throw new IllegalArgumentException("Token de rafraîchissement révoqué");
+            }
+
+            // Les anciens refresh tokens (sans famille) démarrent une nouvelle famille
+            if (familyId == null) {
+                familyId = UUID.randomUUID().toString();
+            }
+            String newAccessToken = tokenProvider.generateToken(user, familyId);
+            String newRefreshToken = tokenProvider.generateRefreshToken(user, familyId);
             UserResponse userResponse = modelMapper.mapUserToUserResponse(user);
 
             System.out.println("✅ Token rafraîchi pour utilisateur: " + userId);
 
             return new AuthResponse(
                 newAccessToken,
-                refreshToken,
+                newRefreshToken,
                 "Bearer",
                 jwtExpirationInMs / 1000,
                 userResponse
@@ -215,9 +292,15 @@ public class AuthService {
      */
     public void logout(String accessToken) {
         try {
-            if (accessToken != null && !accessToken.trim().isEmpty()) {
-                String userId = tokenProvider.getUserIdFromToken(accessToken);
-                System.out.println("✅ Utilisateur déconnecté: " + userId);
+            Claims claims = tokenProvider.parseClaims(accessToken);
+            if (claims != null) {
+                // Révoquer le token d'accès et la famille de refresh tokens associée
+                tokenRevocationService.revoke(claims.getId(), claims.getExpiration().getTime());
+                String familyId = claims.get(JwtTokenProvider.CLAIM_FAMILY, String.class);
+                if (familyId != null) {
+                    tokenRevocationService.revokeFamily(familyId);
+                }
+                System.out.println("✅ Utilisateur déconnecté: " + claims.getSubject());
             }
         } catch (Exception e) {
             System.out.println("ℹ️ Déconnexion sans validation de token");
@@ -226,6 +309,18 @@ public class AuthService {
 
     // Méthodes utilitaires privées
 
+    /**
+     * Identifiant de révocation d'un refresh token émis sans jti : SHA-256 du token
+     */
+    private String legacyTokenId(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return "legacy:" + HexFormat.of().formatHex(digest.digest(token.trim().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+
     private User.UserRole determineUserRole(String roleString) {
         if (roleString == null || roleString.trim().isEmpty()) {
             return User.UserRole.MIXTE;
@@ -241,8 +336,9 @@ public class AuthService {
 
     private AuthResponse generateAuthTokens(User user) {
         try {
-            String accessToken = tokenProvider.generateToken(user.getId());
-            String refreshToken = tokenProvider.generateRefreshToken(user.getId());
+            String familyId = UUID.randomUUID().toString();
+            String accessToken = tokenProvider.generateToken(user, familyId);
+            String refreshToken = tokenProvider.generateRefreshToken(user, familyId);
             UserResponse userResponse = modelMapper.mapUserToUserResponse(user);
 
             return new AuthResponse(
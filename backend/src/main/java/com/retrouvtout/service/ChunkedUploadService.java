@@ -0,0 +1,384 @@
+package com.retrouvtout.service;
+
+import com.retrouvtout.dto.response.UploadSessionResponse;
+import com.retrouvtout.exception.AppException;
+import com.retrouvtout.exception.ResourceNotFoundException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Upload d'images reprenable, par morceaux
+ *
+ * Protocole : ouverture d'une session (nom et taille annoncés), envoi des
+ * morceaux dans l'ordre avec leur position, puis finalisation. Chaque morceau
+ * est écrit directement dans un fichier préalloué (FileChannel) et haché au
+ * fil de l'eau ; le type réel est contrôlé sur les octets magiques du premier
+ * morceau. Après une coupure, le client relit la position reçue et reprend de
+ * là. Les sessions abandonnées sont supprimées périodiquement.
+ * Le verrou de session ne couvre que la lecture et la mise à jour de l'état :
+ * le corps d'un morceau est lu hors verrou, un seul envoi à la fois par session.
+ */
+@Service
+public class ChunkedUploadService {
+
+    private static final String SESSION_FILE_PREFIX = "chunked-";
+    private static final String SESSION_FILE_SUFFIX = ".part";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAGIC_BYTES = 12;
+
+    private final FileUploadService fileUploadService;
+
+    // id de session -> session
+    private final ConcurrentHashMap<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    @Value("${app.upload.chunked.chunk-size:1048576}")
+    private int chunkSize;
+
+    @Value("${app.upload.chunked.max-sessions-per-user:3}")
+    private int maxSessionsPerUser;
+
+    @Value("${app.upload.chunked.session-ttl-minutes:60}")
+    private long sessionTtlMinutes;
+
+    @Autowired
+    public ChunkedUploadService(FileUploadService fileUploadService) {
+        this.fileUploadService = fileUploadService;
+    }
+
+    /**
+     * Ouvrir une session d'upload : contrôle du nom et de la taille, préallocation du fichier
+     */
+    public UploadSessionResponse initiate(String userId, String filename, long totalSize) throws IOException {
+        fileUploadService.validateUploadMetadata(filename, totalSize);
+
+        long openSessions = sessions.values().stream().filter(s -> s.userId.equals(userId)).count();
+        if (openSessions >= maxSessionsPerUser) {
+            throw new IllegalStateException("Trop d'uploads en cours, terminez ou annulez les précédents");
+        }
+
+        String sessionId = UUID.randomUUID().toString();
+        Path path = fileUploadService.ingestDirectory().resolve(SESSION_FILE_PREFIX + sessionId + SESSION_FILE_SUFFIX);
+
+        // Préallocation : le fichier a d'emblée sa taille finale (creux sur la plupart des systèmes)
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[1]), totalSize - 1);
+        }
+
+        UploadSession session = new UploadSession(sessionId, userId, path, totalSize,
+            extensionOf(filename), sha256());
+        sessions.put(sessionId, session);
+
+        System.out.println("📤 Session d'upload ouverte: " + sessionId + " (" + totalSize + " octets)");
+        return toResponse(session, null);
+    }
+
+    /**
+     * Écrire un morceau à la position donnée
+     * Un morceau déjà reçu (renvoyé après une coupure) est acquitté sans être réécrit.
+     */
+    public UploadSessionResponse writeChunk(String sessionId, String userId, long offset,
+                                           long contentLength, InputStream body) throws IOException {
+        UploadSession session = getSession(sessionId, userId);
+
+        MessageDigest digest;
+        String extension;
+        synchronized (session) {
+            ensureOpen(session);
+            if (contentLength > 0 && offset < session.received && offset + contentLength <= session.received) {
+                return toResponse(session, null);
+            }
+            if (session.writing) {
+                throw new IllegalStateException("Un morceau est déjà en cours d'envoi pour cette session");
+            }
+            if (offset != session.received) {
+                throw new IllegalStateException("Position inattendue: " + offset + ", attendue: " + session.received);
+            }
+            if (contentLength > chunkSize) {
+                throw new IllegalArgumentException("Morceau trop volumineux (max " + chunkSize + " octets)");
+            }
+
+            // Le hachage du morceau part d'une copie : un morceau interrompu ne corrompt pas l'empreinte
+            digest = cloneDigest(session.digest);
+            extension = session.extension;
+            session.writing = true;
+        }
+
+        // Lecture du réseau hors verrou : l'état de la session reste consultable pendant l'envoi
+        long position = offset;
+        try {
+            long limit = Math.min(session.totalSize, offset + chunkSize);
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            try (FileChannel channel = FileChannel.open(session.path, StandardOpenOption.WRITE)) {
+                boolean checkMagic = offset == 0;
+                while (true) {
+                    int read = checkMagic
+                        ? readAtLeast(body, buffer, (int) Math.min(MAGIC_BYTES, session.totalSize))
+                        : body.read(buffer);
+                    if (read <= 0) {
+                        break;
+                    }
+                    if (checkMagic) {
+                        extension = verifyMagic(buffer, read, extension);
+                        checkMagic = false;
+                    }
+                    if (position + read > limit) {
+                        throw new IllegalArgumentException("Le morceau dépasse la taille annoncée ou la taille maximale d'un morceau");
+                    }
+
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                    while (chunk.hasRemaining()) {
+                        position += channel.write(chunk, position);
+                    }
+                    digest.update(buffer, 0, read);
+                }
+            }
+
+            if (position == offset && session.totalSize > 0) {
+                throw new IllegalArgumentException("Morceau vide");
+            }
+        } catch (IOException | RuntimeException e) {
+            synchronized (session) {
+                session.writing = false;
+            }
+            throw e;
+        }
+
+        synchronized (session) {
+            session.writing = false;
+            ensureOpen(session);
+            session.extension = extension;
+            session.digest = digest;
+            session.received = position;
+            session.lastActivity = System.currentTimeMillis();
+            return toResponse(session, null);
+        }
+    }
+
+    /**
+     * État d'une session, pour reprendre après une coupure
+     */
+    public UploadSessionResponse status(String sessionId, String userId) {
+        UploadSession session = getSession(sessionId, userId);
+        synchronized (session) {
+            return toResponse(session, null);
+        }
+    }
+
+    /**
+     * Finaliser : le fichier complet est rangé dans le stockage par contenu
+     * La session n'est fermée qu'une fois le fichier rangé : après un refus
+     * temporaire (503), le client peut relancer la finalisation.
+     */
+    public UploadSessionResponse complete(String sessionId, String userId) throws IOException {
+        UploadSession session = getSession(sessionId, userId);
+
+        synchronized (session) {
+            ensureOpen(session);
+            if (session.writing || session.received != session.totalSize) {
+                throw new IllegalStateException("Upload incomplet: " + session.received + "/" + session.totalSize + " octets");
+            }
+
+            // digest() réinitialise l'empreinte : on hache une copie pour pouvoir réessayer
+            String hash = HexFormat.of().formatHex(cloneDigest(session.digest).digest());
+            String url = fileUploadService.storeIngestedObject(session.path, hash, session.extension);
+
+            session.closed = true;
+            sessions.remove(sessionId);
+            System.out.println("✅ Upload par morceaux terminé: " + sessionId);
+            return toResponse(session, url);
+        }
+    }
+
+    /**
+     * Annuler une session et supprimer son fichier
+     */
+    public void abort(String sessionId, String userId) {
+        UploadSession session = getSession(sessionId, userId);
+        synchronized (session) {
+            ensureOpen(session);
+            session.closed = true;
+            sessions.remove(sessionId);
+            deleteQuietly(session.path);
+        }
+    }
+
+    /**
+     * Supprimer les sessions abandonnées, et les fichiers de session orphelins
+     * (sessions perdues lors d'un redémarrage)
+     */
+    @Scheduled(fixedDelayString = "${app.upload.chunked.cleanup-interval-ms:300000}")
+    public void cleanupAbandonedSessions() {
+        long cutoff = System.currentTimeMillis() - sessionTtlMinutes * 60 * 1000;
+
+        sessions.values().removeIf(session -> {
+            synchronized (session) {
+                if (session.lastActivity >= cutoff || session.writing) {
+                    return false;
+                }
+                session.closed = true;
+                deleteQuietly(session.path);
+            }
+            System.out.println("🧹 Session d'upload abandonnée supprimée: " + session.id);
+            return true;
+        });
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(fileUploadService.ingestDirectory(),
+                SESSION_FILE_PREFIX + "*" + SESSION_FILE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String sessionId = name.substring(SESSION_FILE_PREFIX.length(), name.length() - SESSION_FILE_SUFFIX.length());
+                if (!sessions.containsKey(sessionId) && Files.getLastModifiedTime(file).toMillis() < cutoff) {
+                    deleteQuietly(file);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Erreur lors du nettoyage des sessions d'upload: " + e.getMessage());
+        }
+    }
+
+    // Méthodes privées
+
+    private UploadSession getSession(String sessionId, String userId) {
+        UploadSession session = sessions.get(sessionId);
+        if (session == null || !session.userId.equals(userId)) {
+            throw new ResourceNotFoundException("Session d'upload", "id", sessionId);
+        }
+        return session;
+    }
+
+    /**
+     * Session finalisée, annulée ou expirée pendant qu'on attendait son verrou
+     */
+    private void ensureOpen(UploadSession session) {
+        if (session.closed) {
+            throw new ResourceNotFoundException("Session d'upload", "id", session.id);
+        }
+    }
+
+    /**
+     * Type réel d'après les octets magiques ; il doit correspondre à l'extension annoncée
+     *
+     * @return l'extension à utiliser pour le stockage
+     */
+    private String verifyMagic(byte[] head, int length, String declaredExtension) {
+        String detected = detectImageType(head, length);
+        if (detected == null) {
+            throw new IllegalArgumentException("Le fichier doit être une image");
+        }
+        String declared = "jpeg".equals(declaredExtension) ? "jpg" : declaredExtension;
+        if (!detected.equals(declared)) {
+            throw new IllegalArgumentException("Le contenu ne correspond pas à l'extension ." + declaredExtension);
+        }
+        return detected;
+    }
+
+    private String detectImageType(byte[] b, int length) {
+        if (length >= 3 && (b[0] & 0xFF) == 0xFF && (b[1] & 0xFF) == 0xD8 && (b[2] & 0xFF) == 0xFF) {
+            return "jpg";
+        }
+        if (length >= 8 && (b[0] & 0xFF) == 0x89 && b[1] == 'P' && b[2] == 'N' && b[3] == 'G'
+                && b[4] == 0x0D && b[5] == 0x0A && b[6] == 0x1A && b[7] == 0x0A) {
+            return "png";
+        }
+        if (length >= 6 && b[0] == 'G' && b[1] == 'I' && b[2] == 'F' && b[3] == '8'
+                && (b[4] == '7' || b[4] == '9') && b[5] == 'a') {
+            return "gif";
+        }
+        if (length >= 12 && b[0] == 'R' && b[1] == 'I' && b[2] == 'F' && b[3] == 'F'
+                && b[8] == 'W' && b[9] == 'E' && b[10] == 'B' && b[11] == 'P') {
+            return "webp";
+        }
+        return null;
+    }
+
+    /**
+     * Lire au moins min octets (ou jusqu'à la fin du flux) : le premier paquet
+     * réseau peut être plus court que l'en-tête à contrôler
+     */
+    private int readAtLeast(InputStream input, byte[] buffer, int min) throws IOException {
+        int total = 0;
+        while (total < min) {
+            int read = input.read(buffer, total, buffer.length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private String extensionOf(String filename) {
+        int dot = filename.lastIndexOf('.');
+        return dot >= 0 ? filename.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+    }
+
+    private MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AppException("SHA-256 indisponible", e);
+        }
+    }
+
+    private MessageDigest cloneDigest(MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AppException("Empreinte SHA-256 non clonable", e);
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Erreur lors de la suppression du fichier d'upload " + path.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    private UploadSessionResponse toResponse(UploadSession session, String url) {
+        return new UploadSessionResponse(session.id, session.received, session.totalSize, chunkSize, url);
+    }
+
+    private static final class UploadSession {
+        private final String id;
+        private final String userId;
+        private final Path path;
+        private final long totalSize;
+        private String extension;
+        private MessageDigest digest;
+        private long received;
+        private boolean writing;
+        private boolean closed;
+        private volatile long lastActivity;
+
+        private UploadSession(String id, String userId, Path path, long totalSize,
+                              String extension, MessageDigest digest) {
+            this.id = id;
+            this.userId = userId;
+            this.path = path;
+            this.totalSize = totalSize;
+            this.extension = extension;
+            this.digest = digest;
+            this.lastActivity = System.currentTimeMillis();
+        }
+    }
+}
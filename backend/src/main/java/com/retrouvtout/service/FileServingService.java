@@ -0,0 +1,362 @@
+package com.retrouvtout.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Envoi des fichiers uploadés sans copie en mémoire
+ *
+ * Le corps est envoyé par le sendfile de Tomcat quand le connecteur le permet,
+ * sinon par FileChannel.transferTo. Gère une plage unique (Range / If-Range),
+ * les requêtes conditionnelles (If-None-Match, If-Modified-Since → 304) et un
+ * ETag fort : le SHA-256 pour les images stockées par contenu, mtime+taille
+ * sinon. Les métadonnées (taille, date, ETag, type, en-têtes préformatés)
+ * viennent d'un petit cache LRU ; les images populaires peuvent être servies
+ * depuis le cache mémoire hors tas (ImageMemoryCache) sans lecture disque.
+ */
+@Service
+public class FileServingService {
+
+    // Attributs de requête du sendfile Tomcat (org.apache.tomcat.util.net.Constants / Globals)
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private static final Pattern CONTENT_HASH_PREFIX = Pattern.compile("^[0-9a-f]{64}.*");
+
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+        "jpg", "image/jpeg",
+        "jpeg", "image/jpeg",
+        "png", "image/png",
+        "gif", "image/gif",
+        "webp", "image/webp"
+    );
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    // Résultat de parseRange : plage présente mais impossible à satisfaire
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    private final ImageMemoryCache imageMemoryCache;
+
+    @Value("${app.files.metadata-cache.max-entries:10000}")
+    private int metadataCacheMaxEntries;
+
+    @Value("${app.files.metadata-cache.ttl-ms:5000}")
+    private long metadataCacheTtlMs;
+
+    @Value("${app.files.sendfile-threshold-bytes:49152}")
+    private long sendfileThresholdBytes;
+
+    private Map<Path, FileMetadata> metadataCache;
+
+    @Autowired
+    public FileServingService(ImageMemoryCache imageMemoryCache) {
+        this.imageMemoryCache = imageMemoryCache;
+    }
+
+    @PostConstruct
+    public void init() {
+        final int size = metadataCacheMaxEntries;
+        this.metadataCache = Collections.synchronizedMap(
+            new LinkedHashMap<Path, FileMetadata>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Path, FileMetadata> eldest) {
+                    return size() > size;
+                }
+            });
+    }
+
+    /**
+     * Type de contenu d'après l'extension du fichier
+     */
+    public static String contentTypeOf(String filename) {
+        int dot = filename.lastIndexOf('.');
+        String extension = dot >= 0 ? filename.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+        return CONTENT_TYPES.getOrDefault(extension, DEFAULT_CONTENT_TYPE);
+    }
+
+    /**
+     * Servir un fichier situé sous baseDir (404 s'il n'existe pas ou en sort)
+     */
+    public void serve(Path baseDir, Path file, String cacheControl,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+
+        Path base = baseDir.toAbsolutePath().normalize();
+        Path path = file.toAbsolutePath().normalize();
+        if (!path.startsWith(base)) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        FileMetadata metadata = metadataOf(path);
+        if (metadata == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        response.setHeader(HttpHeaders.ETAG, metadata.etag);
+        response.setHeader(HttpHeaders.LAST_MODIFIED, metadata.lastModifiedHeader);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (isNotModified(request, metadata)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long length = metadata.size;
+
+        long[] range = parseRange(request, metadata);
+        if (range == UNSATISFIABLE) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + metadata.size);
+            return;
+        }
+        if (range != null) {
+            start = range[0];
+            length = range[1] - range[0] + 1;
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE,
+                "bytes " + range[0] + "-" + range[1] + "/" + metadata.size);
+        } else {
+            response.setStatus(HttpServletResponse.SC_OK);
+        }
+
+        response.setContentType(metadata.contentType);
+        response.setContentLengthLong(length);
+
+        if ("HEAD".equals(request.getMethod()) || length == 0) {
+            return;
+        }
+
+        try {
+            writeBody(request, response, path, metadata, start, length);
+        } catch (NoSuchFileException e) {
+            // Supprimé entre la lecture des métadonnées et l'envoi
+            metadataCache.remove(path);
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            }
+        }
+    }
+
+    /**
+     * Oublier les métadonnées d'un fichier (supprimé ou remplacé)
+     */
+    public void evict(Path file) {
+        Path path = file.toAbsolutePath().normalize();
+        metadataCache.remove(path);
+        imageMemoryCache.invalidate(path);
+    }
+
+    // Méthodes privées
+
+    private FileMetadata metadataOf(Path path) throws IOException {
+        long now = System.currentTimeMillis();
+        FileMetadata cached = metadataCache.get(path);
+        if (cached != null && cached.expiresAt > now) {
+            return cached;
+        }
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            metadataCache.remove(path);
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+
+        String filename = path.getFileName().toString();
+        long size = attributes.size();
+        // Les dates HTTP sont à la seconde
+        long lastModified = attributes.lastModifiedTime().toMillis() / 1000 * 1000;
+
+        FileMetadata metadata = new FileMetadata(size, lastModified, etagOf(filename, size, lastModified),
+            DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(lastModified).atOffset(ZoneOffset.UTC)),
+            contentTypeOf(filename), now + metadataCacheTtlMs);
+        metadataCache.put(path, metadata);
+        return metadata;
+    }
+
+    /**
+     * ETag fort : le nom d'un fichier stocké par contenu commence par son SHA-256
+     * (déclinaisons comprises, suffixées par la taille), sinon mtime+taille
+     */
+    private String etagOf(String filename, long size, long lastModified) {
+        if (CONTENT_HASH_PREFIX.matcher(filename).matches()) {
+            int dot = filename.lastIndexOf('.');
+            return "\"" + (dot > 0 ? filename.substring(0, dot) : filename) + "\"";
+        }
+        return "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(size) + "\"";
+    }
+
+    private boolean isNotModified(HttpServletRequest request, FileMetadata metadata) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return etagMatches(ifNoneMatch, metadata.etag);
+        }
+
+        try {
+            long ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+            return ifModifiedSince >= 0 && metadata.lastModified <= ifModifiedSince;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private boolean etagMatches(String header, String etag) {
+        for (String candidate : header.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*")) {
+                return true;
+            }
+            // Comparaison faible pour If-None-Match : W/"x" correspond à "x"
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Plage unique "bytes=a-b", "bytes=a-" ou "bytes=-n"
+     *
+     * @return null pour servir le fichier entier (pas de Range, plusieurs plages,
+     *         If-Range périmé, syntaxe inconnue), UNSATISFIABLE pour un 416,
+     *         sinon {début, fin} inclus
+     */
+    private long[] parseRange(HttpServletRequest request, FileMetadata metadata) {
+        String header = request.getHeader(HttpHeaders.RANGE);
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.trim().equals(metadata.etag)) {
+            return null;
+        }
+
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+
+        long size = metadata.size;
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+
+            if (first.isEmpty()) {
+                // Suffixe : les n derniers octets
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || size == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new long[] { Math.max(0, size - suffix), size - 1 };
+            }
+
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            if (start >= size || end < start) {
+                return UNSATISFIABLE;
+            }
+            return new long[] { start, end };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void writeBody(HttpServletRequest request, HttpServletResponse response,
+                           Path path, FileMetadata metadata, long start, long length) throws IOException {
+
+        // Image populaire : servie depuis la mémoire hors tas
+        if (imageMemoryCache.accepts(metadata.size)) {
+            ImageMemoryCache.Entry entry = imageMemoryCache.acquire(path, metadata.size, metadata.lastModified);
+            if (entry == null) {
+                entry = imageMemoryCache.load(path, metadata.size, metadata.lastModified);
+            }
+            if (entry != null) {
+                try {
+                    imageMemoryCache.write(entry, start, length, Channels.newChannel(response.getOutputStream()));
+                } finally {
+                    imageMemoryCache.release(entry);
+                }
+                return;
+            }
+        }
+
+        // Sendfile du connecteur : le noyau copie le fichier vers la socket après le retour du contrôleur
+        if (length >= sendfileThresholdBytes && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, path.toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, start + length);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel output = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long written = channel.transferTo(position, remaining, output);
+                if (written <= 0) {
+                    break;
+                }
+                position += written;
+                remaining -= written;
+            }
+        }
+    }
+
+    private static final class FileMetadata {
+        private final long size;
+        private final long lastModified;
+        private final String etag;
+        private final String lastModifiedHeader;
+        private final String contentType;
+        private final long expiresAt;
+
+        private FileMetadata(long size, long lastModified, String etag, String lastModifiedHeader,
+                             String contentType, long expiresAt) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.etag = etag;
+            this.lastModifiedHeader = lastModifiedHeader;
+            this.contentType = contentType;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
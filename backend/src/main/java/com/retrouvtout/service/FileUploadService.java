@@ -1,24 +1,62 @@
 package com.retrouvtout.service;
 
+import com.retrouvtout.entity.Listing;
+import com.retrouvtout.exception.AppException;
+import com.retrouvtout.exception.ServiceUnavailableException;
+import com.retrouvtout.repository.ListingImageRepository;
+import com.retrouvtout.repository.ListingRepository;
+import com.retrouvtout.util.AppConstants;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
-import java.util.UUID;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 /**
  * Service pour l'upload et la gestion des fichiers
+ *
+ * Les images sont stockées par contenu : le SHA-256 est calculé pendant la
+ * copie du flux, et le fichier est rangé sous objects/ab/cd/{sha256}.{ext}.
+ * Une image déjà présente n'est pas réécrite (déduplication), et son URL ne
+ * change jamais, ce qui permet de la servir avec Cache-Control: immutable.
+ * Une image n'est supprimée que si aucune annonce (listings.image_url,
+ * listing_images.url) n'y fait plus référence.
  */
 @Service
 public class FileUploadService {
 
+    private final ImageDerivativeService imageDerivativeService;
+    private final ListingRepository listingRepository;
+    private final ListingImageRepository listingImageRepository;
+
+    private ThreadPoolExecutor batchExecutor;
+
     @Value("${app.upload.dir:./uploads}")
     private String uploadDir;
 
@@ -28,6 +66,18 @@ public class FileUploadService {
     @Value("${app.upload.allowed-extensions:jpg,jpeg,png,gif,webp}")
     private String allowedExtensions;
 
+    @Value("${app.upload.batch.max-files:" + AppConstants.MAX_IMAGES_PER_LISTING + "}")
+    private int maxFilesPerBatch;
+
+    @Value("${app.upload.batch.threads:4}")
+    private int batchThreads;
+
+    @Value("${app.upload.batch.queue-capacity:32}")
+    private int batchQueueCapacity;
+
+    @Value("${app.upload.objects.orphan-grace-minutes:60}")
+    private long orphanGraceMinutes;
+
     @Value("${server.servlet.context-path:/api}")
     private String contextPath;
 
@@ -35,52 +85,129 @@ public class FileUploadService {
     private String serverPort;
 
     private static final String TEMP_DIR = "temp";
+    private static final long RETRY_AFTER_SECONDS = 5;
     private static final String IMAGES_DIR = "images";
+    private static final String OBJECTS_DIR = "objects";
+    private static final String INGEST_DIR = ".ingest";
+
+    // ab/cd/{sha256}.{ext}
+    private static final Pattern OBJECT_KEY_PATTERN =
+        Pattern.compile("[0-9a-f]{2}/[0-9a-f]{2}/[0-9a-f]{64}\\.[a-z0-9]+");
+
+    @Autowired
+    public FileUploadService(ImageDerivativeService imageDerivativeService,
+                             ListingRepository listingRepository,
+                             ListingImageRepository listingImageRepository) {
+        this.imageDerivativeService = imageDerivativeService;
+        this.listingRepository = listingRepository;
+        this.listingImageRepository = listingImageRepository;
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger counter = new AtomicInteger();
+        this.batchExecutor = new ThreadPoolExecutor(batchThreads, batchThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(batchQueueCapacity),
+            runnable -> {
+                java.lang.Thread thread = new java.lang.Thread(runnable, "upload-batch-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (batchExecutor != null) {
+            batchExecutor.shutdown();
+        }
+    }
 
     /**
      * Upload d'une image pour un utilisateur authentifié
      */
     public String uploadImage(MultipartFile file, String userId) throws IOException {
         validateFile(file);
-        
-        // Créer le répertoire utilisateur
-        Path userDir = createUserDirectory(userId);
-        
-        // Générer un nom de fichier unique
-        String filename = generateUniqueFilename(file.getOriginalFilename());
-        
-        // Sauvegarder le fichier
-        Path filePath = userDir.resolve(filename);
-        Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
-        
-        // Retourner l'URL publique
-        return generatePublicUrl(userId, filename);
+
+        String objectKey = storeObject(file);
+        return generateObjectUrl(objectKey);
+    }
+
+    /**
+     * Upload de plusieurs images en une requête
+     * Tous les fichiers sont contrôlés avant d'en stocker un seul, puis stockés
+     * en parallèle (hachage, copie, déclinaisons) sur un exécuteur borné.
+     *
+     * @return les URLs, dans l'ordre des fichiers
+     */
+    public List<String> uploadImages(List<MultipartFile> files, String userId) throws IOException {
+        if (files == null || files.isEmpty()) {
+            throw new IllegalArgumentException("Aucun fichier sélectionné");
+        }
+        if (files.size() > maxFilesPerBatch) {
+            throw new IllegalArgumentException("Trop de fichiers (max " + maxFilesPerBatch + ")");
+        }
+        for (MultipartFile file : files) {
+            validateFile(file);
+        }
+
+        List<Future<String>> futures = new ArrayList<>(files.size());
+        try {
+            for (MultipartFile file : files) {
+                futures.add(batchExecutor.submit(() -> generateObjectUrl(storeObject(file))));
+            }
+        } catch (RejectedExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            System.err.println("⛔ File d'upload multiple pleine, upload refusé");
+            throw new ServiceUnavailableException("Uploads saturés, veuillez réessayer", RETRY_AFTER_SECONDS);
+        }
+
+        List<String> urls = new ArrayList<>(files.size());
+        try {
+            for (Future<String> future : futures) {
+                urls.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            java.lang.Thread.currentThread().interrupt();
+            throw new AppException("Upload interrompu", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new AppException("Erreur lors de l'upload", cause);
+        }
+
+        System.out.println("✅ " + urls.size() + " image(s) uploadée(s) pour userId = " + userId);
+        return urls;
     }
 
     /**
      * Upload temporaire d'une image (pour prévisualisation)
+     * Stockée par contenu comme les autres : l'URL reste valable une fois
+     * l'annonce publiée, et l'image non référencée est ramassée ensuite.
      */
     public String uploadTempImage(MultipartFile file) throws IOException {
         validateFile(file);
-        
-        // Créer le répertoire temporaire
-        Path tempDir = createTempDirectory();
-        
-        // Générer un nom de fichier unique
-        String filename = generateUniqueFilename(file.getOriginalFilename());
-        
-        // Sauvegarder le fichier temporairement
-        Path filePath = tempDir.resolve(filename);
-        Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
-        
-        // Retourner l'URL temporaire
-        return generateTempUrl(filename);
+
+        String objectKey = storeObject(file);
+        return generateObjectUrl(objectKey);
     }
 
     /**
      * Déplacer un fichier temporaire vers le répertoire utilisateur
+     * Une image stockée par contenu est déjà définitive : son URL est renvoyée telle quelle
      */
     public String moveTempToUser(String tempUrl, String userId) throws IOException {
+        if (isObjectUrl(tempUrl)) {
+            return tempUrl;
+        }
+
         // Extraire le nom du fichier de l'URL temporaire
         String filename = extractFilenameFromUrl(tempUrl);
         
@@ -95,21 +222,38 @@ public class FileUploadService {
         // Déplacer le fichier
         Path newPath = userDir.resolve(filename);
         Files.move(tempFile, newPath, StandardCopyOption.REPLACE_EXISTING);
+
+        // Les fichiers temporaires n'ont pas de déclinaisons, elles sont générées ici ;
+        // en cas d'échec, le fichier retourne dans temp/ et l'annonce peut être renvoyée
+        generateDerivatives(newPath, tempFile);
         
         return generatePublicUrl(userId, filename);
     }
 
     /**
-     * Supprimer un fichier
+     * Supprimer un fichier s'il n'est plus référencé par aucune annonce
+     * Une image stockée par contenu récemment uploadée (ou dédupliquée) est
+     * conservée pendant la période de grâce : une annonce peut être en cours
+     * de création avec la même URL.
      */
     public void deleteFile(String fileUrl) {
         try {
             String relativePath = extractRelativePathFromUrl(fileUrl);
             Path filePath = Paths.get(uploadDir, relativePath);
-            
+
+            long references = countReferences(fileUrl);
+            if (references > 0) {
+                System.out.println("🔗 Fichier conservé (" + references + " référence(s)): " + relativePath);
+                return;
+            }
+            if (isObjectUrl(fileUrl) && Files.exists(filePath) && isWithinGracePeriod(filePath)) {
+                return;
+            }
+
             if (Files.exists(filePath)) {
                 Files.delete(filePath);
             }
+            deleteDerivatives(filePath);
         } catch (Exception e) {
             System.err.println("Erreur lors de la suppression du fichier " + fileUrl + ": " + e.getMessage());
         }
@@ -120,56 +264,239 @@ public class FileUploadService {
      */
     public void cleanupTempFiles() {
         try {
+            long cutoffTime = System.currentTimeMillis() - (24 * 60 * 60 * 1000); // 24 heures
+
             Path tempDir = Paths.get(uploadDir, TEMP_DIR);
-            if (!Files.exists(tempDir)) {
-                return;
+            if (Files.exists(tempDir)) {
+                deleteOlderThan(tempDir, "*", cutoffTime);
             }
 
-            long cutoffTime = System.currentTimeMillis() - (24 * 60 * 60 * 1000); // 24 heures
-
-            Files.list(tempDir)
-                .filter(Files::isRegularFile)
-                .filter(path -> {
-                    try {
-                        return Files.getLastModifiedTime(path).toMillis() < cutoffTime;
-                    } catch (IOException e) {
-                        return false;
-                    }
-                })
-                .forEach(path -> {
-                    try {
-                        Files.delete(path);
-                    } catch (IOException e) {
-                        System.err.println("Erreur lors de la suppression du fichier temporaire: " + e.getMessage());
-                    }
-                });
+            // Fichiers d'ingestion abandonnés (upload interrompu par un arrêt)
+            deleteOlderThan(ingestDirectory(), "upload-*.part", cutoffTime);
         } catch (Exception e) {
             System.err.println("Erreur lors du nettoyage des fichiers temporaires: " + e.getMessage());
         }
     }
 
-    // Méthodes privées utilitaires
+    /**
+     * Répertoire d'ingestion, sur le même volume que les objets (déplacement atomique)
+     */
+    public Path ingestDirectory() throws IOException {
+        Path ingestDir = Paths.get(uploadDir, OBJECTS_DIR, INGEST_DIR);
+        Files.createDirectories(ingestDir);
+        return ingestDir;
+    }
 
-    private void validateFile(MultipartFile file) {
-        if (file == null || file.isEmpty()) {
+    /**
+     * Ranger à son adresse de contenu un fichier d'ingestion déjà haché
+     * Le fichier d'ingestion est consommé (déplacé ou supprimé) en cas de succès ;
+     * en cas d'échec il reste en place, l'appelant peut réessayer ou l'abandonner.
+     *
+     * @return l'URL publique de l'objet
+     */
+    public String storeIngestedObject(Path ingestFile, String sha256Hex, String extension) throws IOException {
+        String url = generateObjectUrl(placeObject(ingestFile, sha256Hex, normalizeExtension(extension)));
+        // Contenu déjà stocké : le fichier d'ingestion n'a pas été déplacé
+        Files.deleteIfExists(ingestFile);
+        return url;
+    }
+
+    /**
+     * Contrôler le nom et la taille annoncés d'un upload, avant de recevoir le contenu
+     */
+    public void validateUploadMetadata(String filename, long size) {
+        if (size <= 0) {
             throw new IllegalArgumentException("Le fichier est vide");
         }
 
-        if (file.getSize() > maxFileSize) {
+        if (size > maxFileSize) {
             throw new IllegalArgumentException("Le fichier est trop volumineux (max " + (maxFileSize / 1024 / 1024) + "MB)");
         }
 
-        String filename = file.getOriginalFilename();
         if (filename == null || filename.trim().isEmpty()) {
             throw new IllegalArgumentException("Nom de fichier invalide");
         }
 
         String extension = getFileExtension(filename).toLowerCase();
         List<String> allowedExts = Arrays.asList(allowedExtensions.toLowerCase().split(","));
-        
+
         if (!allowedExts.contains(extension)) {
             throw new IllegalArgumentException("Type de fichier non autorisé. Extensions autorisées: " + allowedExtensions);
         }
+    }
+
+    /**
+     * Nombre d'annonces et d'images d'annonces pointant vers une URL
+     */
+    public long countReferences(String fileUrl) {
+        return listingRepository.countByImageUrlAndStatusNot(fileUrl, Listing.ListingStatus.SUPPRIME)
+            + listingImageRepository.countByUrlAndListingStatusNot(fileUrl, Listing.ListingStatus.SUPPRIME);
+    }
+
+    /**
+     * Dimensions et micro-vignette d'une image uploadée, calculées à l'upload
+     *
+     * @return null pour une image externe ou sans fiche (antérieure au pipeline)
+     */
+    public ImageDerivativeService.ImageInfo imageInfoOf(String fileUrl) {
+        if (fileUrl == null) {
+            return null;
+        }
+        try {
+            return imageDerivativeService.readInfo(Paths.get(uploadDir, extractRelativePathFromUrl(fileUrl)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Taille en octets d'une image uploadée, null pour une image externe ou absente
+     */
+    public Long fileSizeOf(String fileUrl) {
+        try {
+            return Files.size(Paths.get(uploadDir, extractRelativePathFromUrl(fileUrl)));
+        } catch (IllegalArgumentException | IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Supprimer un original et ses déclinaisons, sans contrôle de références
+     */
+    public void deleteWithDerivatives(Path original) throws IOException {
+        Files.deleteIfExists(original);
+        deleteDerivatives(original);
+    }
+
+    // Méthodes privées utilitaires
+
+    /**
+     * Copier le flux dans un fichier d'ingestion en calculant le SHA-256 au passage,
+     * puis le ranger à son adresse de contenu (ou l'abandonner si le contenu existe déjà)
+     *
+     * @return la clé de l'objet (ab/cd/{sha256}.{ext})
+     */
+    private String storeObject(MultipartFile file) throws IOException {
+        String extension = normalizeExtension(getFileExtension(file.getOriginalFilename()));
+        Path ingestFile = Files.createTempFile(ingestDirectory(), "upload-", ".part");
+
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream input = new DigestInputStream(file.getInputStream(), digest)) {
+                Files.copy(input, ingestFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            return placeObject(ingestFile, HexFormat.of().formatHex(digest.digest()), extension);
+        } finally {
+            Files.deleteIfExists(ingestFile);
+        }
+    }
+
+    /**
+     * Déplacer le fichier d'ingestion à son adresse de contenu, sauf si ce contenu existe déjà
+     *
+     * @return la clé de l'objet (ab/cd/{sha256}.{ext})
+     */
+    private String placeObject(Path ingestFile, String hash, String extension) throws IOException {
+        String objectKey = hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + "." + extension;
+        Path target = Paths.get(uploadDir, OBJECTS_DIR).resolve(objectKey);
+
+        if (Files.exists(target)) {
+            // Contenu déjà stocké : la date est rafraîchie pour la période de grâce
+            Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+            System.out.println("♻️ Image déjà stockée, upload dédupliqué: " + objectKey);
+            return objectKey;
+        }
+
+        Files.createDirectories(target.getParent());
+        Files.move(ingestFile, target, StandardCopyOption.ATOMIC_MOVE);
+
+        // Déclinaisons (thumb, card, full) à côté de l'original, une seule fois par contenu
+        generateDerivatives(target, ingestFile);
+        return objectKey;
+    }
+
+    private MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AppException("SHA-256 indisponible", e);
+        }
+    }
+
+    /**
+     * Une même image doit avoir une seule adresse, quelle que soit la casse ou
+     * la variante de l'extension envoyée (JPEG, jpeg, jpg)
+     */
+    private String normalizeExtension(String extension) {
+        String normalized = extension.toLowerCase(Locale.ROOT);
+        return "jpeg".equals(normalized) ? "jpg" : normalized;
+    }
+
+    private boolean isWithinGracePeriod(Path path) throws IOException {
+        long ageMillis = System.currentTimeMillis() - Files.getLastModifiedTime(path).toMillis();
+        return ageMillis < orphanGraceMinutes * 60 * 1000;
+    }
+
+    /**
+     * Générer les déclinaisons ; si l'image est refusée (trop grande) ou si le
+     * traitement est saturé, l'original retourne à son emplacement précédent
+     * (fichier d'ingestion ou temporaire) : une nouvelle tentative reste possible
+     */
+    private void generateDerivatives(Path original, Path previousLocation) throws IOException {
+        try {
+            imageDerivativeService.generate(original);
+        } catch (RuntimeException e) {
+            try {
+                Files.move(original, previousLocation, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException moveError) {
+                e.addSuppressed(moveError);
+                Files.deleteIfExists(original);
+            }
+            deleteDerivatives(original);
+            throw e;
+        }
+    }
+
+    /**
+     * Le flux du répertoire est fermé dans tous les cas (try-with-resources)
+     */
+    private void deleteOlderThan(Path dir, String glob, long cutoffTime) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, glob)) {
+            for (Path path : files) {
+                try {
+                    if (Files.isRegularFile(path) && Files.getLastModifiedTime(path).toMillis() < cutoffTime) {
+                        Files.delete(path);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Erreur lors de la suppression du fichier temporaire: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void deleteDerivatives(Path original) {
+        String filename = original.getFileName().toString();
+        try {
+            Files.deleteIfExists(original.resolveSibling(imageDerivativeService.infoFilename(filename)));
+        } catch (IOException e) {
+            System.err.println("Erreur lors de la suppression de la fiche d'image: " + e.getMessage());
+        }
+        for (String size : imageDerivativeService.sizeNames()) {
+            try {
+                Files.deleteIfExists(original.resolveSibling(imageDerivativeService.derivativeFilename(filename, size)));
+            } catch (IOException e) {
+                System.err.println("Erreur lors de la suppression de la déclinaison " + size + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void validateFile(MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            throw new IllegalArgumentException("Le fichier est vide");
+        }
+
+        validateUploadMetadata(file.getOriginalFilename(), file.getSize());
 
         // Vérification du type MIME
         String contentType = file.getContentType();
@@ -184,18 +511,6 @@ public class FileUploadService {
         return userDir;
     }
 
-    private Path createTempDirectory() throws IOException {
-        Path tempDir = Paths.get(uploadDir, TEMP_DIR);
-        Files.createDirectories(tempDir);
-        return tempDir;
-    }
-
-    private String generateUniqueFilename(String originalFilename) {
-        String extension = getFileExtension(originalFilename);
-        String uuid = UUID.randomUUID().toString();
-        return uuid + "." + extension;
-    }
-
     private String getFileExtension(String filename) {
         int lastDotIndex = filename.lastIndexOf('.');
         if (lastDotIndex == -1) {
@@ -209,9 +524,15 @@ public class FileUploadService {
             serverPort, contextPath, userId, filename);
     }
 
-    private String generateTempUrl(String filename) {
-        return String.format("http://localhost:%s%s/files/temp/%s", 
-            serverPort, contextPath, filename);
+    private String generateObjectUrl(String objectKey) {
+        return String.format("http://localhost:%s%s/files/%s/%s",
+            serverPort, contextPath, OBJECTS_DIR, objectKey);
+    }
+
+    private boolean isObjectUrl(String url) {
+        String objectsBaseUrl = String.format("http://localhost:%s%s/files/%s/", serverPort, contextPath, OBJECTS_DIR);
+        return url != null && url.startsWith(objectsBaseUrl)
+            && OBJECT_KEY_PATTERN.matcher(url.substring(objectsBaseUrl.length())).matches();
     }
 
     private String extractFilenameFromUrl(String url) {
@@ -0,0 +1,512 @@
+package com.retrouvtout.service;
+
+import com.retrouvtout.exception.AppException;
+import com.retrouvtout.exception.ServiceUnavailableException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Génération des déclinaisons d'images à l'upload (thumb, card, full)
+ *
+ * L'original est décodé une seule fois, redressé selon son orientation EXIF
+ * (photos de téléphone), puis réduit en cascade (full → card → thumb) : chaque
+ * taille part de la précédente, moins coûteuse que l'original.
+ * Les déclinaisons sont écrites à côté de l'original ({nom}_{taille}.{format}),
+ * avec une fiche {nom}_info.properties : dimensions de l'original et
+ * micro-vignette (PNG de quelques pixels en data URI) affichée floutée par le
+ * client en attendant l'image.
+ * Le travail tourne sur un exécuteur borné : au-delà de la file, l'upload est
+ * refusé immédiatement plutôt que de saturer le CPU.
+ */
+@Service
+public class ImageDerivativeService {
+
+    private static final long RETRY_AFTER_SECONDS = 5;
+    private static final String INFO_SUFFIX = "_info.properties";
+    private static final int MAX_PLACEHOLDER_LENGTH = 1024;
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+
+    private ThreadPoolExecutor executor;
+    private String outputFormat;
+
+    // Taille -> plus grand côté en pixels, du plus grand au plus petit
+    private final Map<String, Integer> sizes = new LinkedHashMap<>();
+
+    @Value("${app.upload.derivatives.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.upload.derivatives.format:jpg}")
+    private String configuredFormat;
+
+    @Value("${app.upload.derivatives.quality:0.82}")
+    private float quality;
+
+    @Value("${app.upload.derivatives.full-px:1600}")
+    private int fullPx;
+
+    @Value("${app.upload.derivatives.card-px:640}")
+    private int cardPx;
+
+    @Value("${app.upload.derivatives.thumb-px:200}")
+    private int thumbPx;
+
+    @Value("${app.upload.derivatives.placeholder-px:8}")
+    private int placeholderPx;
+
+    @Value("${app.upload.derivatives.max-source-pixels:40000000}")
+    private long maxSourcePixels;
+
+    @Value("${app.upload.derivatives.threads:0}")
+    private int threads;
+
+    @Value("${app.upload.derivatives.queue-capacity:32}")
+    private int queueCapacity;
+
+    @Value("${app.upload.derivatives.timeout-ms:20000}")
+    private long timeoutMs;
+
+    @PostConstruct
+    public void start() {
+        sizes.put("full", fullPx);
+        sizes.put("card", cardPx);
+        sizes.put("thumb", thumbPx);
+
+        // Format demandé s'il a un encodeur ImageIO (ex. webp avec un plugin), sinon JPEG
+        String requested = configuredFormat.toLowerCase(Locale.ROOT);
+        if (ImageIO.getImageWritersByFormatName(requested).hasNext()) {
+            outputFormat = requested;
+        } else {
+            System.err.println("⚠️ Aucun encodeur ImageIO pour '" + requested + "', déclinaisons en jpg");
+            outputFormat = "jpg";
+        }
+
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                java.lang.Thread thread = new java.lang.Thread(runnable, "image-derivatives-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Nom de fichier d'une déclinaison de l'original
+     */
+    public String derivativeFilename(String originalFilename, String size) {
+        int dot = originalFilename.lastIndexOf('.');
+        String base = dot > 0 ? originalFilename.substring(0, dot) : originalFilename;
+        return base + "_" + size + "." + outputFormat;
+    }
+
+    /**
+     * Nom de la fiche d'informations (dimensions, micro-vignette) d'un original
+     */
+    public String infoFilename(String originalFilename) {
+        int dot = originalFilename.lastIndexOf('.');
+        String base = dot > 0 ? originalFilename.substring(0, dot) : originalFilename;
+        return base + INFO_SUFFIX;
+    }
+
+    /**
+     * Le fichier est-il une déclinaison ({nom}_{taille}.{format}) ou une fiche
+     * d'informations plutôt qu'un original ?
+     */
+    public boolean isDerivativeFilename(String filename) {
+        if (filename.endsWith(INFO_SUFFIX)) {
+            return true;
+        }
+        int dot = filename.lastIndexOf('.');
+        String base = dot > 0 ? filename.substring(0, dot) : filename;
+        for (String size : sizes.keySet()) {
+            if (base.endsWith("_" + size)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tailles connues, du plus grand au plus petit
+     */
+    public List<String> sizeNames() {
+        return new ArrayList<>(sizes.keySet());
+    }
+
+    /**
+     * Générer les déclinaisons d'une image stockée, sur l'exécuteur dédié
+     *
+     * @return les fichiers écrits (vide si l'image n'a pas pu être décodée)
+     */
+    public List<Path> generate(Path original) {
+        if (!enabled) {
+            return List.of();
+        }
+
+        Future<List<Path>> future;
+        try {
+            future = executor.submit(() -> generateNow(original));
+        } catch (RejectedExecutionException e) {
+            System.err.println("⛔ File de traitement d'images pleine, upload refusé");
+            throw new ServiceUnavailableException("Traitement d'images saturé, veuillez réessayer", RETRY_AFTER_SECONDS);
+        }
+
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new ServiceUnavailableException("Traitement d'images saturé, veuillez réessayer", RETRY_AFTER_SECONDS);
+        } catch (InterruptedException e) {
+            java.lang.Thread.currentThread().interrupt();
+            throw new AppException("Traitement d'image interrompu", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new AppException("Erreur lors du traitement de l'image", cause);
+        }
+    }
+
+    /**
+     * Lire la fiche d'informations d'un original
+     *
+     * @return null si elle n'existe pas (image antérieure au pipeline, image non décodable)
+     */
+    public ImageInfo readInfo(Path original) {
+        Path infoPath = original.resolveSibling(infoFilename(original.getFileName().toString()));
+        if (!Files.isReadable(infoPath)) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(infoPath)) {
+            properties.load(input);
+            return new ImageInfo(
+                Integer.parseInt(properties.getProperty("width")),
+                Integer.parseInt(properties.getProperty("height")),
+                properties.getProperty("placeholder"));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("⚠️ Fiche d'image illisible: " + infoPath.getFileName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Méthodes privées
+
+    private List<Path> generateNow(Path original) throws IOException {
+        BufferedImage source = decode(original);
+        if (source == null) {
+            System.err.println("⚠️ Image non décodable, pas de déclinaisons: " + original.getFileName());
+            return List.of();
+        }
+        // Les déclinaisons ne portent pas d'EXIF : l'orientation doit être appliquée aux pixels
+        source = orient(source, readExifOrientation(original));
+
+        List<Path> written = new ArrayList<>();
+        BufferedImage current = source;
+        String filename = original.getFileName().toString();
+
+        for (Map.Entry<String, Integer> size : sizes.entrySet()) {
+            current = scaleToFit(current, size.getValue());
+            Path target = original.resolveSibling(derivativeFilename(filename, size.getKey()));
+            write(current, target);
+            written.add(target);
+        }
+
+        // La micro-vignette part de la plus petite déclinaison
+        Path infoPath = original.resolveSibling(infoFilename(filename));
+        writeInfo(new ImageInfo(source.getWidth(), source.getHeight(), placeholder(current)), infoPath);
+        written.add(infoPath);
+        return written;
+    }
+
+    /**
+     * Micro-vignette PNG en data URI (quelques centaines d'octets), null si trop grande
+     */
+    private String placeholder(BufferedImage image) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(scaleToFit(image, placeholderPx), "png", bytes);
+        String dataUri = "data:image/png;base64," + Base64.getEncoder().encodeToString(bytes.toByteArray());
+        return dataUri.length() <= MAX_PLACEHOLDER_LENGTH ? dataUri : null;
+    }
+
+    private void writeInfo(ImageInfo info, Path target) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("width", String.valueOf(info.getWidth()));
+        properties.setProperty("height", String.valueOf(info.getHeight()));
+        if (info.getPlaceholder() != null) {
+            properties.setProperty("placeholder", info.getPlaceholder());
+        }
+
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream output = Files.newOutputStream(tmp)) {
+            properties.store(output, null);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Décoder l'image, après contrôle des dimensions (protection contre les images géantes)
+     */
+    private BufferedImage decode(Path path) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(path.toFile())) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxSourcePixels) {
+                    throw new IllegalArgumentException("Image trop grande (" + reader.getWidth(0) + "x"
+                        + reader.getHeight(0) + ")");
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Orientation EXIF d'un JPEG (1 à 8, 1 = normale), lue dans le segment APP1
+     * sans décoder l'image ; 1 pour les autres formats ou sans EXIF
+     */
+    private static int readExifOrientation(Path path) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readUnsignedShort() != 0xFFD8) {
+                return 1;
+            }
+            while (true) {
+                int marker = input.readUnsignedShort();
+                // Début des données compressées (SOS) ou fin d'image : pas d'EXIF
+                if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || marker == 0xFFD9) {
+                    return 1;
+                }
+                int length = input.readUnsignedShort() - 2;
+                if (length < 0) {
+                    return 1;
+                }
+                if (marker == 0xFFE1) {
+                    byte[] segment = new byte[length];
+                    input.readFully(segment);
+                    int orientation = parseExifOrientation(segment);
+                    if (orientation > 0) {
+                        return orientation;
+                    }
+                } else {
+                    input.skipNBytes(length);
+                }
+            }
+        } catch (EOFException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Tag Orientation de l'IFD0 d'un segment "Exif\0\0" + TIFF, 0 s'il est absent
+     */
+    private static int parseExifOrientation(byte[] segment) {
+        int tiff = 6;
+        if (segment.length < tiff + 8 || segment[0] != 'E' || segment[1] != 'x' || segment[2] != 'i'
+                || segment[3] != 'f' || segment[4] != 0 || segment[5] != 0) {
+            return 0;
+        }
+
+        ByteOrder order;
+        if (segment[tiff] == 'I' && segment[tiff + 1] == 'I') {
+            order = ByteOrder.LITTLE_ENDIAN;
+        } else if (segment[tiff] == 'M' && segment[tiff + 1] == 'M') {
+            order = ByteOrder.BIG_ENDIAN;
+        } else {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(segment).order(order);
+
+        long ifdOffset = buffer.getInt(tiff + 4) & 0xFFFFFFFFL;
+        if (ifdOffset < 8 || tiff + ifdOffset + 2 > segment.length) {
+            return 0;
+        }
+        int ifd = tiff + (int) ifdOffset;
+        int entries = buffer.getShort(ifd) & 0xFFFF;
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > segment.length) {
+                return 0;
+            }
+            if ((buffer.getShort(entry) & 0xFFFF) == EXIF_ORIENTATION_TAG) {
+                int orientation = buffer.getShort(entry + 8) & 0xFFFF;
+                return orientation >= 1 && orientation <= 8 ? orientation : 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Appliquer une orientation EXIF aux pixels (5 à 8 échangent largeur et hauteur)
+     */
+    private static BufferedImage orient(BufferedImage image, int orientation) {
+        if (orientation <= 1 || orientation > 8) {
+            return image;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean swap = orientation >= 5;
+        AffineTransform transform;
+        switch (orientation) {
+            case 2: transform = new AffineTransform(-1, 0, 0, 1, width, 0); break;          // miroir horizontal
+            case 3: transform = new AffineTransform(-1, 0, 0, -1, width, height); break;    // 180°
+            case 4: transform = new AffineTransform(1, 0, 0, -1, 0, height); break;         // miroir vertical
+            case 5: transform = new AffineTransform(0, 1, 1, 0, 0, 0); break;               // transposition
+            case 6: transform = new AffineTransform(0, 1, -1, 0, height, 0); break;         // 90° horaire
+            case 7: transform = new AffineTransform(0, -1, -1, 0, height, width); break;    // transverse
+            default: transform = new AffineTransform(0, -1, 1, 0, 0, width); break;         // 90° antihoraire
+        }
+
+        BufferedImage oriented = new BufferedImage(swap ? height : width, swap ? width : height,
+            BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = oriented.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, oriented.getWidth(), oriented.getHeight());
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return oriented;
+    }
+
+    /**
+     * Réduire pour que le plus grand côté tienne dans maxPx (jamais d'agrandissement)
+     * Sortie en RGB opaque : la transparence est aplatie sur fond blanc
+     */
+    private BufferedImage scaleToFit(BufferedImage image, int maxPx) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double ratio = Math.min(1.0, (double) maxPx / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+
+        if (ratio == 1.0 && image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+
+        BufferedImage scaled = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, targetWidth, targetHeight);
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    private void write(BufferedImage image, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(outputFormat).next();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(tmp.toFile())) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (param.getCompressionType() == null && param.getCompressionTypes() != null
+                        && param.getCompressionTypes().length > 0) {
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                }
+                param.setCompressionQuality(quality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Dimensions de l'original telles qu'affichées (orientation EXIF appliquée) et micro-vignette
+     */
+    public static final class ImageInfo {
+        private final int width;
+        private final int height;
+        private final String placeholder;
+
+        public ImageInfo(int width, int height, String placeholder) {
+            this.width = width;
+            this.height = height;
+            this.placeholder = placeholder;
+        }
+
+        public int getWidth() { return width; }
+
+        public int getHeight() { return height; }
+
+        public String getPlaceholder() { return placeholder; }
+    }
+}
@@ -0,0 +1,406 @@
+package com.retrouvtout.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache mémoire hors tas des images les plus demandées (optionnel)
+ *
+ * La mémoire est réservée une fois, en slabs de ByteBuffer directs découpés en
+ * pages de taille fixe : une image occupe ceil(taille / page) pages, sans
+ * fragmentation et sans pression sur le tas. Éviction LRU tenant compte de la
+ * taille (on libère autant de pages que nécessaire), avec admission TinyLFU :
+ * une image n'entre que si elle est au moins aussi demandée que celles qu'elle
+ * évincerait, ce qui protège les images populaires d'un balayage d'images
+ * rares. Les pages d'une entrée en cours d'envoi ne sont rendues qu'après
+ * l'envoi (compteur de références).
+ */
+@Service
+public class ImageMemoryCache {
+
+    private final MeterRegistry meterRegistry;
+
+    // Chemin -> entrée, du moins au plus récemment utilisé ; protégé par le verrou de l'instance
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    private ByteBuffer[] slabs;
+    private int pageSize;
+    private int pagesPerSlab;
+    private int[] freePages;
+    private int freeCount;
+    private long usedBytes;
+    private FrequencySketch sketch;
+
+    private Counter hits;
+    private Counter misses;
+    private Counter evictions;
+    private Counter rejections;
+
+    @Value("${app.files.memory-cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.files.memory-cache.capacity-mb:64}")
+    private int capacityMb;
+
+    @Value("${app.files.memory-cache.slab-mb:16}")
+    private int slabMb;
+
+    @Value("${app.files.memory-cache.page-kb:16}")
+    private int pageKb;
+
+    @Value("${app.files.memory-cache.max-entry-kb:512}")
+    private int maxEntryKb;
+
+    @Autowired
+    public ImageMemoryCache(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+
+        this.pageSize = pageKb * 1024;
+        int slabSize = Math.max(pageSize, slabMb * 1024 * 1024 / pageSize * pageSize);
+        this.pagesPerSlab = slabSize / pageSize;
+        int slabCount = Math.max(1, (int) ((long) capacityMb * 1024 * 1024 / slabSize));
+
+        this.slabs = new ByteBuffer[slabCount];
+        for (int i = 0; i < slabCount; i++) {
+            slabs[i] = ByteBuffer.allocateDirect(slabSize);
+        }
+
+        int totalPages = slabCount * pagesPerSlab;
+        this.freePages = new int[totalPages];
+        for (int i = 0; i < totalPages; i++) {
+            freePages[i] = totalPages - 1 - i;
+        }
+        this.freeCount = totalPages;
+        this.sketch = new FrequencySketch(totalPages);
+
+        this.hits = Counter.builder("files.memory.cache.hits")
+            .description("Images servies depuis le cache mémoire").register(meterRegistry);
+        this.misses = Counter.builder("files.memory.cache.misses")
+            .description("Images absentes du cache mémoire").register(meterRegistry);
+        this.evictions = Counter.builder("files.memory.cache.evictions")
+            .description("Images évincées du cache mémoire").register(meterRegistry);
+        this.rejections = Counter.builder("files.memory.cache.rejections")
+            .description("Images refusées par l'admission TinyLFU").register(meterRegistry);
+        Gauge.builder("files.memory.cache.hit.ratio", this, ImageMemoryCache::hitRatio)
+            .description("Taux de succès du cache mémoire").register(meterRegistry);
+        Gauge.builder("files.memory.cache.used.bytes", this, cache -> cache.usedBytes())
+            .description("Octets d'images en cache mémoire").register(meterRegistry);
+        Gauge.builder("files.memory.cache.entries", this, cache -> cache.size())
+            .description("Images en cache mémoire").register(meterRegistry);
+
+        System.out.println("🧠 Cache mémoire des images: " + slabCount + " slab(s) de " + (slabSize / 1024 / 1024)
+            + " Mo, pages de " + pageKb + " Ko");
+    }
+
+    /**
+     * Le fichier est-il éligible au cache (cache actif, taille non nulle sous le maximum) ?
+     */
+    public boolean accepts(long size) {
+        return enabled && size > 0 && size <= (long) maxEntryKb * 1024;
+    }
+
+    /**
+     * Obtenir une entrée à jour (même taille et même date que le fichier), ou null
+     * L'entrée obtenue doit être rendue par release() après l'envoi.
+     */
+    public synchronized Entry acquire(Path path, long size, long lastModified) {
+        sketch.increment(path);
+
+        Entry entry = entries.get(path);
+        if (entry != null && (entry.size != size || entry.lastModified != lastModified)) {
+            remove(entry);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        entry.refCount++;
+        hits.increment();
+        return entry;
+    }
+
+    /**
+     * Charger un fichier dans le cache si l'admission l'accepte
+     *
+     * @return l'entrée (à rendre par release()), ou null si refusée
+     */
+    public Entry load(Path path, long size, long lastModified) throws IOException {
+        int needed = (int) ((size + pageSize - 1) / pageSize);
+        Entry entry;
+
+        synchronized (this) {
+            if (!makeRoom(needed, sketch.frequency(path))) {
+                rejections.increment();
+                return null;
+            }
+            int[] pages = new int[needed];
+            for (int i = 0; i < needed; i++) {
+                pages[i] = freePages[--freeCount];
+            }
+            entry = new Entry(path, size, lastModified, pages);
+            entry.refCount = 1;
+        }
+
+        // Lecture hors verrou : l'entrée n'est pas encore publiée
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long position = 0;
+            for (int page : entry.pages) {
+                ByteBuffer target = pageBuffer(page, (int) Math.min(pageSize, size - position));
+                while (target.hasRemaining()) {
+                    int read = channel.read(target, position);
+                    if (read < 0) {
+                        throw new EOFException("Fichier raccourci pendant la mise en cache");
+                    }
+                    position += read;
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                freePagesOf(entry);
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            Entry previous = entries.put(path, entry);
+            if (previous != null) {
+                retire(previous);
+            }
+            usedBytes += size;
+        }
+        return entry;
+    }
+
+    /**
+     * Écrire une plage d'une entrée vers la sortie
+     */
+    public void write(Entry entry, long start, long length, WritableByteChannel output) throws IOException {
+        long remaining = length;
+        int pageIndex = (int) (start / pageSize);
+        int offset = (int) (start % pageSize);
+
+        while (remaining > 0) {
+            int pageLength = (int) Math.min(pageSize, entry.size - (long) pageIndex * pageSize);
+            ByteBuffer source = pageBuffer(entry.pages[pageIndex], pageLength);
+            source.position(source.position() + offset);
+            if (source.remaining() > remaining) {
+                source.limit(source.position() + (int) remaining);
+            }
+            remaining -= source.remaining();
+            while (source.hasRemaining()) {
+                output.write(source);
+            }
+            pageIndex++;
+            offset = 0;
+        }
+    }
+
+    /**
+     * Rendre une entrée obtenue par acquire() ou load()
+     */
+    public synchronized void release(Entry entry) {
+        entry.refCount--;
+        if (entry.retired && entry.refCount == 0) {
+            freePagesOf(entry);
+        }
+    }
+
+    /**
+     * Oublier un fichier (supprimé ou remplacé)
+     */
+    public synchronized void invalidate(Path path) {
+        if (!enabled) {
+            return;
+        }
+        Entry entry = entries.get(path);
+        if (entry != null) {
+            remove(entry);
+        }
+    }
+
+    // Méthodes privées
+
+    /**
+     * Libérer au moins needed pages en évinçant les entrées les moins récentes,
+     * si toutes sont moins demandées que le candidat (admission TinyLFU)
+     * Les victimes sont choisies avant toute éviction : un candidat refusé ne
+     * retire rien. Une entrée en cours d'envoi ne rendrait ses pages qu'après
+     * l'envoi, elle n'est donc pas choisie.
+     */
+    private boolean makeRoom(int needed, int candidateFrequency) {
+        if (needed > freePages.length) {
+            return false;
+        }
+
+        List<Entry> victims = new ArrayList<>();
+        int reclaimable = freeCount;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (reclaimable < needed) {
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            Entry victim = iterator.next();
+            if (victim.refCount > 0) {
+                continue;
+            }
+            if (sketch.frequency(victim.path) > candidateFrequency) {
+                return false;
+            }
+            victims.add(victim);
+            reclaimable += victim.pages.length;
+        }
+
+        for (Entry victim : victims) {
+            remove(victim);
+            evictions.increment();
+        }
+        return true;
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.path);
+        retire(entry);
+    }
+
+    /**
+     * Retirer une entrée de l'index ; ses pages sont rendues dès qu'aucun envoi ne la lit plus
+     */
+    private void retire(Entry entry) {
+        entry.retired = true;
+        usedBytes -= entry.size;
+        if (entry.refCount == 0) {
+            freePagesOf(entry);
+        }
+    }
+
+    private void freePagesOf(Entry entry) {
+        for (int page : entry.pages) {
+            freePages[freeCount++] = page;
+        }
+    }
+
+    private ByteBuffer pageBuffer(int page, int length) {
+        ByteBuffer buffer = slabs[page / pagesPerSlab].duplicate();
+        int offset = (page % pagesPerSlab) * pageSize;
+        buffer.limit(offset + length);
+        buffer.position(offset);
+        return buffer;
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0.0 : hits.count() / total;
+    }
+
+    private synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Image en cache : pages occupées, taille et date du fichier au chargement
+     */
+    public static final class Entry {
+        private final Path path;
+        private final long size;
+        private final long lastModified;
+        private final int[] pages;
+        private int refCount;
+        private boolean retired;
+
+        private Entry(Path path, long size, long lastModified, int[] pages) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.pages = pages;
+        }
+    }
+
+    /**
+     * Estimation de fréquence d'accès (count-min sketch, compteurs plafonnés à 15)
+     * Les compteurs sont divisés par deux périodiquement : la popularité ancienne s'efface.
+     */
+    private static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+
+        private final int[][] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch(int expectedEntries) {
+            int width = Integer.highestOneBit(Math.max(64, expectedEntries * 4) - 1) << 1;
+            this.counters = new int[DEPTH][width];
+            this.mask = width - 1;
+            this.sampleSize = width * 10;
+        }
+
+        private void increment(Object key) {
+            int hash = key.hashCode();
+            for (int row = 0; row < DEPTH; row++) {
+                int index = indexOf(hash, row);
+                if (counters[row][index] < MAX_COUNT) {
+                    counters[row][index]++;
+                }
+            }
+            if (++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private int frequency(Object key) {
+            int hash = key.hashCode();
+            int min = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                min = Math.min(min, counters[row][indexOf(hash, row)]);
+            }
+            return min;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * SEEDS[row];
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private void reset() {
+            for (int[] row : counters) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>>= 1;
+                }
+            }
+            additions /= 2;
+        }
+    }
+}
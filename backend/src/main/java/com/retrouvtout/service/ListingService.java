@@ -4,26 +4,40 @@ package com.retrouvtout.service;
 
 import com.retrouvtout.dto.request.CreateListingRequest;
 import com.retrouvtout.dto.request.UpdateListingRequest;
+import com.retrouvtout.dto.response.ListingImageResponse;
 import com.retrouvtout.dto.response.ListingResponse;
 import com.retrouvtout.dto.response.PagedResponse;
 import com.retrouvtout.entity.Listing;
+import com.retrouvtout.entity.ListingImage;
 import com.retrouvtout.entity.User;
+import com.retrouvtout.exception.BadRequestException;
 import com.retrouvtout.exception.ResourceNotFoundException;
+import com.retrouvtout.repository.ListingImageRepository;
 import com.retrouvtout.repository.ListingRepository;
 import com.retrouvtout.repository.UserRepository;
+import com.retrouvtout.util.AppConstants;
+import com.retrouvtout.util.ImageUrlUtils;
 import com.retrouvtout.util.ModelMapper;
+import com.retrouvtout.websocket.ListingFeedPublisher;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
+import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
@@ -31,19 +45,31 @@ import java.util.stream.Collectors;
 public class ListingService {
 
     private final ListingRepository listingRepository;
+    private final ListingImageRepository listingImageRepository;
     private final UserRepository userRepository;
     private final ModelMapper modelMapper;
     private final NotificationService notificationService;
+    private final ListingFeedPublisher listingFeedPublisher;
+    private final FileUploadService fileUploadService;
+    private final JdbcTemplate jdbcTemplate;
 
     @Autowired
     public ListingService(ListingRepository listingRepository,
+                         ListingImageRepository listingImageRepository,
                          UserRepository userRepository,
                          ModelMapper modelMapper,
-                         NotificationService notificationService) {
+                         NotificationService notificationService,
+                         ListingFeedPublisher listingFeedPublisher,
+                         FileUploadService fileUploadService,
+                         JdbcTemplate jdbcTemplate) {
         this.listingRepository = listingRepository;
+        this.listingImageRepository = listingImageRepository;
         this.userRepository = userRepository;
         this.modelMapper = modelMapper;
         this.notificationService = notificationService;
+        this.listingFeedPublisher = listingFeedPublisher;
+        this.fileUploadService = fileUploadService;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     /**
@@ -88,7 +114,24 @@ public class ListingService {
                 }
             }
 
-            listing.setImageUrl(request.getImageUrl());
+            List<String> imageUrls = request.getImages() == null ? new ArrayList<>() : request.getImages().stream()
+                .filter(url -> url != null && !url.trim().isEmpty())
+                .map(String::trim)
+                .distinct()
+                .collect(Collectors.toCollection(ArrayList::new));
+
+            // L'image principale explicite devient la première (principale) des images multiples ;
+            // sans elle, la première des images multiples en tient lieu
+            String primaryUrl = request.getImageUrl() != null ? request.getImageUrl().trim() : "";
+            if (!imageUrls.isEmpty() && !primaryUrl.isEmpty()) {
+                imageUrls.remove(primaryUrl);
+                imageUrls.add(0, primaryUrl);
+                if (imageUrls.size() > AppConstants.MAX_IMAGES_PER_LISTING) {
+                    throw new IllegalArgumentException("Trop d'images pour une annonce");
+                }
+            }
+            listing.setImageUrl(imageUrls.isEmpty() ? request.getImageUrl() : imageUrls.get(0));
+            applyImageInfo(listing);
             listing.setStatus(Listing.ListingStatus.ACTIVE);
             listing.setViewsCount(0L);
             listing.setIsModerated(false);
@@ -97,9 +140,23 @@ public class ListingService {
             listing.setCreatedAt(now);
             listing.setUpdatedAt(now);
 
-            Listing savedListing = listingRepository.save(listing);
+            Listing savedListing;
+            List<ListingImage> images = List.of();
+            if (imageUrls.isEmpty()) {
+                savedListing = listingRepository.save(listing);
+            } else {
+                // L'annonce doit exister en base avant l'insertion JDBC des images (clé étrangère)
+                savedListing = listingRepository.saveAndFlush(listing);
+                images = insertImages(savedListing, imageUrls, now);
+            }
 
             ListingResponse response = modelMapper.mapListingToListingResponse(savedListing);
+            response.setImages(images.stream()
+                .map(modelMapper::mapListingImageToResponse)
+                .collect(Collectors.toList()));
+
+            // Flux temps réel, publié après le commit
+            listingFeedPublisher.publishAfterCommit(savedListing, "created");
 
             try {
                 triggerNotificationsForNewListing(savedListing);
@@ -167,6 +224,7 @@ public class ListingService {
         List<ListingResponse> listingResponses = listings.getContent().stream()
             .map(modelMapper::mapListingToListingResponse)
             .collect(Collectors.toList());
+        attachImages(listingResponses);
 
         return modelMapper.createPagedResponse(
             listingResponses,
@@ -180,7 +238,9 @@ public class ListingService {
     public ListingResponse getListingById(String id) {
         Listing listing = listingRepository.findById(id)
             .orElseThrow(() -> new ResourceNotFoundException("Annonce", "id", id));
-        return modelMapper.mapListingToListingResponse(listing);
+        ListingResponse response = modelMapper.mapListingToListingResponse(listing);
+        attachImages(List.of(response));
+        return response;
     }
 
     public ListingResponse updateListing(String id, UpdateListingRequest request, String userId) {
@@ -191,6 +251,13 @@ public class ListingService {
             throw new SecurityException("Non autorisé");
         }
 
+        String previousTopic = ListingFeedPublisher.topicOf(listing);
+        Listing.ListingStatus previousStatus = listing.getStatus();
+        String previousImageUrl = listing.getImageUrl();
+        Listing.ListingStatus requestedStatus = request.getStatus() != null
+            ? requireUserTransition(previousStatus, request.getStatus())
+            : null;
+
         if (request.getTitle() != null) listing.setTitle(request.getTitle());
         if (request.getCategory() != null) listing.setCategory(Listing.ListingCategory.fromValue(request.getCategory()));
         if (request.getLocationText() != null) listing.setLocationText(request.getLocationText());
@@ -198,10 +265,60 @@ public class ListingService {
         if (request.getLongitude() != null) listing.setLongitude(request.getLongitude());
         if (request.getFoundAt() != null) listing.setFoundAt(request.getFoundAt());
         if (request.getDescription() != null) listing.setDescription(request.getDescription());
-        if (request.getImageUrl() != null) listing.setImageUrl(request.getImageUrl());
+        if (request.getImageUrl() != null && !request.getImageUrl().equals(previousImageUrl)) {
+            listing.setImageUrl(request.getImageUrl());
+            applyImageInfo(listing);
+            replacePrimaryImage(listing, request.getImageUrl().trim());
+        }
+        if (requestedStatus != null) {
+            listing.setStatus(requestedStatus);
+        }
 
         Listing updatedListing = listingRepository.save(listing);
-        return modelMapper.mapListingToListingResponse(updatedListing);
+
+        String topic = ListingFeedPublisher.topicOf(updatedListing);
+        if (!topic.equals(previousTopic)) {
+            listingFeedPublisher.publishAfterCommit(updatedListing, "removed", previousTopic);
+        }
+        boolean resolved = previousStatus != Listing.ListingStatus.RESOLU
+            && updatedListing.getStatus() == Listing.ListingStatus.RESOLU;
+        listingFeedPublisher.publishAfterCommit(updatedListing, resolved ? "resolved" : "updated", topic);
+
+        // Image remplacée : libérée après le commit si plus aucune annonce n'y fait référence
+        if (previousImageUrl != null && !previousImageUrl.equals(updatedListing.getImageUrl())) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    fileUploadService.deleteFile(previousImageUrl);
+                }
+            });
+        }
+
+        ListingResponse response = modelMapper.mapListingToListingResponse(updatedListing);
+        attachImages(List.of(response));
+        return response;
+    }
+
+    /**
+     * Seule la résolution (ou sa réouverture) passe par la mise à jour : ACTIVE ↔ RESOLU.
+     * Une annonce suspendue ou supprimée ne peut pas être modifiée ainsi, et la
+     * suspension ou la suppression ont leurs propres chemins (modération, suppression).
+     */
+    private Listing.ListingStatus requireUserTransition(Listing.ListingStatus current, String requested) {
+        Listing.ListingStatus target = null;
+        for (Listing.ListingStatus status : Listing.ListingStatus.values()) {
+            if (status.getValue().equalsIgnoreCase(requested.trim())) {
+                target = status;
+                break;
+            }
+        }
+        if (target != Listing.ListingStatus.ACTIVE && target != Listing.ListingStatus.RESOLU) {
+            throw new BadRequestException("Statut non modifiable par l'utilisateur: " + requested);
+        }
+        if (current != Listing.ListingStatus.ACTIVE && current != Listing.ListingStatus.RESOLU) {
+            throw new IllegalStateException("Le statut d'une annonce " + current.getValue() + " ne peut pas être modifié");
+        }
+        return target;
     }
 
     public void deleteListing(String id, String userId) {
@@ -214,6 +331,8 @@ public class ListingService {
 
         listing.setStatus(Listing.ListingStatus.SUPPRIME);
         listingRepository.save(listing);
+
+        listingFeedPublisher.publishAfterCommit(listing, "removed");
     }
 
     @Transactional
@@ -241,6 +360,7 @@ public class ListingService {
         List<ListingResponse> listingResponses = listings.getContent().stream()
             .map(modelMapper::mapListingToListingResponse)
             .collect(Collectors.toList());
+        attachImages(listingResponses);
 
         return modelMapper.createPagedResponse(
             listingResponses,
@@ -250,6 +370,105 @@ public class ListingService {
         );
     }
 
+    /**
+     * Recopier sur l'annonce les dimensions et la micro-vignette calculées à l'upload
+     */
+    private void applyImageInfo(Listing listing) {
+        ImageDerivativeService.ImageInfo info = fileUploadService.imageInfoOf(listing.getImageUrl());
+        listing.setImageWidth(info != null ? info.getWidth() : null);
+        listing.setImageHeight(info != null ? info.getHeight() : null);
+        listing.setImagePlaceholder(info != null ? info.getPlaceholder() : null);
+    }
+
+    /**
+     * Insérer les images d'une annonce en un seul lot JDBC (la première est la principale)
+     * Les identifiants IDENTITY empêchent Hibernate de regrouper ces insertions.
+     */
+    private List<ListingImage> insertImages(Listing listing, List<String> imageUrls, LocalDateTime now) {
+        List<ListingImage> images = new ArrayList<>(imageUrls.size());
+        List<Object[]> rows = new ArrayList<>(imageUrls.size());
+
+        for (String url : imageUrls) {
+            ImageDerivativeService.ImageInfo info = fileUploadService.imageInfoOf(url);
+
+            ListingImage image = new ListingImage();
+            image.setListing(listing);
+            image.setUrl(url);
+            image.setFileSize(fileUploadService.fileSizeOf(url));
+            image.setMimeType(FileServingService.contentTypeOf(url.substring(url.lastIndexOf('/') + 1)));
+            image.setWidth(info != null ? info.getWidth() : null);
+            image.setHeight(info != null ? info.getHeight() : null);
+            image.setPlaceholder(info != null ? info.getPlaceholder() : null);
+            image.setIsPrimary(images.isEmpty());
+            image.setCreatedAt(now);
+            images.add(image);
+
+            rows.add(new Object[] {
+                listing.getId(), image.getUrl(), ImageUrlUtils.storagePathOf(url), image.getFileSize(),
+                image.getMimeType(), image.getIsPrimary(), image.getWidth(), image.getHeight(),
+                image.getPlaceholder(), Timestamp.valueOf(now)
+            });
+        }
+
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO listing_images " +
+            "(listing_id, url, path, file_size, mime_type, is_primary, width, height, placeholder, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+            rows);
+        return images;
+    }
+
+    /**
+     * Remplacer l'image principale dans listing_images, comme à la création :
+     * la ligne is_primary suit image_url, sinon l'ancienne image resterait
+     * affichée et comptée comme référencée (jamais libérée).
+     * Une image secondaire promue principale perd sa ligne secondaire.
+     */
+    private void replacePrimaryImage(Listing listing, String url) {
+        if (url.isEmpty()) {
+            jdbcTemplate.update("DELETE FROM listing_images WHERE listing_id = ? AND is_primary = TRUE",
+                listing.getId());
+            return;
+        }
+
+        jdbcTemplate.update("DELETE FROM listing_images WHERE listing_id = ? AND url = ? AND is_primary = FALSE",
+            listing.getId(), url);
+
+        ImageDerivativeService.ImageInfo info = fileUploadService.imageInfoOf(url);
+        jdbcTemplate.update(
+            "UPDATE listing_images SET url = ?, path = ?, file_size = ?, mime_type = ?, width = ?, height = ?, " +
+            "placeholder = ? WHERE listing_id = ? AND is_primary = TRUE",
+            url,
+            ImageUrlUtils.storagePathOf(url),
+            fileUploadService.fileSizeOf(url),
+            FileServingService.contentTypeOf(url.substring(url.lastIndexOf('/') + 1)),
+            info != null ? info.getWidth() : null,
+            info != null ? info.getHeight() : null,
+            info != null ? info.getPlaceholder() : null,
+            listing.getId());
+    }
+
+    /**
+     * Renseigner les images de plusieurs annonces avec une seule requête
+     * (plutôt qu'un chargement paresseux par annonce)
+     */
+    private void attachImages(List<ListingResponse> responses) {
+        if (responses.isEmpty()) {
+            return;
+        }
+
+        List<String> listingIds = responses.stream().map(ListingResponse::getId).collect(Collectors.toList());
+        Map<String, List<ListingImageResponse>> imagesByListing = new HashMap<>();
+        for (ListingImage image : listingImageRepository.findByListingIds(listingIds)) {
+            imagesByListing.computeIfAbsent(image.getListing().getId(), id -> new ArrayList<>())
+                .add(modelMapper.mapListingImageToResponse(image));
+        }
+
+        for (ListingResponse response : responses) {
+            response.setImages(imagesByListing.getOrDefault(response.getId(), List.of()));
+        }
+    }
+
     private void triggerNotificationsForNewListing(Listing listing) {
         try {
             List<User> allUsers = userRepository.findAll();
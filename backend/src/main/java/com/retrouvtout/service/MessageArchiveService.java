@@ -0,0 +1,463 @@
+package com.retrouvtout.service;
+
+import com.retrouvtout.util.AppConstants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Service de rétention et d'archivage des conversations
+ *
+ * Les threads fermés ou inactifs depuis trop longtemps sont déplacés vers
+ * threads_archive / messages_archive (corps compressés). Les copies et
+ * suppressions se font par petits lots ordonnés par clé primaire, chacun dans
+ * sa propre transaction, pour ne pas garder de verrous InnoDB longtemps. La
+ * dernière étape verrouille le thread, vérifie qu'il est toujours inactif,
+ * déplace les messages arrivés entre-temps puis le supprime, dans une seule
+ * transaction : la cascade de fk_messages_thread ne peut plus rien effacer.
+ * Un thread archivé est restauré à la demande quand un participant l'ouvre,
+ * ou quand son propriétaire recontacte le retrouveur sur la même annonce.
+ */
+@Service
+public class MessageArchiveService {
+
+    // Thread à archiver : fermé depuis closed-max-age-days, ou inactif depuis max-age-days
+    private static final String STALE_CONDITION =
+        "((status = 'closed' AND updated_at < ?) " +
+        "OR (COALESCE(last_message_at, created_at) < ? AND updated_at < ?))";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MessageWritePipeline messageWritePipeline;
+
+    @Value("${app.messages.archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.messages.archive.max-age-days:" + AppConstants.MAX_THREAD_AGE_DAYS + "}")
+    private int maxAgeDays;
+
+    @Value("${app.messages.archive.closed-max-age-days:30}")
+    private int closedMaxAgeDays;
+
+    @Value("${app.messages.archive.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${app.messages.archive.threads-per-run:200}")
+    private int threadsPerRun;
+
+    @Autowired
+    public MessageArchiveService(JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 MessageWritePipeline messageWritePipeline) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // Chaque lot est une transaction courte et indépendante
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.messageWritePipeline = messageWritePipeline;
+    }
+
+    /**
+     * Tâche planifiée d'archivage des conversations anciennes
+     */
+    @Scheduled(cron = "${app.messages.archive.cron:0 30 3 * * *}")
+    public void archiveOldThreads() {
+        if (!enabled) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp staleCutoff = Timestamp.valueOf(now.minusDays(maxAgeDays));
+        Timestamp closedCutoff = Timestamp.valueOf(now.minusDays(closedMaxAgeDays));
+
+        List<String> threadIds = jdbcTemplate.queryForList(
+            "SELECT id FROM threads WHERE " + STALE_CONDITION + " ORDER BY id LIMIT ?",
+            String.class, closedCutoff, staleCutoff, staleCutoff, threadsPerRun);
+
+        if (threadIds.isEmpty()) {
+            return;
+        }
+
+        System.out.println("🗄️ Archivage de " + threadIds.size() + " conversations");
+
+        int archived = 0;
+        long messages = 0;
+        for (String threadId : threadIds) {
+            try {
+                messages += archiveThread(threadId);
+                archived++;
+            } catch (Exception e) {
+                System.err.println("❌ Erreur lors de l'archivage du thread " + threadId + ": " + e.getMessage());
+            }
+        }
+
+        System.out.println("✅ Archivage terminé: " + archived + " conversations, " + messages + " messages");
+    }
+
+    /**
+     * Archiver un thread et ses messages
+     *
+     * @return nombre de messages archivés
+     */
+    public long archiveThread(String threadId) {
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp staleCutoff = Timestamp.valueOf(now.minusDays(maxAgeDays));
+        Timestamp closedCutoff = Timestamp.valueOf(now.minusDays(closedMaxAgeDays));
+
+        // Les nouveaux envois revalident le thread en base pendant l'archivage
+        messageWritePipeline.evictThread(threadId);
+
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(
+            "INSERT IGNORE INTO threads_archive " +
+            "(id, listing_id, owner_user_id, finder_user_id, status, last_message_at, created_at, updated_at, archived_at) " +
+            "SELECT id, listing_id, owner_user_id, finder_user_id, status, last_message_at, created_at, updated_at, NOW(3) " +
+            "FROM threads WHERE id = ?", threadId));
+
+        long total = 0;
+        int moved;
+        do {
+            Integer count = transactionTemplate.execute(status -> moveMessagesToArchive(threadId));
+            moved = count != null ? count : 0;
+            total += moved;
+        } while (moved == chunkSize);
+
+        // Verrou sur le thread : un message concurrent attend (puis échoue sur la clé
+        // étrangère) au lieu d'être écrit puis effacé par la cascade
+        Integer remaining = transactionTemplate.execute(status -> {
+            List<String> locked = jdbcTemplate.queryForList(
+                "SELECT id FROM threads WHERE id = ? FOR UPDATE", String.class, threadId);
+            if (locked.isEmpty()) {
+                return 0;
+            }
+
+            Integer stale = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM threads WHERE id = ? AND " + STALE_CONDITION,
+                Integer.class, threadId, closedCutoff, staleCutoff, staleCutoff);
+            if (stale == null || stale == 0) {
+                return null;
+            }
+
+            int movedInTransaction = 0;
+            int count;
+            do {
+                count = moveMessagesToArchive(threadId);
+                movedInTransaction += count;
+            } while (count == chunkSize);
+
+            jdbcTemplate.update("DELETE FROM threads WHERE id = ?", threadId);
+            return movedInTransaction;
+        });
+
+        if (remaining == null) {
+            // Thread redevenu actif pendant l'archivage : remettre les messages déjà déplacés
+            System.out.println("🗄️ Thread " + threadId + " redevenu actif, archivage annulé");
+            restoreMessages(threadId, threadId);
+            messageWritePipeline.evictThread(threadId);
+            return 0;
+        }
+
+        messageWritePipeline.evictThread(threadId);
+        return total + remaining;
+    }
+
+    /**
+     * Restaurer un thread archivé si l'utilisateur en est participant
+     *
+     * @return true si la conversation est de nouveau active
+     */
+    public boolean restoreIfArchived(String threadId, String userId) {
+        return restoreArchivedThread(threadId, userId) != null;
+    }
+
+    /**
+     * Restaurer un thread archivé si l'utilisateur en est participant
+     *
+     * Si le propriétaire a entre-temps ouvert une nouvelle conversation sur la même
+     * annonce (ux_threads_listing_owner), les messages archivés sont fusionnés dans
+     * cette conversation. Les messages qui ne peuvent pas être réinsérés restent
+     * dans l'archive, avec le thread archivé.
+     *
+     * @return ID de la conversation active (celui du thread archivé, ou du thread
+     *         dans lequel il a été fusionné), ou null si rien n'a été restauré
+     */
+    public String restoreArchivedThread(String threadId, String userId) {
+        Integer found = jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM threads_archive WHERE id = ? AND (owner_user_id = ? OR finder_user_id = ?)",
+            Integer.class, threadId, userId, userId);
+
+        if (found == null || found == 0) {
+            return null;
+        }
+
+        System.out.println("🗄️ Restauration du thread archivé " + threadId);
+
+        String liveThreadId;
+        try {
+            liveThreadId = transactionTemplate.execute(status -> restoreThreadRow(threadId));
+        } catch (DataIntegrityViolationException e) {
+            // Annonce ou participant supprimé : le thread reste archivé
+            System.err.println("❌ Thread archivé " + threadId + " non restaurable: " + e.getMessage());
+            return null;
+        }
+
+        if (liveThreadId == null) {
+            return null;
+        }
+
+        // Le thread a pu être mémorisé comme inconnu pendant qu'il était archivé
+        messageWritePipeline.evictThread(liveThreadId);
+        restoreMessages(threadId, liveThreadId);
+        return liveThreadId;
+    }
+
+    /**
+     * Restaurer la conversation archivée d'un propriétaire sur une annonce, s'il y en a une.
+     * Appelé avant de créer le thread : un nouveau contact rouvre l'ancienne
+     * conversation au lieu d'en créer une seconde sur ux_threads_listing_owner.
+     *
+     * @return true si un thread a été restauré
+     */
+    public boolean restoreArchivedContact(String listingId, String ownerUserId) {
+        List<String> threadIds = jdbcTemplate.queryForList(
+            "SELECT id FROM threads_archive WHERE owner_user_id = ? AND listing_id = ?",
+            String.class, ownerUserId, listingId);
+
+        boolean restored = false;
+        for (String threadId : threadIds) {
+            restored |= restoreIfArchived(threadId, ownerUserId);
+        }
+        return restored;
+    }
+
+    // Méthodes privées
+
+    /**
+     * Remettre le thread archivé dans threads, ou trouver la conversation active qui le remplace
+     *
+     * @return ID de la conversation active, ou null si l'archive a déjà été restaurée
+     */
+    private String restoreThreadRow(String threadId) {
+        List<Map<String, Object>> archived = jdbcTemplate.queryForList(
+            "SELECT listing_id, owner_user_id, last_message_at FROM threads_archive WHERE id = ? FOR UPDATE",
+            threadId);
+        if (archived.isEmpty()) {
+            return null;
+        }
+
+        Map<String, Object> row = archived.get(0);
+        List<String> live = jdbcTemplate.queryForList(
+            "SELECT id FROM threads WHERE id = ? OR (listing_id = ? AND owner_user_id = ?) FOR UPDATE",
+            String.class, threadId, row.get("listing_id"), row.get("owner_user_id"));
+
+        // Archivage annulé ou restauration concurrente : le thread est déjà là
+        if (live.contains(threadId)) {
+            return threadId;
+        }
+
+        if (!live.isEmpty()) {
+            String liveThreadId = live.get(0);
+            System.out.println("🗄️ Thread archivé " + threadId + " fusionné dans la conversation " + liveThreadId);
+            Object lastMessageAt = row.get("last_message_at");
+            if (lastMessageAt != null) {
+                jdbcTemplate.update(
+                    "UPDATE threads SET last_message_at = ? " +
+                    "WHERE id = ? AND (last_message_at IS NULL OR last_message_at < ?)",
+                    lastMessageAt, liveThreadId, lastMessageAt);
+            }
+            return liveThreadId;
+        }
+
+        // updated_at à maintenant pour que le thread ne soit pas réarchivé immédiatement
+        jdbcTemplate.update(
+            "INSERT INTO threads " +
+            "(id, listing_id, owner_user_id, finder_user_id, status, last_message_at, created_at, updated_at) " +
+            "SELECT id, listing_id, owner_user_id, finder_user_id, status, last_message_at, created_at, NOW(3) " +
+            "FROM threads_archive WHERE id = ?", threadId);
+        return threadId;
+    }
+
+    /**
+     * Remettre les messages archivés d'un thread dans la conversation active,
+     * puis oublier l'archive du thread si plus aucun message n'y reste
+     */
+    private void restoreMessages(String threadId, String liveThreadId) {
+        String afterId = "";
+        List<String> chunk;
+        do {
+            String from = afterId;
+            try {
+                chunk = transactionTemplate.execute(status -> moveMessagesFromArchive(threadId, liveThreadId, from, true));
+            } catch (DataIntegrityViolationException e) {
+                // Un message du lot est refusé : le lot est rejoué ligne par ligne
+                chunk = transactionTemplate.execute(status -> moveMessagesFromArchive(threadId, liveThreadId, from, false));
+            }
+            if (chunk == null || chunk.isEmpty()) {
+                break;
+            }
+            afterId = chunk.get(chunk.size() - 1);
+        } while (chunk.size() == chunkSize);
+
+        Integer deleted = transactionTemplate.execute(status -> jdbcTemplate.update(
+            "DELETE FROM threads_archive WHERE id = ? " +
+            "AND NOT EXISTS (SELECT 1 FROM messages_archive WHERE thread_id = ?)", threadId, threadId));
+
+        if (deleted == null || deleted == 0) {
+            System.err.println("⚠️ Des messages du thread " + threadId + " n'ont pas pu être restaurés, " +
+                "ils restent archivés");
+        }
+    }
+
+    private int moveMessagesToArchive(String threadId) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+            "SELECT id, sender_user_id, body, message_type, is_read, read_at, created_at " +
+            "FROM messages WHERE thread_id = ? ORDER BY id LIMIT ? FOR UPDATE",
+            threadId, chunkSize);
+
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        List<Object[]> archiveRows = new ArrayList<>(rows.size());
+        List<String> ids = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            String id = (String) row.get("id");
+            ids.add(id);
+            archiveRows.add(new Object[] {
+                id,
+                threadId,
+                row.get("sender_user_id"),
+                compress((String) row.get("body")),
+                row.get("message_type"),
+                row.get("is_read"),
+                row.get("read_at"),
+                row.get("created_at")
+            });
+        }
+
+        jdbcTemplate.batchUpdate(
+            "INSERT IGNORE INTO messages_archive " +
+            "(id, thread_id, sender_user_id, body_gz, message_type, is_read, read_at, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)", archiveRows);
+
+        jdbcTemplate.update("DELETE FROM messages WHERE id IN (" + placeholders(ids.size()) + ")", ids.toArray());
+
+        return rows.size();
+    }
+
+    /**
+     * Déplacer un lot de messages archivés (ordonnés par ID, après afterId) vers liveThreadId.
+     * Seuls les messages effectivement présents dans messages sont retirés de l'archive.
+     *
+     * @return IDs des messages archivés parcourus
+     */
+    private List<String> moveMessagesFromArchive(String threadId, String liveThreadId, String afterId, boolean batch) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+            "SELECT id, sender_user_id, body_gz, message_type, is_read, read_at, created_at " +
+            "FROM messages_archive WHERE thread_id = ? AND id > ? ORDER BY id LIMIT ? FOR UPDATE",
+            threadId, afterId, chunkSize);
+
+        if (rows.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> ids = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            ids.add((String) row.get("id"));
+        }
+
+        // Déjà réinsérés par une restauration interrompue : il ne reste qu'à les retirer de l'archive
+        List<String> restored = new ArrayList<>(jdbcTemplate.queryForList(
+            "SELECT id FROM messages WHERE id IN (" + placeholders(ids.size()) + ")", String.class, ids.toArray()));
+        Set<String> alreadyRestored = new HashSet<>(restored);
+
+        List<Object[]> messageRows = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            String id = (String) row.get("id");
+            if (alreadyRestored.contains(id)) {
+                continue;
+            }
+            messageRows.add(new Object[] {
+                id,
+                liveThreadId,
+                row.get("sender_user_id"),
+                decompress((byte[]) row.get("body_gz")),
+                row.get("message_type"),
+                row.get("is_read"),
+                row.get("read_at"),
+                row.get("created_at")
+            });
+        }
+
+        String insert = "INSERT INTO messages " +
+            "(id, thread_id, sender_user_id, body, message_type, is_read, read_at, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+        if (batch) {
+            if (!messageRows.isEmpty()) {
+                jdbcTemplate.batchUpdate(insert, messageRows);
+            }
+            for (Object[] messageRow : messageRows) {
+                restored.add((String) messageRow[0]);
+            }
+        } else {
+            for (Object[] messageRow : messageRows) {
+                try {
+                    jdbcTemplate.update(insert, messageRow);
+                    restored.add((String) messageRow[0]);
+                } catch (DataIntegrityViolationException e) {
+                    // Expéditeur supprimé... : seule l'instruction est annulée, le message reste archivé
+                    System.err.println("❌ Message archivé " + messageRow[0] + " non restaurable: " + e.getMessage());
+                }
+            }
+        }
+
+        if (!restored.isEmpty()) {
+            jdbcTemplate.update("DELETE FROM messages_archive WHERE id IN (" + placeholders(restored.size()) + ")",
+                restored.toArray());
+        }
+
+        return ids;
+    }
+
+    private String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
+    private byte[] compress(String body) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+            gzip.write(body.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Erreur de compression du message", e);
+        }
+        return buffer.toByteArray();
+    }
+
+    private String decompress(byte[] data) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Erreur de décompression du message", e);
+        }
+    }
+}
@@ -5,6 +5,7 @@ package com.retrouvtout.service;
 
 import com.retrouvtout.dto.request.CreateMessageRequest;
 import com.retrouvtout.dto.response.MessageResponse;
+import com.retrouvtout.dto.response.MessageSearchResult;
 import com.retrouvtout.dto.response.PagedResponse;
 import com.retrouvtout.entity.Message;
 import com.retrouvtout.entity.Thread;
@@ -14,15 +15,26 @@ import com.retrouvtout.repository.MessageRepository;
 import com.retrouvtout.repository.ThreadRepository;
 import com.retrouvtout.repository.UserRepository;
 import com.retrouvtout.util.ModelMapper;
+import com.retrouvtout.websocket.PresenceRegistry;
+import com.retrouvtout.websocket.UserEventReplayService;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -36,25 +48,46 @@ public class MessageService {
     private final ThreadRepository threadRepository;
     private final UserRepository userRepository;
     private final ModelMapper modelMapper;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final UserEventReplayService userEventReplayService;
     private final EmailService emailService;
     private final NotificationService notificationService;
+    private final PresenceRegistry presenceRegistry;
+
+    // Emails différés pour les destinataires en ligne
+    private final ScheduledExecutorService delayedNotifications = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        java.lang.Thread thread = new java.lang.Thread(runnable, "delayed-notifications");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // destinataire:thread -> email différé en attente
+    private final ConcurrentHashMap<String, PendingEmail> pendingEmails = new ConcurrentHashMap<>();
+
+    @Value("${app.notifications.online-email-delay-seconds:300}")
+    private long onlineEmailDelaySeconds;
 
     @Autowired
     public MessageService(MessageRepository messageRepository,
                          ThreadRepository threadRepository,
                          UserRepository userRepository,
                          ModelMapper modelMapper,
-                         SimpMessagingTemplate messagingTemplate,
+                         UserEventReplayService userEventReplayService,
                          EmailService emailService,
-                         NotificationService notificationService) {
+                         NotificationService notificationService,
+                         PresenceRegistry presenceRegistry) {
         this.messageRepository = messageRepository;
         this.threadRepository = threadRepository;
         this.userRepository = userRepository;
         this.modelMapper = modelMapper;
-        this.messagingTemplate = messagingTemplate;
+        this.userEventReplayService = userEventReplayService;
         this.emailService = emailService;
         this.notificationService = notificationService;
+        this.presenceRegistry = presenceRegistry;
+    }
+
+    @PreDestroy
+    public void shutdownDelayedNotifications() {
+        delayedNotifications.shutdownNow();
     }
 
     /**
@@ -283,9 +316,12 @@ public class MessageService {
 
             // Envoyer notifications
             try {
-                sendRealtimeNotification(thread, messageResponse, userId);
-                sendEmailNotification(thread, sender, userId);
-                sendPushNotification(thread, savedMessage, userId);
+                String recipientId = thread.getOwnerUser().getId().equals(userId) ?
+                    thread.getFinderUser().getId() : thread.getOwnerUser().getId();
+
+                sendRealtimeNotification(recipientId, messageResponse);
+                sendOfflineNotifications(thread.getId(), recipientId, userId,
+                    thread.getListing().getTitle(), savedMessage.getId());
             } catch (Exception notifError) {
                 System.err.println("⚠️ Erreur notifications: " + notifError.getMessage());
             }
@@ -341,6 +377,40 @@ public class MessageService {
         }
     }
 
+    /**
+     * Rechercher dans les messages des conversations de l'utilisateur
+     * Les termes sont convertis en requête booléenne FULLTEXT (+terme*)
+     */
+    @Transactional(readOnly = true)
+    public List<MessageSearchResult> searchMessages(String userId, String query, int page, int pageSize) {
+        List<String> terms = extractSearchTerms(query);
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("La recherche doit contenir au moins un mot de " +
+                MIN_SEARCH_TERM_LENGTH + " caractères");
+        }
+
+        StringBuilder booleanQuery = new StringBuilder();
+        for (String term : terms) {
+            if (booleanQuery.length() > 0) booleanQuery.append(' ');
+            booleanQuery.append('+').append(term).append('*');
+        }
+
+        List<Message> messages = messageRepository.searchMessagesForUser(
+            userId, booleanQuery.toString(), pageSize, (page - 1) * pageSize);
+
+        List<MessageSearchResult> results = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            results.add(new MessageSearchResult(
+                message.getId(),
+                message.getThread().getId(),
+                message.getSenderUser().getId(),
+                buildSnippet(message.getBody(), terms),
+                message.getCreatedAt()
+            ));
+        }
+        return results;
+    }
+
     /**
      * ✅ Marquer tous les messages d'un thread comme lus
      */
@@ -378,19 +448,114 @@ public class MessageService {
         }
     }
 
-    // ✅ Méthodes utilitaires privées avec gestion d'erreur
-    private void sendRealtimeNotification(Thread thread, MessageResponse message, String senderId) {
+    /**
+     * Notifier le destinataire des messages d'un lot déjà commité par le pipeline d'écriture.
+     * Chaque message part en temps réel, mais l'email et le push ne sont envoyés
+     * qu'une fois par lot pour éviter d'inonder le destinataire pendant une rafale.
+     */
+    @Transactional(readOnly = true)
+    public void notifyNewMessages(String threadId, String senderId, String recipientId,
+                                  String listingTitle, List<MessageResponse> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+
+        for (MessageResponse message : messages) {
+            sendRealtimeNotification(recipientId, message);
+        }
+
+        sendOfflineNotifications(threadId, recipientId, senderId, listingTitle,
+            messages.get(messages.size() - 1).getId());
+    }
+
+    /**
+     * Email et push selon la présence du destinataire : rien s'il affiche déjà le thread,
+     * email différé s'il est en ligne ailleurs (envoyé seulement si le message reste non lu)
+     */
+    private void sendOfflineNotifications(String threadId, String recipientId, String senderId,
+                                          String listingTitle, String lastMessageId) {
+        if (presenceRegistry.isViewingThread(recipientId, threadId)) {
+            return;
+        }
+
         try {
-            String recipientId = thread.getOwnerUser().getId().equals(senderId) ?
-                thread.getFinderUser().getId() : thread.getOwnerUser().getId();
+            String title = "Nouveau message";
+            String body = String.format("Message concernant: %s", listingTitle);
+            String url = "/messages/" + threadId;
 
-            messagingTemplate.convertAndSendToUser(
+            notificationService.sendPushNotification(recipientId, title, body, url);
+        } catch (Exception e) {
+            System.err.println("Erreur notification push: " + e.getMessage());
+        }
+
+        // Un seul email en attente par (destinataire, thread) : les messages suivants s'y ajoutent
+        boolean online = presenceRegistry.isOnline(recipientId);
+        String key = recipientId + ':' + threadId;
+        PendingEmail[] scheduled = new PendingEmail[1];
+        PendingEmail pending = pendingEmails.compute(key, (k, existing) -> {
+            if (existing != null) {
+                existing.update(senderId, listingTitle, lastMessageId);
+                return existing;
+            }
+            if (!online) {
+                return null;
+            }
+            scheduled[0] = new PendingEmail(threadId, recipientId, senderId, listingTitle, lastMessageId);
+            return scheduled[0];
+        });
+
+        if (scheduled[0] != null) {
+            delayedNotifications.schedule(() -> sendDelayedEmailNotification(key, scheduled[0]),
+                onlineEmailDelaySeconds, TimeUnit.SECONDS);
+        } else if (pending == null) {
+            sendEmailNotification(recipientId, senderId, listingTitle);
+        }
+    }
+
+    private void sendDelayedEmailNotification(String key, PendingEmail pending) {
+        // Retiré avant lecture : un message arrivant ensuite programme un nouvel email
+        if (!pendingEmails.remove(key, pending)) {
+            return;
+        }
+        try {
+            if (presenceRegistry.isViewingThread(pending.recipientId, pending.threadId)) {
+                return;
+            }
+            boolean stillUnread = messageRepository.findById(pending.lastMessageId)
+                .map(message -> !Boolean.TRUE.equals(message.getIsRead()))
+                .orElse(false);
+            if (stillUnread) {
+                sendEmailNotification(pending.recipientId, pending.senderId, pending.listingTitle);
+            }
+        } catch (Exception e) {
+            System.err.println("Erreur notification email différée: " + e.getMessage());
+        }
+    }
+
+    private void sendEmailNotification(String recipientId, String senderId, String listingTitle) {
+        try {
+            User recipient = userRepository.findById(recipientId).orElse(null);
+            User sender = userRepository.findById(senderId).orElse(null);
+
+            if (recipient != null && sender != null && recipient.getEmailVerified()) {
+                emailService.sendNewMessageNotification(recipient, sender, listingTitle);
+            }
+        } catch (Exception e) {
+            System.err.println("Erreur notification email: " + e.getMessage());
+        }
+    }
+
+    // ✅ Méthodes utilitaires privées avec gestion d'erreur
+    private void sendRealtimeNotification(String recipientId, MessageResponse message) {
+        try {
+            // Événements séquencés : rejouables à la reconnexion du destinataire
+            userEventReplayService.sendToUser(
                 recipientId,
                 "/queue/messages",
                 message
             );
 
-            messagingTemplate.convertAndSendToUser(
+            userEventReplayService.sendToUser(
                 recipientId,
                 "/queue/notifications",
                 new NotificationMessage("new_message", "Nouveau message reçu", message)
@@ -400,32 +565,76 @@ public class MessageService {
         }
     }
 
-    private void sendEmailNotification(Thread thread, User sender, String senderId) {
-        try {
-            User recipient = thread.getOwnerUser().getId().equals(senderId) ?
-                thread.getFinderUser() : thread.getOwnerUser();
+    private static final int MIN_SEARCH_TERM_LENGTH = 3;
+    private static final int MAX_SEARCH_TERMS = 8;
+    private static final int SNIPPET_RADIUS = 60;
 
-            if (recipient.getEmailVerified()) {
-                String threadSubject = thread.getListing().getTitle();
-                emailService.sendNewMessageNotification(recipient, sender, threadSubject);
+    /**
+     * Extraire les termes de recherche en supprimant les opérateurs booléens FULLTEXT
+     */
+    private List<String> extractSearchTerms(String query) {
+        List<String> terms = new ArrayList<>();
+        if (query == null) {
+            return terms;
+        }
+
+        for (String token : query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (token.length() >= MIN_SEARCH_TERM_LENGTH && !terms.contains(token)) {
+                terms.add(token);
+                if (terms.size() == MAX_SEARCH_TERMS) break;
             }
-        } catch (Exception e) {
-            System.err.println("Erreur notification email: " + e.getMessage());
         }
+        return terms;
     }
 
-    private void sendPushNotification(Thread thread, Message message, String senderId) {
-        try {
-            String recipientId = thread.getOwnerUser().getId().equals(senderId) ?
-                thread.getFinderUser().getId() : thread.getOwnerUser().getId();
+    /**
+     * Extrait du message centré sur la première occurrence d'un terme
+     */
+    private String buildSnippet(String body, List<String> terms) {
+        if (body == null) {
+            return "";
+        }
 
-            String title = "Nouveau message";
-            String body = String.format("Message concernant: %s", thread.getListing().getTitle());
-            String url = "/messages/" + thread.getId();
+        // Recherche insensible à la casse sur le texte original : les index restent valides
+        // même quand la mise en minuscules change la longueur (ex. « İ »)
+        int position = -1;
+        for (String term : terms) {
+            Matcher matcher = Pattern.compile(Pattern.quote(term), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE)
+                .matcher(body);
+            if (matcher.find() && (position < 0 || matcher.start() < position)) {
+                position = matcher.start();
+            }
+        }
+        if (position < 0) {
+            position = 0;
+        }
 
-            notificationService.sendPushNotification(recipientId, title, body, url);
-        } catch (Exception e) {
-            System.err.println("Erreur notification push: " + e.getMessage());
+        int start = Math.max(0, position - SNIPPET_RADIUS);
+        int end = Math.min(body.length(), position + SNIPPET_RADIUS);
+        return (start > 0 ? "…" : "") + body.substring(start, end).trim() + (end < body.length() ? "…" : "");
+    }
+
+    /**
+     * Email différé en attente pour un (destinataire, thread), mis à jour par les messages suivants
+     */
+    private static final class PendingEmail {
+        private final String threadId;
+        private final String recipientId;
+        private volatile String senderId;
+        private volatile String listingTitle;
+        private volatile String lastMessageId;
+
+        private PendingEmail(String threadId, String recipientId, String senderId,
+                             String listingTitle, String lastMessageId) {
+            this.threadId = threadId;
+            this.recipientId = recipientId;
+            update(senderId, listingTitle, lastMessageId);
+        }
+
+        private void update(String senderId, String listingTitle, String lastMessageId) {
+            this.senderId = senderId;
+            this.listingTitle = listingTitle;
+            this.lastMessageId = lastMessageId;
         }
     }
 
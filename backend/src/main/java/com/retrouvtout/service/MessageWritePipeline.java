@@ -0,0 +1,620 @@
+package com.retrouvtout.service;
+
+import com.retrouvtout.dto.request.CreateMessageRequest;
+import com.retrouvtout.dto.response.MessageResponse;
+import com.retrouvtout.dto.response.UserResponse;
+import com.retrouvtout.entity.Message;
+import com.retrouvtout.entity.User;
+import com.retrouvtout.exception.MessagePendingException;
+import com.retrouvtout.exception.ResourceNotFoundException;
+import com.retrouvtout.exception.ServiceUnavailableException;
+import com.retrouvtout.repository.MessageRepository;
+import com.retrouvtout.repository.ThreadRepository;
+import com.retrouvtout.security.CustomUserDetailsService;
+import com.retrouvtout.security.PrincipalCache;
+import com.retrouvtout.util.AppConstants;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pipeline d'écriture groupée des messages (group commit)
+ *
+ * Les messages reçus via POST /api/messages et /app/chat.sendMessage sont validés
+ * contre un cache des participants du thread, mis en file, puis écrits par petits lots :
+ * une transaction par lot, un INSERT groupé (hibernate.jdbc.batch_size) et une
+ * seule mise à jour de last_message_at par thread. Si un lot échoue, ses messages
+ * sont réécrits un par un pour que seul le message fautif échoue. Les accusés de
+ * réception et les notifications ne partent qu'après le commit.
+ *
+ * La file est bornée (503 au-delà) ; un message portant un clientMessageId déjà
+ * soumis par le même utilisateur n'est pas écrit deux fois. L'ID du message est
+ * dérivé de ce clientMessageId : un nouvel essai arrivé après l'expiration du
+ * cache de déduplication heurte la clé primaire, et c'est le message déjà écrit
+ * qui est renvoyé.
+ */
+@Service
+public class MessageWritePipeline {
+
+    private final ThreadRepository threadRepository;
+    private final MessageRepository messageRepository;
+    private final MessageService messageService;
+    private final PrincipalCache principalCache;
+    private final CustomUserDetailsService customUserDetailsService;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${app.messages.pipeline.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.messages.pipeline.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.messages.pipeline.flush-interval-ms:20}")
+    private long flushIntervalMs;
+
+    @Value("${app.messages.pipeline.ack-timeout-ms:5000}")
+    private long ackTimeoutMs;
+
+    @Value("${app.messages.pipeline.participant-cache-size:10000}")
+    private int participantCacheSize;
+
+    @Value("${app.messages.pipeline.participant-cache-ttl-seconds:300}")
+    private long participantCacheTtlSeconds;
+
+    @Value("${app.messages.pipeline.unknown-thread-cache-ttl-seconds:30}")
+    private long unknownThreadCacheTtlSeconds;
+
+    @Value("${app.messages.pipeline.unknown-thread-cache-size:10000}")
+    private int unknownThreadCacheSize;
+
+    @Value("${app.messages.pipeline.max-pending:5000}")
+    private int maxPending;
+
+    @Value("${app.messages.pipeline.dedup-ttl-seconds:600}")
+    private long dedupTtlSeconds;
+
+    @Value("${app.messages.pipeline.dedup-cache-size:20000}")
+    private int dedupCacheSize;
+
+    private final ConcurrentLinkedQueue<PendingMessage> pendingMessages = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private Map<String, ThreadParticipants> participantCache;
+    // Identifiants de thread inconnus -> fin de validité (évite de relire la base à chaque trame)
+    private Map<String, Long> unknownThreads;
+    // utilisateur:clientMessageId -> dernier message soumis ; protégé par son propre verrou
+    private LinkedHashMap<String, PendingMessage> recentSubmissions;
+    private ScheduledExecutorService flusher;
+
+    @Autowired
+    public MessageWritePipeline(ThreadRepository threadRepository,
+                                MessageRepository messageRepository,
+                                MessageService messageService,
+                                PrincipalCache principalCache,
+                                CustomUserDetailsService customUserDetailsService,
+                                PlatformTransactionManager transactionManager) {
+        this.threadRepository = threadRepository;
+        this.messageRepository = messageRepository;
+        this.messageService = messageService;
+        this.principalCache = principalCache;
+        this.customUserDetailsService = customUserDetailsService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        final int cacheSize = participantCacheSize;
+        this.participantCache = Collections.synchronizedMap(
+            new LinkedHashMap<String, ThreadParticipants>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ThreadParticipants> eldest) {
+                    return size() > cacheSize;
+                }
+            });
+
+        final int unknownSize = unknownThreadCacheSize;
+        this.unknownThreads = Collections.synchronizedMap(
+            new LinkedHashMap<String, Long>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > unknownSize;
+                }
+            });
+
+        final int dedupSize = dedupCacheSize;
+        this.recentSubmissions = new LinkedHashMap<String, PendingMessage>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PendingMessage> eldest) {
+                return size() > dedupSize;
+            }
+        };
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            java.lang.Thread thread = new java.lang.Thread(runnable, "message-write-pipeline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushSafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+
+        System.out.println("✅ Pipeline d'écriture des messages démarré (lot: " + batchSize +
+            ", intervalle: " + flushIntervalMs + " ms, actif: " + enabled + ")");
+    }
+
+    @PreDestroy
+    public void stop() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(ackTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            java.lang.Thread.currentThread().interrupt();
+        }
+        // Écrire ce qui reste en file avant l'arrêt
+        flushSafely();
+    }
+
+    /**
+     * Soumettre un message au pipeline.
+     * Les erreurs de validation sont levées immédiatement, les erreurs d'écriture
+     * sont remontées par le future, qui n'est complété qu'après le commit.
+     */
+    public CompletableFuture<MessageResponse> submit(CreateMessageRequest request, String userId) {
+        if (!enabled) {
+            try {
+                return CompletableFuture.completedFuture(messageService.createMessage(request, userId));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return enqueue(request, userId).future;
+    }
+
+    /**
+     * Soumettre un message et attendre son commit (utilisé par l'API REST)
+     * Au-delà du délai, MessagePendingException porte l'ID du message en attente :
+     * un nouvel essai avec le même clientMessageId ne crée pas de doublon.
+     */
+    public MessageResponse submitAndAwait(CreateMessageRequest request, String userId) {
+        if (!enabled) {
+            return messageService.createMessage(request, userId);
+        }
+
+        PendingMessage pending = enqueue(request, userId);
+        try {
+            return pending.future.get(ackTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("Erreur lors de l'écriture du message", cause);
+        } catch (TimeoutException e) {
+            throw new MessagePendingException("Message en cours d'enregistrement", pending.toResponse());
+        } catch (InterruptedException e) {
+            java.lang.Thread.currentThread().interrupt();
+            throw new RuntimeException("Écriture du message interrompue", e);
+        }
+    }
+
+    /**
+     * Retirer un thread du cache des participants
+     */
+    public void evictThread(String threadId) {
+        participantCache.remove(threadId);
+        unknownThreads.remove(threadId);
+    }
+
+    /**
+     * Nom d'un participant du thread (depuis le cache), ou null s'il n'en fait pas partie
+     */
+    public String findParticipantName(String threadId, String userId) {
+        ThreadParticipants participants;
+        try {
+            participants = getParticipants(threadId);
+        } catch (ResourceNotFoundException e) {
+            return null;
+        }
+        if (!participants.includes(userId)) {
+            return null;
+        }
+        return participants.ownerId.equals(userId) ? participants.ownerName : participants.finderName;
+    }
+
+    /**
+     * Nombre de messages en attente d'écriture
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    // Méthodes privées
+
+    private PendingMessage enqueue(CreateMessageRequest request, String userId) {
+        if (request.getThreadId() == null || request.getThreadId().trim().isEmpty()) {
+            throw new IllegalArgumentException("L'ID du thread est obligatoire");
+        }
+        if (request.getBody() == null || request.getBody().trim().isEmpty()) {
+            throw new IllegalArgumentException("Le contenu du message est obligatoire");
+        }
+        if (request.getBody().length() > AppConstants.MAX_MESSAGE_LENGTH) {
+            throw new IllegalArgumentException("Le message ne peut pas dépasser " +
+                AppConstants.MAX_MESSAGE_LENGTH + " caractères");
+        }
+
+        Message.MessageType messageType = Message.MessageType.fromValue(
+            request.getMessageType() != null ? request.getMessageType() : "text");
+
+        requireActiveSender(userId);
+
+        ThreadParticipants participants = getParticipants(request.getThreadId());
+        if (!participants.includes(userId)) {
+            throw new SecurityException("Vous n'êtes pas autorisé à envoyer un message dans ce thread");
+        }
+
+        // Même clientMessageId : même ID de message, et le premier envoi est réutilisé s'il est connu
+        String clientMessageId = request.getClientMessageId();
+        String dedupKey = clientMessageId != null && !clientMessageId.trim().isEmpty()
+            ? userId + ":" + clientMessageId.trim() : null;
+        String id = dedupKey != null
+            ? UUID.nameUUIDFromBytes(("message:" + dedupKey).getBytes(StandardCharsets.UTF_8)).toString()
+            : UUID.randomUUID().toString();
+
+        PendingMessage pending = new PendingMessage(
+            id, participants, userId, request.getBody(), messageType,
+            System.currentTimeMillis() + dedupTtlSeconds * 1000);
+
+        if (dedupKey != null) {
+            synchronized (recentSubmissions) {
+                PendingMessage previous = recentSubmissions.get(dedupKey);
+                if (previous != null && previous.expiresAt > System.currentTimeMillis()
+                        && !previous.future.isCompletedExceptionally()) {
+                    return previous;
+                }
+                recentSubmissions.put(dedupKey, pending);
+            }
+        }
+
+        // File bornée : au-delà, le client réessaie plus tard
+        if (pendingCount.incrementAndGet() > maxPending) {
+            pendingCount.decrementAndGet();
+            if (dedupKey != null) {
+                synchronized (recentSubmissions) {
+                    recentSubmissions.remove(dedupKey, pending);
+                }
+            }
+            throw new ServiceUnavailableException("Trop de messages en attente, veuillez réessayer", 1);
+        }
+        pendingMessages.add(pending);
+
+        // Déclencher un flush anticipé dès qu'un lot complet est disponible
+        if (pendingCount.get() >= batchSize) {
+            flusher.execute(this::flushSafely);
+        }
+
+        return pending;
+    }
+
+    /**
+     * L'expéditeur doit être un utilisateur actif
+     * Même cache que l'authentification : une désactivation l'invalide immédiatement.
+     */
+    private void requireActiveSender(String userId) {
+        UserDetails principal;
+        try {
+            principal = principalCache.get(userId, customUserDetailsService::loadUserById);
+        } catch (UsernameNotFoundException e) {
+            throw new ResourceNotFoundException("Utilisateur", "id", userId);
+        }
+        if (principal == null || !principal.isEnabled()) {
+            throw new ResourceNotFoundException("Utilisateur", "id", userId);
+        }
+    }
+
+    private ThreadParticipants getParticipants(String threadId) {
+        long now = System.currentTimeMillis();
+        ThreadParticipants cached = participantCache.get(threadId);
+        if (cached != null && cached.expiresAt > now) {
+            return cached;
+        }
+
+        Long unknownUntil = unknownThreads.get(threadId);
+        if (unknownUntil != null && unknownUntil > now) {
+            throw new ResourceNotFoundException("Thread", "id", threadId);
+        }
+
+        long expiresAt = now + participantCacheTtlSeconds * 1000;
+        ThreadParticipants loaded = readOnlyTransactionTemplate.execute(status ->
+            threadRepository.findWithParticipantsById(threadId)
+                .map(thread -> ThreadParticipants.from(thread, expiresAt))
+                .orElse(null));
+
+        if (loaded == null) {
+            unknownThreads.put(threadId, now + unknownThreadCacheTtlSeconds * 1000);
+            throw new ResourceNotFoundException("Thread", "id", threadId);
+        }
+
+        unknownThreads.remove(threadId);
+        participantCache.put(threadId, loaded);
+        return loaded;
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            System.err.println("❌ Erreur dans le pipeline d'écriture des messages: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized void flush() {
+        while (true) {
+            List<PendingMessage> batch = new ArrayList<>(batchSize);
+            PendingMessage pending;
+            while (batch.size() < batchSize && (pending = pendingMessages.poll()) != null) {
+                batch.add(pending);
+            }
+
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            pendingCount.addAndGet(-batch.size());
+            writeBatch(batch);
+        }
+    }
+
+    private void writeBatch(List<PendingMessage> batch) {
+        List<PendingMessage> written;
+        try {
+            insert(batch);
+            written = batch;
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                if (!completeIfAlreadyWritten(batch.get(0))) {
+                    System.err.println("❌ Échec de l'écriture du message " + batch.get(0).id + ": " + e.getMessage());
+                    batch.get(0).future.completeExceptionally(e);
+                }
+                return;
+            }
+
+            // Un message fautif ne doit pas faire échouer les autres : réécriture un par un
+            System.err.println("⚠️ Échec de l'écriture d'un lot de " + batch.size() +
+                " messages, nouvel essai message par message: " + e.getMessage());
+            written = new ArrayList<>(batch.size());
+            for (PendingMessage pending : batch) {
+                try {
+                    insert(List.of(pending));
+                    written.add(pending);
+                } catch (RuntimeException rowError) {
+                    if (!completeIfAlreadyWritten(pending)) {
+                        System.err.println("❌ Échec de l'écriture du message " + pending.id + ": " + rowError.getMessage());
+                        pending.future.completeExceptionally(rowError);
+                    }
+                }
+            }
+        }
+
+        acknowledge(written);
+    }
+
+    /**
+     * Écrire des messages dans une seule transaction
+     */
+    private void insert(List<PendingMessage> messages) {
+        // Regrouper par thread en conservant l'ordre d'arrivée
+        Map<String, PendingMessage> lastByThread = new LinkedHashMap<>();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            for (PendingMessage pending : messages) {
+                Message message = new Message();
+                message.setId(pending.id);
+                message.setThread(entityManager.getReference(
+                    com.retrouvtout.entity.Thread.class, pending.participants.threadId));
+                message.setSenderUser(entityManager.getReference(User.class, pending.senderId));
+                message.setBody(pending.body);
+                message.setMessageType(pending.messageType);
+                message.setIsRead(false);
+
+                entityManager.persist(message);
+                pending.createdAt = message.getCreatedAt() != null ? message.getCreatedAt() : LocalDateTime.now();
+                lastByThread.put(pending.participants.threadId, pending);
+            }
+            entityManager.flush();
+
+            // Une seule mise à jour de last_message_at par thread et par lot
+            for (Map.Entry<String, PendingMessage> entry : lastByThread.entrySet()) {
+                threadRepository.touchLastMessageAt(entry.getKey(), entry.getValue().createdAt);
+            }
+            entityManager.clear();
+        });
+    }
+
+    /**
+     * Nouvel essai d'un message déjà écrit (même clientMessageId, cache de
+     * déduplication expiré) : le message existant est renvoyé, sans nouvelle notification
+     *
+     * @return false si l'échec a une autre cause
+     */
+    private boolean completeIfAlreadyWritten(PendingMessage pending) {
+        LocalDateTime storedAt;
+        try {
+            storedAt = readOnlyTransactionTemplate.execute(status ->
+                messageRepository.findById(pending.id)
+                    .filter(stored -> stored.getSenderUser().getId().equals(pending.senderId)
+                        && stored.getThread().getId().equals(pending.participants.threadId))
+                    .map(Message::getCreatedAt)
+                    .orElse(null));
+        } catch (RuntimeException e) {
+            return false;
+        }
+        if (storedAt == null) {
+            return false;
+        }
+
+        pending.createdAt = storedAt;
+        pending.future.complete(pending.toResponse());
+        System.out.println("♻️ Message déjà enregistré, renvoyé tel quel: " + pending.id);
+        return true;
+    }
+
+    /**
+     * Après le commit : accusés de réception puis notifications
+     */
+    private void acknowledge(List<PendingMessage> written) {
+        Map<String, List<PendingMessage>> byThread = new LinkedHashMap<>();
+        for (PendingMessage pending : written) {
+            byThread.computeIfAbsent(pending.participants.threadId, k -> new ArrayList<>()).add(pending);
+        }
+
+        for (List<PendingMessage> messages : byThread.values()) {
+            Map<String, List<MessageResponse>> bySender = new LinkedHashMap<>();
+            for (PendingMessage pending : messages) {
+                MessageResponse response = pending.toResponse();
+                pending.future.complete(response);
+                bySender.computeIfAbsent(pending.senderId, k -> new ArrayList<>()).add(response);
+            }
+
+            ThreadParticipants participants = messages.get(0).participants;
+            for (Map.Entry<String, List<MessageResponse>> entry : bySender.entrySet()) {
+                try {
+                    messageService.notifyNewMessages(
+                        participants.threadId,
+                        entry.getKey(),
+                        participants.otherParticipant(entry.getKey()),
+                        participants.listingTitle,
+                        entry.getValue());
+                } catch (Exception e) {
+                    System.err.println("⚠️ Erreur notifications: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Message en attente d'écriture
+     */
+    private static class PendingMessage {
+        private final String id;
+        private final ThreadParticipants participants;
+        private final String senderId;
+        private final String body;
+        private final Message.MessageType messageType;
+        private final long expiresAt;
+        private final CompletableFuture<MessageResponse> future = new CompletableFuture<>();
+        private volatile LocalDateTime createdAt;
+
+        PendingMessage(String id, ThreadParticipants participants, String senderId,
+                       String body, Message.MessageType messageType, long expiresAt) {
+            this.id = id;
+            this.participants = participants;
+            this.senderId = senderId;
+            this.body = body;
+            this.messageType = messageType;
+            this.expiresAt = expiresAt;
+        }
+
+        MessageResponse toResponse() {
+            MessageResponse response = new MessageResponse();
+            response.setId(id);
+            response.setThreadId(participants.threadId);
+            response.setBody(body);
+            response.setMessageType(messageType.getValue());
+            response.setIsRead(false);
+            response.setCreatedAt(createdAt);
+            response.setSenderUser(participants.describe(senderId));
+            return response;
+        }
+    }
+
+    /**
+     * Instantané immuable des participants d'un thread, valable jusqu'à expiresAt
+     */
+    private static final class ThreadParticipants {
+        private final String threadId;
+        private final String ownerId;
+        private final String ownerName;
+        private final String ownerRole;
+        private final String finderId;
+        private final String finderName;
+        private final String finderRole;
+        private final String listingTitle;
+        private final long expiresAt;
+
+        private ThreadParticipants(String threadId, String ownerId, String ownerName, String ownerRole,
+                                   String finderId, String finderName, String finderRole, String listingTitle,
+                                   long expiresAt) {
+            this.threadId = threadId;
+            this.ownerId = ownerId;
+            this.ownerName = ownerName;
+            this.ownerRole = ownerRole;
+            this.finderId = finderId;
+            this.finderName = finderName;
+            this.finderRole = finderRole;
+            this.listingTitle = listingTitle;
+            this.expiresAt = expiresAt;
+        }
+
+        static ThreadParticipants from(com.retrouvtout.entity.Thread thread, long expiresAt) {
+            User owner = thread.getOwnerUser();
+            User finder = thread.getFinderUser();
+            return new ThreadParticipants(
+                thread.getId(),
+                owner.getId(), owner.getName(), owner.getRole() != null ? owner.getRole().getValue() : "mixte",
+                finder.getId(), finder.getName(), finder.getRole() != null ? finder.getRole().getValue() : "mixte",
+                thread.getListing().getTitle(),
+                expiresAt);
+        }
+
+        boolean includes(String userId) {
+            return ownerId.equals(userId) || finderId.equals(userId);
+        }
+
+        String otherParticipant(String userId) {
+            return ownerId.equals(userId) ? finderId : ownerId;
+        }
+
+        UserResponse describe(String userId) {
+            UserResponse user = new UserResponse();
+            user.setId(userId);
+            if (ownerId.equals(userId)) {
+                user.setName(ownerName);
+                user.setRole(ownerRole);
+            } else {
+                user.setName(finderName);
+                user.setRole(finderRole);
+            }
+            return user;
+        }
+    }
+}
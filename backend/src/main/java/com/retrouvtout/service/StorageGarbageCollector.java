@@ -0,0 +1,306 @@
+package com.retrouvtout.service;
+
+import com.retrouvtout.entity.Listing;
+import com.retrouvtout.repository.ListingImageRepository;
+import com.retrouvtout.repository.ListingRepository;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ramasse-miettes du stockage des images
+ *
+ * À chaque passage : nettoyage des fichiers temporaires, puis examen d'un lot
+ * d'originaux (images/ et objects/) dans l'ordre des chemins, à partir d'un
+ * curseur persisté sur disque ; le tour complet se fait donc sur plusieurs
+ * passages. Les références (listings.image_url, listing_images.url, hors
+ * annonces supprimées) sont vérifiées par lot, sur le chemin relatif (la partie
+ * de l'URL après /files/, colonnes indexées image_path et path) ; un original non référencé et plus ancien que la
+ * période de grâce est supprimé avec ses déclinaisons. La date est relue juste
+ * avant la suppression : un original redéposé entre-temps (déduplication) est gardé.
+ * Le parcours et les suppressions sont limités en débit pour ne pas concurrencer
+ * les lectures servies par FileController, sur un thread dédié.
+ */
+@Service
+public class StorageGarbageCollector {
+
+    private static final String CURSOR_FILE = ".gc-cursor";
+    private static final Set<String> ROOTS = Set.of("images", "objects");
+    private static final Set<String> SKIPPED_DIRS = Set.of("objects/.ingest");
+
+    private final FileUploadService fileUploadService;
+    private final ImageDerivativeService imageDerivativeService;
+    private final FileServingService fileServingService;
+    private final ListingRepository listingRepository;
+    private final ListingImageRepository listingImageRepository;
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private ExecutorService executor;
+    private Bucket ioBudget;
+    private Counter deletedCounter;
+
+    @Value("${app.upload.dir:./uploads}")
+    private String uploadDir;
+
+    @Value("${app.upload.gc.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.upload.gc.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.upload.gc.grace-hours:24}")
+    private long graceHours;
+
+    @Value("${app.upload.gc.files-per-second:200}")
+    private long filesPerSecond;
+
+    @Autowired
+    public StorageGarbageCollector(FileUploadService fileUploadService,
+                                   ImageDerivativeService imageDerivativeService,
+                                   FileServingService fileServingService,
+                                   ListingRepository listingRepository,
+                                   ListingImageRepository listingImageRepository,
+                                   MeterRegistry meterRegistry) {
+        this.fileUploadService = fileUploadService;
+        this.imageDerivativeService = imageDerivativeService;
+        this.fileServingService = fileServingService;
+        this.listingRepository = listingRepository;
+        this.listingImageRepository = listingImageRepository;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            java.lang.Thread thread = new java.lang.Thread(runnable, "storage-gc");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ioBudget = Bucket.builder()
+            .addLimit(Bandwidth.simple(Math.max(1, filesPerSecond), Duration.ofSeconds(1)))
+            .build();
+        this.deletedCounter = Counter.builder("storage.gc.deleted")
+            .description("Images orphelines supprimées par le ramasse-miettes")
+            .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Déclencher un passage, sauf si le précédent n'est pas terminé
+     * Le travail tourne sur le thread dédié : le planificateur partagé n'est pas bloqué
+     */
+    @Scheduled(fixedDelayString = "${app.upload.gc.interval-ms:900000}",
+               initialDelayString = "${app.upload.gc.initial-delay-ms:120000}")
+    public void schedule() {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                runOnce();
+            } catch (InterruptedIOException e) {
+                java.lang.Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("❌ Erreur du ramasse-miettes du stockage: " + e.getMessage());
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    // Méthodes privées
+
+    private void runOnce() throws IOException {
+        fileUploadService.cleanupTempFiles();
+
+        Path root = Paths.get(uploadDir).toAbsolutePath().normalize();
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+
+        String cursor = readCursor(root);
+        Map<String, Long> lastModified = new HashMap<>();
+        TreeSet<String> batch = collectBatch(root, cursor, lastModified);
+
+        // Moins d'un lot complet : fin du tour, le prochain passage repart du début
+        String nextCursor = batch.size() < batchSize ? "" : batch.last();
+
+        long cutoff = System.currentTimeMillis() - graceHours * 3600 * 1000;
+        List<String> candidates = new ArrayList<>();
+        for (String relativePath : batch) {
+            if (lastModified.get(relativePath) < cutoff) {
+                candidates.add(relativePath);
+            }
+        }
+
+        int deleted = 0;
+        if (!candidates.isEmpty()) {
+            Set<String> referenced = new HashSet<>(
+                listingRepository.findReferencedImagePaths(candidates, Listing.ListingStatus.SUPPRIME));
+            referenced.addAll(listingImageRepository.findReferencedPaths(candidates, Listing.ListingStatus.SUPPRIME));
+
+            for (String relativePath : candidates) {
+                if (referenced.contains(relativePath)) {
+                    continue;
+                }
+                throttle();
+                Path original = root.resolve(relativePath);
+                if (!isStillExpired(original, cutoff)) {
+                    continue;
+                }
+                fileUploadService.deleteWithDerivatives(original);
+                fileServingService.evict(original);
+                deletedCounter.increment();
+                deleted++;
+            }
+        }
+
+        writeCursor(root, nextCursor);
+
+        if (deleted > 0 || nextCursor.isEmpty()) {
+            System.out.println("🧹 Ramasse-miettes du stockage: " + batch.size() + " original(aux) examiné(s), "
+                + deleted + " orphelin(s) supprimé(s)" + (nextCursor.isEmpty() ? ", tour terminé" : ""));
+        }
+    }
+
+    /**
+     * Les batchSize plus petits chemins d'originaux situés après le curseur
+     * Les sous-arbres entièrement avant le curseur, ou après le lot déjà plein, ne sont pas parcourus.
+     */
+    private TreeSet<String> collectBatch(Path root, String cursor, Map<String, Long> lastModified) throws IOException {
+        TreeSet<String> batch = new TreeSet<>();
+
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (dir.equals(root)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String relativeDir = relativePath(root, dir);
+                if (root.equals(dir.getParent()) && !ROOTS.contains(relativeDir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (SKIPPED_DIRS.contains(relativeDir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (!cursor.isEmpty() && (relativeDir + "/" + Character.MAX_VALUE).compareTo(cursor) < 0) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (batch.size() >= batchSize && relativeDir.compareTo(batch.last()) > 0) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String filename = file.getFileName().toString();
+                if (!attrs.isRegularFile() || filename.endsWith(".tmp")
+                        || imageDerivativeService.isDerivativeFilename(filename)) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                String relativeFile = relativePath(root, file);
+                if (relativeFile.compareTo(cursor) <= 0
+                        || (batch.size() >= batchSize && relativeFile.compareTo(batch.last()) > 0)) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                throttle();
+                batch.add(relativeFile);
+                lastModified.put(relativeFile, attrs.lastModifiedTime().toMillis());
+                if (batch.size() > batchSize) {
+                    lastModified.remove(batch.pollLast());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return batch;
+    }
+
+    /**
+     * Relire la date juste avant la suppression : le lot a pu être collecté il y a
+     * longtemps (parcours limité en débit) et le contenu redéposé depuis
+     */
+    private boolean isStillExpired(Path original, long cutoff) {
+        try {
+            return Files.getLastModifiedTime(original).toMillis() < cutoff;
+        } catch (IOException e) {
+            // Déjà supprimé ou illisible : rien à faire
+            return false;
+        }
+    }
+
+    /**
+     * Attendre un jeton du budget d'E/S (fichiers examinés ou supprimés par seconde)
+     */
+    private void throttle() throws InterruptedIOException {
+        try {
+            ioBudget.asBlocking().consume(1);
+        } catch (InterruptedException e) {
+            java.lang.Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Ramasse-miettes interrompu");
+        }
+    }
+
+    private String relativePath(Path root, Path path) {
+        return root.relativize(path).toString().replace('\\', '/');
+    }
+
+    private String readCursor(Path root) {
+        try {
+            Path file = root.resolve(CURSOR_FILE);
+            return Files.exists(file) ? Files.readString(file, StandardCharsets.UTF_8).trim() : "";
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private void writeCursor(Path root, String cursor) throws IOException {
+        Path tmp = root.resolve(CURSOR_FILE + ".tmp");
+        Files.writeString(tmp, cursor, StandardCharsets.UTF_8);
+        Files.move(tmp, root.resolve(CURSOR_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -1,11 +1,16 @@
 package com.retrouvtout.service;
 
+import com.retrouvtout.dto.request.ContactFinderRequest;
+import com.retrouvtout.dto.response.ContactResponse;
+import com.retrouvtout.dto.response.MessageResponse;
 import com.retrouvtout.dto.response.PagedResponse;
 import com.retrouvtout.dto.response.ThreadResponse;
 import com.retrouvtout.entity.Listing;
+import com.retrouvtout.entity.Message;
 import com.retrouvtout.entity.User;
 import com.retrouvtout.exception.ResourceNotFoundException;
 import com.retrouvtout.repository.ListingRepository;
+import com.retrouvtout.repository.MessageRepository;
 import com.retrouvtout.repository.ThreadRepository;
 import com.retrouvtout.repository.UserRepository;
 import com.retrouvtout.util.ModelMapper;
@@ -14,7 +19,10 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -29,20 +37,29 @@ public class ThreadService {
     private final ThreadRepository threadRepository;
     private final ListingRepository listingRepository;
     private final UserRepository userRepository;
+    private final MessageRepository messageRepository;
+    private final MessageService messageService;
     private final ModelMapper modelMapper;
     private final NotificationService notificationService;
+    private final MessageArchiveService messageArchiveService;
 
     @Autowired
     public ThreadService(ThreadRepository threadRepository,
                         ListingRepository listingRepository,
                         UserRepository userRepository,
+                        MessageRepository messageRepository,
+                        MessageService messageService,
                         ModelMapper modelMapper,
-                        NotificationService notificationService) {
+                        NotificationService notificationService,
+                        MessageArchiveService messageArchiveService) {
         this.threadRepository = threadRepository;
         this.listingRepository = listingRepository;
         this.userRepository = userRepository;
+        this.messageRepository = messageRepository;
+        this.messageService = messageService;
         this.modelMapper = modelMapper;
         this.notificationService = notificationService;
+        this.messageArchiveService = messageArchiveService;
     }
 
     /**
@@ -60,6 +77,11 @@ public class ThreadService {
             throw new IllegalArgumentException("Vous ne pouvez pas créer une conversation avec vous-même");
         }
 
+        // Une conversation archivée compte comme existante : elle est restaurée
+        if (messageArchiveService.restoreArchivedContact(listingId, ownerUserId)) {
+            throw new IllegalStateException("Une conversation existe déjà pour cette annonce");
+        }
+
         // Vérifier qu'une conversation n'existe pas déjà
         if (threadRepository.findByListingAndOwnerUser(listing, ownerUser).isPresent()) {
             throw new IllegalStateException("Une conversation existe déjà pour cette annonce");
@@ -90,6 +112,103 @@ public class ThreadService {
         return modelMapper.mapThreadToThreadResponse(savedThread);
     }
 
+    /**
+     * Contacter un retrouveur : obtenir ou créer la conversation et enregistrer
+     * le premier message dans la même transaction.
+     * Idempotent : un thread existant est réutilisé, et un renvoi portant le même
+     * clientMessageId réutilise le message déjà enregistré (sans clé, chaque appel
+     * enregistre un nouveau message). Une conversation archivée est restaurée.
+     */
+    public ContactResponse contactFinder(ContactFinderRequest request, String ownerUserId) {
+        User ownerUser = userRepository.findByIdAndActiveTrue(ownerUserId)
+            .orElseThrow(() -> new ResourceNotFoundException("Utilisateur", "id", ownerUserId));
+
+        Listing listing = listingRepository.findById(request.getListingId())
+            .orElseThrow(() -> new ResourceNotFoundException("Annonce", "id", request.getListingId()));
+
+        if (listing.getFinderUser().getId().equals(ownerUserId)) {
+            throw new IllegalArgumentException("Vous ne pouvez pas créer une conversation avec vous-même");
+        }
+
+        // Ancienne conversation archivée : la rouvrir plutôt que d'en créer une nouvelle
+        messageArchiveService.restoreArchivedContact(listing.getId(), ownerUserId);
+
+        // Upsert sur ux_threads_listing_owner : pas de vérification préalable, donc pas de course
+        String candidateId = java.util.UUID.randomUUID().toString();
+        threadRepository.insertIfAbsent(
+            candidateId,
+            listing.getId(),
+            ownerUserId,
+            listing.getFinderUser().getId(),
+            com.retrouvtout.entity.Thread.ThreadStatus.ACTIVE.name());
+
+        // Relecture verrouillée : les contacts concurrents de ce propriétaire sur cette
+        // annonce s'exécutent l'un après l'autre, et un thread commité entre-temps est visible
+        com.retrouvtout.entity.Thread thread = threadRepository.findByListingAndOwnerUserForUpdate(listing, ownerUser)
+            .orElseThrow(() -> new IllegalStateException("Conversation introuvable après création"));
+        boolean threadCreated = candidateId.equals(thread.getId());
+
+        String body = request.getBody().trim();
+        Message message = null;
+
+        // Même clé d'idempotence : même ID de message, donc rejeu détecté sans deviner
+        String clientMessageId = request.getClientMessageId();
+        String messageId = null;
+        if (clientMessageId != null && !clientMessageId.trim().isEmpty()) {
+            messageId = java.util.UUID.nameUUIDFromBytes(
+                ("contact:" + ownerUserId + ":" + listing.getId() + ":" + clientMessageId.trim())
+                    .getBytes(java.nio.charset.StandardCharsets.UTF_8)).toString();
+            // Un rejeu concurrent a attendu le verrou du thread : le message commité est relu ici
+            message = messageRepository.findByIdForShare(messageId).orElse(null);
+        }
+
+        boolean messageCreated = message == null;
+        if (messageCreated) {
+            message = new Message();
+            message.setId(messageId);
+            message.setThread(thread);
+            message.setSenderUser(ownerUser);
+            message.setBody(body);
+            message.setMessageType(Message.MessageType.TEXT);
+            message.setIsRead(false);
+            message = messageRepository.save(message);
+
+            threadRepository.touchLastMessageAt(thread.getId(), message.getCreatedAt() != null ?
+                message.getCreatedAt() : java.time.LocalDateTime.now());
+            thread.setLastMessageAt(message.getCreatedAt());
+        }
+
+        ThreadResponse threadResponse = modelMapper.mapThreadToThreadResponse(thread);
+        MessageResponse messageResponse = modelMapper.mapMessageToMessageResponse(message);
+
+        // Notifier le retrouveur uniquement après le commit
+        if (messageCreated) {
+            String threadId = thread.getId();
+            String finderUserId = listing.getFinderUser().getId();
+            String listingTitle = listing.getTitle();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    if (threadCreated) {
+                        try {
+                            notificationService.sendPushNotification(
+                                finderUserId,
+                                "Nouvelle demande de contact",
+                                String.format("Quelqu'un s'intéresse à votre annonce : %s", listingTitle),
+                                "/messages/" + threadId);
+                        } catch (Exception e) {
+                            System.err.println("Erreur lors de l'envoi de la notification: " + e.getMessage());
+                        }
+                    }
+                    messageService.notifyNewMessages(threadId, ownerUserId, finderUserId,
+                        listingTitle, Collections.singletonList(messageResponse));
+                }
+            });
+        }
+
+        return new ContactResponse(threadResponse, messageResponse, threadCreated);
+    }
+
     /**
      * Obtenir les threads d'un utilisateur
      */
@@ -4,11 +4,13 @@ import com.retrouvtout.dto.response.UserResponse;
 import com.retrouvtout.entity.User;
 import com.retrouvtout.exception.ResourceNotFoundException;
 import com.retrouvtout.repository.UserRepository;
+import com.retrouvtout.security.PasswordHashingService;
+import com.retrouvtout.security.PrincipalCache;
+import com.retrouvtout.security.TokenVersionCache;
 import com.retrouvtout.util.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -24,19 +26,25 @@ import java.util.Optional;
 public class UserService {
 
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
     private final EmailService emailService;
     private final ModelMapper modelMapper;
+    private final PrincipalCache principalCache;
+    private final TokenVersionCache tokenVersionCache;
 
     @Autowired
     public UserService(UserRepository userRepository,
-                      PasswordEncoder passwordEncoder,
+                      PasswordHashingService passwordHashingService,
                       EmailService emailService,
-                      ModelMapper modelMapper) {
+                      ModelMapper modelMapper,
+                      PrincipalCache principalCache,
+                      TokenVersionCache tokenVersionCache) {
         this.userRepository = userRepository;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHashingService = passwordHashingService;
         this.emailService = emailService;
         this.modelMapper = modelMapper;
+        this.principalCache = principalCache;
+        this.tokenVersionCache = tokenVersionCache;
     }
 
     /**
@@ -52,7 +60,7 @@ public class UserService {
         user.setId(java.util.UUID.randomUUID().toString());
         user.setName(name);
         user.setEmail(email);
-        user.setPasswordHash(passwordEncoder.encode(password));
+        user.setPasswordHash(passwordHashingService.encode(password));
         user.setRole(role);
         user.setEmailVerified(false);
         user.setActive(true);
@@ -111,8 +119,10 @@ public class UserService {
             user.setPhone(phone.trim().isEmpty() ? null : phone.trim());
         }
         
-        if (role != null) {
+        if (role != null && role != user.getRole()) {
             user.setRole(role);
+            // Les autorités dépendent du rôle
+            revokeTokens(user);
         }
 
         User updatedUser = userRepository.save(user);
@@ -130,11 +140,13 @@ public class UserService {
             throw new IllegalStateException("Ce compte n'a pas de mot de passe défini");
         }
 
-        if (!passwordEncoder.matches(oldPassword, user.getPasswordHash())) {
+        if (!passwordHashingService.matches(oldPassword, user.getPasswordHash())) {
             throw new IllegalArgumentException("Ancien mot de passe incorrect");
         }
 
-        user.setPasswordHash(passwordEncoder.encode(newPassword));
+        user.setPasswordHash(passwordHashingService.encode(newPassword));
+        // Les tokens émis avant le changement (dont les refresh tokens) ne sont plus acceptés
+        revokeTokens(user);
         userRepository.save(user);
     }
 
@@ -151,6 +163,7 @@ public class UserService {
 
         user.setEmailVerified(true);
         userRepository.save(user);
+        principalCache.invalidate(userId);
     }
 
     /**
@@ -172,6 +185,7 @@ public class UserService {
             .orElseThrow(() -> new ResourceNotFoundException("Utilisateur", "id", userId));
 
         user.setActive(false);
+        revokeTokens(user);
         userRepository.save(user);
     }
 
@@ -183,6 +197,7 @@ public class UserService {
             .orElseThrow(() -> new ResourceNotFoundException("Utilisateur", "id", userId));
 
         user.setActive(true);
+        revokeTokens(user);
         userRepository.save(user);
     }
 
@@ -241,4 +256,15 @@ public class UserService {
         Page<User> users = userRepository.findUsersWithFilters(name, email, role, emailVerified, pageable);
         return users.map(modelMapper::mapUserToUserResponse);
     }
-}
\ No newline at end of file
+
+    // Méthodes privées
+
+    /**
+     * Révoquer les tokens autoportés déjà émis et oublier le principal en cache
+     */
+    private void revokeTokens(User user) {
+        user.setTokenVersion(user.getTokenVersion() != null ? user.getTokenVersion() + 1 : 1);
+        principalCache.invalidate(user.getId());
+        tokenVersionCache.invalidate(user.getId());
+    }
+}
@@ -15,6 +15,8 @@ public final class AppConstants {
     public static final long MAX_FILE_SIZE = 10 * 1024 * 1024; // 10MB
     public static final String[] ALLOWED_IMAGE_TYPES = {"image/jpeg", "image/png", "image/gif", "image/webp"};
     public static final String[] ALLOWED_IMAGE_EXTENSIONS = {"jpg", "jpeg", "png", "gif", "webp"};
+    public static final String[] IMAGE_DERIVATIVE_SIZES = {"full", "card", "thumb"}; // du plus grand au plus petit
+    public static final int MAX_IMAGES_PER_LISTING = 8; // images multiples (listing_images)
 
     // Configuration cache
     public static final String CACHE_LISTINGS = "listings";
@@ -26,6 +28,7 @@ public final class AppConstants {
     public static final double DEFAULT_RADIUS_KM = 10.0;
     public static final double MAX_RADIUS_KM = 100.0;
     public static final int MAX_ALERTS_PER_USER = 20;
+    public static final int LISTING_FEED_GEOHASH_PRECISION = 5; // cellules d'environ 5 km
 
     // Configuration messages
     public static final int MAX_MESSAGE_LENGTH = 2000;
@@ -0,0 +1,73 @@
+// GeoCellUtils.java - Découpage géographique en cellules (geohash)
+package com.retrouvtout.util;
+
+import java.math.BigDecimal;
+
+/**
+ * Utilitaires de découpage géographique en cellules geohash
+ */
+public final class GeoCellUtils {
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    /**
+     * Cellule utilisée pour les annonces sans coordonnées
+     */
+    public static final String UNKNOWN_CELL = "_";
+
+    /**
+     * Encoder une position en geohash de la précision donnée
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLon = -180, maxLon = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int index = 0;
+
+        while (hash.length() < precision) {
+            if (evenBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (longitude >= mid) {
+                    index = (index << 1) | 1;
+                    minLon = mid;
+                } else {
+                    index = index << 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) {
+                    index = (index << 1) | 1;
+                    minLat = mid;
+                } else {
+                    index = index << 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+
+            if (++bit == 5) {
+                hash.append(BASE32[index]);
+                bit = 0;
+                index = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Cellule d'une position éventuellement absente
+     */
+    public static String cellOf(BigDecimal latitude, BigDecimal longitude, int precision) {
+        if (latitude == null || longitude == null) {
+            return UNKNOWN_CELL;
+        }
+        return encode(latitude.doubleValue(), longitude.doubleValue(), precision);
+    }
+
+    private GeoCellUtils() {
+        throw new AssertionError("Utility class should not be instantiated");
+    }
+}
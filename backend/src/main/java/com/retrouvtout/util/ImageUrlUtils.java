@@ -0,0 +1,67 @@
+// ImageUrlUtils.java - URLs des déclinaisons d'images
+package com.retrouvtout.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Utilitaires pour les URLs des déclinaisons d'images (thumb, card, full)
+ */
+public final class ImageUrlUtils {
+
+    private static final String FILES_PATH = "/files/";
+    private static final String LOCAL_IMAGES_PATH = "/files/images/";
+    private static final String LOCAL_OBJECTS_PATH = "/files/objects/";
+
+    /**
+     * URLs par taille d'une image uploadée, servies par FileController avec ?size=
+     *
+     * @return null pour une image absente ou externe (pas de déclinaisons)
+     */
+    public static Map<String, String> derivativeUrls(String imageUrl) {
+        if (imageUrl == null
+                || (!imageUrl.contains(LOCAL_IMAGES_PATH) && !imageUrl.contains(LOCAL_OBJECTS_PATH))) {
+            return null;
+        }
+
+        String base = imageUrl;
+        int query = base.indexOf('?');
+        if (query >= 0) {
+            base = base.substring(0, query);
+        }
+
+        Map<String, String> urls = new LinkedHashMap<>();
+        for (String size : AppConstants.IMAGE_DERIVATIVE_SIZES) {
+            urls.put(size, base + "?size=" + size);
+        }
+        return urls;
+    }
+
+    /**
+     * Chemin relatif au répertoire d'upload d'une image servie par FileController
+     * (la partie de l'URL après /files/, sans paramètres), indépendant de l'hôte
+     * et du port avec lesquels l'URL a été enregistrée
+     *
+     * @return null pour une image absente ou externe
+     */
+    public static String storagePathOf(String imageUrl) {
+        if (imageUrl == null) {
+            return null;
+        }
+        int start = imageUrl.indexOf(FILES_PATH);
+        if (start < 0) {
+            return null;
+        }
+
+        String path = imageUrl.substring(start + FILES_PATH.length());
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        return path.isEmpty() ? null : path;
+    }
+
+    private ImageUrlUtils() {
+        throw new AssertionError("Utility class should not be instantiated");
+    }
+}
@@ -63,6 +63,10 @@ public class ModelMapper {
             response.setLongitude(listing.getLongitude());
             response.setDescription(listing.getDescription() != null ? listing.getDescription() : "");
             response.setImageUrl(listing.getImageUrl());
+            response.setImageUrls(ImageUrlUtils.derivativeUrls(listing.getImageUrl()));
+            response.setImageWidth(listing.getImageWidth());
+            response.setImageHeight(listing.getImageHeight());
+            response.setImagePlaceholder(listing.getImagePlaceholder());
             
             // ✅ PROTECTION CATÉGORIE
             if (listing.getCategory() != null) {
@@ -138,6 +142,20 @@ public class ModelMapper {
         }
     }
 
+    /**
+     * Mapper ListingImage vers ListingImageResponse
+     */
+    public ListingImageResponse mapListingImageToResponse(ListingImage image) {
+        ListingImageResponse response = new ListingImageResponse();
+        response.setUrl(image.getUrl());
+        response.setUrls(ImageUrlUtils.derivativeUrls(image.getUrl()));
+        response.setWidth(image.getWidth());
+        response.setHeight(image.getHeight());
+        response.setPlaceholder(image.getPlaceholder());
+        response.setPrimary(Boolean.TRUE.equals(image.getIsPrimary()));
+        return response;
+    }
+
     /**
      * Mapper Thread vers ThreadResponse avec protection null
      */
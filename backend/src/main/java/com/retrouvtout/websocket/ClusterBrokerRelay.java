@@ -0,0 +1,416 @@
+package com.retrouvtout.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diffusion STOMP inter-nœuds via Redis pub/sub
+ *
+ * Le broker simple reste responsable de la livraison locale ; en mode "redis",
+ * chaque message /topic est publié sur un canal commun et chaque message /user
+ * est publié uniquement vers les nœuds où le destinataire a une session,
+ * d'après un registre partagé utilisateur → nœuds. Le nœud récepteur réinjecte
+ * le message dans son brokerChannel local, marqué pour ne pas être republié.
+ * Aucun appel Redis ne se fait sur le thread du brokerChannel : l'enveloppe est
+ * préparée puis publiée par un thread dédié (file bornée, ordre conservé), et
+ * le registre utilisateur → nœuds est mis en cache brièvement, invalidé par les
+ * nœuds à chaque connexion ou déconnexion.
+ * En mode "simple" (par défaut) ce composant est inactif.
+ */
+@Component
+public class ClusterBrokerRelay implements ChannelInterceptor {
+
+    public static final String MODE_REDIS = "redis";
+
+    private static final String RELAYED_HEADER = "retrouvtout.clusterRelayed";
+    private static final String TOPIC_CHANNEL = "ws:fanout:topic";
+    private static final String NODE_CHANNEL_PREFIX = "ws:fanout:node:";
+    private static final String USER_NODES_KEY = "ws:user-nodes:";
+    private static final String NODES_KEY = "ws:nodes";
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisConnectionFactory connectionFactory;
+    private final ObjectMapper objectMapper;
+    private final MessageChannel brokerChannel;
+
+    private RedisMessageListenerContainer listenerContainer;
+    private ThreadPoolExecutor publisher;
+    private Map<String, CachedNodes> userNodesCache;
+    private volatile Set<String> liveNodes = Collections.emptySet();
+
+    @Value("${app.websocket.broker.mode:simple}")
+    private String mode;
+
+    @Value("${app.websocket.broker.node-id:}")
+    private String nodeId;
+
+    @Value("${app.websocket.broker.user-prefix:/user}")
+    private String userPrefix;
+
+    @Value("${app.websocket.broker.node-ttl-seconds:30}")
+    private long nodeTtlSeconds;
+
+    @Value("${app.websocket.broker.publish-queue-capacity:10000}")
+    private int publishQueueCapacity;
+
+    @Value("${app.websocket.broker.user-nodes-cache-ttl-ms:2000}")
+    private long userNodesCacheTtlMs;
+
+    @Value("${app.websocket.broker.user-nodes-cache-size:10000}")
+    private int userNodesCacheSize;
+
+    @Autowired
+    public ClusterBrokerRelay(StringRedisTemplate redisTemplate,
+                              RedisConnectionFactory connectionFactory,
+                              ObjectMapper objectMapper,
+                              @Lazy @Qualifier("brokerChannel") MessageChannel brokerChannel) {
+        this.redisTemplate = redisTemplate;
+        this.connectionFactory = connectionFactory;
+        this.objectMapper = objectMapper;
+        this.brokerChannel = brokerChannel;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        if (nodeId == null || nodeId.isBlank()) {
+            nodeId = UUID.randomUUID().toString();
+        }
+
+        final int cacheSize = userNodesCacheSize;
+        this.userNodesCache = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedNodes>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedNodes> eldest) {
+                    return size() > cacheSize;
+                }
+            });
+
+        // Un seul thread : les publications partent dans l'ordre du brokerChannel
+        this.publisher = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(publishQueueCapacity),
+            runnable -> {
+                java.lang.Thread thread = new java.lang.Thread(runnable, "ws-cluster-publisher");
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.addMessageListener((message, pattern) -> onRelayedMessage(message.getBody()),
+            List.of(new ChannelTopic(TOPIC_CHANNEL), new ChannelTopic(NODE_CHANNEL_PREFIX + nodeId)));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+
+        heartbeat();
+        System.out.println("🔀 Broker WebSocket en mode Redis, nœud " + nodeId);
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        if (publisher != null) {
+            publisher.shutdown();
+            publisher.awaitTermination(2, TimeUnit.SECONDS);
+        }
+        if (listenerContainer != null) {
+            listenerContainer.stop();
+            listenerContainer.destroy();
+            try {
+                redisTemplate.opsForZSet().remove(NODES_KEY, nodeId);
+            } catch (Exception e) {
+                System.err.println("⚠️ Erreur de désinscription du nœud: " + e.getMessage());
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return MODE_REDIS.equalsIgnoreCase(mode);
+    }
+
+    /**
+     * Intercepter les messages du brokerChannel local pour les publier aux autres nœuds
+     * Seule l'enveloppe est préparée ici ; la publication Redis est asynchrone.
+     */
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!isEnabled() || listenerContainer == null) {
+            return message;
+        }
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        if (accessor.getMessageType() != SimpMessageType.MESSAGE
+                || accessor.getHeader(RELAYED_HEADER) != null
+                || accessor.getSessionId() != null
+                || !(message.getPayload() instanceof byte[])) {
+            return message;
+        }
+
+        String destination = accessor.getDestination();
+        if (destination == null) {
+            return message;
+        }
+
+        boolean topic = destination.startsWith("/topic/");
+        String userId = topic ? null : destination.startsWith(userPrefix + "/") ? extractUserId(destination) : null;
+        if (!topic && userId == null) {
+            return message;
+        }
+
+        try {
+            String envelope = envelope(accessor, (byte[]) message.getPayload());
+            publisher.execute(() -> {
+                try {
+                    if (topic) {
+                        redisTemplate.convertAndSend(TOPIC_CHANNEL, envelope);
+                    } else {
+                        for (String node : remoteNodesForUser(userId)) {
+                            redisTemplate.convertAndSend(NODE_CHANNEL_PREFIX + node, envelope);
+                        }
+                    }
+                } catch (Exception e) {
+                    System.err.println("❌ Erreur de diffusion inter-nœuds vers " + destination + ": " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            System.err.println("⛔ File de diffusion inter-nœuds pleine, message vers " + destination + " non relayé");
+        } catch (Exception e) {
+            System.err.println("❌ Erreur de diffusion inter-nœuds vers " + destination + ": " + e.getMessage());
+        }
+
+        return message;
+    }
+
+    /**
+     * Registre partagé : enregistrer une session utilisateur sur ce nœud
+     */
+    @EventListener
+    public void onSessionConnected(SessionConnectedEvent event) {
+        Principal user = StompHeaderAccessor.wrap(event.getMessage()).getUser();
+        if (!isEnabled() || user == null) {
+            return;
+        }
+        String userId = user.getName();
+        runOnPublisher(() -> {
+            try {
+                String key = USER_NODES_KEY + userId;
+                redisTemplate.opsForHash().increment(key, nodeId, 1);
+                redisTemplate.expire(key, Duration.ofDays(1));
+                announceRegistryChange(userId);
+            } catch (Exception e) {
+                System.err.println("⚠️ Erreur d'enregistrement de session: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Registre partagé : retirer une session utilisateur de ce nœud
+     */
+    @EventListener
+    public void onSessionDisconnected(SessionDisconnectEvent event) {
+        Principal user = StompHeaderAccessor.wrap(event.getMessage()).getUser();
+        if (!isEnabled() || user == null) {
+            return;
+        }
+        String userId = user.getName();
+        runOnPublisher(() -> {
+            try {
+                String key = USER_NODES_KEY + userId;
+                Long remaining = redisTemplate.opsForHash().increment(key, nodeId, -1);
+                if (remaining != null && remaining <= 0) {
+                    redisTemplate.opsForHash().delete(key, nodeId);
+                    announceRegistryChange(userId);
+                }
+            } catch (Exception e) {
+                System.err.println("⚠️ Erreur de désinscription de session: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Signal de vie du nœud et rafraîchissement de la liste des nœuds actifs
+     */
+    @Scheduled(fixedDelayString = "${app.websocket.broker.heartbeat-interval-ms:10000}")
+    public void heartbeat() {
+        if (!isEnabled() || listenerContainer == null) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            redisTemplate.opsForZSet().add(NODES_KEY, nodeId, now);
+            redisTemplate.opsForZSet().removeRangeByScore(NODES_KEY, 0, now - nodeTtlSeconds * 1000);
+
+            Set<String> nodes = redisTemplate.opsForZSet().range(NODES_KEY, 0, -1);
+            liveNodes = nodes != null ? new HashSet<>(nodes) : Collections.emptySet();
+        } catch (Exception e) {
+            System.err.println("⚠️ Erreur du signal de vie du nœud: " + e.getMessage());
+        }
+    }
+
+    // Méthodes privées
+
+    private void runOnPublisher(Runnable task) {
+        try {
+            publisher.execute(task);
+        } catch (RejectedExecutionException e) {
+            System.err.println("⛔ File de diffusion inter-nœuds pleine, registre des sessions non mis à jour");
+        }
+    }
+
+    /**
+     * Prévenir les autres nœuds que les nœuds d'un utilisateur ont changé (invalidation de leur cache)
+     */
+    private void announceRegistryChange(String userId) throws Exception {
+        ObjectNode envelope = objectMapper.createObjectNode();
+        envelope.put("origin", nodeId);
+        envelope.put("invalidateUser", userId);
+        redisTemplate.convertAndSend(TOPIC_CHANNEL, objectMapper.writeValueAsString(envelope));
+    }
+
+    /**
+     * Nœuds distants où l'utilisateur a une session (appelé sur le thread de publication)
+     */
+    private Set<String> remoteNodesForUser(String userId) {
+        long now = System.currentTimeMillis();
+        CachedNodes cached = userNodesCache.get(userId);
+        Set<Object> nodes;
+        if (cached != null && cached.expiresAt > now) {
+            nodes = cached.nodes;
+        } else {
+            nodes = redisTemplate.opsForHash().keys(USER_NODES_KEY + userId);
+            if (nodes == null) {
+                nodes = Collections.emptySet();
+            }
+            userNodesCache.put(userId, new CachedNodes(nodes, now + userNodesCacheTtlMs));
+        }
+        if (nodes.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        Set<String> remote = new HashSet<>();
+        for (Object node : nodes) {
+            String id = node.toString();
+            // Les nœuds disparus sans désinscription sont ignorés
+            if (!id.equals(nodeId) && liveNodes.contains(id)) {
+                remote.add(id);
+            }
+        }
+        return remote;
+    }
+
+    private String extractUserId(String destination) {
+        int start = userPrefix.length() + 1;
+        int end = destination.indexOf('/', start);
+        return end > start ? destination.substring(start, end) : null;
+    }
+
+    private String envelope(SimpMessageHeaderAccessor accessor, byte[] payload) throws Exception {
+        ObjectNode envelope = objectMapper.createObjectNode();
+        envelope.put("origin", nodeId);
+        envelope.put("destination", accessor.getDestination());
+        if (accessor.getContentType() != null) {
+            envelope.put("contentType", accessor.getContentType().toString());
+        }
+
+        Map<String, List<String>> nativeHeaders = accessor.toNativeHeaderMap();
+        if (!nativeHeaders.isEmpty()) {
+            envelope.set("headers", objectMapper.valueToTree(nativeHeaders));
+        }
+        envelope.put("payload", Base64.getEncoder().encodeToString(payload));
+
+        return objectMapper.writeValueAsString(envelope);
+    }
+
+    private void onRelayedMessage(byte[] body) {
+        try {
+            JsonNode envelope = objectMapper.readTree(new String(body, StandardCharsets.UTF_8));
+            if (nodeId.equals(envelope.path("origin").asText())) {
+                return;
+            }
+            if (envelope.hasNonNull("invalidateUser")) {
+                userNodesCache.remove(envelope.get("invalidateUser").asText());
+                return;
+            }
+
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.setDestination(envelope.get("destination").asText());
+            if (envelope.hasNonNull("contentType")) {
+                accessor.setContentType(MimeType.valueOf(envelope.get("contentType").asText()));
+            }
+
+            JsonNode headers = envelope.get("headers");
+            if (headers != null) {
+                Iterator<Map.Entry<String, JsonNode>> fields = headers.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    for (JsonNode value : field.getValue()) {
+                        accessor.addNativeHeader(field.getKey(), value.asText());
+                    }
+                }
+            }
+            accessor.setHeader(RELAYED_HEADER, Boolean.TRUE);
+            accessor.setLeaveMutable(true);
+
+            byte[] payload = Base64.getDecoder().decode(envelope.get("payload").asText());
+            brokerChannel.send(MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+        } catch (Exception e) {
+            System.err.println("❌ Erreur de réception d'un message inter-nœuds: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Nœuds d'un utilisateur lus dans le registre partagé, valables jusqu'à expiresAt
+     */
+    private static final class CachedNodes {
+        private final Set<Object> nodes;
+        private final long expiresAt;
+
+        private CachedNodes(Set<Object> nodes, long expiresAt) {
+            this.nodes = nodes;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.retrouvtout.websocket;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Événement léger du flux d'annonces (/topic/listings/{category}/{geocell})
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ListingFeedEvent {
+
+    @JsonProperty("type")
+    private String type; // created, updated, resolved, removed
+
+    @JsonProperty("listing_id")
+    private String listingId;
+
+    @JsonProperty("title")
+    private String title;
+
+    @JsonProperty("category")
+    private String category;
+
+    @JsonProperty("status")
+    private String status;
+
+    @JsonProperty("location_text")
+    private String locationText;
+
+    @JsonProperty("latitude")
+    private BigDecimal latitude;
+
+    @JsonProperty("longitude")
+    private BigDecimal longitude;
+
+    @JsonProperty("image_url")
+    private String imageUrl;
+
+    @JsonProperty("found_at")
+    private LocalDateTime foundAt;
+
+    @JsonProperty("occurred_at")
+    private LocalDateTime occurredAt;
+
+    // Destination de publication, non sérialisée
+    @JsonIgnore
+    private String topic;
+
+    // Constructeurs
+    public ListingFeedEvent() {}
+
+    // Getters et setters
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+
+    public String getListingId() { return listingId; }
+    public void setListingId(String listingId) { this.listingId = listingId; }
+
+    public String getTitle() { return title; }
+    public void setTitle(String title) { this.title = title; }
+
+    public String getCategory() { return category; }
+    public void setCategory(String category) { this.category = category; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public String getLocationText() { return locationText; }
+    public void setLocationText(String locationText) { this.locationText = locationText; }
+
+    public BigDecimal getLatitude() { return latitude; }
+    public void setLatitude(BigDecimal latitude) { this.latitude = latitude; }
+
+    public BigDecimal getLongitude() { return longitude; }
+    public void setLongitude(BigDecimal longitude) { this.longitude = longitude; }
+
+    public String getImageUrl() { return imageUrl; }
+    public void setImageUrl(String imageUrl) { this.imageUrl = imageUrl; }
+
+    public LocalDateTime getFoundAt() { return foundAt; }
+    public void setFoundAt(LocalDateTime foundAt) { this.foundAt = foundAt; }
+
+    public LocalDateTime getOccurredAt() { return occurredAt; }
+    public void setOccurredAt(LocalDateTime occurredAt) { this.occurredAt = occurredAt; }
+
+    public String getTopic() { return topic; }
+    public void setTopic(String topic) { this.topic = topic; }
+}
@@ -0,0 +1,156 @@
+package com.retrouvtout.websocket;
+
+import com.retrouvtout.entity.Listing;
+import com.retrouvtout.util.AppConstants;
+import com.retrouvtout.util.GeoCellUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flux temps réel des annonces, découpé par catégorie et cellule géographique
+ *
+ * Les événements sont publiés sur /topic/listings/{category}/{geocell} (geohash),
+ * le client ne s'abonne qu'aux cellules de sa zone d'affichage : le coût de
+ * diffusion dépend des abonnés concernés et non du nombre total de sessions.
+ * Les événements ne partent qu'après le commit et sont regroupés à chaque
+ * intervalle : une trame par topic, un seul événement (le plus récent) par annonce.
+ */
+@Component
+public class ListingFeedPublisher {
+
+    public static final String TOPIC_PREFIX = "/topic/listings/";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ConcurrentLinkedQueue<ListingFeedEvent> pendingEvents = new ConcurrentLinkedQueue<>();
+
+    private ScheduledExecutorService ticker;
+
+    @Value("${app.listings.feed.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.listings.feed.tick-ms:500}")
+    private long tickMs;
+
+    @Autowired
+    public ListingFeedPublisher(SimpMessagingTemplate messagingTemplate) {
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            java.lang.Thread thread = new java.lang.Thread(runnable, "listing-feed-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(this::flushSafely, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdown();
+        }
+    }
+
+    /**
+     * Topic d'une annonce selon sa catégorie et sa position actuelles
+     */
+    public static String topicOf(Listing listing) {
+        String category = listing.getCategory() != null ? listing.getCategory().getValue() : "autre";
+        return TOPIC_PREFIX + category + "/" + GeoCellUtils.cellOf(
+            listing.getLatitude(), listing.getLongitude(), AppConstants.LISTING_FEED_GEOHASH_PRECISION);
+    }
+
+    /**
+     * Publier un événement sur le topic actuel de l'annonce, après le commit
+     */
+    public void publishAfterCommit(Listing listing, String type) {
+        publishAfterCommit(listing, type, topicOf(listing));
+    }
+
+    /**
+     * Publier un événement sur un topic donné (ex. ancien topic après un déplacement), après le commit
+     */
+    public void publishAfterCommit(Listing listing, String type, String topic) {
+        if (!enabled) {
+            return;
+        }
+
+        // Instantané pris dans la transaction, l'entité ne doit pas être lue après le commit
+        ListingFeedEvent event = new ListingFeedEvent();
+        event.setType(type);
+        event.setListingId(listing.getId());
+        event.setTopic(topic);
+        event.setOccurredAt(LocalDateTime.now());
+        if (!"removed".equals(type)) {
+            event.setTitle(listing.getTitle());
+            event.setCategory(listing.getCategory() != null ? listing.getCategory().getValue() : null);
+            event.setStatus(listing.getStatus() != null ? listing.getStatus().getValue() : null);
+            event.setLocationText(listing.getLocationText());
+            event.setLatitude(listing.getLatitude());
+            event.setLongitude(listing.getLongitude());
+            event.setImageUrl(listing.getImageUrl());
+            event.setFoundAt(listing.getFoundAt());
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    pendingEvents.add(event);
+                }
+            });
+        } else {
+            pendingEvents.add(event);
+        }
+    }
+
+    // Méthodes privées
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            System.err.println("❌ Erreur lors de la publication du flux d'annonces: " + e.getMessage());
+        }
+    }
+
+    private void flush() {
+        if (pendingEvents.isEmpty()) {
+            return;
+        }
+
+        // topic -> (listingId -> dernier événement), dans l'ordre d'arrivée
+        Map<String, Map<String, ListingFeedEvent>> byTopic = new LinkedHashMap<>();
+        ListingFeedEvent event;
+        while ((event = pendingEvents.poll()) != null) {
+            byTopic.computeIfAbsent(event.getTopic(), k -> new LinkedHashMap<>())
+                .put(event.getListingId(), event);
+        }
+
+        for (Map.Entry<String, Map<String, ListingFeedEvent>> entry : byTopic.entrySet()) {
+            List<ListingFeedEvent> events = new ArrayList<>(entry.getValue().values());
+            messagingTemplate.convertAndSend(entry.getKey(), events);
+        }
+    }
+}
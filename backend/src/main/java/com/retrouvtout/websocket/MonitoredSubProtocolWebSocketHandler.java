@@ -0,0 +1,32 @@
+package com.retrouvtout.websocket;
+
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+/**
+ * Gestionnaire STOMP qui expose au moniteur le tampon d'envoi de chaque session
+ *
+ * La session brute est chronométrée (écriture réelle sur la socket), puis décorée
+ * comme d'habitude par ConcurrentWebSocketSessionDecorator avec les limites de
+ * transport ; le moniteur lit la taille de ce tampon pour détecter les clients lents.
+ */
+public class MonitoredSubProtocolWebSocketHandler extends SubProtocolWebSocketHandler {
+
+    private final WebSocketChannelMonitor channelMonitor;
+
+    public MonitoredSubProtocolWebSocketHandler(MessageChannel clientInboundChannel,
+                                                SubscribableChannel clientOutboundChannel,
+                                                WebSocketChannelMonitor channelMonitor) {
+        super(clientInboundChannel, clientOutboundChannel);
+        this.channelMonitor = channelMonitor;
+    }
+
+    @Override
+    protected WebSocketSession decorateSession(WebSocketSession session) {
+        WebSocketSession decorated = super.decorateSession(channelMonitor.timed(session));
+        channelMonitor.registerSession(decorated);
+        return decorated;
+    }
+}
@@ -0,0 +1,248 @@
+package com.retrouvtout.websocket;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Regroupement des trames sortantes par session WebSocket
+ *
+ * Un client qui s'abonne à /user/queue/batch accepte les trames groupées :
+ * toutes les trames MESSAGE destinées à sa session pendant un court intervalle
+ * (20 ms par défaut) sont alors envoyées en une seule trame sur cet abonnement,
+ * avec l'enveloppe {"type":"batch","frames":[{destination, subscription, seq, body}]}.
+ * Les corps JSON sont recopiés tels quels, sans nouvelle sérialisation.
+ * Les clients qui ne s'abonnent pas reçoivent les trames une à une, comme avant.
+ * Toute autre trame destinée à une session regroupée (ERROR, RECEIPT…) vide
+ * d'abord sa file, pour ne jamais doubler les messages en attente.
+ */
+@Component
+public class OutboundFrameBatcher implements ChannelInterceptor {
+
+    public static final String BATCH_DESTINATION = "/user/queue/batch";
+
+    private static final String BATCHED_HEADER = "retrouvtout.batched";
+
+    private final ObjectMapper objectMapper;
+    private final MessageChannel clientOutboundChannel;
+
+    // sessionId -> trames en attente pour les sessions ayant accepté le regroupement
+    private final ConcurrentHashMap<String, SessionBatch> sessions = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService ticker;
+
+    @Value("${app.websocket.batching.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.websocket.batching.tick-ms:20}")
+    private long tickMs;
+
+    @Value("${app.websocket.batching.max-frames:100}")
+    private int maxFrames;
+
+    @Autowired
+    public OutboundFrameBatcher(ObjectMapper objectMapper,
+                                @Lazy @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel) {
+        this.objectMapper = objectMapper;
+        this.clientOutboundChannel = clientOutboundChannel;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            java.lang.Thread thread = new java.lang.Thread(runnable, "ws-outbound-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(this::flushSafely, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdown();
+            flushSafely();
+        }
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!enabled || sessions.isEmpty()) {
+            return message;
+        }
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        if (accessor.getHeader(BATCHED_HEADER) != null) {
+            return message;
+        }
+
+        String sessionId = accessor.getSessionId();
+        SessionBatch batch = sessionId != null ? sessions.get(sessionId) : null;
+        if (batch == null) {
+            return message;
+        }
+
+        if (accessor.getMessageType() != SimpMessageType.MESSAGE || !(message.getPayload() instanceof byte[])) {
+            // ERROR, RECEIPT ou trame non regroupable : les trames en attente partent d'abord
+            flush(sessionId, batch);
+            return message;
+        }
+
+        batch.frames.add(message);
+        return null;
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        if (enabled && BATCH_DESTINATION.equals(accessor.getDestination())) {
+            sessions.put(accessor.getSessionId(), new SessionBatch(accessor.getSubscriptionId()));
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        SessionBatch batch = sessions.get(accessor.getSessionId());
+        if (batch != null && batch.subscriptionId.equals(accessor.getSubscriptionId())) {
+            sessions.remove(accessor.getSessionId());
+            flush(accessor.getSessionId(), batch);
+        }
+    }
+
+    @EventListener
+    public void onSessionDisconnected(SessionDisconnectEvent event) {
+        sessions.remove(event.getSessionId());
+    }
+
+    // Méthodes privées
+
+    private void flushSafely() {
+        try {
+            sessions.forEach(this::flush);
+        } catch (Exception e) {
+            System.err.println("❌ Erreur lors de l'envoi des trames groupées: " + e.getMessage());
+        }
+    }
+
+    private void flush(String sessionId, SessionBatch batch) {
+        // Un seul vidage à la fois par session : le ticker et une trame ERROR ne se doublent pas
+        synchronized (batch) {
+            List<Message<?>> frames = new ArrayList<>();
+            Message<?> frame;
+            while ((frame = batch.frames.poll()) != null) {
+                frames.add(frame);
+                if (frames.size() == maxFrames) {
+                    send(sessionId, batch, frames);
+                    frames = new ArrayList<>();
+                }
+            }
+            if (!frames.isEmpty()) {
+                send(sessionId, batch, frames);
+            }
+        }
+    }
+
+    private void send(String sessionId, SessionBatch batch, List<Message<?>> frames) {
+        // Une seule trame : pas d'enveloppe
+        if (frames.size() == 1) {
+            clientOutboundChannel.send(MessageBuilder.fromMessage(frames.get(0))
+                .setHeader(BATCHED_HEADER, Boolean.TRUE)
+                .build());
+            return;
+        }
+
+        try {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.setSessionId(sessionId);
+            accessor.setSubscriptionId(batch.subscriptionId);
+            accessor.setDestination(BATCH_DESTINATION);
+            accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            accessor.setHeader(BATCHED_HEADER, Boolean.TRUE);
+            accessor.setLeaveMutable(true);
+
+            clientOutboundChannel.send(MessageBuilder.createMessage(encodeEnvelope(frames), accessor.getMessageHeaders()));
+        } catch (IOException e) {
+            System.err.println("❌ Erreur d'encodage des trames groupées: " + e.getMessage());
+        }
+    }
+
+    private byte[] encodeEnvelope(List<Message<?>> frames) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256 * frames.size());
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(buffer)) {
+            generator.writeStartObject();
+            generator.writeStringField("type", "batch");
+            generator.writeArrayFieldStart("frames");
+
+            for (Message<?> frame : frames) {
+                SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(frame);
+                byte[] body = (byte[]) frame.getPayload();
+
+                generator.writeStartObject();
+                generator.writeStringField("destination", accessor.getDestination());
+                generator.writeStringField("subscription", accessor.getSubscriptionId());
+                String seq = accessor.getFirstNativeHeader(UserEventReplayService.SEQ_HEADER);
+                if (seq != null) {
+                    generator.writeNumberField("seq", Long.parseLong(seq));
+                }
+                generator.writeFieldName("body");
+                if (isJson(accessor.getContentType())) {
+                    generator.writeRawValue(new String(body, StandardCharsets.UTF_8));
+                } else {
+                    generator.writeString(new String(body, StandardCharsets.UTF_8));
+                }
+                generator.writeEndObject();
+            }
+
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return buffer.toByteArray();
+    }
+
+    private static boolean isJson(MimeType contentType) {
+        return contentType != null && contentType.isCompatibleWith(MimeTypeUtils.APPLICATION_JSON);
+    }
+
+    private static class SessionBatch {
+        private final String subscriptionId;
+        private final ConcurrentLinkedQueue<Message<?>> frames = new ConcurrentLinkedQueue<>();
+
+        SessionBatch(String subscriptionId) {
+            this.subscriptionId = subscriptionId;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.retrouvtout.websocket;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encodage binaire négocié des messages WebSocket (CBOR ou Smile)
+ *
+ * Réservé à l'endpoint WebSocket brut /ws-binary : SockJS ne transporte que du
+ * texte, et STOMP n'écrit une trame binaire que pour le content-type
+ * application/octet-stream. Le client choisit le format avec l'en-tête CONNECT
+ * "payload-format" (json, cbor ou smile) ; JSON reste le défaut, et toute autre
+ * session (dont /ws en SockJS) reste en JSON. Les trames sortantes sont
+ * sérialisées une fois en JSON par le broker puis transcodées en flux, envoyées
+ * en application/octet-stream avec le format réel dans l'en-tête "payload-format".
+ * En entrée, les trames avec content-type application/cbor ou
+ * application/x-jackson-smile sont décodées directement.
+ */
+@Component
+public class PayloadEncodingService implements ChannelInterceptor {
+
+    public static final String PAYLOAD_FORMAT_HEADER = "payload-format";
+    public static final String BINARY_ENDPOINT = "/ws-binary";
+
+    private static final String BINARY_ENDPOINT_ATTRIBUTE = "retrouvtout.binaryEndpoint";
+
+    public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+    public static final MimeType APPLICATION_SMILE = new MimeType("application", "x-jackson-smile");
+
+    private final ObjectMapper objectMapper;
+    private final JsonFactory jsonFactory;
+    private final CBORFactory cborFactory = new CBORFactory();
+    private final SmileFactory smileFactory = new SmileFactory();
+
+    // sessionId -> format binaire négocié (absence = JSON)
+    private final ConcurrentHashMap<String, PayloadFormat> sessionFormats = new ConcurrentHashMap<>();
+
+    @Value("${app.websocket.encoding.binary-enabled:true}")
+    private boolean binaryEnabled;
+
+    @Autowired
+    public PayloadEncodingService(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * Convertisseurs entrants pour les trames binaires, configurés comme l'ObjectMapper JSON
+     */
+    public List<MessageConverter> inboundConverters() {
+        MappingJackson2MessageConverter cbor = new MappingJackson2MessageConverter(APPLICATION_CBOR);
+        cbor.setObjectMapper(objectMapper.copyWith(new CBORFactory()));
+
+        MappingJackson2MessageConverter smile = new MappingJackson2MessageConverter(APPLICATION_SMILE);
+        smile.setObjectMapper(objectMapper.copyWith(new SmileFactory()));
+
+        return List.of(cbor, smile);
+    }
+
+    /**
+     * Marquer les sessions ouvertes sur l'endpoint binaire (WebSocket brut, sans SockJS)
+     */
+    public HandshakeInterceptor binaryEndpointInterceptor() {
+        return new HandshakeInterceptor() {
+            @Override
+            public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                           WebSocketHandler wsHandler, Map<String, Object> attributes) {
+                attributes.put(BINARY_ENDPOINT_ATTRIBUTE, Boolean.TRUE);
+                return true;
+            }
+
+            @Override
+            public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                       WebSocketHandler wsHandler, Exception exception) {
+            }
+        };
+    }
+
+    @EventListener
+    public void onConnect(SessionConnectEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String requested = accessor.getFirstNativeHeader(PAYLOAD_FORMAT_HEADER);
+        if (!binaryEnabled || requested == null || accessor.getSessionId() == null) {
+            return;
+        }
+
+        // Hors de l'endpoint binaire, les octets CBOR/Smile partiraient dans une trame texte
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (attributes == null || !Boolean.TRUE.equals(attributes.get(BINARY_ENDPOINT_ATTRIBUTE))) {
+            return;
+        }
+
+        switch (requested.trim().toLowerCase(Locale.ROOT)) {
+            case "cbor" -> sessionFormats.put(accessor.getSessionId(), PayloadFormat.CBOR);
+            case "smile" -> sessionFormats.put(accessor.getSessionId(), PayloadFormat.SMILE);
+            default -> { /* JSON */ }
+        }
+    }
+
+    @EventListener
+    public void onSessionDisconnected(SessionDisconnectEvent event) {
+        sessionFormats.remove(event.getSessionId());
+    }
+
+    /**
+     * Transcoder les trames JSON sortantes pour les sessions binaires
+     */
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (sessionFormats.isEmpty() || !(message.getPayload() instanceof byte[])) {
+            return message;
+        }
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        String sessionId = accessor.getSessionId();
+        PayloadFormat format = sessionId != null ? sessionFormats.get(sessionId) : null;
+        MimeType contentType = accessor.getContentType();
+        if (format == null
+                || accessor.getMessageType() != SimpMessageType.MESSAGE
+                || contentType == null
+                || !contentType.isCompatibleWith(MimeTypeUtils.APPLICATION_JSON)) {
+            return message;
+        }
+
+        try {
+            byte[] encoded = transcode((byte[]) message.getPayload(),
+                format == PayloadFormat.CBOR ? cborFactory : smileFactory);
+            // octet-stream : seul content-type pour lequel STOMP écrit une trame WebSocket binaire
+            accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+            accessor.setNativeHeader(PAYLOAD_FORMAT_HEADER, format == PayloadFormat.CBOR ? "cbor" : "smile");
+            accessor.setLeaveMutable(true);
+            return MessageBuilder.createMessage(encoded, accessor.getMessageHeaders());
+        } catch (IOException e) {
+            // En cas d'échec, la trame part en JSON
+            System.err.println("⚠️ Erreur de transcodage binaire: " + e.getMessage());
+            return message;
+        }
+    }
+
+    // Méthodes privées
+
+    private byte[] transcode(byte[] json, JsonFactory targetFactory) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(json.length);
+        try (JsonParser parser = jsonFactory.createParser(json);
+             JsonGenerator generator = targetFactory.createGenerator(buffer)) {
+            while (parser.nextToken() != null) {
+                generator.copyCurrentStructure(parser);
+            }
+        }
+        return buffer.toByteArray();
+    }
+
+    private enum PayloadFormat {
+        CBOR,
+        SMILE
+    }
+}
@@ -0,0 +1,184 @@
+package com.retrouvtout.websocket;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registre de présence des utilisateurs connectés en WebSocket
+ *
+ * Suit les sessions de chaque utilisateur, leur dernier signal de vie et le
+ * thread actuellement affiché. Le chemin de notification le consulte pour ne
+ * pas envoyer d'email/push à un destinataire qui lit déjà la conversation.
+ * Avec plusieurs nœuds, l'état peut être partagé dans Redis.
+ */
+@Component
+public class PresenceRegistry {
+
+    private static final String REDIS_KEY = "ws:presence:";
+    private static final char SEPARATOR = '|';
+
+    private final ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+
+    // userId -> (sessionId -> présence de la session)
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, SessionPresence>> users = new ConcurrentHashMap<>();
+
+    @Value("${app.websocket.presence.stale-after-ms:60000}")
+    private long staleAfterMs;
+
+    @Value("${app.websocket.presence.redis-enabled:false}")
+    private boolean redisEnabled;
+
+    @Autowired
+    public PresenceRegistry(ObjectProvider<StringRedisTemplate> redisTemplateProvider) {
+        this.redisTemplateProvider = redisTemplateProvider;
+    }
+
+    /**
+     * Enregistrer une nouvelle session
+     */
+    public void sessionConnected(String userId, String sessionId) {
+        if (userId == null || sessionId == null) {
+            return;
+        }
+        SessionPresence presence = new SessionPresence();
+        users.computeIfAbsent(userId, k -> new ConcurrentHashMap<>()).put(sessionId, presence);
+        writeToRedis(userId, sessionId, presence);
+    }
+
+    /**
+     * Signal de vie d'une session, avec le thread actuellement affiché (null si aucun)
+     */
+    public void heartbeat(String userId, String sessionId, String focusedThreadId) {
+        if (userId == null || sessionId == null) {
+            return;
+        }
+        SessionPresence presence = users.computeIfAbsent(userId, k -> new ConcurrentHashMap<>())
+            .computeIfAbsent(sessionId, k -> new SessionPresence());
+        presence.lastHeartbeat = System.currentTimeMillis();
+        presence.focusedThreadId = focusedThreadId;
+        writeToRedis(userId, sessionId, presence);
+    }
+
+    /**
+     * Retirer une session fermée
+     */
+    public void sessionDisconnected(String userId, String sessionId) {
+        if (userId == null || sessionId == null) {
+            return;
+        }
+        users.computeIfPresent(userId, (k, sessions) -> {
+            sessions.remove(sessionId);
+            return sessions.isEmpty() ? null : sessions;
+        });
+
+        if (redisEnabled) {
+            StringRedisTemplate redis = redisTemplateProvider.getIfAvailable();
+            if (redis != null) {
+                try {
+                    redis.opsForHash().delete(REDIS_KEY + userId, sessionId);
+                } catch (Exception e) {
+                    System.err.println("⚠️ Erreur de mise à jour de la présence Redis: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * L'utilisateur a-t-il au moins une session active ?
+     */
+    public boolean isOnline(String userId) {
+        return matches(userId, null);
+    }
+
+    /**
+     * L'utilisateur affiche-t-il actuellement ce thread ?
+     */
+    public boolean isViewingThread(String userId, String threadId) {
+        return threadId != null && matches(userId, threadId);
+    }
+
+    /**
+     * Retirer les sessions sans signal de vie récent (connexions perdues sans déconnexion)
+     */
+    @Scheduled(fixedDelayString = "${app.websocket.presence.sweep-interval-ms:30000}")
+    public void evictStaleSessions() {
+        long cutoff = System.currentTimeMillis() - staleAfterMs * 3;
+        users.forEach((userId, sessions) -> {
+            sessions.entrySet().removeIf(entry -> entry.getValue().lastHeartbeat < cutoff);
+            users.computeIfPresent(userId, (k, current) -> current.isEmpty() ? null : current);
+        });
+    }
+
+    // Méthodes privées
+
+    private boolean matches(String userId, String threadId) {
+        if (userId == null) {
+            return false;
+        }
+        long cutoff = System.currentTimeMillis() - staleAfterMs;
+
+        Map<String, SessionPresence> sessions = users.get(userId);
+        if (sessions != null) {
+            for (SessionPresence presence : sessions.values()) {
+                if (presence.lastHeartbeat >= cutoff
+                        && (threadId == null || threadId.equals(presence.focusedThreadId))) {
+                    return true;
+                }
+            }
+        }
+
+        return redisEnabled && matchesInRedis(userId, threadId, cutoff);
+    }
+
+    private boolean matchesInRedis(String userId, String threadId, long cutoff) {
+        StringRedisTemplate redis = redisTemplateProvider.getIfAvailable();
+        if (redis == null) {
+            return false;
+        }
+        try {
+            for (Object value : redis.opsForHash().values(REDIS_KEY + userId)) {
+                String entry = value.toString();
+                int separator = entry.indexOf(SEPARATOR);
+                long lastHeartbeat = Long.parseLong(entry.substring(0, separator));
+                String focused = entry.substring(separator + 1);
+                if (lastHeartbeat >= cutoff && (threadId == null || threadId.equals(focused))) {
+                    return true;
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("⚠️ Erreur de lecture de la présence Redis: " + e.getMessage());
+        }
+        return false;
+    }
+
+    private void writeToRedis(String userId, String sessionId, SessionPresence presence) {
+        if (!redisEnabled) {
+            return;
+        }
+        StringRedisTemplate redis = redisTemplateProvider.getIfAvailable();
+        if (redis == null) {
+            return;
+        }
+        try {
+            String key = REDIS_KEY + userId;
+            String focused = presence.focusedThreadId != null ? presence.focusedThreadId : "";
+            redis.opsForHash().put(key, sessionId, presence.lastHeartbeat + String.valueOf(SEPARATOR) + focused);
+            redis.expire(key, Duration.ofMillis(staleAfterMs * 3));
+        } catch (Exception e) {
+            System.err.println("⚠️ Erreur de mise à jour de la présence Redis: " + e.getMessage());
+        }
+    }
+
+    private static class SessionPresence {
+        private volatile long lastHeartbeat = System.currentTimeMillis();
+        private volatile String focusedThreadId;
+    }
+}
@@ -0,0 +1,151 @@
+package com.retrouvtout.websocket;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * État des indicateurs de frappe par (thread, utilisateur)
+ *
+ * Les trames /app/chat.typing ne sont plus rediffusées telles quelles : seuls
+ * le début et la fin de frappe sont émis, avec au plus un rafraîchissement
+ * toutes les N millisecondes tant que l'utilisateur continue de taper.
+ * Un état sans nouvelle trame expire automatiquement (fin de frappe émise),
+ * et la déconnexion d'une session efface ses états.
+ */
+@Component
+public class TypingStateService {
+
+    private final SimpMessagingTemplate messagingTemplate;
+
+    private final ConcurrentHashMap<String, TypingState> states = new ConcurrentHashMap<>();
+
+    private final AtomicLong receivedFrames = new AtomicLong();
+    private final AtomicLong broadcastFrames = new AtomicLong();
+
+    @Value("${app.websocket.typing.refresh-interval-ms:3000}")
+    private long refreshIntervalMs;
+
+    @Value("${app.websocket.typing.expiry-ms:6000}")
+    private long expiryMs;
+
+    @Autowired
+    public TypingStateService(SimpMessagingTemplate messagingTemplate) {
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    /**
+     * Traiter une trame de frappe d'un participant (appartenance déjà vérifiée)
+     */
+    public void onTyping(String threadId, String userId, String userName, boolean typing, String sessionId) {
+        receivedFrames.incrementAndGet();
+        String key = key(threadId, userId);
+        long now = System.currentTimeMillis();
+
+        if (!typing) {
+            TypingState removed = states.remove(key);
+            if (removed != null) {
+                broadcast(removed, false);
+            }
+            return;
+        }
+
+        TypingState created = new TypingState(threadId, userId, userName, sessionId, now);
+        TypingState existing = states.putIfAbsent(key, created);
+        if (existing == null) {
+            broadcast(created, true);
+            return;
+        }
+
+        boolean refresh;
+        synchronized (existing) {
+            existing.lastSeenAt = now;
+            existing.sessionId = sessionId;
+            refresh = now - existing.lastBroadcastAt >= refreshIntervalMs;
+            if (refresh) {
+                existing.lastBroadcastAt = now;
+            }
+        }
+        if (refresh) {
+            broadcast(existing, true);
+        }
+    }
+
+    /**
+     * Effacer les états de frappe d'une session déconnectée
+     */
+    public void clearSession(String sessionId) {
+        if (sessionId == null) {
+            return;
+        }
+        for (Map.Entry<String, TypingState> entry : states.entrySet()) {
+            TypingState state = entry.getValue();
+            if (sessionId.equals(state.sessionId) && states.remove(entry.getKey(), state)) {
+                broadcast(state, false);
+            }
+        }
+    }
+
+    /**
+     * Expirer les états sans trame récente
+     */
+    @Scheduled(fixedDelayString = "${app.websocket.typing.sweep-interval-ms:1000}")
+    public void expireStaleStates() {
+        long cutoff = System.currentTimeMillis() - expiryMs;
+        for (Map.Entry<String, TypingState> entry : states.entrySet()) {
+            TypingState state = entry.getValue();
+            if (state.lastSeenAt < cutoff && states.remove(entry.getKey(), state)) {
+                broadcast(state, false);
+            }
+        }
+    }
+
+    public long getReceivedFrames() {
+        return receivedFrames.get();
+    }
+
+    public long getBroadcastFrames() {
+        return broadcastFrames.get();
+    }
+
+    // Méthodes privées
+
+    private void broadcast(TypingState state, boolean typing) {
+        TypingMessage message = new TypingMessage(state.threadId, state.userId, typing);
+        message.setUserName(state.userName);
+        try {
+            messagingTemplate.convertAndSend("/topic/thread/" + state.threadId + "/typing", message);
+            broadcastFrames.incrementAndGet();
+        } catch (Exception e) {
+            System.err.println("Erreur lors de la diffusion de l'indicateur de frappe: " + e.getMessage());
+        }
+    }
+
+    private static String key(String threadId, String userId) {
+        return threadId + ':' + userId;
+    }
+
+    private static class TypingState {
+        private final String threadId;
+        private final String userId;
+        private final String userName;
+        private volatile String sessionId;
+        private volatile long lastSeenAt;
+        private long lastBroadcastAt;
+
+        TypingState(String threadId, String userId, String userName, String sessionId, long now) {
+            this.threadId = threadId;
+            this.userId = userId;
+            this.userName = userName;
+            this.sessionId = sessionId;
+            this.lastSeenAt = now;
+            this.lastBroadcastAt = now;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.retrouvtout.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Diffusion fiable des événements temps réel par utilisateur
+ *
+ * Chaque événement envoyé à un utilisateur reçoit un numéro de séquence croissant
+ * (en-tête STOMP "seq") et est conservé dans un tampon borné. À la reconnexion,
+ * le client s'abonne à ses files puis envoie /app/replay avec sa dernière séquence
+ * reçue (ou l'en-tête CONNECT "last-seq") : seuls les événements manqués sont
+ * rejoués, au lieu d'une resynchronisation REST. Le rejeu attend cette demande
+ * explicite car SessionSubscribeEvent est publié avant que le broker n'enregistre
+ * l'abonnement. Si le tampon ne couvre plus l'écart, un événement /queue/resync
+ * est envoyé. Numérotation et envoi se font sous le verrou de l'utilisateur :
+ * les événements partent dans l'ordre de leur séquence, rejeu compris.
+ * Optionnellement, les tampons sont recopiés dans Redis pour survivre à un redémarrage.
+ */
+@Component
+public class UserEventReplayService {
+
+    public static final String SEQ_HEADER = "seq";
+    public static final String LAST_SEQ_HEADER = "last-seq";
+    public static final String LAST_SEQ_ATTRIBUTE = "retrouvtout.lastSeq";
+    private static final String REPLAYED_ATTRIBUTE = "retrouvtout.replayed";
+
+    private static final String REDIS_SEQ_KEY = "rt:seq:";
+    private static final String REDIS_EVENTS_KEY = "rt:events:";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+    private final ObjectMapper objectMapper;
+
+    private final ConcurrentHashMap<String, UserEventBuffer> buffers = new ConcurrentHashMap<>();
+
+    @Value("${app.websocket.replay.buffer-size:200}")
+    private int bufferSize;
+
+    @Value("${app.websocket.replay.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Value("${app.websocket.replay.redis-enabled:false}")
+    private boolean redisEnabled;
+
+    @Autowired
+    public UserEventReplayService(SimpMessagingTemplate messagingTemplate,
+                                  ObjectProvider<StringRedisTemplate> redisTemplateProvider,
+                                  ObjectMapper objectMapper) {
+        this.messagingTemplate = messagingTemplate;
+        this.redisTemplateProvider = redisTemplateProvider;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Envoyer un événement séquencé à toutes les sessions d'un utilisateur
+     */
+    public long sendToUser(String userId, String destination, Object payload) {
+        UserEventBuffer buffer = buffers.computeIfAbsent(userId, k -> new UserEventBuffer());
+        long seq;
+
+        // L'envoi reste sous le verrou : deux envois concurrents partent dans l'ordre de leur séquence
+        synchronized (buffer) {
+            seq = nextSequence(userId, buffer);
+            buffer.append(new BufferedEvent(seq, destination, payload, System.currentTimeMillis()), bufferSize);
+
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.setNativeHeader(SEQ_HEADER, Long.toString(seq));
+            accessor.setLeaveMutable(true);
+            messagingTemplate.convertAndSendToUser(userId, destination, payload, accessor.getMessageHeaders());
+        }
+
+        if (redisEnabled) {
+            spillToRedis(userId, seq, destination, payload);
+        }
+
+        return seq;
+    }
+
+    /**
+     * Rejouer à une session les événements manqués, à la demande du client (/app/replay)
+     * Le client l'envoie après ses SUBSCRIBE, une seule fois par session.
+     *
+     * @param requestedLastSeq dernière séquence reçue, ou null pour celle de l'en-tête CONNECT "last-seq"
+     */
+    public void replay(String userId, String sessionId, Long requestedLastSeq, Map<String, Object> sessionAttributes) {
+        if (userId == null || sessionAttributes == null) {
+            return;
+        }
+
+        Object lastSeqValue = requestedLastSeq != null ? requestedLastSeq : sessionAttributes.get(LAST_SEQ_ATTRIBUTE);
+        if (!(lastSeqValue instanceof Long)) {
+            return;
+        }
+        long lastSeq = (Long) lastSeqValue;
+
+        if (sessionAttributes.putIfAbsent(REPLAYED_ATTRIBUTE, Boolean.TRUE) != null) {
+            return;
+        }
+
+        // Sous le verrou de l'utilisateur : aucun événement en direct ne s'intercale dans le rejeu
+        UserEventBuffer buffer = buffers.computeIfAbsent(userId, k -> new UserEventBuffer());
+        synchronized (buffer) {
+            List<BufferedEvent> missed = new ArrayList<>();
+            boolean gap = collectMissedEvents(userId, lastSeq, missed);
+
+            if (gap) {
+                sendToSession(userId, sessionId, "/queue/resync", new ResyncMessage(lastSeq, buffer.sequence), null);
+            }
+
+            for (BufferedEvent event : missed) {
+                sendToSession(userId, sessionId, event.destination, event.payload, event.seq);
+            }
+        }
+    }
+
+    /**
+     * Supprimer les tampons inactifs au-delà du TTL
+     */
+    @Scheduled(fixedDelayString = "${app.websocket.replay.cleanup-interval-ms:60000}")
+    public void evictExpiredBuffers() {
+        long cutoff = System.currentTimeMillis() - ttlSeconds * 1000;
+        buffers.entrySet().removeIf(entry -> {
+            UserEventBuffer buffer = entry.getValue();
+            synchronized (buffer) {
+                buffer.evictOlderThan(cutoff);
+                return buffer.isEmpty() && buffer.lastEventAt < cutoff;
+            }
+        });
+    }
+
+    // Méthodes privées
+
+    private long nextSequence(String userId, UserEventBuffer buffer) {
+        if (redisEnabled) {
+            StringRedisTemplate redis = redisTemplateProvider.getIfAvailable();
+            if (redis != null) {
+                try {
+                    Long seq = redis.opsForValue().increment(REDIS_SEQ_KEY + userId);
+                    if (seq != null) {
+                        buffer.sequence = seq;
+                        return seq;
+                    }
+                } catch (Exception e) {
+                    System.err.println("⚠️ Séquence Redis indisponible, repli en mémoire: " + e.getMessage());
+                }
+            }
+        }
+        return ++buffer.sequence;
+    }
+
+    /**
+     * @return true si des événements ont été perdus (tampon dépassé ou séquence réinitialisée)
+     */
+    private boolean collectMissedEvents(String userId, long lastSeq, List<BufferedEvent> missed) {
+        UserEventBuffer buffer = buffers.get(userId);
+        long oldestAvailable = Long.MAX_VALUE;
+        long currentSeq = 0L;
+
+        if (buffer != null) {
+            synchronized (buffer) {
+                currentSeq = buffer.sequence;
+                for (BufferedEvent event : buffer.events) {
+                    oldestAvailable = Math.min(oldestAvailable, event.seq);
+                    if (event.seq > lastSeq) {
+                        missed.add(event);
+                    }
+                }
+            }
+        }
+
+        boolean coveredInMemory = buffer != null && (lastSeq >= currentSeq || oldestAvailable <= lastSeq + 1);
+        if (coveredInMemory && lastSeq <= currentSeq) {
+            return false;
+        }
+
+        if (redisEnabled && missed.isEmpty() && replayFromRedis(userId, lastSeq, missed)) {
+            return false;
+        }
+
+        return lastSeq > currentSeq || !coveredInMemory;
+    }
+
+    private void sendToSession(String userId, String sessionId, String destination, Object payload, Long seq) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        if (seq != null) {
+            accessor.setNativeHeader(SEQ_HEADER, Long.toString(seq));
+        }
+        accessor.setLeaveMutable(true);
+        messagingTemplate.convertAndSendToUser(userId, destination, payload, accessor.getMessageHeaders());
+    }
+
+    private void spillToRedis(String userId, long seq, String destination, Object payload) {
+        StringRedisTemplate redis = redisTemplateProvider.getIfAvailable();
+        if (redis == null) {
+            return;
+        }
+        try {
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("seq", seq);
+            node.put("destination", destination);
+            node.set("payload", objectMapper.valueToTree(payload));
+
+            String key = REDIS_EVENTS_KEY + userId;
+            redis.opsForList().rightPush(key, objectMapper.writeValueAsString(node));
+            redis.opsForList().trim(key, -bufferSize, -1);
+            redis.expire(key, Duration.ofSeconds(ttlSeconds));
+        } catch (Exception e) {
+            System.err.println("⚠️ Erreur de recopie Redis des événements: " + e.getMessage());
+        }
+    }
+
+    private boolean replayFromRedis(String userId, long lastSeq, List<BufferedEvent> missed) {
+        StringRedisTemplate redis = redisTemplateProvider.getIfAvailable();
+        if (redis == null) {
+            return false;
+        }
+        try {
+            List<String> entries = redis.opsForList().range(REDIS_EVENTS_KEY + userId, 0, -1);
+            if (entries == null || entries.isEmpty()) {
+                return false;
+            }
+
+            long oldest = Long.MAX_VALUE;
+            for (String entry : entries) {
+                JsonNode node = objectMapper.readTree(entry);
+                long seq = node.get("seq").asLong();
+                oldest = Math.min(oldest, seq);
+                if (seq > lastSeq) {
+                    missed.add(new BufferedEvent(seq, node.get("destination").asText(), node.get("payload"),
+                        System.currentTimeMillis()));
+                }
+            }
+            // La recopie Redis se fait hors verrou : rétablir l'ordre des séquences
+            missed.sort(Comparator.comparingLong(event -> event.seq));
+            return oldest <= lastSeq + 1;
+        } catch (Exception e) {
+            System.err.println("⚠️ Erreur de relecture Redis des événements: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Tampon circulaire borné des derniers événements d'un utilisateur
+     */
+    private static class UserEventBuffer {
+        private final ArrayDeque<BufferedEvent> events = new ArrayDeque<>();
+        private long sequence;
+        private long lastEventAt = System.currentTimeMillis();
+
+        void append(BufferedEvent event, int capacity) {
+            events.addLast(event);
+            lastEventAt = event.timestamp;
+            while (events.size() > capacity) {
+                events.removeFirst();
+            }
+        }
+
+        void evictOlderThan(long cutoff) {
+            Iterator<BufferedEvent> iterator = events.iterator();
+            while (iterator.hasNext() && iterator.next().timestamp < cutoff) {
+                iterator.remove();
+            }
+        }
+
+        boolean isEmpty() {
+            return events.isEmpty();
+        }
+    }
+
+    private static class BufferedEvent {
+        private final long seq;
+        private final String destination;
+        private final Object payload;
+        private final long timestamp;
+
+        BufferedEvent(long seq, String destination, Object payload, long timestamp) {
+            this.seq = seq;
+            this.destination = destination;
+            this.payload = payload;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * Message demandant au client une resynchronisation complète via REST
+     */
+    public static class ResyncMessage {
+        private long lastSeq;
+        private long currentSeq;
+
+        public ResyncMessage(long lastSeq, long currentSeq) {
+            this.lastSeq = lastSeq;
+            this.currentSeq = currentSeq;
+        }
+
+        public long getLastSeq() { return lastSeq; }
+        public void setLastSeq(long lastSeq) { this.lastSeq = lastSeq; }
+
+        public long getCurrentSeq() { return currentSeq; }
+        public void setCurrentSeq(long currentSeq) { this.currentSeq = currentSeq; }
+    }
+}
@@ -0,0 +1,161 @@
+package com.retrouvtout.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Instrumentation du canal sortant WebSocket et protection contre les clients lents
+ *
+ * Surveille le tampon d'envoi de chaque session (ConcurrentWebSocketSessionDecorator) :
+ * au-delà d'un seuil d'octets en attente, les indicateurs de frappe (trames
+ * jetables) sont abandonnés en premier. Si le client reste bloqué, les limites
+ * de transport (taille du tampon d'envoi et durée d'envoi) ferment la session.
+ * Octets en attente, envoi bloqué le plus ancien, durée d'écriture réelle sur la
+ * socket et trames abandonnées sont publiés dans les métriques actuator.
+ */
+@Component
+public class WebSocketChannelMonitor implements ChannelInterceptor {
+
+    private static final String TYPING_SUFFIX = "/typing";
+
+    private final MeterRegistry meterRegistry;
+    private final Timer sendTimer;
+    private final Counter droppedTypingFrames;
+
+    // Décorateurs de session créés par MonitoredSubProtocolWebSocketHandler, par identifiant de session
+    private final ConcurrentHashMap<String, ConcurrentWebSocketSessionDecorator> sessions = new ConcurrentHashMap<>();
+
+    @Value("${app.websocket.slow-consumer.typing-drop-threshold-bytes:65536}")
+    private int typingDropThresholdBytes;
+
+    @Autowired
+    public WebSocketChannelMonitor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.sendTimer = Timer.builder("websocket.outbound.send.latency")
+            .description("Durée d'écriture d'une trame sur la socket WebSocket")
+            .register(meterRegistry);
+        this.droppedTypingFrames = Counter.builder("websocket.outbound.dropped")
+            .tag("reason", "slow-consumer-typing")
+            .description("Indicateurs de frappe abandonnés pour des clients lents")
+            .register(meterRegistry);
+        Gauge.builder("websocket.outbound.buffered.bytes", sessions,
+                map -> map.values().stream().mapToLong(ConcurrentWebSocketSessionDecorator::getBufferSize).sum())
+            .description("Octets en attente dans les tampons d'envoi, toutes sessions confondues")
+            .register(meterRegistry);
+        Gauge.builder("websocket.outbound.send.stalled.ms", sessions,
+                map -> map.values().stream().mapToLong(ConcurrentWebSocketSessionDecorator::getTimeSinceSendStarted)
+                    .max().orElse(0))
+            .description("Durée de l'envoi en cours le plus ancien")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Publier la profondeur de file et les threads actifs d'un exécuteur de canal
+     */
+    public void registerExecutor(String channel, ThreadPoolTaskExecutor executor) {
+        Gauge.builder("websocket.channel.queue.depth", executor, e -> poolStat(e, true))
+            .tag("channel", channel)
+            .register(meterRegistry);
+        Gauge.builder("websocket.channel.active.threads", executor, e -> poolStat(e, false))
+            .tag("channel", channel)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Session brute enveloppée pour mesurer la durée réelle d'écriture sur la socket
+     */
+    public WebSocketSession timed(WebSocketSession session) {
+        return new TimedSession(session, sendTimer);
+    }
+
+    /**
+     * Suivre le tampon d'envoi d'une session décorée
+     */
+    public void registerSession(WebSocketSession session) {
+        if (session instanceof ConcurrentWebSocketSessionDecorator) {
+            sessions.put(session.getId(), (ConcurrentWebSocketSessionDecorator) session);
+        }
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        String sessionId = accessor.getSessionId();
+        if (sessionId == null || accessor.getMessageType() != SimpMessageType.MESSAGE) {
+            return message;
+        }
+
+        String destination = accessor.getDestination();
+        if (destination == null || !destination.endsWith(TYPING_SUFFIX)) {
+            return message;
+        }
+
+        ConcurrentWebSocketSessionDecorator session = sessions.get(sessionId);
+        if (session != null && session.getBufferSize() >= typingDropThresholdBytes) {
+            droppedTypingFrames.increment();
+            return null;
+        }
+        return message;
+    }
+
+    @EventListener
+    public void onSessionDisconnected(SessionDisconnectEvent event) {
+        sessions.remove(event.getSessionId());
+    }
+
+    // Méthodes privées
+
+    private static double poolStat(ThreadPoolTaskExecutor executor, boolean queueDepth) {
+        try {
+            ThreadPoolExecutor pool = executor.getThreadPoolExecutor();
+            return queueDepth ? pool.getQueue().size() : pool.getActiveCount();
+        } catch (IllegalStateException e) {
+            // Exécuteur pas encore initialisé
+            return 0;
+        }
+    }
+
+    /**
+     * Chronométrer les écritures effectives (appelées par le tampon d'envoi, une à la fois)
+     */
+    private static final class TimedSession extends WebSocketSessionDecorator {
+        private final Timer sendTimer;
+
+        private TimedSession(WebSocketSession delegate, Timer sendTimer) {
+            super(delegate);
+            this.sendTimer = sendTimer;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            long start = System.nanoTime();
+            try {
+                super.sendMessage(message);
+            } finally {
+                sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
@@ -2,8 +2,11 @@ package com.retrouvtout.websocket;
 
 import com.retrouvtout.dto.request.CreateMessageRequest;
 import com.retrouvtout.dto.response.MessageResponse;
+import com.retrouvtout.security.RateLimitPolicy;
+import com.retrouvtout.security.RateLimitService;
 import com.retrouvtout.security.UserPrincipal;
 import com.retrouvtout.service.MessageService;
+import com.retrouvtout.service.MessageWritePipeline;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
@@ -12,6 +15,9 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
 
+import java.security.Principal;
+import java.time.LocalDateTime;
+
 /**
  * Contrôleur WebSocket pour la messagerie en temps réel
  */
@@ -19,13 +25,28 @@ import org.springframework.stereotype.Controller;
 public class WebSocketController {
 
     private final MessageService messageService;
+    private final MessageWritePipeline messageWritePipeline;
     private final SimpMessagingTemplate messagingTemplate;
+    private final TypingStateService typingStateService;
+    private final PresenceRegistry presenceRegistry;
+    private final RateLimitService rateLimitService;
+    private final UserEventReplayService userEventReplayService;
 
     @Autowired
-    public WebSocketController(MessageService messageService, 
-                              SimpMessagingTemplate messagingTemplate) {
+    public WebSocketController(MessageService messageService,
+                              MessageWritePipeline messageWritePipeline,
+                              SimpMessagingTemplate messagingTemplate,
+                              TypingStateService typingStateService,
+                              PresenceRegistry presenceRegistry,
+                              RateLimitService rateLimitService,
+                              UserEventReplayService userEventReplayService) {
         this.messageService = messageService;
+        this.messageWritePipeline = messageWritePipeline;
         this.messagingTemplate = messagingTemplate;
+        this.typingStateService = typingStateService;
+        this.presenceRegistry = presenceRegistry;
+        this.rateLimitService = rateLimitService;
+        this.userEventReplayService = userEventReplayService;
     }
 
     /**
@@ -37,18 +58,42 @@ public class WebSocketController {
         
         try {
             // Récupérer l'utilisateur authentifié
-            Authentication auth = (Authentication) headerAccessor.getUser();
-            if (auth == null || !(auth.getPrincipal() instanceof UserPrincipal)) {
+            String userId = resolveUserId(headerAccessor);
+            if (userId == null) {
                 return;
             }
 
-            UserPrincipal userPrincipal = (UserPrincipal) auth.getPrincipal();
-            
-            // Créer le message via le service
-            MessageResponse message = messageService.createMessage(request, userPrincipal.getId());
-            
-            // Le service se charge déjà de l'envoi via WebSocket
-            // Rien de plus à faire ici
+            String principalName = headerAccessor.getUser().getName();
+            String clientMessageId = request.getClientMessageId();
+
+            // Même quota que POST /api/messages
+            long retryAfter = rateLimitService.tryConsume(RateLimitPolicy.CREATE_MESSAGE, "user:" + userId);
+            if (retryAfter > 0) {
+                messagingTemplate.convertAndSendToUser(
+                    principalName,
+                    "/queue/errors",
+                    new ErrorMessage("Trop de messages envoyés, veuillez réessayer dans " + retryAfter + " s")
+                );
+                return;
+            }
+
+            // Écriture groupée : l'accusé de réception part après le commit du lot,
+            // la diffusion au destinataire est déjà assurée par le service
+            messageWritePipeline.submit(request, userId).whenComplete((message, error) -> {
+                if (error != null) {
+                    messagingTemplate.convertAndSendToUser(
+                        principalName,
+                        "/queue/errors",
+                        new ErrorMessage("Erreur lors de l'envoi du message: " + error.getMessage())
+                    );
+                } else {
+                    messagingTemplate.convertAndSendToUser(
+                        principalName,
+                        "/queue/acks",
+                        new AckMessage(clientMessageId, message.getId(), message.getThreadId(), message.getCreatedAt())
+                    );
+                }
+            });
             
         } catch (Exception e) {
             // Envoyer une erreur à l'utilisateur
@@ -68,21 +113,24 @@ public class WebSocketController {
                            SimpMessageHeaderAccessor headerAccessor) {
         
         try {
-            Authentication auth = (Authentication) headerAccessor.getUser();
-            if (auth == null || !(auth.getPrincipal() instanceof UserPrincipal)) {
+            String userId = resolveUserId(headerAccessor);
+            if (userId == null || typingMessage.getThreadId() == null) {
                 return;
             }
 
-            UserPrincipal userPrincipal = (UserPrincipal) auth.getPrincipal();
-            
-            // Ajouter l'ID de l'utilisateur au message
-            typingMessage.setUserId(userPrincipal.getId());
-            typingMessage.setUserName(userPrincipal.getName());
-            
-            // Diffuser l'indicateur de frappe aux autres participants du thread
-            messagingTemplate.convertAndSend(
-                "/topic/thread/" + typingMessage.getThreadId() + "/typing",
-                typingMessage
+            // Seuls les participants du thread peuvent émettre un indicateur de frappe
+            String userName = messageWritePipeline.findParticipantName(typingMessage.getThreadId(), userId);
+            if (userName == null) {
+                return;
+            }
+
+            // Le service ne diffuse que les transitions et des rafraîchissements espacés
+            typingStateService.onTyping(
+                typingMessage.getThreadId(),
+                userId,
+                userName,
+                typingMessage.isTyping(),
+                headerAccessor.getSessionId()
             );
             
         } catch (Exception e) {
@@ -90,6 +138,40 @@ public class WebSocketController {
         }
     }
 
+    /**
+     * Signal de présence du client, avec le thread actuellement affiché
+     */
+    @MessageMapping("/presence.heartbeat")
+    public void heartbeat(@Payload UserPresence presence,
+                          SimpMessageHeaderAccessor headerAccessor) {
+        
+        String userId = resolveUserId(headerAccessor);
+        if (userId == null) {
+            return;
+        }
+
+        presenceRegistry.heartbeat(userId, headerAccessor.getSessionId(),
+            presence != null ? presence.getCurrentThread() : null);
+    }
+
+    /**
+     * Rejouer les événements manqués, demandé par le client après ses abonnements
+     * (l'abonnement est alors enregistré par le broker : rien n'est perdu)
+     */
+    @MessageMapping("/replay")
+    public void replay(@Payload(required = false) ReplayRequest replayRequest,
+                       SimpMessageHeaderAccessor headerAccessor) {
+
+        String userId = resolveUserId(headerAccessor);
+        if (userId == null) {
+            return;
+        }
+
+        userEventReplayService.replay(userId, headerAccessor.getSessionId(),
+            replayRequest != null ? replayRequest.getLastSeq() : null,
+            headerAccessor.getSessionAttributes());
+    }
+
     /**
      * Gérer la lecture de messages
      */
@@ -119,6 +201,62 @@ public class WebSocketController {
         }
     }
 
+    /**
+     * Résoudre l'ID de l'utilisateur à partir du principal STOMP
+     * (UserPrincipal complet ou simple token portant l'ID)
+     */
+    private String resolveUserId(SimpMessageHeaderAccessor headerAccessor) {
+        Principal user = headerAccessor.getUser();
+        if (user == null) {
+            return null;
+        }
+        if (user instanceof Authentication && ((Authentication) user).getPrincipal() instanceof UserPrincipal) {
+            return ((UserPrincipal) ((Authentication) user).getPrincipal()).getId();
+        }
+        return user.getName();
+    }
+
+    /**
+     * Demande de rejeu : dernière séquence reçue par le client
+     */
+    public static class ReplayRequest {
+        private Long lastSeq;
+
+        public ReplayRequest() {}
+
+        public Long getLastSeq() { return lastSeq; }
+        public void setLastSeq(Long lastSeq) { this.lastSeq = lastSeq; }
+    }
+
+    /**
+     * Accusé de réception envoyé après le commit du message
+     */
+    public static class AckMessage {
+        private String clientMessageId;
+        private String messageId;
+        private String threadId;
+        private LocalDateTime createdAt;
+
+        public AckMessage(String clientMessageId, String messageId, String threadId, LocalDateTime createdAt) {
+            this.clientMessageId = clientMessageId;
+            this.messageId = messageId;
+            this.threadId = threadId;
+            this.createdAt = createdAt;
+        }
+
+        public String getClientMessageId() { return clientMessageId; }
+        public void setClientMessageId(String clientMessageId) { this.clientMessageId = clientMessageId; }
+
+        public String getMessageId() { return messageId; }
+        public void setMessageId(String messageId) { this.messageId = messageId; }
+
+        public String getThreadId() { return threadId; }
+        public void setThreadId(String threadId) { this.threadId = threadId; }
+
+        public LocalDateTime getCreatedAt() { return createdAt; }
+        public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    }
+
     /**
      * Classe pour les messages d'erreur
      */
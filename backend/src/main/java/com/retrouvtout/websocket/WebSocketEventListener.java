@@ -16,9 +16,15 @@ import java.security.Principal;
 public class WebSocketEventListener {
 
     private final SimpMessageSendingOperations messagingTemplate;
+    private final TypingStateService typingStateService;
+    private final PresenceRegistry presenceRegistry;
 
-    public WebSocketEventListener(SimpMessageSendingOperations messagingTemplate) {
+    public WebSocketEventListener(SimpMessageSendingOperations messagingTemplate,
+                                  TypingStateService typingStateService,
+                                  PresenceRegistry presenceRegistry) {
         this.messagingTemplate = messagingTemplate;
+        this.typingStateService = typingStateService;
+        this.presenceRegistry = presenceRegistry;
     }
 
     /**
@@ -31,6 +37,7 @@ public class WebSocketEventListener {
         
         if (user != null) {
             System.out.println("Utilisateur connecté via WebSocket: " + user.getName());
+            presenceRegistry.sessionConnected(user.getName(), headerAccessor.getSessionId());
             
             // Optionnel: Notifier les autres utilisateurs de la connexion
             // messagingTemplate.convertAndSend("/topic/users", 
@@ -45,9 +52,13 @@ public class WebSocketEventListener {
     public void handleWebSocketDisconnectListener(SessionDisconnectEvent event) {
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
         Principal user = headerAccessor.getUser();
+
+        // Arrêter les indicateurs de frappe encore actifs pour cette session
+        typingStateService.clearSession(event.getSessionId());
         
         if (user != null) {
             System.out.println("Utilisateur déconnecté via WebSocket: " + user.getName());
+            presenceRegistry.sessionDisconnected(user.getName(), event.getSessionId());
             
             // Notifier les threads actifs que l'utilisateur s'est déconnecté
             // Cela peut être utilisé pour arrêter les indicateurs de frappe
@@ -0,0 +1,38 @@
+-- Archivage des conversations anciennes - Section 3.5 du cahier des charges
+-- Les threads fermés ou inactifs sont déplacés hors des tables chaudes
+-- pour que les requêtes de boîte de réception et de non-lus restent rapides
+
+-- Conversations archivées (même structure que threads, sans contraintes de clé étrangère)
+CREATE TABLE threads_archive (
+    id CHAR(36) NOT NULL PRIMARY KEY,
+    listing_id CHAR(36) NOT NULL,
+    owner_user_id CHAR(36) NOT NULL,
+    finder_user_id CHAR(36) NOT NULL,
+    status ENUM('active', 'closed') NOT NULL DEFAULT 'active',
+    last_message_at DATETIME(3) NULL,
+    created_at DATETIME(3) NOT NULL,
+    updated_at DATETIME(3) NOT NULL,
+    archived_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    
+    INDEX idx_threads_archive_owner (owner_user_id),
+    INDEX idx_threads_archive_finder (finder_user_id),
+    INDEX idx_threads_archive_archived_at (archived_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- Messages archivés : corps compressé (GZIP)
+CREATE TABLE messages_archive (
+    id CHAR(36) NOT NULL PRIMARY KEY,
+    thread_id CHAR(36) NOT NULL,
+    sender_user_id CHAR(36) NOT NULL,
+    body_gz MEDIUMBLOB NOT NULL,
+    message_type ENUM('text', 'system') NOT NULL DEFAULT 'text',
+    is_read BOOLEAN NOT NULL DEFAULT FALSE,
+    read_at DATETIME(3) NULL,
+    created_at DATETIME(3) NOT NULL,
+    archived_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    
+    INDEX idx_messages_archive_thread (thread_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- Sélection des candidats à l'archivage
+CREATE INDEX idx_threads_status_updated ON threads (status, updated_at);
@@ -0,0 +1,3 @@
+-- Recherche plein texte dans les conversations - Section 3.5 du cahier des charges
+-- Permet de retrouver un message (adresse, horaire...) sans parcourir chaque thread
+ALTER TABLE messages ADD FULLTEXT INDEX ftx_messages_body (body);
@@ -0,0 +1,3 @@
+-- Version des tokens par utilisateur : incrémentée quand le rôle ou le statut change,
+-- elle invalide les tokens autoportés émis auparavant
+ALTER TABLE users ADD COLUMN token_version INT NOT NULL DEFAULT 0;
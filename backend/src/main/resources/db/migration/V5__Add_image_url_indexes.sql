@@ -0,0 +1,4 @@
+-- Comptage des références aux images stockées par contenu (SHA-256) :
+-- une image n'est supprimée que si plus aucune annonce ne pointe dessus
+CREATE INDEX idx_listings_image_url ON listings (image_url);
+CREATE INDEX idx_images_url ON listing_images (url);
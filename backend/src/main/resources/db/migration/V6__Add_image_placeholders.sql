@@ -0,0 +1,11 @@
+-- Dimensions et micro-vignette (data URI) des images, calculées à l'upload :
+-- le client réserve la place et affiche un aperçu flou sans requête supplémentaire
+ALTER TABLE listings
+    ADD COLUMN image_width INT NULL,
+    ADD COLUMN image_height INT NULL,
+    ADD COLUMN image_placeholder VARCHAR(1024) NULL;
+
+ALTER TABLE listing_images
+    ADD COLUMN width INT NULL,
+    ADD COLUMN height INT NULL,
+    ADD COLUMN placeholder VARCHAR(1024) NULL;
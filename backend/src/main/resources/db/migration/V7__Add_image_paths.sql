@@ -0,0 +1,18 @@
+-- Chemin relatif des images uploadées (partie de l'URL après /files/, sans paramètres) :
+-- le ramasse-miettes du stockage compare ses candidats à une colonne indexée
+-- au lieu d'extraire le chemin de chaque URL (parcours complet des deux tables)
+ALTER TABLE listings ADD COLUMN image_path VARCHAR(512) NULL;
+
+UPDATE listings
+SET image_path = NULLIF(SUBSTRING_INDEX(SUBSTRING(image_url, LOCATE('/files/', image_url) + 7), '?', 1), '')
+WHERE LOCATE('/files/', image_url) > 0;
+
+CREATE INDEX idx_listings_image_path ON listings (image_path);
+
+ALTER TABLE listing_images ADD COLUMN path VARCHAR(512) NULL;
+
+UPDATE listing_images
+SET path = NULLIF(SUBSTRING_INDEX(SUBSTRING(url, LOCATE('/files/', url) + 7), '?', 1), '')
+WHERE LOCATE('/files/', url) > 0;
+
+CREATE INDEX idx_images_path ON listing_images (path);
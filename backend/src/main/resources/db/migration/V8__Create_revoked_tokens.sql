@@ -0,0 +1,9 @@
+-- Révocations des tokens (jti, familles de refresh tokens, refresh tokens consommés)
+-- quand Redis n'est pas activé : elles survivent au redémarrage du nœud
+CREATE TABLE revoked_tokens (
+    id VARCHAR(128) NOT NULL PRIMARY KEY,
+    expires_at BIGINT NOT NULL,
+    created_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+
+    INDEX idx_revoked_tokens_expires_at (expires_at)
+) ENGINE=InnoDB DEFAULT CHARSET=ascii COLLATE=ascii_bin;
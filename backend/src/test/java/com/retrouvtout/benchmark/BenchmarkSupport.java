@@ -0,0 +1,149 @@
+package com.retrouvtout.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Outils communs aux benchmarks
+ *
+ * Les classes *Benchmark ne sont pas lancées par défaut (ni surefire ni failsafe
+ * ne les sélectionnent) : mvn test -Dtest=NomDuBenchmark, ou
+ * mvn verify -Dit.test=NomDuBenchmark pour ceux qui ont besoin de Testcontainers.
+ * Les résultats sont affichés sur la sortie standard ; les assertions ne portent
+ * que sur des bornes larges, pour ne pas dépendre de la machine.
+ */
+public final class BenchmarkSupport {
+
+    private BenchmarkSupport() {}
+
+    /**
+     * Opération mesurée
+     */
+    @FunctionalInterface
+    public interface Operation {
+        void run() throws Exception;
+    }
+
+    /**
+     * Mesurer une opération sur un seul thread, après échauffement
+     */
+    public static Result measure(String name, int warmup, int iterations, Operation operation) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            operation.run();
+        }
+
+        long[] latencies = new long[iterations];
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            long begin = System.nanoTime();
+            operation.run();
+            latencies[i] = System.nanoTime() - begin;
+        }
+        return report(name, latencies, System.nanoTime() - start);
+    }
+
+    /**
+     * Mesurer une opération exécutée en parallèle par plusieurs threads, après échauffement
+     */
+    public static Result measureConcurrent(String name, int threads, int warmupPerThread, int iterationsPerThread,
+                                           Operation operation) throws Exception {
+        for (int i = 0; i < warmupPerThread; i++) {
+            operation.run();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch startSignal = new CountDownLatch(1);
+            List<Future<long[]>> futures = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    long[] latencies = new long[iterationsPerThread];
+                    startSignal.await();
+                    for (int i = 0; i < iterationsPerThread; i++) {
+                        long begin = System.nanoTime();
+                        operation.run();
+                        latencies[i] = System.nanoTime() - begin;
+                    }
+                    return latencies;
+                }));
+            }
+
+            long start = System.nanoTime();
+            startSignal.countDown();
+            long[] all = new long[threads * iterationsPerThread];
+            int offset = 0;
+            for (Future<long[]> future : futures) {
+                long[] latencies = future.get();
+                System.arraycopy(latencies, 0, all, offset, latencies.length);
+                offset += latencies.length;
+            }
+            return report(name, all, System.nanoTime() - start);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Résumé d'une série de latences (en nanosecondes) sur une durée totale
+     */
+    public static Result report(String name, long[] latencies, long elapsedNanos) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        Result result = new Result(
+            name,
+            sorted.length,
+            sorted.length * 1_000_000_000.0 / Math.max(1, elapsedNanos),
+            percentile(sorted, 0.50),
+            percentile(sorted, 0.99),
+            sorted.length > 0 ? sorted[sorted.length - 1] : 0);
+        System.out.println(result);
+        return result;
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * Débit (opérations par seconde) et percentiles de latence
+     */
+    public static final class Result {
+        private final String name;
+        private final int operations;
+        private final double opsPerSecond;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        private final long maxNanos;
+
+        private Result(String name, int operations, double opsPerSecond, long p50Nanos, long p99Nanos, long maxNanos) {
+            this.name = name;
+            this.operations = operations;
+            this.opsPerSecond = opsPerSecond;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public String getName() { return name; }
+        public int getOperations() { return operations; }
+        public double getOpsPerSecond() { return opsPerSecond; }
+        public long getP50Nanos() { return p50Nanos; }
+        public long getP99Nanos() { return p99Nanos; }
+        public long getMaxNanos() { return maxNanos; }
+
+        @Override
+        public String toString() {
+            return String.format("📊 %-45s %8d ops  %12.0f ops/s  p50 %9.1f µs  p99 %9.1f µs  max %9.1f µs",
+                name, operations, opsPerSecond, p50Nanos / 1000.0, p99Nanos / 1000.0, maxNanos / 1000.0);
+        }
+    }
+}
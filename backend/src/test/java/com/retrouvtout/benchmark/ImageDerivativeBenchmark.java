@@ -0,0 +1,151 @@
+package com.retrouvtout.benchmark;
+
+import com.retrouvtout.service.ImageDerivativeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark de la génération des déclinaisons d'images (ImageDerivativeService)
+ *
+ * Mesure le débit de génération (full, card, thumb, fiche d'informations)
+ * pour une photo de téléphone 12 Mpx, avec et sans orientation EXIF, sur un
+ * thread puis avec plusieurs uploads simultanés.
+ * Lancement : mvn test -Dtest=ImageDerivativeBenchmark
+ */
+class ImageDerivativeBenchmark {
+
+    private static final int SOURCE_WIDTH = 4000;
+    private static final int SOURCE_HEIGHT = 3000;
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 20;
+
+    @TempDir
+    Path uploadDir;
+
+    private ImageDerivativeService service;
+    private byte[] jpeg;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        service = new ImageDerivativeService();
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "configuredFormat", "jpg");
+        ReflectionTestUtils.setField(service, "quality", 0.82f);
+        ReflectionTestUtils.setField(service, "fullPx", 1600);
+        ReflectionTestUtils.setField(service, "cardPx", 640);
+        ReflectionTestUtils.setField(service, "thumbPx", 200);
+        ReflectionTestUtils.setField(service, "placeholderPx", 8);
+        ReflectionTestUtils.setField(service, "maxSourcePixels", 40_000_000L);
+        ReflectionTestUtils.setField(service, "threads", 0);
+        ReflectionTestUtils.setField(service, "queueCapacity", 32);
+        ReflectionTestUtils.setField(service, "timeoutMs", 60_000L);
+        service.start();
+
+        jpeg = photo(SOURCE_WIDTH, SOURCE_HEIGHT);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    @Test
+    void derivativeThroughput() throws Exception {
+        Path plain = Files.write(uploadDir.resolve("plain.jpg"), jpeg);
+        BenchmarkSupport.Result upright = BenchmarkSupport.measure("déclinaisons d'une photo 12 Mpx",
+            WARMUP, ITERATIONS, () -> assertEquals(4, service.generate(plain).size()));
+
+        Path rotated = Files.write(uploadDir.resolve("rotated.jpg"), withExifOrientation(jpeg, 6));
+        BenchmarkSupport.Result oriented = BenchmarkSupport.measure("déclinaisons d'une photo 12 Mpx (EXIF 6)",
+            WARMUP, ITERATIONS, () -> assertEquals(4, service.generate(rotated).size()));
+
+        ImageDerivativeService.ImageInfo info = service.readInfo(rotated);
+        assertEquals(SOURCE_HEIGHT, info.getWidth(), "la largeur stockée doit être celle de la photo redressée");
+        assertEquals(SOURCE_WIDTH, info.getHeight());
+        BufferedImage full = ImageIO.read(rotated.resolveSibling(service.derivativeFilename("rotated.jpg", "full")).toFile());
+        assertTrue(full.getHeight() > full.getWidth(), "la déclinaison full doit être en portrait");
+
+        System.out.printf("🖼️ Surcoût du redressement EXIF : %.0f%%%n",
+            (oriented.getP50Nanos() - upright.getP50Nanos()) * 100.0 / upright.getP50Nanos());
+    }
+
+    @Test
+    void concurrentUploads() throws Exception {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+        // Un original par thread : les écritures temporaires ne doivent pas se croiser
+        ThreadLocal<Path> originals = ThreadLocal.withInitial(() -> {
+            try {
+                return Files.write(uploadDir.resolve("upload-" + counter.incrementAndGet() + ".jpg"), jpeg);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        BenchmarkSupport.Result result = BenchmarkSupport.measureConcurrent(
+            "déclinaisons, " + threads + " uploads simultanés", threads, 0, ITERATIONS,
+            () -> assertEquals(4, service.generate(originals.get()).size()));
+
+        System.out.printf("🖼️ %.1f images/s sur %d threads de traitement%n",
+            result.getOpsPerSecond(), Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        assertTrue(result.getOpsPerSecond() > 0);
+    }
+
+    // Méthodes privées
+
+    private static byte[] photo(int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setPaint(new GradientPaint(0, 0, new Color(40, 90, 160), width, height, new Color(230, 200, 120)));
+            graphics.fillRect(0, 0, width, height);
+            graphics.setColor(Color.DARK_GRAY);
+            for (int i = 0; i < 200; i++) {
+                graphics.fillOval((i * 397) % width, (i * 211) % height, 40 + i % 60, 40 + i % 60);
+            }
+        } finally {
+            graphics.dispose();
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", bytes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Insérer un segment APP1 EXIF minimal (IFD0 avec le seul tag Orientation) après SOI
+     */
+    private static byte[] withExifOrientation(byte[] jpeg, int orientation) {
+        byte[] exif = {
+            'E', 'x', 'i', 'f', 0, 0,
+            'M', 'M', 0, 42, 0, 0, 0, 8,                       // en-tête TIFF big-endian, IFD0 en 8
+            0, 1,                                              // une entrée
+            0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, (byte) orientation, 0, 0,
+            0, 0, 0, 0                                         // pas d'IFD suivant
+        };
+        int length = exif.length + 2;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);
+        out.write(0xFF);
+        out.write(0xE1);
+        out.write(length >> 8);
+        out.write(length & 0xFF);
+        out.write(exif, 0, exif.length);
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,169 @@
+package com.retrouvtout.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.retrouvtout.websocket.OutboundFrameBatcher;
+import com.retrouvtout.websocket.UserEventReplayService;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark du regroupement des trames sortantes (OutboundFrameBatcher)
+ *
+ * Compare, pour une rafale de messages vers une session, le nombre de trames
+ * réellement écrites avec et sans regroupement, et mesure le coût par message
+ * de la mise en file et de l'encodage de l'enveloppe.
+ * Lancement : mvn test -Dtest=OutboundBatchingBenchmark
+ */
+class OutboundBatchingBenchmark {
+
+    private static final int SESSIONS = 50;
+    private static final int MESSAGES_PER_SESSION = 2000;
+    private static final String BODY = "{\"id\":\"8f14e45f-ceea-467f-a8b5-2c3f1f6b1e2a\",\"thread_id\":\"t-1\","
+        + "\"body\":\"Bonjour, je pense que ce sont mes clés\",\"created_at\":\"2026-10-18T10:00:00\"}";
+
+    @Test
+    void burstWithAndWithoutBatching() throws Exception {
+        AtomicLong unbatchedFrames = new AtomicLong();
+        AtomicLong unbatchedBytes = new AtomicLong();
+        // Aucune session abonnée à /user/queue/batch : chaque trame passe telle quelle
+        OutboundFrameBatcher passthrough = newBatcher((message, timeout) -> true, 20);
+
+        BenchmarkSupport.Result direct = BenchmarkSupport.measure("preSend sans regroupement", 0,
+            SESSIONS * MESSAGES_PER_SESSION, new Burst(passthrough, unbatchedFrames, unbatchedBytes));
+        passthrough.stop();
+
+        AtomicLong batchedFrames = new AtomicLong();
+        AtomicLong batchedBytes = new AtomicLong();
+        OutboundFrameBatcher[] holder = new OutboundFrameBatcher[1];
+        MessageChannel outbound = (message, timeout) -> {
+            Message<?> passed = holder[0].preSend(message, null);
+            return passed == null || count(passed, batchedFrames, batchedBytes);
+        };
+        holder[0] = newBatcher(outbound, 20);
+        for (int s = 0; s < SESSIONS; s++) {
+            holder[0].onSubscribe(subscribeEvent("session-" + s));
+        }
+
+        BenchmarkSupport.Result batched = BenchmarkSupport.measure("preSend avec regroupement (mise en file)", 0,
+            SESSIONS * MESSAGES_PER_SESSION, new Burst(holder[0], batchedFrames, batchedBytes));
+        // Dernier tick + vidage final
+        java.lang.Thread.sleep(100);
+        holder[0].stop();
+
+        System.out.printf("📦 Sans regroupement : %d trames, %d octets%n", unbatchedFrames.get(), unbatchedBytes.get());
+        System.out.printf("📦 Avec regroupement : %d trames, %d octets (%.1f messages par trame)%n",
+            batchedFrames.get(), batchedBytes.get(),
+            (double) SESSIONS * MESSAGES_PER_SESSION / Math.max(1, batchedFrames.get()));
+
+        assertEquals((long) SESSIONS * MESSAGES_PER_SESSION, unbatchedFrames.get());
+        assertTrue(batchedFrames.get() < unbatchedFrames.get() / 10, "regroupement inefficace");
+        assertTrue(direct.getOpsPerSecond() > 0 && batched.getOpsPerSecond() > 0);
+    }
+
+    @Test
+    void envelopeEncodingCost() throws Exception {
+        AtomicLong frames = new AtomicLong();
+        AtomicLong bytes = new AtomicLong();
+        OutboundFrameBatcher[] holder = new OutboundFrameBatcher[1];
+        MessageChannel outbound = (message, timeout) -> {
+            Message<?> passed = holder[0].preSend(message, null);
+            return passed == null || count(passed, frames, bytes);
+        };
+        // Pas de tick pendant la mesure : chaque ERROR vide la file de 100 trames
+        holder[0] = newBatcher(outbound, 60_000);
+        holder[0].onSubscribe(subscribeEvent("session-0"));
+
+        Message<byte[]> error = control("session-0");
+        BenchmarkSupport.measure("enveloppe de 100 trames (vidage sur ERROR)", 200, 2000, () -> {
+            for (int i = 0; i < 100; i++) {
+                holder[0].preSend(frame("session-0", i), null);
+            }
+            holder[0].preSend(error, null);
+        });
+        holder[0].stop();
+    }
+
+    // Méthodes utilitaires
+
+    private static boolean count(Message<?> message, AtomicLong frames, AtomicLong bytes) {
+        frames.incrementAndGet();
+        if (message.getPayload() instanceof byte[]) {
+            bytes.addAndGet(((byte[]) message.getPayload()).length);
+        }
+        return true;
+    }
+
+    private static OutboundFrameBatcher newBatcher(MessageChannel outbound, long tickMs) {
+        OutboundFrameBatcher batcher = new OutboundFrameBatcher(new ObjectMapper(), outbound);
+        ReflectionTestUtils.setField(batcher, "enabled", true);
+        ReflectionTestUtils.setField(batcher, "tickMs", tickMs);
+        ReflectionTestUtils.setField(batcher, "maxFrames", 100);
+        batcher.start();
+        return batcher;
+    }
+
+    private static SessionSubscribeEvent subscribeEvent(String sessionId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId("sub-batch");
+        accessor.setDestination(OutboundFrameBatcher.BATCH_DESTINATION);
+        return new SessionSubscribeEvent(OutboundBatchingBenchmark.class,
+            MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    private static Message<byte[]> frame(String sessionId, long seq) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId("sub-messages");
+        accessor.setDestination("/user/queue/messages");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setNativeHeader(UserEventReplayService.SEQ_HEADER, Long.toString(seq));
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(BODY.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> control(String sessionId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.ERROR);
+        accessor.setSessionId(sessionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    /**
+     * Rafale répartie sur les sessions ; une trame non retenue par le batcher compte comme écrite
+     */
+    private static final class Burst implements BenchmarkSupport.Operation {
+        private final OutboundFrameBatcher batcher;
+        private final AtomicLong frames;
+        private final AtomicLong bytes;
+        private long next;
+
+        private Burst(OutboundFrameBatcher batcher, AtomicLong frames, AtomicLong bytes) {
+            this.batcher = batcher;
+            this.frames = frames;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void run() {
+            long n = next++;
+            Message<?> passed = batcher.preSend(frame("session-" + (n % SESSIONS), n), null);
+            if (passed != null) {
+                count(passed, frames, bytes);
+            }
+        }
+    }
+}
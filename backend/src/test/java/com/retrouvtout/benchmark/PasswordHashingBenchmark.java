@@ -0,0 +1,73 @@
+package com.retrouvtout.benchmark;
+
+import com.retrouvtout.security.PasswordHashingService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark du hachage des mots de passe sur exécuteur dédié (PasswordHashingService)
+ *
+ * Mesure le débit de vérification des mots de passe (connexions) : BCrypt
+ * exécuté directement sur les threads de requête, puis confié à l'exécuteur
+ * borné. L'effet d'une rafale de connexions sur un endpoint en base (Tomcat,
+ * pool Hikari) est mesuré par LoginFloodBenchmark.
+ * Lancement : mvn test -Dtest=PasswordHashingBenchmark
+ */
+class PasswordHashingBenchmark {
+
+    private static final int BCRYPT_STRENGTH = 10;
+    private static final String PASSWORD = "MotDePasse-2026!";
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    private final BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(BCRYPT_STRENGTH);
+    private final String hash = encoder.encode(PASSWORD);
+    private PasswordHashingService service;
+
+    @AfterEach
+    void stopService() {
+        if (service != null) {
+            service.stop();
+        }
+    }
+
+    @Test
+    void loginThroughput() throws Exception {
+        int threads = CORES * 2;
+        int iterations = 10;
+
+        BenchmarkSupport.Result inline = BenchmarkSupport.measureConcurrent(
+            "BCrypt sur les threads de requête (" + threads + " threads)", threads, 1, iterations,
+            () -> assertTrue(encoder.matches(PASSWORD, hash)));
+
+        // File assez grande pour ne rien refuser : on mesure le débit, pas le délestage
+        service = newService(threads * 2);
+        BenchmarkSupport.Result pooled = BenchmarkSupport.measureConcurrent(
+            "BCrypt sur l'exécuteur dédié (" + threads + " threads)", threads, 1, iterations,
+            () -> assertTrue(service.matches(PASSWORD, hash)));
+
+        System.out.printf("🔐 Débit des connexions : %.1f/s en direct, %.1f/s via l'exécuteur (%d threads de hachage)%n",
+            inline.getOpsPerSecond(), pooled.getOpsPerSecond(), hashingThreads());
+        assertTrue(pooled.getOpsPerSecond() > 0);
+    }
+
+    // Méthodes privées
+
+    private PasswordHashingService newService(int queueCapacity) {
+        PasswordHashingService hashingService = new PasswordHashingService(encoder, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(hashingService, "bcryptStrength", BCRYPT_STRENGTH);
+        ReflectionTestUtils.setField(hashingService, "hashingThreads", 0);
+        ReflectionTestUtils.setField(hashingService, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(hashingService, "timeoutMs", 5000L);
+        hashingService.start();
+        return hashingService;
+    }
+
+    private int hashingThreads() {
+        return Math.max(1, CORES / 2);
+    }
+}
@@ -0,0 +1,116 @@
+package com.retrouvtout.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.retrouvtout.websocket.PayloadEncodingService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark de l'encodage binaire des trames sortantes (JSON, CBOR, Smile)
+ *
+ * Mesure le coût du transcodage par trame et la taille obtenue pour un message
+ * de conversation et une page de listing typiques.
+ * Lancement : mvn test -Dtest=PayloadEncodingBenchmark
+ */
+class PayloadEncodingBenchmark {
+
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 200_000;
+
+    private static final String MESSAGE_JSON = "{\"id\":\"8f14e45f-ceea-467f-a8b5-2c3f1f6b1e2a\","
+        + "\"thread_id\":\"c9f0f895-fb98-4b1f-8e3b-5d2d5a9e7c11\",\"sender_user\":{\"id\":\"u-1\",\"name\":\"Camille\"},"
+        + "\"body\":\"Bonjour, je pense que ce sont mes clés, elles ont un porte-clés rouge\","
+        + "\"message_type\":\"text\",\"is_read\":false,\"created_at\":\"2026-10-18T10:00:00\",\"seq\":1042}";
+
+    private PayloadEncodingService service;
+    private String listingPageJson;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        service = new PayloadEncodingService(new ObjectMapper());
+        ReflectionTestUtils.setField(service, "binaryEnabled", true);
+        service.onConnect(connectEvent("s-cbor", "cbor"));
+        service.onConnect(connectEvent("s-smile", "smile"));
+
+        StringBuilder page = new StringBuilder("{\"items\":[");
+        for (int i = 0; i < 20; i++) {
+            if (i > 0) {
+                page.append(',');
+            }
+            page.append("{\"id\":\"l-").append(i).append("\",\"title\":\"Trousseau de clés\",\"category\":\"cles\",")
+                .append("\"location_text\":\"Gare de Lyon, Paris\",\"latitude\":48.8443,\"longitude\":2.3743,")
+                .append("\"status\":\"active\",\"views_count\":").append(100 + i).append('}');
+        }
+        listingPageJson = page.append("],\"page\":1,\"total\":200}").toString();
+    }
+
+    @Test
+    void conversationMessage() throws Exception {
+        compare("message", MESSAGE_JSON);
+    }
+
+    @Test
+    void listingPage() throws Exception {
+        compare("page de 20 annonces", listingPageJson);
+    }
+
+    // Méthodes utilitaires
+
+    private void compare(String label, String json) throws Exception {
+        Message<byte[]> forJson = frame("s-json", json);
+        Message<byte[]> forCbor = frame("s-cbor", json);
+        Message<byte[]> forSmile = frame("s-smile", json);
+
+        BenchmarkSupport.measure(label + " : JSON (inchangé)", WARMUP, ITERATIONS, () -> service.preSend(forJson, null));
+        BenchmarkSupport.measure(label + " : transcodage CBOR", WARMUP, ITERATIONS, () -> service.preSend(forCbor, null));
+        BenchmarkSupport.measure(label + " : transcodage Smile", WARMUP, ITERATIONS, () -> service.preSend(forSmile, null));
+
+        int jsonSize = json.getBytes(StandardCharsets.UTF_8).length;
+        int cborSize = ((byte[]) service.preSend(forCbor, null).getPayload()).length;
+        int smileSize = ((byte[]) service.preSend(forSmile, null).getPayload()).length;
+        System.out.printf("📏 %s : JSON %d o, CBOR %d o (%.0f %%), Smile %d o (%.0f %%)%n", label,
+            jsonSize, cborSize, 100.0 * cborSize / jsonSize, smileSize, 100.0 * smileSize / jsonSize);
+
+        assertEquals(MimeTypeUtils.APPLICATION_OCTET_STREAM,
+            SimpMessageHeaderAccessor.wrap(service.preSend(forCbor, null)).getContentType());
+        assertTrue(cborSize < jsonSize && smileSize < jsonSize);
+    }
+
+    private static SessionConnectEvent connectEvent(String sessionId, String format) throws Exception {
+        Map<String, Object> attributes = new HashMap<>();
+        new PayloadEncodingService(new ObjectMapper()).binaryEndpointInterceptor()
+            .beforeHandshake((ServerHttpRequest) null, null, null, attributes);
+
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId(sessionId);
+        accessor.setSessionAttributes(attributes);
+        accessor.setNativeHeader(PayloadEncodingService.PAYLOAD_FORMAT_HEADER, format);
+        return new SessionConnectEvent(PayloadEncodingBenchmark.class,
+            MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    private static Message<byte[]> frame(String sessionId, String json) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination("/user/queue/messages");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(json.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,100 @@
+package com.retrouvtout.benchmark;
+
+import com.retrouvtout.security.TokenRevocationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Benchmark du contrôle de révocation fait par le filtre JWT à chaque requête
+ *
+ * 100 000 identifiants révoqués : latence de TokenRevocationService.isRevoked
+ * pour un jti non révoqué (cas courant, un passage dans le filtre de Bloom),
+ * un jti révoqué (confirmé par l'ensemble exact), et octets alloués par appel.
+ * Lancement : mvn test -Dtest=TokenRevocationBenchmark
+ */
+class TokenRevocationBenchmark {
+
+    private static final int REVOKED = 100_000;
+    private static final int WARMUP = 200_000;
+    private static final int ITERATIONS = 1_000_000;
+
+    private TokenRevocationService service;
+    private String[] liveIds;
+    private String[] revokedIds;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        service = new TokenRevocationService(mock(ObjectProvider.class), mock(ObjectProvider.class),
+            mock(JdbcTemplate.class), mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(service, "expectedEntries", REVOKED);
+        ReflectionTestUtils.setField(service, "falsePositiveRate", 0.01);
+        ReflectionTestUtils.setField(service, "dbEnabled", false);
+        service.init();
+
+        long expiresAt = System.currentTimeMillis() + 3_600_000L;
+        revokedIds = new String[1024];
+        for (int i = 0; i < REVOKED; i++) {
+            String id = UUID.randomUUID().toString();
+            service.revoke(id, expiresAt);
+            if (i < revokedIds.length) {
+                revokedIds[i] = id;
+            }
+        }
+
+        // Identifiants construits à l'avance : la mesure ne compte que le contrôle
+        liveIds = new String[1024];
+        for (int i = 0; i < liveIds.length; i++) {
+            liveIds[i] = UUID.randomUUID().toString();
+        }
+    }
+
+    @Test
+    void notRevokedCheck() throws Exception {
+        int[] cursor = new int[1];
+        BenchmarkSupport.Result result = BenchmarkSupport.measure("isRevoked, jti non révoqué", WARMUP, ITERATIONS,
+            () -> service.isRevoked(liveIds[cursor[0]++ & (liveIds.length - 1)]));
+        System.out.printf("🔒 jti non révoqué : p50 %d ns, p99 %d ns%n", result.getP50Nanos(), result.getP99Nanos());
+
+        long allocated = allocatedBytes(liveIds);
+        System.out.printf("🔒 jti non révoqué : %.3f octet(s) alloué(s) par appel%n", (double) allocated / ITERATIONS);
+        // Quelques octets tolérés pour l'instrumentation elle-même, pas un par appel
+        assertTrue(allocated < ITERATIONS / 100, "allocation sur le chemin courant: " + allocated + " octets");
+    }
+
+    @Test
+    void revokedCheck() throws Exception {
+        int[] cursor = new int[1];
+        BenchmarkSupport.Result result = BenchmarkSupport.measure("isRevoked, jti révoqué", WARMUP, ITERATIONS,
+            () -> assertTrue(service.isRevoked(revokedIds[cursor[0]++ & (revokedIds.length - 1)])));
+        System.out.printf("🔒 jti révoqué : p50 %d ns, p99 %d ns%n", result.getP50Nanos(), result.getP99Nanos());
+    }
+
+    // Méthodes privées
+
+    private long allocatedBytes(String[] ids) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = java.lang.Thread.currentThread().getId();
+        int revoked = 0;
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            if (service.isRevoked(ids[i & (ids.length - 1)])) {
+                revoked++;
+            }
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        // Faux positifs du filtre : confirmés par l'ensemble exact, jamais révoqués
+        assertEquals(0, revoked);
+        return allocated;
+    }
+}
@@ -0,0 +1,144 @@
+package com.retrouvtout.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.retrouvtout.websocket.ClusterBrokerRelay;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests d'intégration de la diffusion inter-nœuds via Redis pub/sub
+ * Deux relais (deux "nœuds") partagent le conteneur Redis de BaseIntegrationTest ;
+ * le brokerChannel local de chaque nœud est remplacé par une file de capture.
+ */
+class ClusterBrokerRelayIT extends BaseIntegrationTest {
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisConnectionFactory connectionFactory;
+
+    private final BlockingQueue<Message<?>> receivedOnA = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Message<?>> receivedOnB = new LinkedBlockingQueue<>();
+
+    private ClusterBrokerRelay nodeA;
+    private ClusterBrokerRelay nodeB;
+
+    @BeforeEach
+    void startNodes() {
+        nodeA = startNode("node-a", receivedOnA);
+        nodeB = startNode("node-b", receivedOnB);
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+    }
+
+    @AfterEach
+    void stopNodes() throws Exception {
+        nodeA.stop();
+        nodeB.stop();
+    }
+
+    @Test
+    void topicMessageIsRelayedToOtherNode() throws Exception {
+        nodeA.preSend(brokerMessage("/topic/listings", "{\"id\":\"l-1\"}"), null);
+
+        Message<?> relayed = receivedOnB.poll(5, TimeUnit.SECONDS);
+        assertNotNull(relayed, "le message /topic doit arriver sur le nœud B");
+        assertEquals("/topic/listings", SimpMessageHeaderAccessor.wrap(relayed).getDestination());
+        assertEquals("{\"id\":\"l-1\"}", new String((byte[]) relayed.getPayload(), StandardCharsets.UTF_8));
+
+        // Le nœud d'origine ne réinjecte pas son propre message
+        assertNull(receivedOnA.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void relayedMessageIsNotPublishedAgain() throws Exception {
+        nodeA.preSend(brokerMessage("/topic/listings", "ping"), null);
+        Message<?> relayed = receivedOnB.poll(5, TimeUnit.SECONDS);
+        assertNotNull(relayed);
+
+        // Le nœud B voit passer le message réinjecté dans son brokerChannel : il ne doit pas le republier
+        nodeB.preSend(relayed, null);
+        assertNull(receivedOnA.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void userMessageIsRelayedOnlyToNodeWithSession() throws Exception {
+        nodeB.onSessionConnected(connectedEvent("user-1"));
+        awaitRegistered("user-1", "node-b");
+
+        nodeA.preSend(brokerMessage("/user/user-1/queue/messages", "{\"text\":\"Bonjour\"}"), null);
+
+        Message<?> relayed = receivedOnB.poll(5, TimeUnit.SECONDS);
+        assertNotNull(relayed, "le message /user doit arriver sur le nœud où l'utilisateur est connecté");
+        assertEquals("/user/user-1/queue/messages", SimpMessageHeaderAccessor.wrap(relayed).getDestination());
+
+        // Un utilisateur sans session distante ne génère aucune publication
+        nodeA.preSend(brokerMessage("/user/user-2/queue/messages", "ignored"), null);
+        assertNull(receivedOnB.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    // Méthodes utilitaires
+
+    private ClusterBrokerRelay startNode(String nodeId, BlockingQueue<Message<?>> captured) {
+        MessageChannel brokerChannel = (message, timeout) -> captured.add(message);
+        ClusterBrokerRelay relay = new ClusterBrokerRelay(redisTemplate, connectionFactory, objectMapper, brokerChannel);
+        ReflectionTestUtils.setField(relay, "mode", ClusterBrokerRelay.MODE_REDIS);
+        ReflectionTestUtils.setField(relay, "nodeId", nodeId);
+        ReflectionTestUtils.setField(relay, "userPrefix", "/user");
+        ReflectionTestUtils.setField(relay, "nodeTtlSeconds", 30L);
+        ReflectionTestUtils.setField(relay, "publishQueueCapacity", 1000);
+        ReflectionTestUtils.setField(relay, "userNodesCacheTtlMs", 2000L);
+        ReflectionTestUtils.setField(relay, "userNodesCacheSize", 100);
+        relay.start();
+        return relay;
+    }
+
+    private void awaitRegistered(String userId, String nodeId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            if (redisTemplate.opsForHash().hasKey("ws:user-nodes:" + userId, nodeId)) {
+                return;
+            }
+            java.lang.Thread.sleep(20);
+        }
+        fail("session de " + userId + " non enregistrée sur " + nodeId);
+    }
+
+    static Message<byte[]> brokerMessage(String destination, String payload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(payload.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+
+    static SessionConnectedEvent connectedEvent(String userId) {
+        Principal user = () -> userId;
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECTED);
+        accessor.setSessionId("session-" + System.nanoTime());
+        accessor.setUser(user);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+        return new SessionConnectedEvent(ClusterBrokerRelayIT.class, message, user);
+    }
+}
@@ -0,0 +1,127 @@
+package com.retrouvtout.integration;
+
+import com.retrouvtout.benchmark.BenchmarkSupport;
+import com.retrouvtout.websocket.ClusterBrokerRelay;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark de la diffusion inter-nœuds (deux nœuds en mémoire, Redis Testcontainers)
+ *
+ * Mesure le coût de preSend sur le thread appelant (ce que paie le brokerChannel),
+ * la latence de bout en bout A → B et le débit d'une rafale de messages.
+ * Lancement : mvn verify -Dit.test=ClusterFanOutBenchmark
+ */
+class ClusterFanOutBenchmark extends BaseIntegrationTest {
+
+    private static final int WARMUP = 500;
+    private static final int ITERATIONS = 5000;
+    private static final int BURST = 20000;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisConnectionFactory connectionFactory;
+
+    private final BlockingQueue<Message<?>> receivedOnB = new LinkedBlockingQueue<>();
+
+    private ClusterBrokerRelay nodeA;
+    private ClusterBrokerRelay nodeB;
+
+    @BeforeEach
+    void startNodes() {
+        nodeA = startNode("bench-a", new LinkedBlockingQueue<>());
+        nodeB = startNode("bench-b", receivedOnB);
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+    }
+
+    @AfterEach
+    void stopNodes() throws Exception {
+        nodeA.stop();
+        nodeB.stop();
+    }
+
+    @Test
+    void preSendCostOnBrokerThread() throws Exception {
+        Message<byte[]> message = ClusterBrokerRelayIT.brokerMessage("/topic/listings", "{\"id\":\"l-1\"}");
+
+        BenchmarkSupport.Result result = BenchmarkSupport.measure("preSend /topic (thread appelant)", WARMUP, ITERATIONS,
+            () -> nodeA.preSend(message, null));
+        drain(WARMUP + ITERATIONS);
+
+        // preSend ne fait plus d'aller-retour Redis : il doit rester sous la milliseconde
+        assertTrue(result.getP50Nanos() < 1_000_000, "preSend p50 trop élevé: " + result);
+    }
+
+    @Test
+    void endToEndLatency() throws Exception {
+        Message<byte[]> message = ClusterBrokerRelayIT.brokerMessage("/topic/listings", "{\"id\":\"l-1\"}");
+
+        BenchmarkSupport.measure("aller A → B (un message à la fois)", WARMUP, ITERATIONS, () -> {
+            nodeA.preSend(message, null);
+            assertNotNull(receivedOnB.poll(5, TimeUnit.SECONDS), "message perdu");
+        });
+    }
+
+    @Test
+    void burstThroughput() throws Exception {
+        Message<byte[]> message = ClusterBrokerRelayIT.brokerMessage("/topic/listings", "{\"id\":\"l-1\"}");
+        for (int i = 0; i < WARMUP; i++) {
+            nodeA.preSend(message, null);
+        }
+        drain(WARMUP);
+
+        long[] latencies = new long[BURST];
+        long start = System.nanoTime();
+        for (int i = 0; i < BURST; i++) {
+            long begin = System.nanoTime();
+            nodeA.preSend(message, null);
+            latencies[i] = System.nanoTime() - begin;
+        }
+        int received = drain(BURST);
+        BenchmarkSupport.report("rafale A → B (" + BURST + " messages)", latencies, System.nanoTime() - start);
+
+        // File de 10000 : au-delà, les messages en excès sont refusés plutôt que de bloquer le broker
+        assertTrue(received > 0, "aucun message reçu");
+        System.out.println("📨 Reçus sur B: " + received + "/" + BURST);
+    }
+
+    // Méthodes utilitaires
+
+    private ClusterBrokerRelay startNode(String nodeId, BlockingQueue<Message<?>> captured) {
+        MessageChannel brokerChannel = (message, timeout) -> captured.add(message);
+        ClusterBrokerRelay relay = new ClusterBrokerRelay(redisTemplate, connectionFactory, objectMapper, brokerChannel);
+        ReflectionTestUtils.setField(relay, "mode", ClusterBrokerRelay.MODE_REDIS);
+        ReflectionTestUtils.setField(relay, "nodeId", nodeId);
+        ReflectionTestUtils.setField(relay, "userPrefix", "/user");
+        ReflectionTestUtils.setField(relay, "nodeTtlSeconds", 30L);
+        ReflectionTestUtils.setField(relay, "publishQueueCapacity", 10000);
+        ReflectionTestUtils.setField(relay, "userNodesCacheTtlMs", 2000L);
+        ReflectionTestUtils.setField(relay, "userNodesCacheSize", 1000);
+        relay.start();
+        return relay;
+    }
+
+    private int drain(int expected) throws InterruptedException {
+        int received = 0;
+        while (received < expected && receivedOnB.poll(2, TimeUnit.SECONDS) != null) {
+            received++;
+        }
+        return received;
+    }
+}
@@ -0,0 +1,174 @@
+package com.retrouvtout.integration;
+
+import com.retrouvtout.benchmark.BenchmarkSupport;
+import com.retrouvtout.config.TestSecurityConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark de l'envoi des fichiers uploadés : FileServingService contre
+ * l'ancienne implémentation (ResponseEntity<UrlResource>, sans ETag ni 304)
+ *
+ * Serveur Tomcat réel (sendfile, cache mémoire des images), clients HTTP
+ * concurrents : petite image, grande image, revalidation et plage d'octets.
+ * Lancement : mvn verify -Dit.test=FileServingBenchmark
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+    "app.rate-limit.enabled=false",
+    "app.files.memory-cache.enabled=true"
+})
+@Import({TestSecurityConfig.class, FileServingBenchmark.LegacyFileController.class})
+class FileServingBenchmark extends BaseIntegrationTest {
+
+    private static final String USER_DIR = "bench-user";
+    private static final String SMALL = "small.jpg";
+    private static final String LARGE = "large.jpg";
+    private static final int THREADS = 8;
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 500;
+
+    @LocalServerPort
+    private int port;
+
+    @Value("${app.upload.dir:./uploads}")
+    private String uploadDir;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private Path userDir;
+
+    @BeforeEach
+    void writeFiles() throws Exception {
+        userDir = Paths.get(uploadDir).resolve("images").resolve(USER_DIR);
+        Files.createDirectories(userDir);
+        Random random = new Random(42);
+        byte[] small = new byte[32 * 1024];
+        byte[] large = new byte[2 * 1024 * 1024];
+        random.nextBytes(small);
+        random.nextBytes(large);
+        Files.write(userDir.resolve(SMALL), small);
+        Files.write(userDir.resolve(LARGE), large);
+    }
+
+    @AfterEach
+    void deleteFiles() throws Exception {
+        FileSystemUtils.deleteRecursively(userDir);
+    }
+
+    @Test
+    void smallImage() throws Exception {
+        compare("petite image 32 Ko", SMALL, null, 200, 200);
+    }
+
+    @Test
+    void largeImage() throws Exception {
+        compare("grande image 2 Mo", LARGE, null, 200, 200);
+    }
+
+    @Test
+    void revalidation() throws Exception {
+        HttpResponse<Void> first = client.send(get(newUrl(LARGE), null), HttpResponse.BodyHandlers.discarding());
+        String etag = first.headers().firstValue(HttpHeaders.ETAG).orElse(null);
+        assertNotNull(etag, "la nouvelle implémentation doit renvoyer un ETag");
+
+        // L'ancienne implémentation n'a pas d'ETag : le client retélécharge tout
+        compare("revalidation grande image (If-None-Match)", LARGE,
+            new String[] { HttpHeaders.IF_NONE_MATCH, etag }, 200, 304);
+    }
+
+    @Test
+    void byteRange() throws Exception {
+        compare("plage de 64 Ko d'une grande image", LARGE,
+            new String[] { HttpHeaders.RANGE, "bytes=1048576-1114111" }, 206, 206);
+    }
+
+    // Méthodes privées
+
+    private void compare(String name, String filename, String[] header,
+                         int legacyStatus, int newStatus) throws Exception {
+        BenchmarkSupport.Result legacy = BenchmarkSupport.measureConcurrent(
+            name + " (ancienne)", THREADS, WARMUP, ITERATIONS, () -> fetch(legacyUrl(filename), header, legacyStatus));
+        BenchmarkSupport.Result current = BenchmarkSupport.measureConcurrent(
+            name + " (FileServingService)", THREADS, WARMUP, ITERATIONS, () -> fetch(newUrl(filename), header, newStatus));
+
+        System.out.printf("🚀 %s : x%.2f requêtes/s, p99 %.1f µs → %.1f µs%n", name,
+            current.getOpsPerSecond() / legacy.getOpsPerSecond(),
+            legacy.getP99Nanos() / 1000.0, current.getP99Nanos() / 1000.0);
+        assertTrue(current.getOpsPerSecond() > 0 && legacy.getOpsPerSecond() > 0);
+    }
+
+    private void fetch(String url, String[] header, int expectedStatus) throws Exception {
+        HttpResponse<Void> response = client.send(get(url, header), HttpResponse.BodyHandlers.discarding());
+        assertEquals(expectedStatus, response.statusCode(), url);
+    }
+
+    private HttpRequest get(String url, String[] header) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url)).GET();
+        if (header != null) {
+            builder.header(header[0], header[1]);
+        }
+        return builder.build();
+    }
+
+    private String newUrl(String filename) {
+        return "http://localhost:" + port + "/api/files/images/" + USER_DIR + "/" + filename;
+    }
+
+    private String legacyUrl(String filename) {
+        return "http://localhost:" + port + "/legacy/files/images/" + USER_DIR + "/" + filename;
+    }
+
+    /**
+     * Ancienne implémentation de FileController.serveImage, conservée pour comparaison
+     */
+    @RestController
+    static class LegacyFileController {
+
+        @Value("${app.upload.dir:./uploads}")
+        private String uploadDir;
+
+        @GetMapping("/legacy/files/images/{userId}/{filename}")
+        public ResponseEntity<Resource> serveImage(@PathVariable String userId, @PathVariable String filename) {
+            try {
+                Path filePath = Paths.get(uploadDir).resolve("images").resolve(userId).resolve(filename);
+                Resource resource = new UrlResource(filePath.toUri());
+
+                if (resource.exists() && resource.isReadable()) {
+                    return ResponseEntity.ok()
+                        .contentType(MediaType.IMAGE_JPEG)
+                        .header(HttpHeaders.CACHE_CONTROL, "max-age=31536000")
+                        .body(resource);
+                } else {
+                    return ResponseEntity.notFound().build();
+                }
+            } catch (MalformedURLException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.retrouvtout.integration;
+
+import com.retrouvtout.benchmark.BenchmarkSupport;
+import com.retrouvtout.dto.request.CreateListingRequest;
+import com.retrouvtout.dto.request.UpdateListingRequest;
+import com.retrouvtout.dto.response.ListingImageResponse;
+import com.retrouvtout.dto.response.ListingResponse;
+import com.retrouvtout.entity.Listing;
+import com.retrouvtout.entity.ListingImage;
+import com.retrouvtout.entity.User;
+import com.retrouvtout.repository.ListingImageRepository;
+import com.retrouvtout.repository.ListingRepository;
+import com.retrouvtout.repository.UserRepository;
+import com.retrouvtout.service.FileUploadService;
+import com.retrouvtout.service.ListingService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark des annonces à plusieurs images
+ *
+ * Compare l'upload de 8 photos une par une (/api/upload/image) avec l'upload
+ * groupé stocké en parallèle (/api/upload/images), puis l'insertion des lignes
+ * listing_images par JdbcTemplate.batchUpdate avec des save() JPA (IDENTITY,
+ * un INSERT par image).
+ * Lancement : mvn verify -Dit.test=ListingImagesBenchmark
+ */
+class ListingImagesBenchmark extends BaseIntegrationTest {
+
+    private static final int IMAGES = 8;
+
+    @Autowired
+    private FileUploadService fileUploadService;
+
+    @Autowired
+    private ListingService listingService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ListingRepository listingRepository;
+
+    @Autowired
+    private ListingImageRepository listingImageRepository;
+
+    private final AtomicLong unique = new AtomicLong();
+    private byte[] photo;
+    private User finder;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        photo = photo(1600, 1200);
+
+        User user = new User();
+        user.setId(UUID.randomUUID().toString());
+        user.setName("finder");
+        user.setEmail("finder-" + UUID.randomUUID() + "@example.test");
+        finder = userRepository.save(user);
+    }
+
+    @Test
+    void sequentialVersusBatchUpload() throws Exception {
+        BenchmarkSupport.Result sequential = BenchmarkSupport.measure(IMAGES + " photos, une requête par photo", 1, 10,
+            () -> {
+                for (MultipartFile file : files()) {
+                    assertNotNull(fileUploadService.uploadImage(file, finder.getId()));
+                }
+            });
+
+        BenchmarkSupport.Result batch = BenchmarkSupport.measure(IMAGES + " photos, upload groupé parallèle", 1, 10,
+            () -> assertEquals(IMAGES, fileUploadService.uploadImages(files(), finder.getId()).size()));
+
+        System.out.printf("🚀 Upload groupé : x%.1f (p50 %.0f ms → %.0f ms)%n",
+            batch.getOpsPerSecond() / sequential.getOpsPerSecond(),
+            sequential.getP50Nanos() / 1e6, batch.getP50Nanos() / 1e6);
+    }
+
+    @Test
+    void batchInsertVersusEntitySaves() throws Exception {
+        List<String> urls = fileUploadService.uploadImages(files(), finder.getId());
+
+        BenchmarkSupport.Result entities = BenchmarkSupport.measure("annonce + " + IMAGES + " images, save() JPA",
+            20, 200, () -> {
+                Listing listing = listingRepository.save(listing());
+                List<ListingImage> images = new ArrayList<>();
+                for (String url : urls) {
+                    ListingImage image = new ListingImage();
+                    image.setListing(listing);
+                    image.setUrl(url);
+                    image.setIsPrimary(images.isEmpty());
+                    image.setCreatedAt(LocalDateTime.now());
+                    images.add(image);
+                }
+                listingImageRepository.saveAll(images);
+                listingImageRepository.flush();
+            });
+
+        BenchmarkSupport.Result batched = BenchmarkSupport.measure("annonce + " + IMAGES + " images, createListing (batch)",
+            20, 200, () -> assertEquals(IMAGES, listingService.createListing(request(null, urls), finder.getId())
+                .getImages().size()));
+
+        System.out.printf("🚀 Insertion groupée des images : x%.1f%n", batched.getOpsPerSecond() / entities.getOpsPerSecond());
+    }
+
+    @Test
+    void explicitImageUrlIsThePrimaryImage() throws Exception {
+        List<String> urls = fileUploadService.uploadImages(files(), finder.getId());
+        String chosen = urls.get(3);
+
+        ListingResponse response = listingService.createListing(request(chosen, urls), finder.getId());
+
+        assertEquals(chosen, response.getImageUrl());
+        ListingImageResponse first = response.getImages().get(0);
+        assertEquals(chosen, first.getUrl());
+        assertTrue(first.isPrimary());
+        assertEquals(1, response.getImages().stream().filter(ListingImageResponse::isPrimary).count());
+        assertEquals(IMAGES, response.getImages().size());
+    }
+
+    @Test
+    void changingImageUrlReplacesThePrimaryImage() throws Exception {
+        List<String> urls = fileUploadService.uploadImages(files(), finder.getId());
+        ListingResponse created = listingService.createListing(request(null, urls.subList(0, 3)), finder.getId());
+        String previous = urls.get(0);
+        String replacement = urls.get(5);
+
+        ListingResponse updated = listingService.updateListing(created.getId(), update(replacement), finder.getId());
+
+        assertEquals(replacement, updated.getImageUrl());
+        assertEquals(replacement, updated.getImages().get(0).getUrl());
+        assertTrue(updated.getImages().get(0).isPrimary());
+        assertEquals(3, updated.getImages().size());
+        // Plus aucune référence : l'ancienne image est libérée après le commit
+        assertEquals(0, fileUploadService.countReferences(previous));
+
+        // Une image secondaire promue principale n'apparaît qu'une fois
+        String secondary = urls.get(1);
+        updated = listingService.updateListing(created.getId(), update(secondary), finder.getId());
+        assertEquals(secondary, updated.getImages().get(0).getUrl());
+        assertEquals(2, updated.getImages().size());
+        assertEquals(1, updated.getImages().stream().filter(image -> image.getUrl().equals(secondary)).count());
+        assertEquals(0, fileUploadService.countReferences(replacement));
+    }
+
+    // Méthodes privées
+
+    private UpdateListingRequest update(String imageUrl) {
+        UpdateListingRequest request = new UpdateListingRequest();
+        request.setImageUrl(imageUrl);
+        return request;
+    }
+
+    private List<MultipartFile> files() {
+        List<MultipartFile> files = new ArrayList<>(IMAGES);
+        for (int i = 0; i < IMAGES; i++) {
+            // Octets ajoutés après la fin du JPEG : contenu distinct, pas de déduplication
+            byte[] content = ByteBuffer.allocate(photo.length + Long.BYTES)
+                .put(photo).putLong(unique.incrementAndGet()).array();
+            files.add(new MockMultipartFile("files", "photo-" + i + ".jpg", "image/jpeg", content));
+        }
+        return files;
+    }
+
+    private Listing listing() {
+        Listing listing = new Listing();
+        listing.setId(UUID.randomUUID().toString());
+        listing.setFinderUser(finder);
+        listing.setTitle("Sac à dos bleu");
+        listing.setCategory(Listing.ListingCategory.CLES);
+        listing.setLocationText("Parc de la Tête d'Or");
+        listing.setFoundAt(LocalDateTime.now().minusDays(1));
+        listing.setDescription("Sac à dos bleu avec un porte-clés");
+        listing.setStatus(Listing.ListingStatus.ACTIVE);
+        listing.setCreatedAt(LocalDateTime.now());
+        listing.setUpdatedAt(LocalDateTime.now());
+        return listing;
+    }
+
+    private CreateListingRequest request(String imageUrl, List<String> images) {
+        CreateListingRequest request = new CreateListingRequest();
+        request.setTitle("Sac à dos bleu");
+        request.setCategory("cles");
+        request.setLocationText("Parc de la Tête d'Or");
+        request.setDescription("Sac à dos bleu avec un porte-clés");
+        request.setImageUrl(imageUrl);
+        request.setImages(images);
+        return request;
+    }
+
+    private static byte[] photo(int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setPaint(new GradientPaint(0, 0, new Color(40, 90, 160), width, height, new Color(230, 200, 120)));
+            graphics.fillRect(0, 0, width, height);
+        } finally {
+            graphics.dispose();
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", bytes);
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,236 @@
+package com.retrouvtout.integration;
+
+import com.retrouvtout.benchmark.BenchmarkSupport;
+import com.retrouvtout.config.TestSecurityConfig;
+import com.retrouvtout.entity.Listing;
+import com.retrouvtout.entity.User;
+import com.retrouvtout.repository.ListingRepository;
+import com.retrouvtout.repository.UserRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark d'un endpoint de lecture pendant une rafale de connexions
+ *
+ * Serveur Tomcat réel et pool Hikari de l'application (10 connexions) :
+ * latence de GET /api/listings (requête en base) au repos, puis pendant que
+ * des clients enchaînent les POST /api/auth/login. Le hachage BCrypt se fait
+ * hors transaction : les connexions ne doivent pas occuper le pool pendant
+ * l'attente de l'exécuteur de hachage. Le nombre maximal de connexions actives
+ * et de threads en attente du pool est relevé pendant la rafale.
+ * Lancement : mvn verify -Dit.test=LoginFloodBenchmark
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+    "app.rate-limit.enabled=false"
+})
+@Import(TestSecurityConfig.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class LoginFloodBenchmark extends BaseIntegrationTest {
+
+    private static final String PASSWORD = "MotDePasse-2026!";
+    private static final int LISTINGS = 50;
+    // Bien plus de connexions simultanées que de connexions dans le pool
+    private static final int FLOOD_CLIENTS = 64;
+    private static final int READ_CLIENTS = 8;
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 200;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ListingRepository listingRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private final HttpClient client = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(10))
+        .build();
+    private User user;
+
+    @BeforeEach
+    void createUserAndListings() {
+        User account = new User();
+        account.setId(UUID.randomUUID().toString());
+        account.setName("Camille");
+        account.setEmail("camille-" + UUID.randomUUID() + "@example.test");
+        account.setPasswordHash(passwordEncoder.encode(PASSWORD));
+        account.setActive(true);
+        user = userRepository.save(account);
+
+        List<Listing> listings = new ArrayList<>(LISTINGS);
+        for (int i = 0; i < LISTINGS; i++) {
+            Listing listing = new Listing();
+            listing.setId(UUID.randomUUID().toString());
+            listing.setFinderUser(user);
+            listing.setTitle("Trousseau de clés " + i);
+            listing.setCategory(Listing.ListingCategory.CLES);
+            listing.setLocationText("Gare de Lyon");
+            listing.setFoundAt(LocalDateTime.now().minusDays(1));
+            listing.setDescription("Trois clés sur un anneau rouge");
+            listings.add(listing);
+        }
+        listingRepository.saveAll(listings);
+    }
+
+    @AfterEach
+    void deleteUserAndListings() {
+        jdbcTemplate.update("DELETE FROM listings WHERE finder_user_id = ?", user.getId());
+        jdbcTemplate.update("DELETE FROM users WHERE id = ?", user.getId());
+    }
+
+    @Test
+    void listingsLatencyDuringLoginFlood() throws Exception {
+        assertEquals(200, login().statusCode(), "le compte de test doit pouvoir se connecter");
+
+        BenchmarkSupport.Result idle = BenchmarkSupport.measureConcurrent(
+            "GET /api/listings, au repos", READ_CLIENTS, WARMUP, ITERATIONS, this::fetchListings);
+
+        PoolSampler sampler = new PoolSampler(dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean());
+        Flood flood = new Flood();
+        BenchmarkSupport.Result during;
+        try {
+            during = BenchmarkSupport.measureConcurrent(
+                "GET /api/listings, rafale de connexions", READ_CLIENTS, WARMUP, ITERATIONS, this::fetchListings);
+        } finally {
+            flood.stop();
+            sampler.stop();
+        }
+
+        System.out.printf("🔐 Rafale : %d connexions réussies, %d refus 503, %d autres réponses%n",
+            flood.succeeded.get(), flood.rejected.get(), flood.failed.get());
+        System.out.printf("🔐 Pool Hikari pendant la rafale : %d connexions actives au plus, %d threads en attente au plus%n",
+            sampler.maxActive.get(), sampler.maxAwaiting.get());
+        System.out.printf("🚀 GET /api/listings : p50 %.1f ms → %.1f ms, p99 %.1f ms → %.1f ms%n",
+            idle.getP50Nanos() / 1e6, during.getP50Nanos() / 1e6, idle.getP99Nanos() / 1e6, during.getP99Nanos() / 1e6);
+
+        assertTrue(flood.succeeded.get() > 0, "la rafale devrait avoir tourné");
+        assertEquals(0, flood.failed.get(), "les connexions ne doivent échouer que par délestage (503)");
+    }
+
+    // Méthodes privées
+
+    private void fetchListings() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl() + "/api/listings?page=1&page_size=20"))
+            .GET().build();
+        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        assertEquals(200, response.statusCode());
+    }
+
+    private HttpResponse<Void> login() throws Exception {
+        String body = "{\"email\":\"" + user.getEmail() + "\",\"password\":\"" + PASSWORD + "\"}";
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl() + "/api/auth/login"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding());
+    }
+
+    private String baseUrl() {
+        return "http://localhost:" + port;
+    }
+
+    /**
+     * Clients qui enchaînent les connexions en tâche de fond, jusqu'à stop()
+     */
+    private final class Flood {
+        private final ExecutorService executor = Executors.newFixedThreadPool(FLOOD_CLIENTS);
+        private final AtomicBoolean running = new AtomicBoolean(true);
+        private final AtomicLong succeeded = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+
+        Flood() {
+            for (int i = 0; i < FLOOD_CLIENTS; i++) {
+                executor.submit(() -> {
+                    while (running.get()) {
+                        int status = login().statusCode();
+                        if (status == 200) {
+                            succeeded.incrementAndGet();
+                        } else if (status == 503) {
+                            rejected.incrementAndGet();
+                            java.lang.Thread.sleep(10);
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+        }
+
+        void stop() throws InterruptedException {
+            running.set(false);
+            executor.shutdown();
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Relevé périodique de l'occupation du pool de connexions
+     */
+    private static final class PoolSampler {
+        private final ExecutorService executor = Executors.newSingleThreadExecutor();
+        private final AtomicBoolean running = new AtomicBoolean(true);
+        private final AtomicInteger maxActive = new AtomicInteger();
+        private final AtomicInteger maxAwaiting = new AtomicInteger();
+
+        PoolSampler(HikariPoolMXBean pool) {
+            executor.submit(() -> {
+                while (running.get()) {
+                    maxActive.accumulateAndGet(pool.getActiveConnections(), Math::max);
+                    maxAwaiting.accumulateAndGet(pool.getThreadsAwaitingConnection(), Math::max);
+                    java.lang.Thread.sleep(1);
+                }
+                return null;
+            });
+        }
+
+        void stop() throws InterruptedException {
+            running.set(false);
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+}
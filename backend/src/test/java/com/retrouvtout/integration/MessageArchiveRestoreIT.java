@@ -0,0 +1,221 @@
+package com.retrouvtout.integration;
+
+import com.retrouvtout.dto.request.ContactFinderRequest;
+import com.retrouvtout.dto.response.ContactResponse;
+import com.retrouvtout.entity.Listing;
+import com.retrouvtout.entity.User;
+import com.retrouvtout.repository.ListingRepository;
+import com.retrouvtout.repository.ThreadRepository;
+import com.retrouvtout.repository.UserRepository;
+import com.retrouvtout.service.MessageArchiveService;
+import com.retrouvtout.service.ThreadService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests d'intégration de la restauration des conversations archivées
+ *
+ * Archivage puis nouveau contact du propriétaire, fusion dans une conversation
+ * ouverte entre-temps sur la même annonce, et messages non réinsérables qui
+ * restent dans l'archive. L'archivage travaille dans ses propres transactions :
+ * les données sont commitées puis supprimées après chaque test.
+ * Les tables d'archive et ux_threads_listing_owner viennent des migrations
+ * Flyway (désactivées en test) et sont recréées ici.
+ */
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class MessageArchiveRestoreIT extends BaseIntegrationTest {
+
+    @Autowired
+    private MessageArchiveService messageArchiveService;
+
+    @Autowired
+    private ThreadService threadService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ListingRepository listingRepository;
+
+    @Autowired
+    private ThreadRepository threadRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User finder;
+    private User owner;
+    private Listing listing;
+    private String threadId;
+
+    @BeforeEach
+    void createArchivedConversation() {
+        createArchiveSchema();
+
+        finder = userRepository.save(user("finder"));
+        owner = userRepository.save(user("owner"));
+        listing = listingRepository.save(listing(finder));
+        threadId = saveThread().getId();
+
+        for (int i = 0; i < 3; i++) {
+            jdbcTemplate.update(
+                "INSERT INTO messages (id, thread_id, sender_user_id, body, message_type, is_read, created_at) " +
+                "VALUES (?, ?, ?, ?, 'TEXT', TRUE, NOW(3) - INTERVAL 1 YEAR)",
+                UUID.randomUUID().toString(), threadId, i % 2 == 0 ? owner.getId() : finder.getId(),
+                "Ancien message " + i);
+        }
+        // Conversation inactive depuis un an : candidate à l'archivage
+        jdbcTemplate.update(
+            "UPDATE threads SET created_at = NOW(3) - INTERVAL 1 YEAR, updated_at = NOW(3) - INTERVAL 1 YEAR, " +
+            "last_message_at = NOW(3) - INTERVAL 1 YEAR WHERE id = ?", threadId);
+
+        assertEquals(3, messageArchiveService.archiveThread(threadId));
+        assertEquals(0, count("SELECT COUNT(*) FROM threads WHERE id = ?", threadId));
+        assertEquals(3, count("SELECT COUNT(*) FROM messages_archive WHERE thread_id = ?", threadId));
+    }
+
+    @AfterEach
+    void deleteConversations() {
+        jdbcTemplate.update("DELETE m FROM messages m JOIN threads t ON t.id = m.thread_id WHERE t.finder_user_id = ?",
+            finder.getId());
+        jdbcTemplate.update("DELETE ma FROM messages_archive ma JOIN threads_archive ta ON ta.id = ma.thread_id " +
+            "WHERE ta.finder_user_id = ?", finder.getId());
+        jdbcTemplate.update("DELETE FROM threads_archive WHERE finder_user_id = ?", finder.getId());
+        jdbcTemplate.update("DELETE FROM threads WHERE finder_user_id = ?", finder.getId());
+        jdbcTemplate.update("DELETE FROM listings WHERE finder_user_id = ?", finder.getId());
+        jdbcTemplate.update("DELETE FROM users WHERE id IN (?, ?)", owner.getId(), finder.getId());
+    }
+
+    @Test
+    void recontactRestoresArchivedConversation() {
+        ContactFinderRequest request = new ContactFinderRequest();
+        request.setListingId(listing.getId());
+        request.setBody("Bonjour, je reviens vers vous pour mes clés");
+        request.setClientMessageId("recontact-1");
+
+        ContactResponse response = threadService.contactFinder(request, owner.getId());
+
+        assertEquals(threadId, response.getThread().getId(), "l'ancienne conversation doit être rouverte");
+        assertFalse(response.isThreadCreated());
+        assertEquals(1, count("SELECT COUNT(*) FROM threads WHERE listing_id = ? AND owner_user_id = ?",
+            listing.getId(), owner.getId()));
+        assertEquals(4, count("SELECT COUNT(*) FROM messages WHERE thread_id = ?", threadId));
+        assertEquals(0, count("SELECT COUNT(*) FROM messages_archive WHERE thread_id = ?", threadId));
+        assertEquals(0, count("SELECT COUNT(*) FROM threads_archive WHERE id = ?", threadId));
+
+        // Ouverture ultérieure par l'ID archivé : rien à restaurer
+        assertNull(messageArchiveService.restoreArchivedThread(threadId, owner.getId()));
+    }
+
+    @Test
+    void restoreMergesIntoConversationOpenedMeanwhile() {
+        String liveThreadId = saveThread().getId();
+
+        assertEquals(liveThreadId, messageArchiveService.restoreArchivedThread(threadId, finder.getId()));
+
+        assertEquals(0, count("SELECT COUNT(*) FROM threads WHERE id = ?", threadId));
+        assertEquals(3, count("SELECT COUNT(*) FROM messages WHERE thread_id = ?", liveThreadId));
+        assertEquals(0, count("SELECT COUNT(*) FROM messages_archive WHERE thread_id = ?", threadId));
+        assertEquals(0, count("SELECT COUNT(*) FROM threads_archive WHERE id = ?", threadId));
+    }
+
+    @Test
+    void messagesThatCannotBeRestoredStayArchived() throws Exception {
+        // Expéditeur supprimé depuis l'archivage : clé étrangère refusée à la réinsertion
+        String orphanId = UUID.randomUUID().toString();
+        jdbcTemplate.update(
+            "INSERT INTO messages_archive (id, thread_id, sender_user_id, body_gz, message_type, is_read, created_at) " +
+            "VALUES (?, ?, ?, ?, 'TEXT', TRUE, NOW(3) - INTERVAL 1 YEAR)",
+            orphanId, threadId, UUID.randomUUID().toString(), gzip("Message d'un compte supprimé"));
+
+        assertTrue(messageArchiveService.restoreIfArchived(threadId, owner.getId()));
+
+        assertEquals(3, count("SELECT COUNT(*) FROM messages WHERE thread_id = ?", threadId));
+        assertEquals(1, count("SELECT COUNT(*) FROM messages_archive WHERE thread_id = ?", threadId));
+        assertEquals(1, count("SELECT COUNT(*) FROM messages_archive WHERE id = ?", orphanId));
+        assertEquals(1, count("SELECT COUNT(*) FROM threads_archive WHERE id = ?", threadId),
+            "le thread archivé doit être conservé tant qu'un message n'est pas restauré");
+    }
+
+    @Test
+    void otherUsersCannotRestore() {
+        assertNull(messageArchiveService.restoreArchivedThread(threadId, UUID.randomUUID().toString()));
+        assertEquals(3, count("SELECT COUNT(*) FROM messages_archive WHERE thread_id = ?", threadId));
+    }
+
+    // Méthodes privées
+
+    private void createArchiveSchema() {
+        jdbcTemplate.execute(
+            "CREATE TABLE IF NOT EXISTS threads_archive (" +
+            "id CHAR(36) NOT NULL PRIMARY KEY, listing_id CHAR(36) NOT NULL, owner_user_id CHAR(36) NOT NULL, " +
+            "finder_user_id CHAR(36) NOT NULL, status VARCHAR(16) NOT NULL, last_message_at DATETIME(3) NULL, " +
+            "created_at DATETIME(3) NOT NULL, updated_at DATETIME(3) NOT NULL, " +
+            "archived_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3), " +
+            "INDEX idx_threads_archive_owner (owner_user_id))");
+        jdbcTemplate.execute(
+            "CREATE TABLE IF NOT EXISTS messages_archive (" +
+            "id CHAR(36) NOT NULL PRIMARY KEY, thread_id CHAR(36) NOT NULL, sender_user_id CHAR(36) NOT NULL, " +
+            "body_gz MEDIUMBLOB NOT NULL, message_type VARCHAR(16) NOT NULL, is_read BOOLEAN NOT NULL DEFAULT FALSE, " +
+            "read_at DATETIME(3) NULL, created_at DATETIME(3) NOT NULL, " +
+            "archived_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3), " +
+            "INDEX idx_messages_archive_thread (thread_id))");
+        jdbcTemplate.execute(
+            "CREATE UNIQUE INDEX IF NOT EXISTS ux_threads_listing_owner ON threads (listing_id, owner_user_id)");
+    }
+
+    private com.retrouvtout.entity.Thread saveThread() {
+        com.retrouvtout.entity.Thread thread = new com.retrouvtout.entity.Thread();
+        thread.setId(UUID.randomUUID().toString());
+        thread.setListing(listing);
+        thread.setOwnerUser(owner);
+        thread.setFinderUser(finder);
+        thread.setStatus(com.retrouvtout.entity.Thread.ThreadStatus.ACTIVE);
+        return threadRepository.saveAndFlush(thread);
+    }
+
+    private int count(String sql, Object... args) {
+        return jdbcTemplate.queryForObject(sql, Integer.class, args);
+    }
+
+    private static byte[] gzip(String body) throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+            gzip.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return buffer.toByteArray();
+    }
+
+    private static Listing listing(User finder) {
+        Listing listing = new Listing();
+        listing.setId(UUID.randomUUID().toString());
+        listing.setFinderUser(finder);
+        listing.setTitle("Trousseau de clés");
+        listing.setCategory(Listing.ListingCategory.CLES);
+        listing.setLocationText("Gare de Lyon");
+        listing.setFoundAt(LocalDateTime.now().minusDays(1));
+        listing.setDescription("Trois clés sur un anneau rouge");
+        return listing;
+    }
+
+    private static User user(String prefix) {
+        User user = new User();
+        user.setId(UUID.randomUUID().toString());
+        user.setName(prefix);
+        user.setEmail(prefix + "-" + UUID.randomUUID() + "@example.test");
+        return user;
+    }
+}
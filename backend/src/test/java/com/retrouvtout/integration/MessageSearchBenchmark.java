@@ -0,0 +1,220 @@
+package com.retrouvtout.integration;
+
+import com.retrouvtout.benchmark.BenchmarkSupport;
+import com.retrouvtout.dto.response.MessageSearchResult;
+import com.retrouvtout.entity.Listing;
+import com.retrouvtout.entity.User;
+import com.retrouvtout.repository.ListingRepository;
+import com.retrouvtout.repository.ThreadRepository;
+import com.retrouvtout.repository.UserRepository;
+import com.retrouvtout.service.MessageService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark de la recherche plein texte dans les conversations (MessageService.searchMessages)
+ *
+ * 10 000 messages dans les conversations de l'utilisateur qui cherche, autant
+ * dans celles d'un autre retrouveur : p50 / p99 de la requête FULLTEXT pour un
+ * terme rare, un terme fréquent et deux termes préfixés.
+ * L'index ftx_messages_body vient d'une migration Flyway (désactivée en test) :
+ * il est recréé ici après l'insertion des messages.
+ * Lancement : mvn verify -Dit.test=MessageSearchBenchmark
+ */
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class MessageSearchBenchmark extends BaseIntegrationTest {
+
+    private static final int THREADS_PER_FINDER = 40;
+    private static final int MESSAGES_PER_THREAD = 250;
+    private static final int WARMUP = 50;
+    private static final int ITERATIONS = 500;
+
+    private static final String[] WORDS = {
+        "bonjour", "merci", "clés", "sac", "téléphone", "gare", "métro", "parc", "demain", "soir",
+        "rendez-vous", "adresse", "horaire", "récupérer", "photo", "couleur", "noir", "bleu", "rouge",
+        "bureau", "boulangerie", "arrêt", "bus", "matin", "midi", "samedi", "dimanche", "possible",
+        "disponible", "retrouvé", "perdu", "objet", "annonce", "description", "marque", "modèle"
+    };
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ListingRepository listingRepository;
+
+    @Autowired
+    private ThreadRepository threadRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final List<String> userIds = new ArrayList<>();
+    private final Set<String> searcherThreadIds = new HashSet<>();
+    private String searcherId;
+
+    @BeforeEach
+    void seedMessages() {
+        Random random = new Random(42);
+        searcherId = seedFinder(random, true);
+        seedFinder(random, false);
+
+        jdbcTemplate.execute("CREATE FULLTEXT INDEX IF NOT EXISTS ftx_messages_body ON messages (body)");
+    }
+
+    @AfterEach
+    void deleteMessages() {
+        for (String userId : userIds) {
+            jdbcTemplate.update("DELETE m FROM messages m JOIN threads t ON t.id = m.thread_id " +
+                "WHERE t.finder_user_id = ?", userId);
+            jdbcTemplate.update("DELETE FROM threads WHERE finder_user_id = ?", userId);
+            jdbcTemplate.update("DELETE FROM listings WHERE finder_user_id = ?", userId);
+        }
+        for (String userId : userIds) {
+            jdbcTemplate.update("DELETE FROM users WHERE id = ?", userId);
+        }
+        userIds.clear();
+        searcherThreadIds.clear();
+    }
+
+    @Test
+    void fullTextSearchLatency() throws Exception {
+        assertTrue(count("SELECT COUNT(*) FROM messages m JOIN threads t ON t.id = m.thread_id " +
+            "WHERE t.finder_user_id = ? OR t.owner_user_id = ?", searcherId, searcherId) >= 10_000);
+
+        search("terme rare", "portefeuille");
+        search("terme fréquent", "bonjour");
+        search("deux termes préfixés", "gare soi");
+
+        // La requête doit passer par l'index plein texte, pas par un parcours de messages
+        List<Map<String, Object>> plan = jdbcTemplate.queryForList(
+            "EXPLAIN SELECT m.* FROM messages m WHERE m.thread_id IN (" +
+            "SELECT t.id FROM threads t WHERE t.owner_user_id = ? " +
+            "UNION SELECT t.id FROM threads t WHERE t.finder_user_id = ?) " +
+            "AND MATCH(m.body) AGAINST (? IN BOOLEAN MODE)", searcherId, searcherId, "+portefeuille*");
+        System.out.println("🔎 Plan de la recherche: " + plan);
+        assertTrue(plan.stream().anyMatch(row -> "fulltext".equalsIgnoreCase(String.valueOf(row.get("type")))),
+            "l'index FULLTEXT doit être utilisé");
+    }
+
+    // Méthodes privées
+
+    private void search(String name, String query) throws Exception {
+        List<MessageSearchResult> results = messageService.searchMessages(searcherId, query, 1, 20);
+        assertFalse(results.isEmpty(), "aucun résultat pour " + query);
+        for (MessageSearchResult result : results) {
+            assertTrue(searcherThreadIds.contains(result.getThreadId()), "résultat hors des conversations de l'utilisateur");
+        }
+
+        BenchmarkSupport.Result result = BenchmarkSupport.measure("recherche FULLTEXT, " + name, WARMUP, ITERATIONS,
+            () -> messageService.searchMessages(searcherId, query, 1, 20));
+        System.out.printf("🔎 %s (%s) : p50 %.2f ms, p99 %.2f ms%n", name, query,
+            result.getP50Nanos() / 1e6, result.getP99Nanos() / 1e6);
+    }
+
+    /**
+     * Un retrouveur, ses annonces et leurs conversations, remplies de messages
+     *
+     * @return ID du retrouveur
+     */
+    private String seedFinder(Random random, boolean searcher) {
+        User finder = userRepository.save(user("finder"));
+        userIds.add(finder.getId());
+
+        List<com.retrouvtout.entity.Thread> threads = new ArrayList<>(THREADS_PER_FINDER);
+        for (int i = 0; i < THREADS_PER_FINDER; i++) {
+            User owner = userRepository.save(user("owner"));
+            userIds.add(owner.getId());
+            Listing listing = listingRepository.save(listing(finder));
+
+            com.retrouvtout.entity.Thread thread = new com.retrouvtout.entity.Thread();
+            thread.setId(UUID.randomUUID().toString());
+            thread.setListing(listing);
+            thread.setOwnerUser(owner);
+            thread.setFinderUser(finder);
+            thread.setStatus(com.retrouvtout.entity.Thread.ThreadStatus.ACTIVE);
+            threads.add(thread);
+            if (searcher) {
+                searcherThreadIds.add(thread.getId());
+            }
+        }
+        threadRepository.saveAll(threads);
+
+        LocalDateTime start = LocalDateTime.now().minusDays(60);
+        List<Object[]> rows = new ArrayList<>(MESSAGES_PER_THREAD);
+        for (com.retrouvtout.entity.Thread thread : threads) {
+            rows.clear();
+            for (int i = 0; i < MESSAGES_PER_THREAD; i++) {
+                String senderId = i % 2 == 0 ? thread.getOwnerUser().getId() : finder.getId();
+                rows.add(new Object[] {
+                    UUID.randomUUID().toString(),
+                    thread.getId(),
+                    senderId,
+                    body(random),
+                    Timestamp.valueOf(start.plusMinutes(i * 5L))
+                });
+            }
+            jdbcTemplate.batchUpdate(
+                "INSERT INTO messages (id, thread_id, sender_user_id, body, message_type, is_read, created_at) " +
+                "VALUES (?, ?, ?, ?, 'TEXT', TRUE, ?)", rows);
+        }
+        return finder.getId();
+    }
+
+    private static String body(Random random) {
+        int length = 6 + random.nextInt(20);
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            if (body.length() > 0) body.append(' ');
+            body.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        // Environ un message sur 200 mentionne un portefeuille
+        if (random.nextInt(200) == 0) {
+            body.append(" portefeuille");
+        }
+        return body.toString();
+    }
+
+    private long count(String sql, Object... args) {
+        return jdbcTemplate.queryForObject(sql, Long.class, args);
+    }
+
+    private static Listing listing(User finder) {
+        Listing listing = new Listing();
+        listing.setId(UUID.randomUUID().toString());
+        listing.setFinderUser(finder);
+        listing.setTitle("Portefeuille en cuir");
+        listing.setCategory(Listing.ListingCategory.CLES);
+        listing.setLocationText("Gare de Lyon");
+        listing.setFoundAt(LocalDateTime.now().minusDays(1));
+        listing.setDescription("Portefeuille marron trouvé sur un banc");
+        return listing;
+    }
+
+    private static User user(String prefix) {
+        User user = new User();
+        user.setId(UUID.randomUUID().toString());
+        user.setName(prefix);
+        user.setEmail(prefix + "-" + UUID.randomUUID() + "@example.test");
+        return user;
+    }
+}
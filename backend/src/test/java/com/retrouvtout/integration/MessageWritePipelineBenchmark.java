@@ -0,0 +1,186 @@
+package com.retrouvtout.integration;
+
+import com.retrouvtout.benchmark.BenchmarkSupport;
+import com.retrouvtout.dto.request.CreateMessageRequest;
+import com.retrouvtout.dto.response.MessageResponse;
+import com.retrouvtout.entity.Listing;
+import com.retrouvtout.entity.User;
+import com.retrouvtout.repository.ListingRepository;
+import com.retrouvtout.repository.ThreadRepository;
+import com.retrouvtout.repository.UserRepository;
+import com.retrouvtout.service.MessageWritePipeline;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark de l'écriture des messages : 1 000 conversations actives en parallèle
+ *
+ * Chaque conversation a son propre client qui envoie ses messages l'un après
+ * l'autre ; le débit du pipeline (INSERT groupés, un commit par lot) est comparé
+ * à l'écriture directe (MessageService.createMessage, une transaction par message).
+ * Le pipeline écrit sur ses propres threads : les données sont commitées, pas
+ * de transaction de test, et elles sont supprimées après chaque test.
+ * Lancement : mvn verify -Dit.test=MessageWritePipelineBenchmark
+ */
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class MessageWritePipelineBenchmark extends BaseIntegrationTest {
+
+    private static final int CONVERSATIONS = 1000;
+    private static final int MESSAGES_PER_CONVERSATION = 10;
+
+    @Autowired
+    private MessageWritePipeline pipeline;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ListingRepository listingRepository;
+
+    @Autowired
+    private ThreadRepository threadRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User finder;
+    private final List<String> ownerIds = new ArrayList<>();
+    private final List<String> threadIds = new ArrayList<>();
+
+    @BeforeEach
+    void createConversations() {
+        finder = userRepository.save(user("finder"));
+
+        List<User> owners = new ArrayList<>(CONVERSATIONS);
+        List<Listing> listings = new ArrayList<>(CONVERSATIONS);
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            owners.add(user("owner"));
+            listings.add(listing(finder));
+        }
+        userRepository.saveAll(owners);
+        listingRepository.saveAll(listings);
+
+        List<com.retrouvtout.entity.Thread> threads = new ArrayList<>(CONVERSATIONS);
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            com.retrouvtout.entity.Thread thread = new com.retrouvtout.entity.Thread();
+            thread.setId(UUID.randomUUID().toString());
+            thread.setListing(listings.get(i));
+            thread.setOwnerUser(owners.get(i));
+            thread.setFinderUser(finder);
+            thread.setStatus(com.retrouvtout.entity.Thread.ThreadStatus.ACTIVE);
+            threads.add(thread);
+            ownerIds.add(owners.get(i).getId());
+            threadIds.add(thread.getId());
+        }
+        threadRepository.saveAll(threads);
+    }
+
+    @AfterEach
+    void deleteConversations() {
+        ReflectionTestUtils.setField(pipeline, "enabled", true);
+        jdbcTemplate.update("DELETE m FROM messages m JOIN threads t ON t.id = m.thread_id WHERE t.finder_user_id = ?",
+            finder.getId());
+        jdbcTemplate.update("DELETE FROM threads WHERE finder_user_id = ?", finder.getId());
+        jdbcTemplate.update("DELETE FROM listings WHERE finder_user_id = ?", finder.getId());
+        for (String ownerId : ownerIds) {
+            jdbcTemplate.update("DELETE FROM users WHERE id = ?", ownerId);
+        }
+        jdbcTemplate.update("DELETE FROM users WHERE id = ?", finder.getId());
+        ownerIds.clear();
+        threadIds.clear();
+    }
+
+    @Test
+    void thousandConcurrentConversations() throws Exception {
+        ReflectionTestUtils.setField(pipeline, "enabled", false);
+        BenchmarkSupport.Result direct = run("1 000 conversations, écriture directe");
+
+        ReflectionTestUtils.setField(pipeline, "enabled", true);
+        BenchmarkSupport.Result pipelined = run("1 000 conversations, pipeline d'écriture");
+
+        long stored = jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM messages m JOIN threads t ON t.id = m.thread_id WHERE t.finder_user_id = ?",
+            Long.class, finder.getId());
+        assertEquals(2L * CONVERSATIONS * MESSAGES_PER_CONVERSATION, stored);
+        assertEquals(0, pipeline.getPendingCount());
+
+        System.out.printf("🚀 Pipeline d'écriture : x%.1f messages/s, p99 %.1f ms → %.1f ms%n",
+            pipelined.getOpsPerSecond() / direct.getOpsPerSecond(),
+            direct.getP99Nanos() / 1e6, pipelined.getP99Nanos() / 1e6);
+    }
+
+    @Test
+    void retryAfterDedupExpiryReturnsStoredMessage() {
+        CreateMessageRequest request = request(threadIds.get(0), "Je passe le récupérer ce soir", "retry-1");
+        MessageResponse first = pipeline.submitAndAwait(request, ownerIds.get(0));
+
+        // Entrée de déduplication expirée ou évincée : le nouvel essai retrouve le message en base
+        Map<?, ?> recentSubmissions = (Map<?, ?>) ReflectionTestUtils.getField(pipeline, "recentSubmissions");
+        synchronized (recentSubmissions) {
+            recentSubmissions.clear();
+        }
+        MessageResponse retried = pipeline.submitAndAwait(request, ownerIds.get(0));
+
+        assertEquals(first.getId(), retried.getId());
+        assertEquals(1, jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM messages WHERE id = ?", Integer.class, first.getId()));
+    }
+
+    // Méthodes privées
+
+    private BenchmarkSupport.Result run(String name) throws Exception {
+        AtomicInteger clients = new AtomicInteger();
+        ThreadLocal<Integer> conversation = ThreadLocal.withInitial(clients::getAndIncrement);
+
+        return BenchmarkSupport.measureConcurrent(name, CONVERSATIONS, 0, MESSAGES_PER_CONVERSATION, () -> {
+            int index = conversation.get();
+            MessageResponse response = pipeline.submitAndAwait(
+                request(threadIds.get(index), "Bonjour, je crois que c'est mon objet", null), ownerIds.get(index));
+            assertNotNull(response.getId());
+        });
+    }
+
+    private static CreateMessageRequest request(String threadId, String body, String clientMessageId) {
+        CreateMessageRequest request = new CreateMessageRequest();
+        request.setThreadId(threadId);
+        request.setBody(body);
+        request.setMessageType("text");
+        request.setClientMessageId(clientMessageId);
+        return request;
+    }
+
+    private static Listing listing(User finder) {
+        Listing listing = new Listing();
+        listing.setId(UUID.randomUUID().toString());
+        listing.setFinderUser(finder);
+        listing.setTitle("Trousseau de clés");
+        listing.setCategory(Listing.ListingCategory.CLES);
+        listing.setLocationText("Gare de Lyon");
+        listing.setFoundAt(LocalDateTime.now().minusDays(1));
+        listing.setDescription("Trois clés sur un anneau rouge");
+        return listing;
+    }
+
+    private static User user(String prefix) {
+        User user = new User();
+        user.setId(UUID.randomUUID().toString());
+        user.setName(prefix);
+        user.setEmail(prefix + "-" + UUID.randomUUID() + "@example.test");
+        return user;
+    }
+}
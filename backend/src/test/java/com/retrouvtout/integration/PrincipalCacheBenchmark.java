@@ -0,0 +1,94 @@
+package com.retrouvtout.integration;
+
+import com.retrouvtout.benchmark.BenchmarkSupport;
+import com.retrouvtout.entity.User;
+import com.retrouvtout.repository.UserRepository;
+import com.retrouvtout.security.CustomUserDetailsService;
+import com.retrouvtout.security.JwtTokenProvider;
+import com.retrouvtout.security.PrincipalCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark de la résolution du principal d'une requête authentifiée
+ *
+ * Compare le chargement de l'utilisateur en base à chaque requête (cache
+ * désactivé) avec le cache des principaux, et mesure l'analyse unique du JWT.
+ * Lancement : mvn verify -Dit.test=PrincipalCacheBenchmark
+ */
+class PrincipalCacheBenchmark extends BaseIntegrationTest {
+
+    private static final int WARMUP = 2_000;
+    private static final int ITERATIONS = 20_000;
+
+    @Autowired
+    private PrincipalCache principalCache;
+
+    @Autowired
+    private CustomUserDetailsService customUserDetailsService;
+
+    @Autowired
+    private JwtTokenProvider tokenProvider;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private String userId;
+
+    @BeforeEach
+    void createUser() {
+        User user = new User();
+        user.setId(UUID.randomUUID().toString());
+        user.setName("Camille");
+        user.setEmail("camille-" + UUID.randomUUID() + "@example.test");
+        userId = userRepository.saveAndFlush(user).getId();
+        principalCache.invalidateAll();
+    }
+
+    @AfterEach
+    void restoreCache() {
+        ReflectionTestUtils.setField(principalCache, "enabled", true);
+        principalCache.invalidateAll();
+    }
+
+    @Test
+    void principalLookup() throws Exception {
+        ReflectionTestUtils.setField(principalCache, "enabled", false);
+        BenchmarkSupport.Result uncached = BenchmarkSupport.measure("principal chargé en base à chaque requête",
+            WARMUP, ITERATIONS, () -> principalCache.get(userId, customUserDetailsService::loadUserById));
+
+        ReflectionTestUtils.setField(principalCache, "enabled", true);
+        BenchmarkSupport.Result cached = BenchmarkSupport.measure("principal depuis le cache",
+            WARMUP, ITERATIONS, () -> principalCache.get(userId, customUserDetailsService::loadUserById));
+
+        System.out.printf("🚀 Gain du cache : x%.1f%n", cached.getOpsPerSecond() / uncached.getOpsPerSecond());
+        assertTrue(cached.getP50Nanos() < uncached.getP50Nanos(), "le cache devrait éviter l'aller-retour en base");
+    }
+
+    @Test
+    void cachedLookupUnderContention() throws Exception {
+        // Les threads de charge ne voient pas la transaction du test : le cache est rempli ici
+        principalCache.get(userId, customUserDetailsService::loadUserById);
+
+        BenchmarkSupport.measureConcurrent("principal depuis le cache (16 threads)", 16, 0, ITERATIONS,
+            () -> assertNotNull(principalCache.get(userId, id -> {
+                throw new AssertionError("chargement inattendu pendant la mesure");
+            })));
+    }
+
+    @Test
+    void jwtParsing() throws Exception {
+        String token = tokenProvider.generateToken(userId);
+
+        BenchmarkSupport.Result result = BenchmarkSupport.measure("analyse du JWT (signature, expiration)",
+            WARMUP, ITERATIONS, () -> assertNotNull(tokenProvider.parseClaims(token)));
+        assertTrue(result.getP50Nanos() < 1_000_000, "analyse du JWT trop lente: " + result);
+    }
+}
@@ -0,0 +1,192 @@
+package com.retrouvtout.integration;
+
+import com.retrouvtout.entity.Listing;
+import com.retrouvtout.entity.ListingImage;
+import com.retrouvtout.entity.User;
+import com.retrouvtout.repository.ListingImageRepository;
+import com.retrouvtout.repository.ListingRepository;
+import com.retrouvtout.repository.UserRepository;
+import com.retrouvtout.service.FileUploadService;
+import com.retrouvtout.service.ImageDerivativeService;
+import com.retrouvtout.service.StorageGarbageCollector;
+import com.retrouvtout.util.ImageUrlUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests d'intégration du ramasse-miettes du stockage
+ *
+ * Un passage sur des originaux référencés (image principale, image multiple
+ * enregistrée avec un autre hôte), orphelins, encore dans la période de grâce,
+ * référencés seulement par une annonce supprimée, ou redéposés (déduplication)
+ * après expiration. Les références sont lues sur image_path / path.
+ */
+class StorageGarbageCollectorIT extends BaseIntegrationTest {
+
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+
+    @Autowired
+    private StorageGarbageCollector storageGarbageCollector;
+
+    @Autowired
+    private FileUploadService fileUploadService;
+
+    @Autowired
+    private ImageDerivativeService imageDerivativeService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ListingRepository listingRepository;
+
+    @Autowired
+    private ListingImageRepository listingImageRepository;
+
+    @Value("${app.upload.dir:./uploads}")
+    private String uploadDir;
+
+    private Path root;
+    private Path userDir;
+    private User finder;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        root = Paths.get(uploadDir).toAbsolutePath().normalize();
+        userDir = root.resolve("images").resolve("gc-" + UUID.randomUUID());
+        Files.createDirectories(userDir);
+        Files.deleteIfExists(root.resolve(".gc-cursor"));
+        // Un seul lot pour tout le répertoire de test
+        ReflectionTestUtils.setField(storageGarbageCollector, "batchSize", 100_000);
+        ReflectionTestUtils.setField(storageGarbageCollector, "graceHours", 24L);
+
+        User user = new User();
+        user.setId(UUID.randomUUID().toString());
+        user.setName("finder");
+        user.setEmail("finder-" + UUID.randomUUID() + "@example.test");
+        finder = userRepository.save(user);
+    }
+
+    @Test
+    void deletesOnlyExpiredUnreferencedOriginals() throws Exception {
+        Path referenced = original("referenced.jpg", 3);
+        Path gallery = original("gallery.jpg", 3);
+        Path orphan = original("orphan.jpg", 3);
+        Path orphanThumb = userDir.resolve(imageDerivativeService.derivativeFilename("orphan.jpg", "thumb"));
+        Files.write(orphanThumb, new byte[] { 1 });
+        Path inGrace = original("in-grace.jpg", 0);
+        Path onlyDeletedListing = original("deleted-listing.jpg", 3);
+
+        listing(urlOf("http://localhost:8080/api", referenced), Listing.ListingStatus.ACTIVE);
+        Listing withGallery = listing(null, Listing.ListingStatus.ACTIVE);
+        ListingImage image = new ListingImage();
+        image.setListing(withGallery);
+        // Enregistrée avec un autre hôte et des paramètres : même chemin relatif
+        image.setUrl(urlOf("https://cdn.example.test/api", gallery) + "?v=2");
+        image.setIsPrimary(true);
+        image.setCreatedAt(LocalDateTime.now());
+        listingImageRepository.save(image);
+        listing(urlOf("http://localhost:8080/api", onlyDeletedListing), Listing.ListingStatus.SUPPRIME);
+
+        runOnce();
+
+        assertTrue(Files.exists(referenced), "image principale référencée supprimée");
+        assertTrue(Files.exists(gallery), "image multiple référencée supprimée");
+        assertTrue(Files.exists(inGrace), "image dans la période de grâce supprimée");
+        assertFalse(Files.exists(orphan), "orphelin conservé");
+        assertFalse(Files.exists(orphanThumb), "déclinaison de l'orphelin conservée");
+        assertFalse(Files.exists(onlyDeletedListing), "image d'une annonce supprimée conservée");
+    }
+
+    @Test
+    void reuploadedObjectIsKept() throws Exception {
+        byte[] jpeg = jpeg();
+        String url = fileUploadService.uploadImage(new MockMultipartFile("file", "photo.jpg", "image/jpeg", jpeg),
+            finder.getId());
+        Path object = root.resolve(ImageUrlUtils.storagePathOf(url));
+        Files.setLastModifiedTime(object, FileTime.fromMillis(System.currentTimeMillis() - 3 * DAY_MS));
+
+        // Même contenu redéposé : l'objet dédupliqué repart pour une période de grâce
+        assertEquals(url, fileUploadService.uploadImage(
+            new MockMultipartFile("file", "photo.jpg", "image/jpeg", jpeg), finder.getId()));
+
+        runOnce();
+
+        assertTrue(Files.exists(object), "objet redéposé supprimé");
+    }
+
+    @Test
+    void storagePathIsDerivedOnSave() {
+        Listing listing = listing("http://localhost:8080/api/files/images/u-1/a.jpg?size=card",
+            Listing.ListingStatus.ACTIVE);
+        listingRepository.flush();
+        assertEquals("images/u-1/a.jpg", listing.getImagePath());
+
+        listing.setImageUrl("https://example.test/external.jpg");
+        listingRepository.saveAndFlush(listing);
+        assertNull(listing.getImagePath());
+    }
+
+    // Méthodes privées
+
+    private void runOnce() {
+        ReflectionTestUtils.invokeMethod(storageGarbageCollector, "runOnce");
+    }
+
+    private Path original(String filename, int ageDays) throws Exception {
+        Path file = Files.write(userDir.resolve(filename), jpeg());
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - ageDays * DAY_MS));
+        return file;
+    }
+
+    private String urlOf(String apiBase, Path file) {
+        return apiBase + "/files/" + root.relativize(file).toString().replace('\\', '/');
+    }
+
+    private Listing listing(String imageUrl, Listing.ListingStatus status) {
+        Listing listing = new Listing();
+        listing.setId(UUID.randomUUID().toString());
+        listing.setFinderUser(finder);
+        listing.setTitle("Parapluie noir");
+        listing.setCategory(Listing.ListingCategory.CLES);
+        listing.setLocationText("Place Bellecour");
+        listing.setFoundAt(LocalDateTime.now().minusDays(1));
+        listing.setDescription("Parapluie noir à poignée en bois");
+        listing.setImageUrl(imageUrl);
+        listing.setStatus(status);
+        return listingRepository.save(listing);
+    }
+
+    private static byte[] jpeg() throws Exception {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(new Color(40, 90, 160));
+            graphics.fillRect(0, 0, 64, 48);
+        } finally {
+            graphics.dispose();
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", bytes);
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,145 @@
+package com.retrouvtout.integration;
+
+import com.retrouvtout.benchmark.BenchmarkSupport;
+import com.retrouvtout.entity.Listing;
+import com.retrouvtout.entity.User;
+import com.retrouvtout.repository.ListingRepository;
+import com.retrouvtout.repository.ThreadRepository;
+import com.retrouvtout.repository.UserRepository;
+import com.retrouvtout.websocket.TypingMessage;
+import com.retrouvtout.websocket.TypingStateService;
+import com.retrouvtout.websocket.WebSocketController;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+
+import java.security.Principal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test de charge des indicateurs de frappe (/app/chat.typing)
+ *
+ * Simule des clients qui envoient une trame par frappe : le serveur ne doit
+ * diffuser que les transitions et des rafraîchissements espacés, et un flot de
+ * trames vers un thread inexistant ne doit pas interroger la base à chaque trame.
+ * Lancement : mvn verify -Dit.test=TypingIndicatorLoadBenchmark
+ */
+class TypingIndicatorLoadBenchmark extends BaseIntegrationTest {
+
+    private static final int THREADS = 8;
+    private static final int FRAMES_PER_THREAD = 5000;
+
+    @Autowired
+    private WebSocketController webSocketController;
+
+    @Autowired
+    private TypingStateService typingStateService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ListingRepository listingRepository;
+
+    @SpyBean
+    private ThreadRepository threadRepository;
+
+    private String threadId;
+    private String ownerId;
+    private String finderId;
+
+    @BeforeEach
+    void createThread() {
+        User finder = userRepository.save(user("finder"));
+        User owner = userRepository.save(user("owner"));
+
+        Listing listing = new Listing();
+        listing.setId(UUID.randomUUID().toString());
+        listing.setFinderUser(finder);
+        listing.setTitle("Trousseau de clés");
+        listing.setCategory(Listing.ListingCategory.CLES);
+        listing.setLocationText("Gare de Lyon");
+        listing.setFoundAt(LocalDateTime.now().minusDays(1));
+        listing.setDescription("Trois clés sur un anneau rouge");
+        listingRepository.save(listing);
+
+        com.retrouvtout.entity.Thread thread = new com.retrouvtout.entity.Thread();
+        thread.setId(UUID.randomUUID().toString());
+        thread.setListing(listing);
+        thread.setOwnerUser(owner);
+        thread.setFinderUser(finder);
+        thread.setStatus(com.retrouvtout.entity.Thread.ThreadStatus.ACTIVE);
+        threadRepository.saveAndFlush(thread);
+
+        threadId = thread.getId();
+        ownerId = owner.getId();
+        finderId = finder.getId();
+    }
+
+    @Test
+    void participantFloodIsCoalesced() throws Exception {
+        // Premier appel sur le thread du test : le cache des participants est chargé dans sa transaction
+        webSocketController.handleTyping(new TypingMessage(threadId, null, true), headers(ownerId, "s-owner"));
+
+        long receivedBefore = typingStateService.getReceivedFrames();
+        long broadcastBefore = typingStateService.getBroadcastFrames();
+        AtomicLong frames = new AtomicLong();
+
+        BenchmarkSupport.Result result = BenchmarkSupport.measureConcurrent(
+            "trames de frappe (2 participants)", THREADS, 0, FRAMES_PER_THREAD, () -> {
+                boolean owner = (frames.getAndIncrement() & 1) == 0;
+                webSocketController.handleTyping(new TypingMessage(threadId, null, true),
+                    headers(owner ? ownerId : finderId, owner ? "s-owner" : "s-finder"));
+            });
+
+        long received = typingStateService.getReceivedFrames() - receivedBefore;
+        long broadcast = typingStateService.getBroadcastFrames() - broadcastBefore;
+        System.out.println("📨 Trames reçues: " + received + ", diffusées: " + broadcast);
+        System.out.printf("📨 Traitement d'une trame : p50 %.1f µs, p99 %.1f µs%n",
+            result.getP50Nanos() / 1000.0, result.getP99Nanos() / 1000.0);
+
+        assertEquals((long) THREADS * FRAMES_PER_THREAD, received);
+        // Un début de frappe par participant plus quelques rafraîchissements, pas une diffusion par trame
+        assertTrue(broadcast < received / 100, "trop de diffusions: " + broadcast);
+    }
+
+    @Test
+    void unknownThreadFloodHitsDatabaseOnce() throws Exception {
+        String unknownThreadId = UUID.randomUUID().toString();
+        long broadcastBefore = typingStateService.getBroadcastFrames();
+
+        BenchmarkSupport.measureConcurrent("trames vers un thread inexistant", THREADS, 0, FRAMES_PER_THREAD,
+            () -> webSocketController.handleTyping(new TypingMessage(unknownThreadId, null, true),
+                headers(ownerId, "s-owner")));
+
+        // Les premiers appels concurrents peuvent se chevaucher avant la mise en cache négative
+        verify(threadRepository, atMost(THREADS)).findWithParticipantsById(unknownThreadId);
+        assertEquals(broadcastBefore, typingStateService.getBroadcastFrames());
+    }
+
+    // Méthodes utilitaires
+
+    private static SimpMessageHeaderAccessor headers(String userId, String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        Principal principal = () -> userId;
+        accessor.setUser(principal);
+        accessor.setSessionId(sessionId);
+        return accessor;
+    }
+
+    private static User user(String prefix) {
+        User user = new User();
+        user.setId(UUID.randomUUID().toString());
+        user.setName(prefix);
+        user.setEmail(prefix + "-" + UUID.randomUUID() + "@example.test");
+        return user;
+    }
+}
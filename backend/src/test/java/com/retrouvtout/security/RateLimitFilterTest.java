@@ -0,0 +1,190 @@
+package com.retrouvtout.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests unitaires du filtre de limitation de débit
+ *
+ * Seaux locaux (bucket4j) de petite capacité : 429 et Retry-After, seau propre
+ * aux fichiers servis, lecture de X-Forwarded-For derrière un proxy de confiance
+ * et seaux par utilisateur authentifié.
+ */
+class RateLimitFilterTest {
+
+    private static final String PROXY = "10.0.0.1";
+
+    private RateLimitService rateLimitService;
+
+    @BeforeEach
+    void setUp() {
+        rateLimitService = service(new MockEnvironment()
+            .withProperty("app.rate-limit.policies.global.capacity", "3")
+            .withProperty("app.rate-limit.policies.files.capacity", "100"));
+    }
+
+    @AfterEach
+    void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void exhaustedBucketReturns429WithRetryAfter() throws Exception {
+        RateLimitFilter filter = filter(false);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(passes(filter, request("GET", "/api/listings/l-1", "203.0.113.5")));
+        }
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request("GET", "/api/listings/l-1", "203.0.113.5"), response, chain);
+
+        assertNull(chain.getRequest(), "la requête ne doit pas atteindre le contrôleur");
+        assertEquals(429, response.getStatus());
+        assertTrue(Long.parseLong(response.getHeader("Retry-After")) >= 1);
+        assertTrue(response.getContentAsString().contains("\"status\":429"));
+
+        // Une autre IP a son propre seau
+        assertTrue(passes(filter, request("GET", "/api/listings/l-1", "203.0.113.6")));
+    }
+
+    @Test
+    void servedFilesHaveTheirOwnBucket() throws Exception {
+        RateLimitFilter filter = filter(false);
+        for (int i = 0; i < 50; i++) {
+            MockHttpServletRequest image = request("GET", "/api/files/images/u-1/photo-" + i + ".jpg", "203.0.113.5");
+            image.addHeader("Range", "bytes=0-65535");
+            assertTrue(passes(filter, image), "image " + i + " refusée");
+        }
+
+        // Les images n'ont pas entamé le seau global de l'IP
+        for (int i = 0; i < 3; i++) {
+            assertTrue(passes(filter, request("GET", "/api/listings", "203.0.113.5")));
+        }
+        assertFalse(passes(filter, request("GET", "/api/listings", "203.0.113.5")));
+        assertTrue(passes(filter, request("HEAD", "/api/files/images/u-1/photo-0.jpg", "203.0.113.5")));
+    }
+
+    @Test
+    void forwardedForIsIgnoredFromUntrustedSource() throws Exception {
+        RateLimitFilter filter = filter(true);
+        for (int i = 0; i < 3; i++) {
+            MockHttpServletRequest request = request("GET", "/api/listings/l-1", "203.0.113.5");
+            request.addHeader("X-Forwarded-For", "198.51.100." + i);
+            assertTrue(passes(filter, request));
+        }
+
+        // Changer d'en-tête ne donne pas un nouveau seau : l'adresse de connexion est utilisée
+        MockHttpServletRequest spoofed = request("GET", "/api/listings/l-1", "203.0.113.5");
+        spoofed.addHeader("X-Forwarded-For", "198.51.100.99");
+        assertFalse(passes(filter, spoofed));
+    }
+
+    @Test
+    void forwardedForFromTrustedProxyUsesRightMostClientHop() throws Exception {
+        RateLimitFilter filter = filter(true);
+        for (int i = 0; i < 3; i++) {
+            // Les entrées de gauche sont fournies par le client et changent à chaque requête
+            MockHttpServletRequest request = request("GET", "/api/listings/l-1", PROXY);
+            request.addHeader("X-Forwarded-For", "192.0.2." + i + ", 198.51.100.7, " + PROXY);
+            assertTrue(passes(filter, request));
+        }
+
+        MockHttpServletRequest sameClient = request("GET", "/api/listings/l-1", PROXY);
+        sameClient.addHeader("X-Forwarded-For", "192.0.2.200, 198.51.100.7");
+        assertFalse(passes(filter, sameClient), "le client réel doit être 198.51.100.7");
+
+        MockHttpServletRequest otherClient = request("GET", "/api/listings/l-1", PROXY);
+        otherClient.addHeader("X-Forwarded-For", "198.51.100.8");
+        assertTrue(passes(filter, otherClient));
+    }
+
+    @Test
+    void forwardedForIsIgnoredWhenNotEnabled() throws Exception {
+        RateLimitFilter filter = filter(false);
+        for (int i = 0; i < 3; i++) {
+            MockHttpServletRequest request = request("GET", "/api/listings/l-1", PROXY);
+            request.addHeader("X-Forwarded-For", "198.51.100." + i);
+            assertTrue(passes(filter, request));
+        }
+        MockHttpServletRequest request = request("GET", "/api/listings/l-1", PROXY);
+        request.addHeader("X-Forwarded-For", "198.51.100.50");
+        assertFalse(passes(filter, request));
+    }
+
+    @Test
+    void perUserPolicyIsKeyedByAuthenticatedUser() throws Exception {
+        rateLimitService = service(new MockEnvironment()
+            .withProperty("app.rate-limit.policies.create-message.capacity", "2"));
+        RateLimitFilter filter = filter(false);
+
+        authenticate("user-a");
+        assertTrue(passes(filter, request("POST", "/api/messages", "203.0.113.5")));
+        assertTrue(passes(filter, request("POST", "/api/messages", "203.0.113.5")));
+        assertFalse(passes(filter, request("POST", "/api/messages", "203.0.113.5")));
+
+        // Même IP, autre utilisateur : seau distinct
+        authenticate("user-b");
+        assertTrue(passes(filter, request("POST", "/api/messages", "203.0.113.5")));
+
+        // Même utilisateur depuis une autre IP : toujours limité
+        authenticate("user-a");
+        assertFalse(passes(filter, request("POST", "/api/messages", "203.0.113.9")));
+
+        // Appel anonyme : compté par IP
+        SecurityContextHolder.clearContext();
+        assertTrue(passes(filter, request("POST", "/api/messages", "203.0.113.5")));
+    }
+
+    // Méthodes privées
+
+    private static RateLimitService service(MockEnvironment environment) {
+        @SuppressWarnings("unchecked")
+        ObjectProvider<StringRedisTemplate> redis = mock(ObjectProvider.class);
+        RateLimitService service = new RateLimitService(redis, new SimpleMeterRegistry(), environment);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "mode", "local");
+        service.init();
+        return service;
+    }
+
+    private RateLimitFilter filter(boolean trustForwardedFor) {
+        return new RateLimitFilter(rateLimitService, trustForwardedFor, Set.of(PROXY));
+    }
+
+    private static boolean passes(RateLimitFilter filter, MockHttpServletRequest request) throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+        return chain.getRequest() != null;
+    }
+
+    private static MockHttpServletRequest request(String method, String uri, String remoteAddr) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        request.setRemoteAddr(remoteAddr);
+        return request;
+    }
+
+    private static void authenticate(String userId) {
+        UserPrincipal principal = new UserPrincipal(userId, "Utilisateur", userId + "@example.test", null,
+            Collections.emptyList(), true, true);
+        SecurityContextHolder.getContext().setAuthentication(
+            new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+    }
+}
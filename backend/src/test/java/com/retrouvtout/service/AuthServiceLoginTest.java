@@ -0,0 +1,169 @@
+package com.retrouvtout.service;
+
+import com.retrouvtout.dto.request.LoginRequest;
+import com.retrouvtout.dto.response.AuthResponse;
+import com.retrouvtout.entity.User;
+import com.retrouvtout.exception.ServiceUnavailableException;
+import com.retrouvtout.repository.UserRepository;
+import com.retrouvtout.security.JwtTokenProvider;
+import com.retrouvtout.security.PasswordHashingService;
+import com.retrouvtout.security.TokenRevocationService;
+import com.retrouvtout.util.ModelMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests unitaires de la connexion (AuthService.login)
+ *
+ * Le hachage BCrypt (vérification et re-hachage) ne doit jamais s'exécuter dans
+ * une transaction : la lecture de l'utilisateur et l'écriture de la dernière
+ * connexion se font chacune dans une transaction courte.
+ */
+class AuthServiceLoginTest {
+
+    private static final String OLD_HASH = "$2a$10$ancienhachage";
+    private static final String NEW_HASH = "$2a$12$nouveauhachage";
+
+    private final CountingTransactionManager transactionManager = new CountingTransactionManager();
+    private final List<String> events = new ArrayList<>();
+
+    private UserRepository userRepository;
+    private PasswordHashingService passwordHashingService;
+    private AuthService authService;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        JwtTokenProvider tokenProvider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(tokenProvider, "jwtSecret",
+            "test-secret-key-for-login-transaction-tests-only-0123456789-abcdefghijklmnop");
+        ReflectionTestUtils.setField(tokenProvider, "jwtExpirationInMs", 900_000L);
+        ReflectionTestUtils.setField(tokenProvider, "refreshTokenExpirationInMs", 604_800_000L);
+        tokenProvider.init();
+
+        user = new User();
+        user.setId(UUID.randomUUID().toString());
+        user.setName("Camille");
+        user.setEmail("camille@example.test");
+        user.setPasswordHash(OLD_HASH);
+        user.setRole(User.UserRole.MIXTE);
+        user.setActive(true);
+
+        userRepository = mock(UserRepository.class);
+        when(userRepository.findByEmailAndActiveTrue("camille@example.test")).thenAnswer(invocation -> {
+            events.add("lecture, transactions ouvertes: " + transactionManager.open);
+            return Optional.of(user);
+        });
+        when(userRepository.updateLastLoginAt(eq(user.getId()), any(LocalDateTime.class))).thenAnswer(invocation -> {
+            events.add("dernière connexion, transactions ouvertes: " + transactionManager.open);
+            return 1;
+        });
+        when(userRepository.replacePasswordHash(user.getId(), OLD_HASH, NEW_HASH)).thenAnswer(invocation -> {
+            events.add("re-hachage enregistré, transactions ouvertes: " + transactionManager.open);
+            return 1;
+        });
+
+        passwordHashingService = mock(PasswordHashingService.class);
+        when(passwordHashingService.matches(anyString(), anyString())).thenAnswer(invocation -> {
+            events.add("vérification, transactions ouvertes: " + transactionManager.open);
+            return "bon-mot-de-passe".equals(invocation.getArgument(0));
+        });
+
+        authService = new AuthService(userRepository, passwordHashingService, tokenProvider, new ModelMapper(),
+            mock(TokenRevocationService.class), transactionManager);
+        ReflectionTestUtils.setField(authService, "jwtExpirationInMs", 900_000L);
+    }
+
+    @Test
+    void hashingRunsOutsideAnyTransaction() {
+        when(passwordHashingService.needsRehash(OLD_HASH)).thenReturn(true);
+        when(passwordHashingService.encode("bon-mot-de-passe")).thenAnswer(invocation -> {
+            events.add("re-hachage, transactions ouvertes: " + transactionManager.open);
+            return NEW_HASH;
+        });
+
+        AuthResponse response = authService.login(login("bon-mot-de-passe"), "203.0.113.5");
+
+        assertNotNull(response.getAccessToken());
+        assertNotNull(response.getUser().getLastLoginAt());
+        assertEquals(List.of(
+            "lecture, transactions ouvertes: 1",
+            "vérification, transactions ouvertes: 0",
+            "re-hachage, transactions ouvertes: 0",
+            "dernière connexion, transactions ouvertes: 1",
+            "re-hachage enregistré, transactions ouvertes: 1"), events);
+        assertEquals(0, transactionManager.open);
+        assertEquals(2, transactionManager.committed, "une transaction pour la lecture, une pour les écritures");
+    }
+
+    @Test
+    void deferredRehashStillRecordsTheLogin() {
+        when(passwordHashingService.needsRehash(OLD_HASH)).thenReturn(true);
+        when(passwordHashingService.encode("bon-mot-de-passe")).thenThrow(new ServiceUnavailableException("saturé", 1));
+
+        assertNotNull(authService.login(login("bon-mot-de-passe"), "203.0.113.5").getAccessToken());
+
+        verify(userRepository).updateLastLoginAt(eq(user.getId()), any(LocalDateTime.class));
+        verify(userRepository, never()).replacePasswordHash(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void wrongPasswordWritesNothing() {
+        assertThrows(org.springframework.security.authentication.BadCredentialsException.class,
+            () -> authService.login(login("mauvais"), "203.0.113.5"));
+
+        verify(userRepository, never()).updateLastLoginAt(anyString(), any(LocalDateTime.class));
+        assertEquals(0, transactionManager.open);
+    }
+
+    // Méthodes privées
+
+    private static LoginRequest login(String password) {
+        LoginRequest request = new LoginRequest();
+        request.setEmail(" Camille@Example.test ");
+        request.setPassword(password);
+        return request;
+    }
+
+    /**
+     * Gestionnaire de transactions qui compte les transactions ouvertes
+     */
+    private static final class CountingTransactionManager implements PlatformTransactionManager {
+        private int open;
+        private int committed;
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            open++;
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+            open--;
+            committed++;
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+            open--;
+        }
+    }
+}
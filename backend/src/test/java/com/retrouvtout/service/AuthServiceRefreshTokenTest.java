@@ -0,0 +1,206 @@
+package com.retrouvtout.service;
+
+import com.retrouvtout.dto.response.AuthResponse;
+import com.retrouvtout.entity.User;
+import com.retrouvtout.repository.UserRepository;
+import com.retrouvtout.security.JwtTokenProvider;
+import com.retrouvtout.security.PasswordHashingService;
+import com.retrouvtout.security.TokenRevocationService;
+import com.retrouvtout.util.ModelMapper;
+import io.jsonwebtoken.Claims;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests unitaires de la rotation des refresh tokens (AuthService.refreshToken)
+ *
+ * Chaque rafraîchissement consomme le refresh token présenté et en émet un
+ * nouveau dans la même famille ; un token déjà consommé révoque toute la
+ * famille, y compris quand il a été consommé avant un redémarrage (révocations
+ * persistées dans revoked_tokens, simulée ici par une table en mémoire).
+ */
+class AuthServiceRefreshTokenTest {
+
+    private final RevocationTable table = new RevocationTable();
+
+    private UserRepository userRepository;
+    private JwtTokenProvider tokenProvider;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        tokenProvider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(tokenProvider, "jwtSecret",
+            "test-secret-key-for-refresh-rotation-tests-only-0123456789-abcdefghijklmnop");
+        ReflectionTestUtils.setField(tokenProvider, "jwtExpirationInMs", 900_000L);
+        ReflectionTestUtils.setField(tokenProvider, "refreshTokenExpirationInMs", 604_800_000L);
+        tokenProvider.init();
+
+        user = new User();
+        user.setId(UUID.randomUUID().toString());
+        user.setName("Camille");
+        user.setEmail("camille@example.test");
+        user.setRole(User.UserRole.MIXTE);
+        user.setTokenVersion(0);
+        user.setActive(true);
+
+        userRepository = mock(UserRepository.class);
+        when(userRepository.findByIdAndActiveTrue(user.getId())).thenReturn(Optional.of(user));
+    }
+
+    @Test
+    void refreshRotatesWithinTheSameFamily() {
+        AuthService authService = authService(revocationService(false));
+        String familyId = UUID.randomUUID().toString();
+        String first = tokenProvider.generateRefreshToken(user, familyId);
+
+        AuthResponse rotated = authService.refreshToken(first);
+        Claims firstClaims = tokenProvider.parseClaims(first);
+        Claims rotatedClaims = tokenProvider.parseClaims(rotated.getRefreshToken());
+
+        assertEquals(familyId, rotatedClaims.get(JwtTokenProvider.CLAIM_FAMILY, String.class));
+        assertNotEquals(firstClaims.getId(), rotatedClaims.getId());
+        assertEquals(familyId, tokenProvider.parseClaims(rotated.getAccessToken())
+            .get(JwtTokenProvider.CLAIM_FAMILY, String.class));
+
+        // Le nouveau refresh token se rafraîchit à son tour
+        assertNotNull(authService.refreshToken(rotated.getRefreshToken()).getRefreshToken());
+    }
+
+    @Test
+    void reusedRefreshTokenRevokesTheFamily() {
+        TokenRevocationService revocations = revocationService(false);
+        AuthService authService = authService(revocations);
+        String familyId = UUID.randomUUID().toString();
+        String stolen = tokenProvider.generateRefreshToken(user, familyId);
+
+        AuthResponse legitimate = authService.refreshToken(stolen);
+
+        // Rejeu du token déjà consommé : refusé, et la famille est révoquée
+        assertThrows(IllegalArgumentException.class, () -> authService.refreshToken(stolen));
+        assertTrue(revocations.isRevoked(familyId));
+
+        // Les tokens émis par la rotation légitime ne sont plus acceptés non plus
+        assertThrows(IllegalArgumentException.class, () -> authService.refreshToken(legitimate.getRefreshToken()));
+    }
+
+    @Test
+    void reuseIsDetectedAfterRestart() {
+        String familyId = UUID.randomUUID().toString();
+        String stolen = tokenProvider.generateRefreshToken(user, familyId);
+        AuthResponse legitimate = authService(revocationService(true)).refreshToken(stolen);
+        assertEquals(1, table.rows.size(), "le refresh token consommé doit être persisté");
+
+        // Nouvelle instance : l'ensemble en mémoire est rechargé depuis la table
+        TokenRevocationService restarted = revocationService(true);
+        AuthService authService = authService(restarted);
+
+        assertThrows(IllegalArgumentException.class, () -> authService.refreshToken(stolen));
+        assertTrue(restarted.isRevoked(familyId));
+        assertTrue(table.rows.containsKey(familyId), "la révocation de la famille doit être persistée");
+        assertThrows(IllegalArgumentException.class, () -> authService.refreshToken(legitimate.getRefreshToken()));
+    }
+
+    @Test
+    void consumedTokenRowIsCheckedEvenWhenNotLoaded() {
+        // Consommé par un autre nœud après le chargement : la clé primaire le détecte
+        TokenRevocationService revocations = revocationService(true);
+        AuthService authService = authService(revocations);
+        String familyId = UUID.randomUUID().toString();
+        String refreshToken = tokenProvider.generateRefreshToken(user, familyId);
+        Claims claims = tokenProvider.parseClaims(refreshToken);
+        table.rows.put(claims.getId(), claims.getExpiration().getTime());
+
+        assertThrows(IllegalArgumentException.class, () -> authService.refreshToken(refreshToken));
+        assertTrue(revocations.isRevoked(familyId));
+    }
+
+    @Test
+    void logoutRevocationSurvivesRestart() {
+        AuthService authService = authService(revocationService(true));
+        String familyId = UUID.randomUUID().toString();
+        String accessToken = tokenProvider.generateToken(user, familyId);
+        String refreshToken = tokenProvider.generateRefreshToken(user, familyId);
+
+        authService.logout(accessToken);
+
+        TokenRevocationService restarted = revocationService(true);
+        assertTrue(restarted.isRevoked(tokenProvider.parseClaims(accessToken).getId()));
+        assertThrows(IllegalArgumentException.class, () -> authService(restarted).refreshToken(refreshToken));
+    }
+
+    // Méthodes privées
+
+    private AuthService authService(TokenRevocationService revocations) {
+        AuthService authService = new AuthService(userRepository, mock(PasswordHashingService.class), tokenProvider,
+            new ModelMapper(), revocations, mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(authService, "jwtExpirationInMs", 900_000L);
+        ReflectionTestUtils.setField(authService, "refreshTokenExpirationInMs", 604_800_000L);
+        return authService;
+    }
+
+    @SuppressWarnings("unchecked")
+    private TokenRevocationService revocationService(boolean persisted) {
+        TokenRevocationService service = new TokenRevocationService(mock(ObjectProvider.class),
+            mock(ObjectProvider.class), table, mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(service, "expectedEntries", 1024);
+        ReflectionTestUtils.setField(service, "falsePositiveRate", 0.01);
+        ReflectionTestUtils.setField(service, "refreshTokenExpirationInMs", 604_800_000L);
+        ReflectionTestUtils.setField(service, "dbEnabled", persisted);
+        service.init();
+        return service;
+    }
+
+    /**
+     * Table revoked_tokens en mémoire : INSERT (clé primaire) et SELECT des révocations actives
+     */
+    private static final class RevocationTable extends JdbcTemplate {
+
+        final Map<String, Long> rows = new ConcurrentHashMap<>();
+
+        @Override
+        public int update(String sql, Object... args) {
+            if (!sql.startsWith("INSERT INTO revoked_tokens")) {
+                throw new UnsupportedOperationException(sql);
+            }
+            if (rows.putIfAbsent((String) args[0], (Long) args[1]) != null) {
+                throw new DuplicateKeyException("Duplicate entry '" + args[0] + "' for key 'PRIMARY'");
+            }
+            return 1;
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler handler, Object... args) {
+            long now = (Long) args[0];
+            for (Map.Entry<String, Long> row : rows.entrySet()) {
+                if (row.getValue() > now) {
+                    try {
+                        ResultSet rs = mock(ResultSet.class);
+                        when(rs.getString(1)).thenReturn(row.getKey());
+                        when(rs.getLong(2)).thenReturn(row.getValue());
+                        handler.processRow(rs);
+                    } catch (SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.retrouvtout.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests unitaires du regroupement des trames sortantes
+ */
+class OutboundFrameBatcherTest {
+
+    static final String SESSION_ID = "session-1";
+
+    private final List<Message<?>> sent = new CopyOnWriteArrayList<>();
+    private OutboundFrameBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        MessageChannel outbound = (message, timeout) -> {
+            // Comme le canal réel : les intercepteurs voient aussi les trames envoyées par le batcher
+            Message<?> passed = batcher.preSend(message, null);
+            if (passed != null) {
+                sent.add(passed);
+            }
+            return true;
+        };
+        batcher = newBatcher(outbound, 60_000, 100);
+        batcher.onSubscribe(subscribeEvent(SESSION_ID, "sub-batch"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        batcher.stop();
+    }
+
+    @Test
+    void messagesAreHeldUntilFlush() {
+        assertNull(batcher.preSend(frame(SESSION_ID, "/user/queue/messages", "{\"n\":1}"), null));
+        assertNull(batcher.preSend(frame(SESSION_ID, "/user/queue/messages", "{\"n\":2}"), null));
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    void errorFrameFlushesPendingFramesFirst() {
+        batcher.preSend(frame(SESSION_ID, "/user/queue/messages", "{\"n\":1}"), null);
+        batcher.preSend(frame(SESSION_ID, "/user/queue/messages", "{\"n\":2}"), null);
+
+        Message<?> error = control(SESSION_ID, StompCommand.ERROR);
+        Message<?> passed = batcher.preSend(error, null);
+
+        // Les deux messages en attente partent (en une trame groupée) avant l'ERROR
+        assertSame(error, passed);
+        assertEquals(1, sent.size());
+        String envelope = new String((byte[]) sent.get(0).getPayload(), StandardCharsets.UTF_8);
+        assertTrue(envelope.indexOf("\"n\":1") < envelope.indexOf("\"n\":2"), envelope);
+        assertEquals(OutboundFrameBatcher.BATCH_DESTINATION, SimpMessageHeaderAccessor.wrap(sent.get(0)).getDestination());
+    }
+
+    @Test
+    void receiptFrameFlushesPendingFramesFirst() {
+        batcher.preSend(frame(SESSION_ID, "/user/queue/messages", "{\"n\":1}"), null);
+
+        Message<?> receipt = control(SESSION_ID, StompCommand.RECEIPT);
+        assertSame(receipt, batcher.preSend(receipt, null));
+
+        // Une seule trame en attente : envoyée telle quelle, sans enveloppe
+        assertEquals(1, sent.size());
+        assertEquals("/user/queue/messages", SimpMessageHeaderAccessor.wrap(sent.get(0)).getDestination());
+    }
+
+    @Test
+    void otherSessionsAreNotAffected() {
+        Message<?> other = frame("session-2", "/user/queue/messages", "{\"n\":1}");
+        assertSame(other, batcher.preSend(other, null));
+        assertTrue(sent.isEmpty());
+    }
+
+    // Méthodes utilitaires
+
+    static OutboundFrameBatcher newBatcher(MessageChannel outbound, long tickMs, int maxFrames) {
+        OutboundFrameBatcher batcher = new OutboundFrameBatcher(new ObjectMapper(), outbound);
+        ReflectionTestUtils.setField(batcher, "enabled", true);
+        ReflectionTestUtils.setField(batcher, "tickMs", tickMs);
+        ReflectionTestUtils.setField(batcher, "maxFrames", maxFrames);
+        batcher.start();
+        return batcher;
+    }
+
+    static SessionSubscribeEvent subscribeEvent(String sessionId, String subscriptionId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(OutboundFrameBatcher.BATCH_DESTINATION);
+        return new SessionSubscribeEvent(OutboundFrameBatcherTest.class,
+            MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    static Message<byte[]> frame(String sessionId, String destination, String json) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId("sub-messages");
+        accessor.setDestination(destination);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(json.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> control(String sessionId, StompCommand command) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setSessionId(sessionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,106 @@
+package com.retrouvtout.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests unitaires de l'encodage binaire négocié
+ */
+class PayloadEncodingServiceTest {
+
+    private static final String JSON = "{\"id\":\"m-1\",\"body\":\"Bonjour\",\"is_read\":false}";
+
+    private PayloadEncodingService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new PayloadEncodingService(new ObjectMapper());
+        ReflectionTestUtils.setField(service, "binaryEnabled", true);
+    }
+
+    @Test
+    void binarySessionGetsOctetStreamWithFormatHeader() throws Exception {
+        service.onConnect(connectEvent("s-binary", "cbor", true));
+
+        Message<?> encoded = service.preSend(jsonFrame("s-binary"), null);
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(encoded);
+        // STOMP n'écrit une trame WebSocket binaire que pour application/octet-stream
+        assertEquals(MimeTypeUtils.APPLICATION_OCTET_STREAM, accessor.getContentType());
+        assertEquals("cbor", accessor.getFirstNativeHeader(PayloadEncodingService.PAYLOAD_FORMAT_HEADER));
+
+        JsonNode decoded = new ObjectMapper(new CBORFactory()).readTree((byte[]) encoded.getPayload());
+        assertEquals(new ObjectMapper().readTree(JSON), decoded);
+    }
+
+    @Test
+    void formatIsIgnoredOutsideBinaryEndpoint() {
+        // /ws (SockJS ou non) : les octets binaires partiraient dans une trame texte
+        service.onConnect(connectEvent("s-sockjs", "cbor", false));
+
+        Message<byte[]> frame = jsonFrame("s-sockjs");
+        assertSame(frame, service.preSend(frame, null));
+    }
+
+    @Test
+    void jsonSessionIsUntouched() {
+        service.onConnect(connectEvent("s-binary", "cbor", true));
+
+        Message<byte[]> frame = jsonFrame("s-json");
+        assertSame(frame, service.preSend(frame, null));
+    }
+
+    // Méthodes utilitaires
+
+    static SessionConnectEvent connectEvent(String sessionId, String format, boolean binaryEndpoint) {
+        Map<String, Object> attributes = new HashMap<>();
+        if (binaryEndpoint) {
+            markBinaryEndpoint(attributes);
+        }
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId(sessionId);
+        accessor.setSessionAttributes(attributes);
+        accessor.setNativeHeader(PayloadEncodingService.PAYLOAD_FORMAT_HEADER, format);
+        return new SessionConnectEvent(PayloadEncodingServiceTest.class,
+            MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    static Message<byte[]> jsonFrame(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination("/user/queue/messages");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(JSON.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+
+    /**
+     * Attributs de session tels que posés par l'intercepteur de poignée de main de /ws-binary
+     */
+    private static void markBinaryEndpoint(Map<String, Object> attributes) {
+        try {
+            new PayloadEncodingService(new ObjectMapper()).binaryEndpointInterceptor()
+                .beforeHandshake(null, null, null, attributes);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
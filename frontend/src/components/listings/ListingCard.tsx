@@ -44,10 +44,17 @@ const ListingCard = ({ item }: Props) => {
     <Card className="overflow-hidden group hover:shadow-lg transition-all duration-200">
       <div className="relative">
         <img
-          src={item.imageUrl || "/placeholder.svg"}
+          src={item.imageUrls?.card || item.imageUrl || "/placeholder.svg"}
           alt={`Objet retrouvé: ${item.title}`}
           loading="lazy"
-          className="h-40 w-full object-cover"
+          width={item.imageWidth}
+          height={item.imageHeight}
+          className="h-40 w-full object-cover bg-cover bg-center"
+          style={
+            item.imagePlaceholder
+              ? { backgroundImage: `url(${item.imagePlaceholder})` }
+              : undefined
+          }
         />
         <div className="absolute top-2 right-2">
           <Badge className={getCategoryColor(item.category)}>
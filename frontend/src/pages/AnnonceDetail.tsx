@@ -13,6 +13,7 @@ interface Listing {
   locationText: string;
   description: string;
   imageUrl: string | null;
+  imageUrls?: { thumb: string; card: string; full: string };
   foundAt: string; // ISO string
 }
 
@@ -114,7 +115,7 @@ const AnnonceDetail = () => {
       <article className="grid gap-6 md:grid-cols-3">
         <div className="md:col-span-2">
           <img
-            src={item.imageUrl || "/placeholder.svg"}
+            src={item.imageUrls?.full || item.imageUrl || "/placeholder.svg"}
             alt={`Objet retrouvé: ${item.title}`}
             className="w-full h-72 object-cover rounded-lg border"
           />
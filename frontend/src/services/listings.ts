@@ -23,12 +23,26 @@ export interface Listing {
   foundAt: string;
   description: string;
   imageUrl?: string;
+  imageUrls?: { thumb: string; card: string; full: string };
+  imageWidth?: number;
+  imageHeight?: number;
+  imagePlaceholder?: string; // micro-vignette (data URI), affichée en attendant l'image
+  images?: ListingImage[]; // images multiples, la principale en premier
   status: "active" | "resolved";
   finderUserId: string;
   createdAt: string;
   updatedAt: string;
 }
 
+export interface ListingImage {
+  url: string;
+  urls?: { thumb: string; card: string; full: string };
+  width?: number;
+  height?: number;
+  placeholder?: string;
+  isPrimary: boolean;
+}
+
 export interface CreateListingRequest {
   title: string;
   category: string;
@@ -38,6 +52,7 @@ export interface CreateListingRequest {
   foundAt: string;
   description: string;
   imageUrl?: string;
+  images?: string[]; // URLs renvoyées par upload/images, la première est la principale
 }
 
 export interface ListingsSearchParams {
@@ -49,6 +49,7 @@ export interface CreateMessageRequest {
   threadId: string;
   body: string;
   messageType?: "text" | "system";
+  clientMessageId?: string; // identique d'un essai à l'autre : pas de doublon côté serveur
 }
 
 export interface ApiResponse<T> {